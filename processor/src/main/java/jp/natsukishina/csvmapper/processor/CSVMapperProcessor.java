@@ -0,0 +1,296 @@
+package jp.natsukishina.csvmapper.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import jp.natsukishina.csvmapper.CSVColumn;
+import jp.natsukishina.csvmapper.CSVMappable;
+import jp.natsukishina.csvmapper.CSVRowMapper;
+
+/**
+ * {@link CSVColumn}を付けたクラスごとに{@link CSVRowMapper}の実装クラスを生成する注釈処理<br>
+ * 生成したクラスは{@code META-INF/services}に登録され、
+ * {@link jp.natsukishina.csvmapper.CSVMapper}がリフレクションの代わりに使用する<br>
+ * 以下の条件を満たさないクラスは生成を行わず、実行時にリフレクションで変換する
+ * <ul>
+ * <li>privateでないデフォルトコンストラクターを持つ、抽象クラスでないトップレベルクラスまたはstaticなネストクラス</li>
+ * <li>{@link CSVMappable#importFromCSV(List)}を実装していない</li>
+ * <li>{@link CSVColumn}を付けたフィールドが全て同じパッケージからアクセスでき、列番号が指定されている</li>
+ * </ul>
+ *
+ * @author 417.72KI
+ */
+@SupportedAnnotationTypes("jp.natsukishina.csvmapper.CSVColumn")
+public class CSVMapperProcessor extends AbstractProcessor {
+
+	/** 生成するクラス名の接尾辞 */
+	static final String SUFFIX = "CSVMapper";
+
+	private static final String SERVICE_FILE = "META-INF/services/" + CSVRowMapper.class.getName();
+
+	private final Set<String> generated = new TreeSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeServiceFile();
+			return false;
+		}
+		Map<TypeElement, Boolean> types = new LinkedHashMap<>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(CSVColumn.class)) {
+			if (element.getKind() == ElementKind.FIELD) {
+				types.put((TypeElement) element.getEnclosingElement(), Boolean.TRUE);
+			}
+		}
+		for (TypeElement type : types.keySet()) {
+			try {
+				generate(type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Kind.ERROR, "failed to generate mapper: " + e, type);
+			}
+		}
+		return false;
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String skip = checkGeneratable(type, pkg);
+		List<VariableElement> fields = collectFields(type);
+		Set<Integer> indexes = new HashSet<>();
+		for (VariableElement field : fields) {
+			CSVColumn column = field.getAnnotation(CSVColumn.class);
+			if (column.index() < 0 && column.name().isEmpty()) {
+				processingEnv.getMessager().printMessage(Kind.ERROR, "@CSVColumn must specify index or name", field);
+				return;
+			}
+			// 実行時の変換と同じく、同じ列番号を複数のフィールドに指定することはできない
+			if (column.index() >= 0 && !indexes.add(column.index())) {
+				processingEnv.getMessager().printMessage(Kind.ERROR,
+						"column index " + column.index() + " of " + type.getQualifiedName()
+								+ " is specified for more than one field",
+						field);
+				return;
+			}
+			if (Converter.of(field.asType()) == null) {
+				processingEnv.getMessager().printMessage(Kind.ERROR,
+						"type " + field.asType() + " is not supported by @CSVColumn", field);
+				return;
+			}
+			if (skip == null && column.index() < 0) {
+				skip = "column index of " + field.getSimpleName() + " is resolved from the header at runtime";
+			}
+			if (skip == null && !isAccessible(field, pkg)) {
+				skip = "field " + field.getSimpleName() + " is not accessible from the generated mapper";
+			}
+		}
+		if (skip != null) {
+			processingEnv.getMessager().printMessage(Kind.NOTE,
+					"mapper is not generated, reflection is used instead: " + skip, type);
+			return;
+		}
+
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String typeName = type.getQualifiedName().toString();
+		String simpleName = mapperName(type);
+		String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+		try (Writer writer = source.openWriter()) {
+			writer.write(render(packageName, typeName, simpleName, fields));
+		}
+		generated.add(qualifiedName);
+	}
+
+	/**
+	 * 生成できない理由を返す
+	 *
+	 * @return 生成できない理由。生成できる場合はnull
+	 */
+	private String checkGeneratable(TypeElement type, PackageElement pkg) {
+		if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+			return "not a concrete class";
+		}
+		if (type.getNestingKind() != NestingKind.TOP_LEVEL
+				&& (type.getNestingKind() != NestingKind.MEMBER || !type.getModifiers().contains(Modifier.STATIC))) {
+			return "not a top level or static nested class";
+		}
+		for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				return "class is private";
+			}
+		}
+		TypeMirror mappable = processingEnv.getElementUtils().getTypeElement(CSVMappable.class.getName()).asType();
+		if (!processingEnv.getTypeUtils().isAssignable(type.asType(), mappable)) {
+			return "not implementing CSVMappable";
+		}
+		boolean constructor = false;
+		for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) {
+				constructor = true;
+			}
+		}
+		if (!constructor) {
+			return "no accessible default constructor";
+		}
+		for (ExecutableElement method : ElementFilter
+				.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			if (method.getSimpleName().contentEquals("importFromCSV") && method.getParameters().size() == 1
+					&& !method.getModifiers().contains(Modifier.DEFAULT)) {
+				return "importFromCSV is implemented";
+			}
+		}
+		return null;
+	}
+
+	private List<VariableElement> collectFields(TypeElement type) {
+		List<VariableElement> fields = new ArrayList<>();
+		for (TypeElement t = type; t != null;) {
+			for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+				if (field.getAnnotation(CSVColumn.class) != null && !field.getModifiers().contains(Modifier.STATIC)) {
+					fields.add(field);
+				}
+			}
+			TypeMirror superclass = t.getSuperclass();
+			t = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement()
+					: null;
+		}
+		return fields;
+	}
+
+	private boolean isAccessible(VariableElement field, PackageElement pkg) {
+		Set<Modifier> modifiers = field.getModifiers();
+		if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+			return false;
+		}
+		return modifiers.contains(Modifier.PUBLIC)
+				|| processingEnv.getElementUtils().getPackageOf(field).equals(pkg);
+	}
+
+	/**
+	 * 生成するクラスの単純名を返す<br>
+	 * ネストクラスの場合は外側のクラス名を'_'で連結する
+	 */
+	static String mapperName(TypeElement type) {
+		StringBuilder name = new StringBuilder(type.getSimpleName());
+		for (Element e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+			name.insert(0, '_').insert(0, e.getSimpleName());
+		}
+		return name.append(SUFFIX).toString();
+	}
+
+	private String render(String packageName, String typeName, String simpleName, List<VariableElement> fields) {
+		StringBuilder sb = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			sb.append("package ").append(packageName).append(";\n\n");
+		}
+		sb.append("/**\n * {@link ").append(typeName).append("}とCSVの1レコードを相互に変換するクラス<br>\n");
+		sb.append(" * ").append(CSVMapperProcessor.class.getName()).append("によって生成されたため、編集しないこと\n */\n");
+		sb.append("public final class ").append(simpleName).append(" implements ")
+				.append(CSVRowMapper.class.getName()).append('<').append(typeName).append("> {\n\n");
+
+		int size = 0;
+		for (int i = 0; i < fields.size(); i++) {
+			VariableElement field = fields.get(i);
+			CSVColumn column = field.getAnnotation(CSVColumn.class);
+			size = Math.max(size, column.index() + 1);
+			if (Converter.of(field.asType()) == Converter.LOCAL_DATE) {
+				sb.append("\tprivate static final java.time.format.DateTimeFormatter FORMAT_").append(i).append(" = ")
+						.append(column.format().isEmpty() ? "java.time.format.DateTimeFormatter.ISO_LOCAL_DATE"
+								: "java.time.format.DateTimeFormatter.ofPattern(\"" + escape(column.format()) + "\")")
+						.append(";\n\n");
+			}
+		}
+
+		sb.append("\t@Override\n\tpublic Class<").append(typeName).append("> type() {\n");
+		sb.append("\t\treturn ").append(typeName).append(".class;\n\t}\n\n");
+
+		sb.append("\t@Override\n\tpublic ").append(typeName).append(" newInstance() {\n");
+		sb.append("\t\treturn new ").append(typeName).append("();\n\t}\n\n");
+
+		sb.append("\t@Override\n\tpublic void importFrom(").append(typeName)
+				.append(" target, java.util.List<String> row) {\n");
+		sb.append("\t\tString value;\n");
+		for (int i = 0; i < fields.size(); i++) {
+			VariableElement field = fields.get(i);
+			int index = field.getAnnotation(CSVColumn.class).index();
+			sb.append("\t\tvalue = row.get(").append(index).append(");\n");
+			sb.append("\t\ttarget.").append(field.getSimpleName()).append(" = ")
+					.append(Converter.of(field.asType()).parse("value", "FORMAT_" + i)).append(";\n");
+		}
+		sb.append("\t}\n\n");
+
+		sb.append("\t@Override\n\tpublic String[] export(").append(typeName).append(" source) {\n");
+		sb.append("\t\tString[] array = new String[").append(size).append("];\n");
+		sb.append("\t\tjava.util.Arrays.fill(array, \"\");\n");
+		for (int i = 0; i < fields.size(); i++) {
+			VariableElement field = fields.get(i);
+			int index = field.getAnnotation(CSVColumn.class).index();
+			Converter converter = Converter.of(field.asType());
+			String value = "source." + field.getSimpleName();
+			if (converter.primitive) {
+				sb.append("\t\tarray[").append(index).append("] = ").append(converter.format(value, "FORMAT_" + i))
+						.append(";\n");
+			} else {
+				sb.append("\t\tif (").append(value).append(" != null) {\n");
+				sb.append("\t\t\tarray[").append(index).append("] = ")
+						.append(converter.format(value, "FORMAT_" + i)).append(";\n");
+				sb.append("\t\t}\n");
+			}
+		}
+		sb.append("\t\treturn array;\n\t}\n}\n");
+		return sb.toString();
+	}
+
+	private void writeServiceFile() {
+		if (generated.isEmpty()) {
+			return;
+		}
+		try {
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+			try (Writer writer = file.openWriter()) {
+				for (String name : generated) {
+					writer.write(name);
+					writer.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "failed to write " + SERVICE_FILE + ": " + e);
+		}
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
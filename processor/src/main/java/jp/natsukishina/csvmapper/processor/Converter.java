@@ -0,0 +1,100 @@
+package jp.natsukishina.csvmapper.processor;
+
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * {@link jp.natsukishina.csvmapper.CSVColumn}で対応している型ごとに、
+ * 文字列との変換を行うソースコードを生成する列挙型<br>
+ * 変換の規則は実行時のリフレクションによる変換と同じ
+ *
+ * @author 417.72KI
+ */
+enum Converter {
+	STRING(false, "%s", "%s"),
+	INT(true, "%1$s.isEmpty() ? 0 : Integer.parseInt(%1$s)", "Integer.toString(%s)"),
+	INTEGER(false, "%1$s.isEmpty() ? null : Integer.valueOf(%1$s)", "%s.toString()"),
+	LONG(true, "%1$s.isEmpty() ? 0L : Long.parseLong(%1$s)", "Long.toString(%s)"),
+	LONG_WRAPPER(false, "%1$s.isEmpty() ? null : Long.valueOf(%1$s)", "%s.toString()"),
+	DOUBLE(true, "%1$s.isEmpty() ? 0d : Double.parseDouble(%1$s)", "Double.toString(%s)"),
+	DOUBLE_WRAPPER(false, "%1$s.isEmpty() ? null : Double.valueOf(%1$s)", "%s.toString()"),
+	BOOLEAN(true, "Boolean.parseBoolean(%s)", "Boolean.toString(%s)"),
+	BOOLEAN_WRAPPER(false, "%1$s.isEmpty() ? null : Boolean.valueOf(%1$s)", "%s.toString()"),
+	BIG_DECIMAL(false, "%1$s.isEmpty() ? null : new java.math.BigDecimal(%1$s)", "%s.toPlainString()"),
+	LOCAL_DATE(false, "%1$s.isEmpty() ? null : java.time.LocalDate.parse(%1$s, %2$s)", "%2$s.format(%1$s)");
+
+	/** プリミティブ型の場合はtrue */
+	final boolean primitive;
+	private final String parse;
+	private final String format;
+
+	private Converter(boolean primitive, String parse, String format) {
+		this.primitive = primitive;
+		this.parse = parse;
+		this.format = format;
+	}
+
+	/**
+	 * 文字列からフィールドの型に変換する式を返す
+	 *
+	 * @param value 変換する文字列の変数名
+	 * @param formatter 日付の書式の定数名
+	 * @return 変換する式
+	 */
+	String parse(String value, String formatter) {
+		return String.format(parse, value, formatter);
+	}
+
+	/**
+	 * フィールドの値を文字列に変換する式を返す
+	 *
+	 * @param value 変換する値の式
+	 * @param formatter 日付の書式の定数名
+	 * @return 変換する式
+	 */
+	String format(String value, String formatter) {
+		return String.format(format, value, formatter);
+	}
+
+	/**
+	 * 型に対応する変換を返す
+	 *
+	 * @param type フィールドの型
+	 * @return 対応する変換。対応していない型の場合はnull
+	 */
+	static Converter of(TypeMirror type) {
+		switch (type.getKind()) {
+		case INT:
+			return INT;
+		case LONG:
+			return LONG;
+		case DOUBLE:
+			return DOUBLE;
+		case BOOLEAN:
+			return BOOLEAN;
+		default:
+			break;
+		}
+		if (type.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		switch (type.toString()) {
+		case "java.lang.String":
+			return STRING;
+		case "java.lang.Integer":
+			return INTEGER;
+		case "java.lang.Long":
+			return LONG_WRAPPER;
+		case "java.lang.Double":
+			return DOUBLE_WRAPPER;
+		case "java.lang.Boolean":
+			return BOOLEAN_WRAPPER;
+		case "java.math.BigDecimal":
+			return BIG_DECIMAL;
+		case "java.time.LocalDate":
+			return LOCAL_DATE;
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package jp.natsukishina.csvmapper.processor;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVMappable;
+import jp.natsukishina.csvmapper.CSVRowMapper;
+
+public class CSVMapperProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String ITEM_SOURCE = String.join("\n",
+			"package sample;",
+			"import jp.natsukishina.csvmapper.CSVColumn;",
+			"import jp.natsukishina.csvmapper.CSVMappable;",
+			"public class Item implements CSVMappable {",
+			"	@CSVColumn(index = 0) int id;",
+			"	@CSVColumn(index = 1) String name;",
+			"	@CSVColumn(index = 2) java.math.BigDecimal price;",
+			"	@CSVColumn(index = 3, format = \"yyyy/MM/dd\") java.time.LocalDate released;",
+			"	@CSVColumn(index = 4) Long stock;",
+			"	public boolean includeLines() { return false; }",
+			"	public static class Named implements CSVMappable {",
+			"		@CSVColumn(name = \"id\") int id;",
+			"		public boolean includeLines() { return false; }",
+			"	}",
+			"}");
+
+	@Test
+	public void 正常系_変換クラスを生成して登録() throws Exception {
+		File output = compile("sample/Item.java", ITEM_SOURCE);
+
+		assertThat(new File(output, "sample/ItemCSVMapper.class").exists(), is(true));
+		// 列名で指定された列はヘッダー行が必要なため生成しない
+		assertThat(new File(output, "sample/Item_NamedCSVMapper.class").exists(), is(false));
+		List<String> services = Files.readAllLines(
+				new File(output, "META-INF/services/" + CSVRowMapper.class.getName()).toPath(),
+				StandardCharsets.UTF_8);
+		assertThat(services, is(Collections.singletonList("sample.ItemCSVMapper")));
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { output.toURI().toURL() },
+				getClass().getClassLoader())) {
+			@SuppressWarnings("unchecked")
+			CSVRowMapper<CSVMappable> mapper = (CSVRowMapper<CSVMappable>) loader.loadClass("sample.ItemCSVMapper")
+					.newInstance();
+			assertThat(mapper.type().getName(), is("sample.Item"));
+			CSVMappable item = mapper.newInstance();
+			mapper.importFrom(item, Arrays.asList("7", "りんご", "120.50", "2016/06/10", ""));
+			assertThat(Arrays.asList(mapper.export(item)),
+					is(Arrays.asList("7", "りんご", "120.50", "2016/06/10", "")));
+		}
+	}
+
+	@Test
+	public void 異常系_対応していない型に列を指定() throws Exception {
+		String source = String.join("\n",
+				"package sample;",
+				"import jp.natsukishina.csvmapper.CSVColumn;",
+				"import jp.natsukishina.csvmapper.CSVMappable;",
+				"public class Invalid implements CSVMappable {",
+				"	@CSVColumn(index = 0) Object value;",
+				"	public boolean includeLines() { return false; }",
+				"}");
+		assertThat(tryCompile("sample/Invalid.java", source), is(false));
+	}
+
+	@Test
+	public void 異常系_同じ列番号を複数のフィールドに指定() throws Exception {
+		String source = String.join("\n",
+				"package sample;",
+				"import jp.natsukishina.csvmapper.CSVColumn;",
+				"import jp.natsukishina.csvmapper.CSVMappable;",
+				"public class Duplicated implements CSVMappable {",
+				"	@CSVColumn(index = 0) int id;",
+				"	@CSVColumn(index = 0) String name;",
+				"	public boolean includeLines() { return false; }",
+				"}");
+		assertThat(tryCompile("sample/Duplicated.java", source), is(false));
+	}
+
+	private File compile(String path, String source) throws IOException {
+		assertThat(tryCompile(path, source), is(true));
+		return new File(folder.getRoot(), "classes");
+	}
+
+	private boolean tryCompile(String path, String source) throws IOException {
+		File src = new File(folder.getRoot(), "src/" + path);
+		src.getParentFile().mkdirs();
+		Files.write(src.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		File classes = folder.newFolder("classes");
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+			Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjects(src);
+			List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d",
+					classes.getPath(), "-encoding", "UTF-8");
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null, units);
+			task.setProcessors(Collections.singletonList(new CSVMapperProcessor()));
+			return task.call();
+		}
+	}
+}
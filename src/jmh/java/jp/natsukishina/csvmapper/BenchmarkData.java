@@ -0,0 +1,197 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * ベンチマークで使用するCSVファイルを生成する状態クラス<br>
+ * 生成したファイルは一時ディレクトリにパラメーターごとの名前で保持し、
+ * 同じパラメーターの試行(フォーク)ではファイルを再利用する<br>
+ * 全てのレコードをヒープに保持するベンチマーク(変換・出力・並べ替え)があるため、既定のレコード数は
+ * 広いレコードでもヒープに収まる10万件まで。100万件・1000万件は{@code -p rows=1000000,10000000}で指定する
+ * (1000万件の広いレコードはファイル1つで数GB、ヒープに保持すると数十GBになる)
+ *
+ * @author 417.72KI
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+
+	/** 狭いレコードの列数 */
+	private static final int NARROW_COLUMNS = 5;
+	/** 広いレコードの列数 */
+	private static final int WIDE_COLUMNS = 50;
+
+	/** レコード数 */
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	/** レコードの列数(narrow: 5列, wide: 50列) */
+	@Param({ "narrow", "wide" })
+	public String shape;
+
+	/** クォートで囲む要素の割合(none: 無し, dense: 半数の要素がクォート・区切り文字を含む) */
+	@Param({ "none", "dense" })
+	public String quotes;
+
+	/** 要素内に改行を含む場合はtrue({@link CSVMappable#includeLines()}がtrueのクラスで読み込む) */
+	@Param({ "false", "true" })
+	public boolean multiline;
+
+	/** ファイルの文字コード */
+	@Param({ "UTF-8", "Shift_JIS" })
+	public String charCode;
+
+	/** 生成したCSVファイル */
+	public CSVFile file;
+
+	/** 生成したCSVファイルの文字コード */
+	public Charset charset;
+
+	/** 読み込みに使用するクラス */
+	public Class<? extends Row> rowClass;
+
+	/** 文字コードを指定した設定 */
+	public CSVMapper mapper;
+
+	@Setup
+	public void setUp() throws IOException {
+		charset = Charset.forName(charCode);
+		rowClass = multiline ? Row.class : SingleLineRow.class;
+		mapper = CSVMapper.builder().charset(charset).build();
+		file = create(rows, shape, quotes, multiline, charset);
+	}
+
+	/**
+	 * 生成したCSVファイルを読み込んだ結果を返す(出力のベンチマークの入力に使用する)
+	 *
+	 * @return 読み込んだレコード
+	 */
+	public List<Row> load() {
+		return new ArrayList<>(mapper.read(file, rowClass));
+	}
+
+	/**
+	 * 指定された条件のCSVファイルを生成する。既に生成されている場合はそのファイルを返す
+	 *
+	 * @param rows レコード数
+	 * @param shape レコードの列数(narrow/wide)
+	 * @param quotes クォートで囲む要素の割合(none/dense)
+	 * @param multiline 要素内に改行を含む場合はtrue
+	 * @param charset 文字コード
+	 * @return 生成したCSVファイル
+	 * @throws IOException 入出力エラー
+	 */
+	static CSVFile create(int rows, String shape, String quotes, boolean multiline, Charset charset)
+			throws IOException {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "csv-mapper-jmh");
+		dir.mkdirs();
+		File csv = new File(dir, String.join("-", Integer.toString(rows), shape, quotes, Boolean.toString(multiline),
+				charset.name()) + ".csv");
+		if (!csv.exists()) {
+			File tmp = new File(dir, csv.getName() + ".tmp");
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmp.toPath()), charset),
+					1 << 16)) {
+				generate(writer, rows, "wide".equals(shape) ? WIDE_COLUMNS : NARROW_COLUMNS, "dense".equals(quotes),
+						multiline);
+			}
+			if (!tmp.renameTo(csv)) {
+				throw new IOException("failed to create " + csv);
+			}
+		}
+		return CSVFile.fromFile(csv);
+	}
+
+	private static void generate(Writer writer, int rows, int columns, boolean dense, boolean multiline)
+			throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < rows; i++) {
+			sb.setLength(0);
+			sb.append(i);
+			for (int c = 1; c < columns; c++) {
+				sb.append(',');
+				if (multiline && c == columns - 1) {
+					sb.append("\"1行目\n2行目\"");
+					continue;
+				}
+				switch ((i + c) % 4) {
+				case 0:
+					sb.append(i * 31L + c);
+					break;
+				case 1:
+					sb.append("商品名").append(c).append("_テスト");
+					break;
+				case 2:
+					if (dense) {
+						sb.append("\"値段,\"\"税込\"\"\"");
+					} else {
+						sb.append("1234.56");
+					}
+					break;
+				default:
+					if (dense) {
+						sb.append("\"区切り,を含む\"");
+					} else {
+						sb.append("plain");
+					}
+					break;
+				}
+			}
+			sb.append('\n');
+			writer.append(sb);
+		}
+	}
+
+	/**
+	 * 要素内に改行を含むCSVを読み込むクラス
+	 */
+	public static class Row implements CSVMappable {
+		private List<String> fields;
+
+		@Override
+		public boolean includeLines() {
+			return true;
+		}
+
+		@Override
+		public String[] array4exportCSV() {
+			return fields.toArray(new String[fields.size()]);
+		}
+
+		@Override
+		public void importFromCSV(List<String> row) {
+			fields = new ArrayList<>(row);
+		}
+
+		/**
+		 * @param index 列の位置
+		 * @return 要素
+		 */
+		public String get(int index) {
+			return fields.get(index);
+		}
+	}
+
+	/**
+	 * 要素内に改行を含まないCSVを読み込むクラス
+	 */
+	public static class SingleLineRow extends Row {
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * 文字コード判定のベンチマーク
+ *
+ * @author 417.72KI
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+public class DetectBenchmark {
+
+	/**
+	 * 判定するファイル。判定はファイルの先頭しか読まないため、レコード数と列数は固定する
+	 */
+	@State(Scope.Benchmark)
+	public static class Data {
+		@Param({ "none", "dense" })
+		public String quotes;
+
+		@Param({ "UTF-8", "Shift_JIS" })
+		public String charCode;
+
+		CSVFile file;
+
+		@Setup
+		public void setUp() throws IOException {
+			file = BenchmarkData.create(10000, "narrow", quotes, false, Charset.forName(charCode));
+		}
+	}
+
+	/**
+	 * キャッシュを使用せずにファイルの先頭から判定する
+	 */
+	@Benchmark
+	public String detect(Data data) throws IOException {
+		try (InputStream in = new FileInputStream(data.file)) {
+			return FileCharDetecter.detect(in, FileCharDetecter.DEFAULT_SAMPLE_SIZE).getCharCode();
+		}
+	}
+
+	/**
+	 * キャッシュした判定結果を使用する
+	 */
+	@Benchmark
+	public String detectCached(Data data) throws IOException {
+		return FileCharDetecter.detect(data.file, FileCharDetecter.DEFAULT_SAMPLE_SIZE).getCharCode();
+	}
+}
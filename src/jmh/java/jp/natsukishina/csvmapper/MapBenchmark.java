@@ -0,0 +1,94 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 文字コード判定・解析・インスタンスへの変換を通したベンチマーク
+ *
+ * @author 417.72KI
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+public class MapBenchmark {
+
+	/** 表に読み込む列(狭いレコードの全ての列、広いレコードの先頭5列) */
+	private static final CSVSchema SCHEMA = CSVSchema.builder().column(0, CSVSchema.Type.LONG)
+			.column(1, CSVSchema.Type.STRING).column(2, CSVSchema.Type.STRING).column(3, CSVSchema.Type.DICTIONARY)
+			.column(4, CSVSchema.Type.STRING).build();
+
+	/** 文字コードを判定する設定 */
+	private static final CSVMapper DETECTING = CSVMapper.builder().build();
+
+	/**
+	 * 静的メソッドでリストに変換する
+	 */
+	@Benchmark
+	public List<? extends CSVMappable> convertFromCSVFile(BenchmarkData data) {
+		return CSVMapper.convertFromCSVFile(data.file, data.rowClass);
+	}
+
+	/**
+	 * 文字コードを指定してリストに変換する(文字コード判定を含まない)
+	 */
+	@Benchmark
+	public List<? extends CSVMappable> readWithCharset(BenchmarkData data) {
+		return data.mapper.read(data.file, data.rowClass);
+	}
+
+	/**
+	 * 1列目の末尾が0のレコード(1割)のみをインスタンスに変換する
+	 */
+	@Benchmark
+	public List<? extends CSVMappable> readFiltered(BenchmarkData data) {
+		CSVMapper mapper = data.mapper.toBuilder().where(0, v -> v.length() > 0 && v.charAt(v.length() - 1) == '0')
+				.build();
+		return mapper.read(data.file, data.rowClass);
+	}
+
+	/**
+	 * 全ての列で同じ内容の文字列を共有してリストに変換する(数値の列はヒット率が低くキャッシュを使用しなくなる)
+	 */
+	@Benchmark
+	public List<? extends CSVMappable> readDeduplicated(BenchmarkData data) {
+		return data.mapper.toBuilder().deduplicate().build().read(data.file, data.rowClass);
+	}
+
+	/**
+	 * スナップショットファイルから読み込んでリストに変換する(最初の呼び出しでスナップショットファイルを作成する)
+	 */
+	@Benchmark
+	public List<? extends CSVMappable> readSnapshot(BenchmarkData data) {
+		return data.mapper.toBuilder().snapshot(true).build().read(data.file, data.rowClass);
+	}
+
+	/**
+	 * インスタンスに変換せずに列ごとの配列に読み込む
+	 */
+	@Benchmark
+	public CSVTable readTable(BenchmarkData data) {
+		return data.mapper.readTable(data.file, SCHEMA);
+	}
+
+	/**
+	 * リストに保持せずに1件ずつ変換する
+	 */
+	@Benchmark
+	public void stream(BenchmarkData data, Blackhole blackhole) {
+		try (Stream<? extends CSVMappable> stream = DETECTING.readStream(data.file, data.rowClass)) {
+			stream.forEach(blackhole::consume);
+		}
+	}
+
+	/**
+	 * 同じインスタンスを使い回して1件ずつ変換する
+	 */
+	@Benchmark
+	public long forEach(BenchmarkData data, Blackhole blackhole) {
+		return data.mapper.forEach(data.file, data.rowClass, blackhole::consume);
+	}
+}
@@ -0,0 +1,81 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * レコードの解析のベンチマーク<br>
+ * 全てのレコードの全ての要素を文字列に変換するまでを計測する
+ *
+ * @author 417.72KI
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+public class ParseBenchmark {
+
+	/** 列を指定する場合に読み込む列(狭いレコードでは5列中2列、広いレコードでは50列中2列) */
+	private static final Projection PROJECTION = Projection.of(0, 2);
+
+	/**
+	 * メモリーマップしたバイト列を直接解析する
+	 */
+	@Benchmark
+	public void parseMapped(BenchmarkData data, Blackhole blackhole) throws IOException {
+		try (RecordReader reader = new MappedRecordReader(
+				FileChannel.open(data.file.toPath(), StandardOpenOption.READ), data.charset)) {
+			consume(reader, blackhole);
+		}
+	}
+
+	/**
+	 * {@link InputStreamReader}で文字に変換してから解析する
+	 */
+	@Benchmark
+	public void parseChars(BenchmarkData data, Blackhole blackhole) throws IOException {
+		try (RecordReader reader = new CharRecordReader(
+				new InputStreamReader(new FileInputStream(data.file), data.charset))) {
+			consume(reader, blackhole);
+		}
+	}
+
+	/**
+	 * メモリーマップしたバイト列から指定した列だけを解析する
+	 */
+	@Benchmark
+	public void parseMappedProjected(BenchmarkData data, Blackhole blackhole) throws IOException {
+		try (RecordReader reader = new MappedRecordReader(
+				FileChannel.open(data.file.toPath(), StandardOpenOption.READ), data.charset)) {
+			reader.project(PROJECTION);
+			consume(reader, blackhole);
+		}
+	}
+
+	/**
+	 * 文字に変換してから指定した列だけを解析する
+	 */
+	@Benchmark
+	public void parseCharsProjected(BenchmarkData data, Blackhole blackhole) throws IOException {
+		try (RecordReader reader = new CharRecordReader(
+				new InputStreamReader(new FileInputStream(data.file), data.charset))) {
+			reader.project(PROJECTION);
+			consume(reader, blackhole);
+		}
+	}
+
+	private static void consume(RecordReader reader, Blackhole blackhole) throws IOException {
+		List<String> record;
+		while ((record = reader.readRecord()) != null) {
+			for (int i = 0, size = record.size(); i < size; i++) {
+				blackhole.consume(record.get(i));
+			}
+		}
+	}
+}
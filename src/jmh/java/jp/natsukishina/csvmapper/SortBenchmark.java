@@ -0,0 +1,73 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import jp.natsukishina.csvmapper.BenchmarkData.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * 2列目・1列目の順にCSVファイルを並べ替えて出力するベンチマーク
+ *
+ * @author 417.72KI
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+public class SortBenchmark {
+
+	/** 一時ファイルに書き出す場合のメモリーの上限 */
+	private static final long SPILL_BUDGET = 16L << 20;
+
+	/**
+	 * 生成したCSVファイルと出力先
+	 */
+	@State(Scope.Benchmark)
+	public static class Files extends BenchmarkData {
+		CSVFile output;
+
+		@Setup
+		public void createOutput() throws IOException {
+			output = CSVFile.fromFile(File.createTempFile("csv-mapper-jmh", ".csv"));
+		}
+
+		@TearDown
+		public void tearDown() {
+			output.delete();
+		}
+	}
+
+	/**
+	 * 全てのレコードをリストに変換し、リストを並べ替えて出力する
+	 */
+	@Benchmark
+	public void sortList(Files files) {
+		List<? extends Row> rows = files.mapper.read(files.file, files.rowClass);
+		rows.sort(Comparator.comparing((Row row) -> row.get(1)).thenComparing(row -> row.get(0)));
+		files.mapper.write(files.output, rows);
+	}
+
+	/**
+	 * 全てのレコードがメモリーの上限に収まる場合の{@link CSVMapper#sort(CSVFile, CSVFile, Comparator, long)}
+	 */
+	@Benchmark
+	public long sortInMemory(Files files) {
+		return files.mapper.sort(files.file, files.output, CSVMapper.comparing(1, 0), Long.MAX_VALUE);
+	}
+
+	/**
+	 * 一時ファイルに書き出してマージする場合の{@link CSVMapper#sort(CSVFile, CSVFile, Comparator, long)}
+	 */
+	@Benchmark
+	public long sortExternal(Files files) {
+		return files.mapper.sort(files.file, files.output, CSVMapper.comparing(1, 0), SPILL_BUDGET);
+	}
+}
@@ -0,0 +1,113 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import jp.natsukishina.csvmapper.BenchmarkData.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * CSV出力のベンチマーク
+ *
+ * @author 417.72KI
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+public class WriteBenchmark {
+
+	/**
+	 * 生成したCSVファイルから読み込んだ出力するレコードと、出力先
+	 */
+	@State(Scope.Benchmark)
+	public static class Rows extends BenchmarkData {
+		List<Row> records;
+		CSVFile output;
+		CSVFile gzipOutput;
+
+		@Setup
+		public void loadRows() throws IOException {
+			records = load();
+			output = CSVFile.fromFile(File.createTempFile("csv-mapper-jmh", ".csv"));
+			gzipOutput = CSVFile.fromFile(File.createTempFile("csv-mapper-jmh", ".csv.gz"));
+		}
+
+		@TearDown
+		public void tearDown() {
+			output.delete();
+			gzipOutput.delete();
+		}
+	}
+
+	/**
+	 * 出力先を持たないWriterに書き込む(文字列化とクォート処理のみ)
+	 */
+	@Benchmark
+	public void writeRecords(Rows rows) throws IOException {
+		try (CSVWriter writer = new CSVWriter(NullWriter.INSTANCE, CSVWriter.DEFAULT_BUFFER_SIZE, 0)) {
+			writer.writeAll(rows.records);
+		}
+	}
+
+	/**
+	 * 静的メソッドでファイルに出力する(文字コードへの変換を含む)
+	 */
+	@Benchmark
+	public void output(Rows rows) {
+		CSVMapper.output(rows.output, rows.records, rows.charCode);
+	}
+
+	/**
+	 * 共通のスレッドプールで並列に文字列化・文字コードへの変換を行いファイルに出力する
+	 */
+	@Benchmark
+	public void outputInParallel(Rows rows) {
+		CSVMapper.outputInParallel(rows.output, rows.records, rows.charCode);
+	}
+
+	/**
+	 * gzip形式で圧縮して出力する(書き込んだスレッドで圧縮)
+	 */
+	@Benchmark
+	public void outputGzip(Rows rows) {
+		CSVMapper.builder().charset(Charset.forName(rows.charCode)).build().write(rows.gzipOutput, rows.records);
+	}
+
+	/**
+	 * gzip形式でブロックごとに並列に圧縮して出力する
+	 */
+	@Benchmark
+	public void outputParallelGzip(Rows rows) {
+		CSVMapper.builder().charset(Charset.forName(rows.charCode)).parallelCompression(ForkJoinPool.commonPool())
+				.build().write(rows.gzipOutput, rows.records);
+	}
+
+	/**
+	 * 書き込んだ文字を捨てるWriter
+	 */
+	private static final class NullWriter extends Writer {
+		static final NullWriter INSTANCE = new NullWriter();
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package jp.natsukishina.csvmapper;
+
+/**
+ * {@link ByteFieldList}の1フィールドを文字列に変換せずに参照するビュー<br>
+ * クォートを含まずASCII文字のみで構成されるフィールドはバイト列を直接参照し、
+ * それ以外は最初に文字が参照された時点で文字列に変換する<br>
+ * 使い回す{@link ByteFieldList}のビューは{@link #reset(int)}で参照するフィールドを切り替える
+ *
+ * @author 417.72KI
+ */
+class ByteField implements CharSequence {
+
+	private final ByteFieldList record;
+	private int index;
+	private int start;
+	private int end;
+	/** バイト列を直接参照できる場合はtrue */
+	private boolean direct;
+
+	/**
+	 * @param record フィールドを含むレコード
+	 * @param index フィールドの位置。負の値の場合は{@link #reset(int)}で設定する
+	 */
+	ByteField(ByteFieldList record, int index) {
+		this.record = record;
+		if (index >= 0) {
+			reset(index);
+		}
+	}
+
+	/**
+	 * 参照するフィールドを切り替える
+	 *
+	 * @param index フィールドの位置
+	 * @return このビュー
+	 */
+	ByteField reset(int index) {
+		this.index = index;
+		this.start = record.start(index);
+		this.end = record.end(index);
+		this.direct = !record.isQuoted(index) && isAscii();
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return direct ? end - start : toString().length();
+	}
+
+	@Override
+	public char charAt(int i) {
+		if (!direct) {
+			return toString().charAt(i);
+		}
+		if (i < 0 || i >= end - start) {
+			throw new IndexOutOfBoundsException("index: " + i);
+		}
+		return (char) record.buffer().get(start + i);
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		return toString().substring(from, to);
+	}
+
+	@Override
+	public String toString() {
+		return record.get(index);
+	}
+
+	private boolean isAscii() {
+		for (int i = start; i < end; i++) {
+			if (record.buffer().get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
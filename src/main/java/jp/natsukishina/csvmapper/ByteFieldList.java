@@ -0,0 +1,192 @@
+package jp.natsukishina.csvmapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * {@link ByteRecordReader}が読み込んだ1レコード分のフィールドのリスト<br>
+ * 各フィールドは読み込み元のバイト列上の範囲だけを保持し、{@link #get(int)}で要求された時点で文字列に変換する<br>
+ * {@link #reset(ByteBuffer, int[], int, StringDeduplicator)}で次のレコードを設定して使い回す場合は、
+ * {@link #field(int)}も同じビューを使い回す
+ *
+ * @author 417.72KI
+ */
+class ByteFieldList extends AbstractList<String> implements RandomAccess {
+
+	/** フィールドがクォートを含むことを示すフラグ */
+	static final int QUOTED_FLAG = Integer.MIN_VALUE;
+
+	private ByteBuffer buffer;
+	private final Charset charset;
+	private final byte quote;
+	private int[] bounds;
+	private int size;
+	/** 同じ内容の文字列を共有するキャッシュ。共有しない場合はnull */
+	private StringDeduplicator deduplicator;
+	private String[] values;
+	/** 使い回す場合の{@link #field(int)}のビュー。使い回さない場合はnull */
+	private ByteField view;
+	/** 文字列に変換するためにレコードの範囲をまとめて複製したバイト列。まだ複製していない場合はnull */
+	private byte[] bytes;
+	/** {@link #bytes}の先頭の{@link #buffer}上の位置 */
+	private int base;
+	/** 現在のレコードの範囲を{@link #bytes}に複製済みの場合はtrue */
+	private boolean copied;
+
+	/**
+	 * @param buffer フィールドを含むバイト列
+	 * @param charset 文字列に変換する際の文字コード
+	 * @param quote クォート
+	 * @param bounds フィールドの開始位置と終了位置の組
+	 */
+	ByteFieldList(ByteBuffer buffer, Charset charset, byte quote, int[] bounds) {
+		this(buffer, charset, quote, bounds, null);
+	}
+
+	/**
+	 * @param buffer フィールドを含むバイト列
+	 * @param charset 文字列に変換する際の文字コード
+	 * @param quote クォート
+	 * @param bounds フィールドの開始位置と終了位置の組
+	 * @param deduplicator 同じ内容の文字列を共有するキャッシュ。共有しない場合はnull
+	 */
+	ByteFieldList(ByteBuffer buffer, Charset charset, byte quote, int[] bounds, StringDeduplicator deduplicator) {
+		this.buffer = buffer;
+		this.charset = charset;
+		this.quote = quote;
+		this.bounds = bounds;
+		this.size = bounds.length >> 1;
+		this.deduplicator = deduplicator;
+	}
+
+	/**
+	 * 次のレコードを設定し、このリストを使い回す<br>
+	 * 以降は{@link #field(int)}が返すビューも使い回すため、ビューは次に{@link #field(int)}を呼び出すまでのみ有効
+	 *
+	 * @param buffer フィールドを含むバイト列
+	 * @param bounds フィールドの開始位置と終了位置の組(内容を複製する)
+	 * @param size フィールドの数
+	 * @param deduplicator 同じ内容の文字列を共有するキャッシュ。共有しない場合はnull
+	 * @return このリスト
+	 */
+	ByteFieldList reset(ByteBuffer buffer, int[] bounds, int size, StringDeduplicator deduplicator) {
+		this.buffer = buffer;
+		if (this.bounds.length < size << 1) {
+			this.bounds = new int[size << 1];
+		}
+		System.arraycopy(bounds, 0, this.bounds, 0, size << 1);
+		this.size = size;
+		this.deduplicator = deduplicator;
+		if (values != null) {
+			Arrays.fill(values, null);
+		}
+		copied = false;
+		if (view == null) {
+			view = new ByteField(this, -1);
+		}
+		return this;
+	}
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		if (values == null || values.length < size) {
+			values = new String[Math.max(size, values == null ? 0 : values.length)];
+		}
+		String value = values[index];
+		if (value == null) {
+			value = values[index] = decode(index);
+		}
+		return value;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 指定されたフィールドを文字列に変換せずに参照する
+	 *
+	 * @param index フィールドの位置
+	 * @return フィールドの内容
+	 */
+	CharSequence field(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		if (values != null && values[index] != null) {
+			return values[index];
+		}
+		return view == null ? new ByteField(this, index) : view.reset(index);
+	}
+
+	ByteBuffer buffer() {
+		return buffer;
+	}
+
+	int start(int index) {
+		return bounds[index << 1];
+	}
+
+	int end(int index) {
+		return bounds[(index << 1) + 1] & ~QUOTED_FLAG;
+	}
+
+	boolean isQuoted(int index) {
+		return (bounds[(index << 1) + 1] & QUOTED_FLAG) != 0;
+	}
+
+	/**
+	 * 指定されたフィールドを文字列に変換する<br>
+	 * 最初に変換する際にレコードの範囲のバイト列をまとめて複製し、以降のフィールドは複製したバイト列から直接変換する
+	 * (クォートを含むフィールドは複製したバイト列上でクォートを取り除くため、変換は1フィールドにつき1度だけ行うこと)
+	 */
+	private String decode(int index) {
+		int start = start(index);
+		int end = end(index);
+		if (start == end) {
+			return "";
+		}
+		copyRecord();
+		int from = start - base;
+		int to = end - base;
+		if (isQuoted(index)) {
+			to = from + ByteRecordReader.unquote(bytes, from, to, quote);
+		}
+		if (deduplicator != null) {
+			return deduplicator.get(index, bytes, from, to, charset);
+		}
+		return new String(bytes, from, to - from, charset);
+	}
+
+	/**
+	 * レコードの全てのフィールドを含む範囲を{@link #bytes}に複製する。既に複製している場合は何もしない
+	 */
+	private void copyRecord() {
+		if (copied) {
+			return;
+		}
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		for (int i = 0; i < size; i++) {
+			if (start(i) < end(i)) {
+				min = Math.min(min, start(i));
+				max = Math.max(max, end(i));
+			}
+		}
+		base = min;
+		if (bytes == null || bytes.length < max - min) {
+			bytes = new byte[max - min];
+		}
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(base);
+		slice.get(bytes, 0, max - min);
+		copied = true;
+	}
+}
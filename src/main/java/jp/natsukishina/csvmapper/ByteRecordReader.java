@@ -0,0 +1,461 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * バイト列から文字に変換せずに区切り文字・クォート・改行を検出し、1レコードずつ取り出すクラス<br>
+ * フィールドは元のバイト列上の範囲として保持し、{@link ByteFieldList#get(int)}などで要求された時点で初めて文字列に変換する<br>
+ * ※区切り文字などのASCII文字がマルチバイト文字の一部として現れない文字コードでのみ使用できる({@link #supports(Charset)})
+ *
+ * @author 417.72KI
+ */
+abstract class ByteRecordReader implements RecordReader {
+
+	static final byte DELIMITER = (byte) CSVMapper.DEFAULT_DELIMITER;
+	static final byte QUOTE = (byte) CSVMapper.DEFAULT_QUOTE;
+	static final byte CR = '\r';
+	static final byte LF = '\n';
+
+	/** クォート外 */
+	private static final int UNQUOTED = 0;
+	/** クォート内 */
+	private static final int QUOTED = 1;
+	/** クォート内でクォートが現れた直後(閉じクォートかエスケープかが未確定) */
+	private static final int QUOTE_IN_QUOTED = 2;
+
+	/**
+	 * マルチバイト文字の2バイト目以降に0x0A,0x0D,0x22,0x2Cが現れない複数バイト文字コード
+	 */
+	private static final Set<String> MULTIBYTE_ASCII_COMPATIBLE = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			"UTF-8", "Shift_JIS", "windows-31j", "EUC-JP", "EUC-KR", "GB18030", "GBK", "GB2312", "Big5", "Big5-HKSCS",
+			"x-euc-tw", "x-windows-949", "x-windows-950", "x-eucJP-Open", "x-SJIS_0213", "x-IBM942")));
+
+	/**
+	 * 指定された文字コードのバイト列を文字に変換せずに解析できるかを判定する
+	 *
+	 * @param charset 文字コード
+	 * @return 解析できる場合はtrue
+	 */
+	static boolean supports(Charset charset) {
+		return supports(charset, CSVMapper.DEFAULT_DELIMITER, CSVMapper.DEFAULT_QUOTE);
+	}
+
+	/**
+	 * 指定された文字コード・区切り文字・クォートのバイト列を文字に変換せずに解析できるかを判定する<br>
+	 * 区切り文字とクォートは、マルチバイト文字の2バイト目以降に現れない0x40未満の数字以外のASCII文字であること
+	 *
+	 * @param charset 文字コード
+	 * @param delimiter 区切り文字
+	 * @param quote クォート
+	 * @return 解析できる場合はtrue
+	 */
+	static boolean supports(Charset charset, char delimiter, char quote) {
+		if (!isSafeByte(delimiter) || !isSafeByte(quote)) {
+			return false;
+		}
+		if (MULTIBYTE_ASCII_COMPATIBLE.contains(charset.name())) {
+			return true;
+		}
+		if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+			return false;
+		}
+		byte[] special = { (byte) delimiter, (byte) quote, CR, LF };
+		return Arrays.equals(new String(special, StandardCharsets.US_ASCII).getBytes(charset), special);
+	}
+
+	private static boolean isSafeByte(char c) {
+		return c < 0x40 && (c < '0' || c > '9');
+	}
+
+	protected final Charset charset;
+	private final byte delimiter;
+	private final byte quote;
+
+	/** 現在読み込んでいる範囲のバイト列。インデックス0が{@link #bufferOffset}に対応する */
+	protected ByteBuffer buffer = ByteBuffer.allocate(0);
+	/** {@link #buffer}の先頭のストリーム上の位置 */
+	protected long bufferOffset;
+	/** 読み込みを開始したストリーム上の位置 */
+	private final long startOffset;
+
+	private int position;
+	/** フィールドの開始位置と終了位置の組。終了位置の最上位ビットはクォートを含むフィールドであることを示す */
+	private int[] bounds = new int[32];
+	/** 直前に'\r'でレコードが終わったため、続く'\n'を読み飛ばす */
+	private boolean skipLF;
+	private long recordOffset = -1;
+	/** 読み込む列。全ての列を読み込む場合はnull */
+	private Projection projection;
+	/** 直前に読み込んだレコードの{@link #buffer}上の開始位置 */
+	private int lastRecordStart;
+	/** 直前に読み込んだレコードのフィールド数 */
+	private int lastFieldCount;
+
+	/** 絞り込む条件。全てのレコードを読み込む場合はnull */
+	private RecordFilter filter;
+	/** 条件を満たさずに読み飛ばしたレコード数 */
+	private long filtered;
+	/** 同じ内容の文字列を共有するキャッシュ。共有しない場合はnull */
+	private StringDeduplicator deduplicator;
+	/** 使い回すフィールドのリスト。使い回さない場合はnull */
+	private ByteFieldList record;
+	/** 条件の評価に使うビュー */
+	private CharBuffer view;
+	/** 条件を評価するフィールドのクォートを取り除いたバイト列 */
+	private byte[] scratch;
+	/** {@link #scratch}を文字コードの変換に渡すためのバッファ */
+	private ByteBuffer scratchBuffer;
+	private CharsetDecoder decoder;
+
+	/**
+	 * 区切り文字を','、クォートを'"'として読み込む
+	 *
+	 * @param charset 文字列に変換する際の文字コード
+	 * @param offset 読み込みを開始するストリーム上の位置
+	 */
+	protected ByteRecordReader(Charset charset, long offset) {
+		this(charset, offset, DELIMITER, QUOTE);
+	}
+
+	/**
+	 * @param charset 文字列に変換する際の文字コード
+	 * @param offset 読み込みを開始するストリーム上の位置
+	 * @param delimiter 区切り文字
+	 * @param quote クォート
+	 */
+	protected ByteRecordReader(Charset charset, long offset, byte delimiter, byte quote) {
+		this.charset = charset;
+		this.bufferOffset = offset;
+		this.startOffset = offset;
+		this.delimiter = delimiter;
+		this.quote = quote;
+	}
+
+	/**
+	 * {@link #buffer}の{@code keepFrom}以降を保持したまま、後続のバイト列を読み込む<br>
+	 * 読み込み後は{@code keepFrom}の位置が新しい{@link #buffer}のインデックス0になる<br>
+	 * 返却済みのフィールドが参照し続けるため、既存の{@link #buffer}の内容を書き換えてはならない
+	 *
+	 * @param keepFrom 保持する範囲の開始位置
+	 * @return 読み込めた場合はtrue、終端に達した場合は{@link #buffer}を変更せずfalse
+	 * @throws IOException 入出力エラー
+	 */
+	protected abstract boolean refill(int keepFrom) throws IOException;
+
+	@Override
+	public ByteFieldList readRecord() throws IOException {
+		while (nextRecord()) {
+			if (filter == null || accept()) {
+				return endRecord(lastRecordStart, lastFieldCount);
+			}
+			filtered++;
+		}
+		return null;
+	}
+
+	/**
+	 * 次の1レコードを読み込み、フィールドの範囲を{@link #bounds}に格納する
+	 *
+	 * @return 読み込めた場合はtrue、これ以上レコードが無い場合はfalse
+	 * @throws IOException 入出力エラー
+	 */
+	@SuppressWarnings("fallthrough")
+	private boolean nextRecord() throws IOException {
+		int p = position;
+		int recordStart = p;
+		int fieldStart = p;
+		boolean started = false;
+		boolean quoted = false;
+		int count = 0;
+		int state = UNQUOTED;
+		clearBounds(p);
+		ByteBuffer buffer = this.buffer;
+		int limit = buffer.limit();
+		while (true) {
+			if (p >= limit) {
+				int shift = recordStart;
+				if (!refill(recordStart)) {
+					position = p;
+					if (!started) {
+						return false;
+					}
+					lastFieldCount = addField(count, fieldStart, p, quoted);
+					lastRecordStart = recordStart;
+					return true;
+				}
+				buffer = this.buffer;
+				limit = buffer.limit();
+				p -= shift;
+				recordStart = 0;
+				fieldStart -= shift;
+				for (int i = 0, n = slots(count) << 1; i < n; i++) {
+					bounds[i] -= shift;
+				}
+				continue;
+			}
+			byte b = buffer.get(p++);
+			if (skipLF) {
+				skipLF = false;
+				if (b == LF) {
+					recordStart = fieldStart = p;
+					clearBounds(p);
+					continue;
+				}
+			}
+			started = true;
+			switch (state) {
+			case QUOTED:
+				if (b == quote) {
+					state = QUOTE_IN_QUOTED;
+				}
+				break;
+			case QUOTE_IN_QUOTED:
+				if (b == quote) {
+					state = QUOTED;
+					break;
+				}
+				state = UNQUOTED;
+				// fall through
+			default:
+				if (b == delimiter) {
+					count = addField(count, fieldStart, p - 1, quoted);
+					fieldStart = p;
+					quoted = false;
+				} else if (b == quote) {
+					state = QUOTED;
+					quoted = true;
+				} else if (b == LF || b == CR) {
+					skipLF = b == CR;
+					position = p;
+					lastFieldCount = addField(count, fieldStart, p - 1, quoted);
+					lastRecordStart = recordStart;
+					return true;
+				}
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void project(Projection projection) {
+		this.projection = projection;
+		if (projection != null && bounds.length < projection.size() << 1) {
+			bounds = new int[projection.size() << 1];
+		}
+	}
+
+	@Override
+	public void filter(RecordFilter filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public long recordsFiltered() {
+		return filtered;
+	}
+
+	@Override
+	public void deduplicate(StringDeduplicator deduplicator) {
+		this.deduplicator = deduplicator;
+	}
+
+	@Override
+	public void reuse() {
+		if (record == null) {
+			record = new ByteFieldList(buffer, charset, quote, new int[bounds.length], deduplicator);
+		}
+	}
+
+	@Override
+	public long bytesRead() {
+		return bufferOffset + position - startOffset;
+	}
+
+	/**
+	 * 直前に読み込んだレコードのストリーム上の開始位置を返す
+	 *
+	 * @return レコードの開始位置。まだ読み込んでいない場合は-1
+	 */
+	long recordOffset() {
+		return recordOffset;
+	}
+
+	/**
+	 * フィールドの範囲を追加する。列が指定されている場合は、指定された列のみ読み込み後の位置に格納する
+	 *
+	 * @param count これまでに読み込んだフィールドの数(追加するフィールドの元の列番号)
+	 * @return 追加後のフィールドの数
+	 */
+	private int addField(int count, int start, int end, boolean quoted) {
+		int i;
+		if (projection == null) {
+			i = count << 1;
+			if (i == bounds.length) {
+				bounds = Arrays.copyOf(bounds, i << 1);
+			}
+		} else {
+			int target = projection.target(count);
+			if (target < 0) {
+				return count + 1;
+			}
+			i = target << 1;
+		}
+		bounds[i] = start;
+		bounds[i + 1] = quoted ? end | ByteFieldList.QUOTED_FLAG : end;
+		return count + 1;
+	}
+
+	/**
+	 * 列が指定されている場合、全ての列を指定された位置の空のフィールドで初期化する(レコードに存在しない列は空文字になる)
+	 */
+	private void clearBounds(int position) {
+		if (projection != null) {
+			Arrays.fill(bounds, 0, projection.size() << 1, position);
+		}
+	}
+
+	/**
+	 * @param count これまでに読み込んだフィールドの数
+	 * @return {@link #bounds}のうち使用している組の数
+	 */
+	private int slots(int count) {
+		return projection == null ? count : projection.size();
+	}
+
+	/**
+	 * 読み込んだレコードが全ての条件を満たすかを判定する
+	 */
+	private boolean accept() {
+		int size = slots(lastFieldCount);
+		for (int i = 0, n = filter.size(); i < n; i++) {
+			int column = filter.column(i);
+			if (!filter.test(i, column < size ? view(column) : "")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 指定されたフィールドを、使い回すバッファに文字として展開して参照する<br>
+	 * ASCII文字のみで構成されるフィールドは文字コードの変換を行わない
+	 *
+	 * @param index フィールドの位置
+	 * @return フィールドの内容。次に呼び出すまで有効
+	 */
+	private CharSequence view(int index) {
+		int start = bounds[index << 1];
+		int end = bounds[(index << 1) + 1] & ~ByteFieldList.QUOTED_FLAG;
+		int length = end - start;
+		if (scratch == null || scratch.length < length) {
+			scratch = new byte[Math.max(length, 64)];
+			scratchBuffer = ByteBuffer.wrap(scratch);
+			view = CharBuffer.allocate((int) Math.ceil(scratch.length * (double) decoder().maxCharsPerByte()));
+		}
+		for (int i = 0; i < length; i++) {
+			scratch[i] = buffer.get(start + i);
+		}
+		if ((bounds[(index << 1) + 1] & ByteFieldList.QUOTED_FLAG) != 0) {
+			length = unquote(scratch, 0, length, quote);
+		}
+		boolean ascii = true;
+		for (int i = 0; i < length && ascii; i++) {
+			ascii = scratch[i] >= 0;
+		}
+		view.clear();
+		if (ascii) {
+			for (int i = 0; i < length; i++) {
+				view.put((char) scratch[i]);
+			}
+		} else {
+			CharsetDecoder decoder = decoder().reset();
+			scratchBuffer.clear();
+			scratchBuffer.limit(length);
+			decoder.decode(scratchBuffer, view, true);
+			decoder.flush(view);
+		}
+		view.flip();
+		return view;
+	}
+
+	private CharsetDecoder decoder() {
+		if (decoder == null) {
+			decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		return decoder;
+	}
+
+	private ByteFieldList endRecord(int recordStart, int count) {
+		recordOffset = bufferOffset + recordStart;
+		if (record != null) {
+			return record.reset(buffer, bounds, slots(count), deduplicator);
+		}
+		return new ByteFieldList(buffer, charset, quote, Arrays.copyOf(bounds, slots(count) << 1),
+				deduplicator);
+	}
+
+	/**
+	 * クォートを含むフィールドのバイト列からクォートを取り除き、エスケープと改行コードを展開する<br>
+	 * 展開したバイト列は同じ配列の開始位置から上書きする(展開後の長さは元の長さ以下)
+	 *
+	 * @param bytes バイト列
+	 * @param start フィールドの開始位置
+	 * @param end フィールドの終了位置
+	 * @param quote クォート
+	 * @return 展開されたバイト数
+	 */
+	@SuppressWarnings("fallthrough")
+	static int unquote(byte[] bytes, int start, int end, byte quote) {
+		int length = start;
+		int state = UNQUOTED;
+		boolean skipLF = false;
+		for (int i = start; i < end; i++) {
+			byte b = bytes[i];
+			if (skipLF) {
+				skipLF = false;
+				if (b == LF) {
+					continue;
+				}
+			}
+			switch (state) {
+			case QUOTED:
+				if (b == quote) {
+					state = QUOTE_IN_QUOTED;
+				} else if (b == CR) {
+					bytes[length++] = LF;
+					skipLF = true;
+				} else {
+					bytes[length++] = b;
+				}
+				break;
+			case QUOTE_IN_QUOTED:
+				if (b == quote) {
+					bytes[length++] = quote;
+					state = QUOTED;
+					break;
+				}
+				state = UNQUOTED;
+				// fall through
+			default:
+				if (b == quote) {
+					state = QUOTED;
+				} else {
+					bytes[length++] = b;
+				}
+				break;
+			}
+		}
+		return length - start;
+	}
+}
@@ -0,0 +1,81 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Objects;
+
+/**
+ * {@link CSVFollower}が読み込みを再開する位置<br>
+ * 最後まで解析したレコードの直後のファイル上の位置と、判定した文字コードを保持する。
+ * 値を保存しておき、{@link #of(long, Charset)}で復元して{@link CSVMapper#follow(jp.natsukishina.csvmapper.file.CSVFile, Class, CSVCheckpoint)}
+ * に渡すと、その位置から読み込みを再開できる。インスタンスは不変
+ *
+ * @author 417.72KI
+ */
+public final class CSVCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** ファイルの先頭(文字コードは未判定) */
+	public static final CSVCheckpoint START = new CSVCheckpoint(0, null);
+
+	private final long offset;
+	/** 文字コード名。判定していない場合はnull */
+	private final String charset;
+
+	private CSVCheckpoint(long offset, String charset) {
+		this.offset = offset;
+		this.charset = charset;
+	}
+
+	/**
+	 * 保存した値から再開する位置を復元する
+	 *
+	 * @param offset 次に解析するレコードのファイル上の位置(バイト)
+	 * @param charset 文字コード。判定していない場合はnull
+	 * @return 再開する位置
+	 * @throws IllegalArgumentException 位置が負の値の場合
+	 */
+	public static CSVCheckpoint of(long offset, Charset charset) {
+		if (offset < 0) {
+			throw new IllegalArgumentException("offset must not be negative: " + offset);
+		}
+		return new CSVCheckpoint(offset, charset == null ? null : charset.name());
+	}
+
+	/**
+	 * @return 次に解析するレコードのファイル上の位置(バイト)
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return 文字コード。判定していない場合はnull
+	 */
+	public Charset getCharset() {
+		return charset == null ? null : Charset.forName(charset);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CSVCheckpoint)) {
+			return false;
+		}
+		CSVCheckpoint other = (CSVCheckpoint) obj;
+		return offset == other.offset && Objects.equals(charset, other.charset);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(offset, charset);
+	}
+
+	@Override
+	public String toString() {
+		return "CSVCheckpoint[offset=" + offset + ", charset=" + charset + "]";
+	}
+}
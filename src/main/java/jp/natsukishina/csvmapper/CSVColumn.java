@@ -0,0 +1,48 @@
+package jp.natsukishina.csvmapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * {@link CSVMappable}を実装したクラスのフィールドをCSVの列に対応付けるアノテーション<br>
+ * このアノテーションを付けたクラスは{@link CSVMappable#importFromCSV(java.util.List)}と
+ * {@link CSVMappable#array4exportCSV()}を実装する必要が無い<br>
+ * 対応している型は{@code String}, {@code int}, {@code long}, {@code double}, {@code boolean}とそのラッパー型,
+ * {@code BigDecimal}, {@code LocalDate}<br>
+ * 空の要素はプリミティブ型の場合は0(false)、それ以外の型の場合はnullとして読み込む
+ *
+ * @author 417.72KI
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CSVColumn {
+
+	/**
+	 * 列番号(0始まり)<br>
+	 * 省略した場合は{@link #name()}とCSVの1行目(ヘッダー行)から列番号を決める。
+	 * 出力時は列番号を指定した列の後に、スーパークラスのフィールドから順に、同じクラスのフィールドは列名の順に出力する<br>
+	 * 出力する場合、同じ列番号を複数のフィールドに指定することはできない
+	 *
+	 * @return 列番号
+	 */
+	int index() default -1;
+
+	/**
+	 * 列名
+	 *
+	 * @return ヘッダー行の列名
+	 */
+	String name() default "";
+
+	/**
+	 * {@code LocalDate}の書式({@link java.time.format.DateTimeFormatter#ofPattern(String)}の形式)<br>
+	 * 省略した場合はISO-8601形式(yyyy-MM-dd)
+	 *
+	 * @return 書式
+	 */
+	String format() default "";
+}
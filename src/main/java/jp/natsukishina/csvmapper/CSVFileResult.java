@@ -0,0 +1,79 @@
+package jp.natsukishina.csvmapper;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * {@link CSVMapper#readAll(java.util.Collection, Class, int)}で読み込んだ1つのCSVファイルの結果<br>
+ * 読み込みに失敗した場合はレコードを持たず、{@link #getException()}で原因を返す
+ *
+ * @param <E> CSVConvertableを実装したクラス
+ * @author 417.72KI
+ */
+public final class CSVFileResult<E extends CSVMappable> {
+
+	private final CSVFile file;
+	private final List<E> records;
+	private final Charset charset;
+	private final long elapsedNanos;
+	private final CSVException exception;
+
+	CSVFileResult(CSVFile file, List<E> records, Charset charset, long elapsedNanos, CSVException exception) {
+		this.file = file;
+		this.records = records;
+		this.charset = charset;
+		this.elapsedNanos = elapsedNanos;
+		this.exception = exception;
+	}
+
+	/**
+	 * @return 読み込んだCSVファイル
+	 */
+	public CSVFile getFile() {
+		return file;
+	}
+
+	/**
+	 * @return 変換したインスタンスのリスト。読み込みに失敗した場合は空のリスト
+	 */
+	public List<E> getRecords() {
+		return records == null ? Collections.emptyList() : records;
+	}
+
+	/**
+	 * @return 読み込んだ文字コード(ファイルごとに判定した文字コード)。読み込みに失敗した場合はnull
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @return ファイルを開いてから全てのレコードを変換するまでの経過時間(ナノ秒)
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return 読み込みに成功した場合はtrue
+	 */
+	public boolean isSuccess() {
+		return exception == null;
+	}
+
+	/**
+	 * @return 読み込みに失敗した原因。成功した場合はnull
+	 */
+	public CSVException getException() {
+		return exception;
+	}
+
+	@Override
+	public String toString() {
+		return "CSVFileResult [file=" + file + ", records=" + getRecords().size() + ", charset=" + charset
+				+ ", elapsedNanos=" + elapsedNanos + ", exception=" + exception + "]";
+	}
+}
@@ -0,0 +1,302 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * 追記され続けるCSVファイルの、前回の読み込み以降に追加されたレコードだけを読み込むクラス<br>
+ * {@link CSVMapper#follow(CSVFile, Class, CSVCheckpoint)}で生成する。
+ * 改行で終わっていない末尾のレコード(書き込み途中のレコード)は読み込まず、次の呼び出しまで待つ<br>
+ * 読み込んだレコードは一定のバイト数ごとにまとめ、そこまでの再開位置({@link CSVCheckpoint})と共にコールバックに渡す。
+ * 再開位置を保存しておけば、プロセスを再起動してもその位置から読み込みを再開できる<br>
+ * ファイルが再開位置より小さくなった場合(切り詰められた場合)は先頭から読み込み直す<br>
+ * ※スレッドセーフではない。{@link #close()}のみ他のスレッドから呼び出せる
+ *
+ * <pre>
+ * try (CSVFollower&lt;Order&gt; follower = mapper.follow(file, Order.class, load())) {
+ * 	follower.watch((orders, checkpoint) -&gt; {
+ * 		process(orders);
+ * 		save(checkpoint);
+ * 	});
+ * }
+ * </pre>
+ *
+ * @author 417.72KI
+ *
+ * @param <E> CSVMappableを実装したクラス
+ */
+public final class CSVFollower<E extends CSVMappable> implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CSVFollower.class);
+
+	/** 1回のコールバックに渡すレコードの目安のバイト数 */
+	static final int BATCH_SIZE = 8 << 20;
+
+	/**
+	 * 読み込んだレコードを受け取るコールバック
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 */
+	@FunctionalInterface
+	public interface Callback<E> {
+		/**
+		 * @param records 読み込んだレコードを変換したインスタンスのリスト
+		 * @param checkpoint これらのレコードの直後の再開位置
+		 */
+		void accept(List<E> records, CSVCheckpoint checkpoint);
+	}
+
+	private final CSVMapper mapper;
+	private final CSVFile file;
+	private final Class<E> clazz;
+	private final boolean requiresHeader;
+	private final int batchSize;
+	private CSVCheckpoint checkpoint;
+	/** 最初のレコードの位置(BOMの長さ)。まだ求めていない場合は-1 */
+	private long dataStart = -1;
+	/** 列名の解決に使うヘッダー行。まだ読み込んでいない場合はnull */
+	private List<String> header;
+	private volatile WatchService watcher;
+	private volatile boolean closed;
+
+	/**
+	 * @param mapper 読み込みの設定
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @param checkpoint 読み込みを開始する位置
+	 * @param batchSize 1回のコールバックに渡すレコードの目安のバイト数
+	 * @throws CSVException 対応していない型のフィールドに{@link CSVColumn}が付いている場合
+	 */
+	CSVFollower(CSVMapper mapper, CSVFile file, Class<E> clazz, CSVCheckpoint checkpoint, int batchSize)
+			throws CSVException {
+		this.mapper = mapper;
+		this.file = file;
+		this.clazz = clazz;
+		this.requiresHeader = CSVIterator.requiresHeader(clazz, mapper.getProjection());
+		this.batchSize = batchSize;
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * @return 次に読み込む位置
+	 */
+	public CSVCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * 前回の読み込み以降に追加された、改行で終わっているレコードを読み込み、コールバックに渡す<br>
+	 * 追加されたレコードが無い場合はコールバックを呼び出さない
+	 *
+	 * @param callback 読み込んだレコードを受け取るコールバック
+	 * @return 読み込んだレコードの数(絞り込む条件を満たさないレコード・変換に失敗したレコードを除く)
+	 * @throws CSVException CSV読み込み時のエラー、文字コードがバイト列のまま解析できないものの場合
+	 */
+	public int poll(Callback<E> callback) throws CSVException {
+		if (!file.exists()) {
+			return 0;
+		}
+		int count = 0;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < checkpoint.getOffset()) {
+				LOGGER.warn("{} was truncated, read from the beginning", file.getAbsolutePath());
+				checkpoint = CSVCheckpoint.START;
+				dataStart = -1;
+				header = null;
+			}
+			if (size == 0) {
+				return 0;
+			}
+			Charset charset = charset(channel, size);
+			long start = skipLF(channel, checkpoint.getOffset(), size);
+			while (true) {
+				long end = complete(channel, start, size);
+				if (end == start) {
+					break;
+				}
+				if (requiresHeader && header == null) {
+					if (start > dataStart) {
+						header = new ArrayList<>(open(channel, charset, dataStart, size).readRecord());
+					} else {
+						MappedRecordReader reader = open(channel, charset, start, end);
+						header = new ArrayList<>(reader.readRecord());
+						start = skipLF(channel, start + reader.bytesRead(), size);
+						checkpoint = CSVCheckpoint.of(start, charset);
+						continue;
+					}
+				}
+				List<E> records = new ArrayList<>();
+				CSVIterator<E> iterator = new CSVIterator<>(open(channel, charset, start, end), clazz, mapper, header);
+				// 最後まで読み込んだ時点で計測値を通知する。チャネルは範囲ごとに閉じない
+				iterator.forEachRemaining(records::add);
+				start = skipLF(channel, end, size);
+				CSVCheckpoint next = CSVCheckpoint.of(start, charset);
+				count += records.size();
+				callback.accept(records, next);
+				// コールバックが例外を投げた場合は、次の呼び出しで同じレコードを読み込み直す
+				checkpoint = next;
+			}
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+		return count;
+	}
+
+	/**
+	 * ファイルの変更を{@link WatchService}で監視し、レコードが追加されるたびに{@link #poll(Callback)}で読み込む<br>
+	 * 最初に1度読み込んでから監視を開始し、{@link #close()}が呼ばれるか割り込まれるまで戻らない
+	 *
+	 * @param callback 読み込んだレコードを受け取るコールバック
+	 * @throws InterruptedException 監視中に割り込まれた場合
+	 * @throws CSVException CSV読み込み時のエラー、監視を開始できない場合
+	 */
+	public void watch(Callback<E> callback) throws InterruptedException, CSVException {
+		Path path = file.getAbsoluteFile().toPath();
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			this.watcher = watcher;
+			if (closed) {
+				return;
+			}
+			path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+			poll(callback);
+			while (!closed) {
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+							|| path.getFileName().equals(event.context());
+				}
+				key.reset();
+				if (changed) {
+					poll(callback);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// close()による終了
+		} catch (IOException e) {
+			throw new CSVException(e);
+		} finally {
+			this.watcher = null;
+		}
+	}
+
+	/**
+	 * {@link #watch(Callback)}による監視を終了する
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		WatchService watcher = this.watcher;
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				LOGGER.debug("cannot close watch service", e);
+			}
+		}
+	}
+
+	/**
+	 * 再開位置の文字コードを返す。まだ判定していない場合は判定し、BOMを読み飛ばした位置を再開位置にする
+	 */
+	private Charset charset(FileChannel channel, long size) throws IOException {
+		Charset charset = checkpoint.getCharset();
+		if (charset == null) {
+			CSVMapper.ByteLayout layout = mapper.byteLayout(file);
+			charset = layout.charset;
+			dataStart = layout.offset;
+			if (!layout.parsable) {
+				throw new CSVException("cannot follow " + charset.name() + " CSV file: " + file.getAbsolutePath());
+			}
+		} else if (dataStart < 0) {
+			// 保存した再開位置から再開する場合、判定した文字コードであればBOMの有無を確認する
+			dataStart = mapper.getCharset() == null ? bomLength(channel, size) : 0;
+		}
+		if (checkpoint.getOffset() < dataStart || checkpoint.getCharset() == null) {
+			checkpoint = CSVCheckpoint.of(Math.max(checkpoint.getOffset(), dataStart), charset);
+		}
+		return charset;
+	}
+
+	/**
+	 * @return ファイルの先頭のUTF-8のBOMの長さ
+	 */
+	private static long bomLength(FileChannel channel, long size) throws IOException {
+		if (size < 3) {
+			return 0;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(3);
+		channel.read(bytes, 0);
+		return bytes.get(0) == (byte) 0xEF && bytes.get(1) == (byte) 0xBB && bytes.get(2) == (byte) 0xBF ? 3 : 0;
+	}
+
+	/**
+	 * 指定された位置以降の、クォートの外にある最後の改行の直後の位置を返す<br>
+	 * 読み込む範囲が{@link #batchSize}を超えた時点で探索を打ち切る
+	 *
+	 * @return 改行で終わっているレコードの終了位置。見つからない場合は{@code from}
+	 */
+	private long complete(FileChannel channel, long from, long size) throws IOException {
+		byte quote = (byte) mapper.getQuote();
+		boolean inQuote = false;
+		long end = from;
+		long offset = from;
+		while (offset < size) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, offset, Math.min(batchSize, size - offset));
+			for (int i = 0, limit = buffer.limit(); i < limit; i++) {
+				byte b = buffer.get(i);
+				if (b == quote) {
+					inQuote = !inQuote;
+				} else if (!inQuote && (b == ByteRecordReader.LF || b == ByteRecordReader.CR)) {
+					end = offset + i + 1;
+					if (end - from >= batchSize) {
+						return end;
+					}
+				}
+			}
+			offset += buffer.limit();
+		}
+		return end;
+	}
+
+	/**
+	 * '\r'で終わったレコードの直後の'\n'を読み飛ばす
+	 *
+	 * @return 読み飛ばした後の位置
+	 */
+	private static long skipLF(FileChannel channel, long offset, long size) throws IOException {
+		if (offset == 0 || offset >= size) {
+			return offset;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(2);
+		channel.read(bytes, offset - 1);
+		return bytes.get(0) == ByteRecordReader.CR && bytes.get(1) == ByteRecordReader.LF ? offset + 1 : offset;
+	}
+
+	private MappedRecordReader open(FileChannel channel, Charset charset, long start, long end) {
+		return new MappedRecordReader(channel, charset, start, end, MappedRecordReader.WINDOW_SIZE,
+				(byte) mapper.getDelimiter(), (byte) mapper.getQuote());
+	}
+}
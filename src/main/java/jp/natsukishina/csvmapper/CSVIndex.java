@@ -0,0 +1,314 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * CSVファイルのレコードごとの開始位置を保持し、任意のレコードから読み込むための索引<br>
+ * {@link CSVMapper#index(CSVFile)}で生成する。クォート内の改行を考慮してレコードの境界を求めるため、
+ * 要素内に改行を含むCSVでも正しく位置を特定できる<br>
+ * 開始位置は256レコードごとの位置と、そこからの差分で保持する(1レコードあたり約4バイト)。
+ * {@link #save(File)}でファイルに保存し、{@link CSVMapper#index(CSVFile, File)}で読み込める<br>
+ * レコードの番号はヘッダー行を含むファイル上の順序(0始まり)。インスタンスは不変で、スレッドセーフ
+ *
+ * <pre>
+ * CSVIndex index = CSVMapper.builder().build().index(file);
+ * List&lt;Order&gt; page = index.range(1 + page * 100, Math.min(index.count(), 1 + (page + 1) * 100), Order.class);
+ * </pre>
+ *
+ * @author 417.72KI
+ */
+public final class CSVIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CSVIndex.class);
+
+	/** 1ブロックのレコード数の2を底とする対数 */
+	static final int BLOCK_SHIFT = 8;
+	static final int MAGIC = 0x43535649;
+	static final int VERSION = 1;
+
+	private final CSVMapper mapper;
+	private final CSVFile file;
+	private final Charset charset;
+	/** 索引を作成した時点のCSVファイルのサイズ */
+	private final long size;
+	/** 索引を作成した時点のCSVファイルの更新日時 */
+	private final long modified;
+	private final int count;
+	/** ブロックごとの先頭のレコードの開始位置 */
+	private final long[] bases;
+	/** レコードごとのブロックの先頭のレコードからの差分 */
+	private final int[] deltas;
+
+	private CSVIndex(CSVMapper mapper, CSVFile file, Charset charset, long size, long modified, int count,
+			long[] bases, int[] deltas) {
+		this.mapper = mapper;
+		this.file = file;
+		this.charset = charset;
+		this.size = size;
+		this.modified = modified;
+		this.count = count;
+		this.bases = bases;
+		this.deltas = deltas;
+	}
+
+	/**
+	 * CSVファイルを走査して索引を作成する
+	 *
+	 * @param mapper 読み込みの設定
+	 * @param file CSVファイル
+	 * @param charset 文字コード(バイト列のまま解析できること)
+	 * @param offset 最初のレコードの位置(BOMの長さ)
+	 * @return 作成した索引
+	 * @throws CSVException CSVファイルが読み込めない場合、1ブロック内のレコードの合計が2GBを超える場合
+	 */
+	static CSVIndex build(CSVMapper mapper, CSVFile file, Charset charset, long offset) throws CSVException {
+		long modified = file.lastModified();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long[] bases = new long[16];
+			int[] deltas = new int[16 << BLOCK_SHIFT];
+			int count = 0;
+			ByteRecordReader reader = new MappedRecordReader(channel, charset, offset, size,
+					MappedRecordReader.WINDOW_SIZE, (byte) mapper.getDelimiter(), (byte) mapper.getQuote());
+			while (reader.readRecord() != null) {
+				long start = reader.recordOffset();
+				int block = count >>> BLOCK_SHIFT;
+				if (block == bases.length) {
+					bases = Arrays.copyOf(bases, block << 1);
+				}
+				if (count == deltas.length) {
+					deltas = Arrays.copyOf(deltas, count << 1);
+				}
+				if ((count & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+					bases[block] = start;
+				}
+				long delta = start - bases[block];
+				if (delta > Integer.MAX_VALUE) {
+					throw new CSVException("records are too large to index at offset " + start);
+				}
+				deltas[count++] = (int) delta;
+			}
+			int blocks = (count + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT;
+			return new CSVIndex(mapper, file, charset, size, modified, count, Arrays.copyOf(bases, blocks),
+					Arrays.copyOf(deltas, count));
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * {@link #save(File)}で保存した索引を読み込む
+	 *
+	 * @param mapper 読み込みの設定
+	 * @param file CSVファイル
+	 * @param indexFile 索引を保存したファイル
+	 * @return 読み込んだ索引。索引のファイルが存在しない場合、途中までしか書き込まれていないなど内容が不正な場合、
+	 *         CSVファイルや設定が保存時と異なる場合はnull
+	 * @throws CSVException 索引のファイルが読み込めない場合
+	 */
+	static CSVIndex load(CSVMapper mapper, CSVFile file, File indexFile) throws CSVException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			if (!file.getAbsolutePath().equals(in.readUTF())) {
+				return null;
+			}
+			long size = in.readLong();
+			long modified = in.readLong();
+			if (size != file.length() || modified != file.lastModified()) {
+				LOGGER.debug("stale index: {}", indexFile);
+				return null;
+			}
+			Charset charset = Charset.forName(in.readUTF());
+			if (mapper.getCharset() != null && !mapper.getCharset().equals(charset)) {
+				return null;
+			}
+			if (in.readChar() != mapper.getDelimiter() || in.readChar() != mapper.getQuote()) {
+				return null;
+			}
+			int count = in.readInt();
+			int blocks = in.readInt();
+			// 配列を確保する前に、レコード数が残りのバイト数と矛盾しないかを確かめる
+			if (count < 0 || blocks != (int) ((count + (1L << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT)
+					|| (long) blocks * Long.BYTES + (long) count * Integer.BYTES > indexFile.length()) {
+				LOGGER.debug("incomplete index: {}", indexFile);
+				return null;
+			}
+			long[] bases = new long[blocks];
+			boolean valid = true;
+			for (int i = 0; i < bases.length; i++) {
+				bases[i] = in.readLong();
+				valid &= bases[i] >= 0 && bases[i] <= size;
+			}
+			int[] deltas = new int[count];
+			for (int i = 0; i < count; i++) {
+				deltas[i] = in.readInt();
+				valid &= deltas[i] >= 0 && bases[i >>> BLOCK_SHIFT] + deltas[i] <= size;
+			}
+			if (!valid || in.read() >= 0) {
+				LOGGER.debug("incomplete index: {}", indexFile);
+				return null;
+			}
+			return new CSVIndex(mapper, file, charset, size, modified, count, bases, deltas);
+		} catch (NoSuchFileException | FileNotFoundException e) {
+			return null;
+		} catch (EOFException | UTFDataFormatException | IllegalArgumentException e) {
+			LOGGER.debug("incomplete index: {}", indexFile, e);
+			return null;
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * 索引をファイルに保存する<br>
+	 * 一時ファイルに書き込み、完了した時点で保存先のファイルに置き換える
+	 *
+	 * @param indexFile 保存先のファイル
+	 * @throws CSVException 書き込みに失敗した場合
+	 */
+	public void save(File indexFile) throws CSVException {
+		Path path = indexFile.toPath().toAbsolutePath();
+		try {
+			Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+			try {
+				try (DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeUTF(file.getAbsolutePath());
+					out.writeLong(size);
+					out.writeLong(modified);
+					out.writeUTF(charset.name());
+					out.writeChar(mapper.getDelimiter());
+					out.writeChar(mapper.getQuote());
+					out.writeInt(count);
+					out.writeInt(bases.length);
+					for (long base : bases) {
+						out.writeLong(base);
+					}
+					for (int i = 0; i < count; i++) {
+						out.writeInt(deltas[i]);
+					}
+				}
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * @return レコード数(ヘッダー行を含む)
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * @param n レコードの番号
+	 * @return レコードのファイル上の開始位置(バイト)
+	 * @throws IndexOutOfBoundsException 番号が範囲外の場合
+	 */
+	public long offset(int n) {
+		if (n < 0 || n >= count) {
+			throw new IndexOutOfBoundsException("Index: " + n + ", Count: " + count);
+		}
+		return bases[n >>> BLOCK_SHIFT] + deltas[n];
+	}
+
+	/**
+	 * 指定された番号のレコードだけを読み込み、指定されたクラスに変換する
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 * @param n レコードの番号
+	 * @param clazz 変換するクラス
+	 * @return 変換したインスタンス。絞り込む条件を満たさない場合、変換に失敗して読み飛ばした場合、ヘッダー行の場合はnull
+	 * @throws IndexOutOfBoundsException 番号が範囲外の場合
+	 * @throws CSVException 索引の作成後にCSVファイルが更新された場合、CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> E get(int n, Class<E> clazz) throws CSVException {
+		offset(n);
+		List<E> list = range(n, n + 1, clazz);
+		return list.isEmpty() ? null : list.get(0);
+	}
+
+	/**
+	 * 指定された範囲のレコードだけを読み込み、指定されたクラスに変換する<br>
+	 * 列名の解決にヘッダー行が必要な場合は0番目のレコードをヘッダー行として読み込み、範囲に含まれていても変換しない。
+	 * 読み込む列・絞り込む条件などは索引を作成した{@link CSVMapper}の設定を使用する
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 * @param from 最初のレコードの番号(含む)
+	 * @param to 最後のレコードの番号(含まない)
+	 * @param clazz 変換するクラス
+	 * @return 変換したインスタンスのリスト
+	 * @throws IndexOutOfBoundsException 範囲が不正な場合
+	 * @throws CSVException 索引の作成後にCSVファイルが更新された場合、CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> List<E> range(int from, int to, Class<E> clazz) throws CSVException {
+		if (from < 0 || to > count || from > to) {
+			throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", Count: " + count);
+		}
+		if (file.length() != size || file.lastModified() != modified) {
+			throw new CSVException("CSV file has been modified after indexing: " + file.getAbsolutePath());
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			List<String> header = null;
+			if (CSVIterator.requiresHeader(clazz, mapper.getProjection())) {
+				if (count == 0) {
+					return new ArrayList<>();
+				}
+				header = open(channel, 0, 1).readRecord();
+				from = Math.max(from, 1);
+			}
+			if (from >= to) {
+				return new ArrayList<>();
+			}
+			List<E> list = new ArrayList<>(to - from);
+			try (CSVIterator<E> iterator = new CSVIterator<>(open(channel, from, to), clazz, mapper, header)) {
+				iterator.forEachRemaining(list::add);
+			}
+			return list;
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * 指定された範囲のレコードを読み込むリーダーを返す<br>
+	 * リーダーを閉じるとチャネルも閉じるため、呼び出し元で閉じること
+	 */
+	private MappedRecordReader open(FileChannel channel, int from, int to) {
+		long end = to == count ? size : offset(to);
+		return new MappedRecordReader(channel, charset, offset(from), end, MappedRecordReader.WINDOW_SIZE,
+				(byte) mapper.getDelimiter(), (byte) mapper.getQuote());
+	}
+}
@@ -0,0 +1,300 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.csvmapper.CSVMetricsListener.Counter;
+import jp.natsukishina.csvmapper.CSVMetricsListener.Phase;
+
+/**
+ * CSVのレコードを1件ずつ読み込み、指定されたクラスに変換するイテレーター<br>
+ * 読み込みは{@link #hasNext()}が呼ばれた時点で1レコード分だけ行う
+ *
+ * @author 417.72KI
+ *
+ * @param <E> CSVMappableを実装したクラス
+ */
+class CSVIterator<E extends CSVMappable> implements Iterator<E>, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CSVIterator.class);
+
+	private final RecordReader reader;
+	private final RowImporter<E> importer;
+	private final CSVMapper.ErrorPolicy errorPolicy;
+	private final CSVMetricsListener listener;
+	/** 処理時間を計測する場合はtrue */
+	private final boolean timed;
+	/** {@link Phase}ごとの処理時間の合計 */
+	private final long[] nanos = new long[Phase.values().length];
+	private long records;
+	private long skipped;
+	private boolean reported;
+	/** 読み込む列。全ての列を読み込む場合はnull */
+	private Projection projection;
+	/** 絞り込む条件。全てのレコードを読み込む場合はnull */
+	private final RecordFilter filter;
+	/** 同じ内容の文字列を共有するキャッシュ。共有しない場合はnull */
+	private final StringDeduplicator deduplicator;
+	/** 読み込み済みのヘッダー行。リーダーから読み込む場合はnull */
+	private List<String> header;
+	private E next;
+	private boolean finished;
+	/** インスタンスとフィールドのリストを使い回す場合はtrue */
+	private boolean reuse;
+	/** 使い回すインスタンス。まだ生成していない場合はnull */
+	private E instance;
+
+	/**
+	 * 変換に失敗したレコードを読み飛ばす
+	 *
+	 * @param reader レコードを読み込むリーダー
+	 * @param clazz 変換するクラス
+	 * @throws CSVException デフォルトコンストラクターが存在しない場合
+	 */
+	CSVIterator(RecordReader reader, Class<E> clazz) throws CSVException {
+		this(reader, clazz, CSVMapper.ErrorPolicy.SKIP);
+	}
+
+	/**
+	 * @param reader レコードを読み込むリーダー
+	 * @param clazz 変換するクラス
+	 * @param errorPolicy 変換に失敗したレコードの扱い
+	 * @throws CSVException デフォルトコンストラクターが存在しない場合
+	 */
+	CSVIterator(RecordReader reader, Class<E> clazz, CSVMapper.ErrorPolicy errorPolicy) throws CSVException {
+		this(reader, clazz, errorPolicy, CSVMetricsListener.NONE);
+	}
+
+	/**
+	 * @param reader レコードを読み込むリーダー
+	 * @param clazz 変換するクラス
+	 * @param errorPolicy 変換に失敗したレコードの扱い
+	 * @param listener 計測値を通知するリスナー。読み込みの終了時または{@link #close()}の呼び出し時に1度だけ通知する
+	 * @throws CSVException デフォルトコンストラクターが存在しない場合
+	 */
+	CSVIterator(RecordReader reader, Class<E> clazz, CSVMapper.ErrorPolicy errorPolicy, CSVMetricsListener listener)
+			throws CSVException {
+		this(reader, clazz, errorPolicy, listener, null, null, null, null);
+	}
+
+	/**
+	 * 指定された設定の区切り文字・クォート以外の読み込みの設定で読み込む
+	 *
+	 * @param reader レコードを読み込むリーダー
+	 * @param clazz 変換するクラス
+	 * @param mapper 変換に失敗したレコードの扱い・計測値を通知するリスナー・読み込む列・絞り込む条件・文字列を共有する列の設定
+	 * @param header 読み込み済みのヘッダー行(全ての列を含むこと)。nullの場合はヘッダー行が必要になった時点でリーダーから読み込む
+	 * @throws CSVException デフォルトコンストラクターが存在しない場合
+	 */
+	CSVIterator(RecordReader reader, Class<E> clazz, CSVMapper mapper, List<String> header) throws CSVException {
+		this(reader, clazz, mapper.getErrorPolicy(), mapper.getMetricsListener(), mapper.getProjection(),
+				mapper.getFilter(), mapper.newDeduplicator(), header);
+	}
+
+	private CSVIterator(RecordReader reader, Class<E> clazz, CSVMapper.ErrorPolicy errorPolicy,
+			CSVMetricsListener listener, Projection projection, RecordFilter filter,
+			StringDeduplicator deduplicator, List<String> header) throws CSVException {
+		this.reader = reader;
+		this.errorPolicy = errorPolicy;
+		this.listener = listener;
+		this.timed = listener != CSVMetricsListener.NONE;
+		this.projection = projection;
+		this.filter = filter;
+		this.header = header;
+		this.deduplicator = deduplicator;
+		this.importer = new RowImporter<>(clazz);
+		// ヘッダー行は絞り込まない。列名で指定された列はヘッダー行を読み込んでから設定する
+		if (projection != null && !projection.requiresHeader()) {
+			reader.project(projection);
+		}
+		if (!requiresHeader()) {
+			reader.filter(filter);
+			reader.deduplicate(deduplicator);
+		}
+	}
+
+	/**
+	 * 以降に読み込むレコードで、同じインスタンスとフィールドのリストを使い回す<br>
+	 * {@link #next()}が返すインスタンスは、次に{@link #hasNext()}を呼び出すまでのみ有効になる。
+	 * 2件目以降のレコードはインポートの前に{@link CSVMappable#resetForReuse()}を呼び出す
+	 */
+	void reuse() {
+		reuse = true;
+		if (!requiresHeader()) {
+			reader.reuse();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !finished) {
+			next = readNext();
+		}
+		return next != null;
+	}
+
+	@Override
+	public E next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		E element = next;
+		next = null;
+		return element;
+	}
+
+	@Override
+	public void close() {
+		finished = true;
+		next = null;
+		report();
+		try {
+			reader.close();
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * 変換に成功するまでレコードを読み進める
+	 *
+	 * @return 変換されたインスタンス。これ以上レコードが無い場合はnull
+	 */
+	private E readNext() {
+		try {
+			List<String> list;
+			if (requiresHeader()) {
+				List<String> header = this.header;
+				this.header = null;
+				// リーダーから読み込んだヘッダー行は、列番号で指定された列のみを含む
+				boolean projected = false;
+				if (header == null) {
+					header = reader.readRecord();
+					if (header == null) {
+						finished = true;
+						report();
+						return null;
+					}
+					projected = projection != null && !projection.requiresHeader();
+				}
+				if (projection != null && projection.requiresHeader()) {
+					projection = projection.resolve(header);
+					reader.project(projection);
+				}
+				if (importer.requiresHeader()) {
+					importer.resolve(projection == null || projected ? header : projection.select(header));
+				}
+				reader.filter(filter);
+				reader.deduplicate(deduplicator);
+				if (reuse) {
+					reader.reuse();
+				}
+			}
+			long time = timed ? System.nanoTime() : 0;
+			while ((list = reader.readRecord()) != null) {
+				time = lap(time, Phase.PARSE);
+				E element;
+				if (instance == null) {
+					element = importer.newInstance();
+					if (reuse) {
+						instance = element;
+					}
+				} else {
+					element = instance;
+					element.resetForReuse();
+				}
+				time = lap(time, Phase.INSTANTIATE);
+				try {
+					importer.importFrom(element, list);
+					lap(time, Phase.IMPORT);
+					records++;
+					return element;
+				} catch (RuntimeException e) {
+					time = lap(time, Phase.IMPORT);
+					skipped++;
+					if (errorPolicy == CSVMapper.ErrorPolicy.FAIL) {
+						throw new CSVException("invalid row " + (records + skipped), e);
+					}
+					LOGGER.warn("skip row {}: {}", records + skipped, e.toString());
+					LOGGER.debug("skipped row {}: {}", records + skipped, list, e);
+				}
+			}
+			lap(time, Phase.PARSE);
+			finished = true;
+			if (skipped > 0) {
+				LOGGER.info("{} of {} rows skipped", skipped, records + skipped);
+			}
+			report();
+			return null;
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * @return 列名の解決のためにヘッダー行を読み込む必要がある場合はtrue
+	 */
+	private boolean requiresHeader() {
+		return importer.requiresHeader() || (projection != null && projection.requiresHeader());
+	}
+
+	/**
+	 * 指定されたクラスと列の指定で読み込む場合に、ヘッダー行が必要かを判定する
+	 *
+	 * @param clazz 変換するクラス
+	 * @param projection 読み込む列。全ての列を読み込む場合はnull
+	 * @return 列名の解決のためにヘッダー行を読み込む必要がある場合はtrue
+	 * @throws CSVException 対応していない型のフィールドに{@link CSVColumn}が付いている場合
+	 */
+	static boolean requiresHeader(Class<? extends CSVMappable> clazz, Projection projection) throws CSVException {
+		if (projection != null && projection.requiresHeader()) {
+			return true;
+		}
+		return RowMappers.find(clazz) == null && ColumnBinding.usesDefaultImport(clazz)
+				&& ColumnBinding.of(clazz).requiresHeader();
+	}
+
+	/**
+	 * 前回の計測からの経過時間を指定された処理の時間に加算する
+	 *
+	 * @return 現在の時刻。計測しない場合は0
+	 */
+	private long lap(long from, Phase phase) {
+		if (!timed) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		nanos[phase.ordinal()] += now - from;
+		return now;
+	}
+
+	/**
+	 * 計測値をリスナーに通知する(1度だけ)
+	 */
+	private void report() {
+		if (reported || listener == CSVMetricsListener.NONE) {
+			return;
+		}
+		reported = true;
+		listener.onCount(Counter.RECORDS_READ, records);
+		listener.onCount(Counter.RECORDS_SKIPPED, skipped);
+		listener.onCount(Counter.RECORDS_FILTERED, reader.recordsFiltered());
+		if (deduplicator != null) {
+			listener.onCount(Counter.STRINGS_DEDUPLICATED, deduplicator.hits());
+			listener.onCount(Counter.STRINGS_CREATED, deduplicator.misses());
+		}
+		long bytes = reader.bytesRead();
+		if (bytes >= 0) {
+			listener.onCount(Counter.BYTES_READ, bytes);
+		}
+		listener.onPhase(Phase.PARSE, nanos[Phase.PARSE.ordinal()]);
+		listener.onPhase(Phase.INSTANTIATE, nanos[Phase.INSTANTIATE.ordinal()]);
+		listener.onPhase(Phase.IMPORT, nanos[Phase.IMPORT.ordinal()]);
+	}
+}
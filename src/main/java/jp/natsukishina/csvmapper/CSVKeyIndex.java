@@ -0,0 +1,499 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * CSVファイルの1つの列の値からレコードを検索するためのハッシュ索引<br>
+ * {@link CSVMapper#keyIndex(CSVFile, int)}で生成する。
+ * 索引はCSVファイルと同じディレクトリに「CSVファイル名.列番号.keyindex」として保存し、メモリーマップして検索する。
+ * 検索ではハッシュ表から一致するレコードの位置を求め、そのレコードだけを解析するため、
+ * CSVファイル全体を読み込んだ場合と異なりヒープをほとんど使用しない<br>
+ * ハッシュ表はオープンアドレス法(線形探索)で、負荷率は0.5以下。1レコードあたり32バイト以下になる<br>
+ * 同じ値のレコードが複数ある場合はファイル上の順序で返す。インスタンスはスレッドセーフ<br>
+ * ファイルの形式は以下の通り(数値はビッグエンディアン)
+ *
+ * <pre>
+ * ヘッダー: int MAGIC, int VERSION, long ハッシュ表の位置, long サイズ, long 更新日時, int 列番号, char 区切り文字, char クォート,
+ *           long 最初のレコードの位置, int 最初のレコードのバイト数, int レコード数, int ハッシュ表の大きさ, UTF パス, UTF 文字コード
+ * ハッシュ表: (long レコードの位置+1(空の場合は0), int 値のハッシュ値, int レコードのバイト数) × ハッシュ表の大きさ
+ * </pre>
+ *
+ * <pre>
+ * try (CSVKeyIndex products = CSVMapper.builder().build().keyIndex(file, 0)) {
+ *     Product product = products.get("A-1001", Product.class);
+ * }
+ * </pre>
+ *
+ * @author 417.72KI
+ */
+public final class CSVKeyIndex implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CSVKeyIndex.class);
+
+	/** 索引のファイルの拡張子 */
+	static final String EXTENSION = ".keyindex";
+	static final int MAGIC = 0x4353564B;
+	static final int VERSION = 1;
+	/** ハッシュ表の1要素のバイト数 */
+	static final int SLOT_SIZE = 16;
+	/** ハッシュ表の最大の大きさ(1回でマップできる2GBに収まる2のべき乗) */
+	private static final int MAX_CAPACITY = 1 << 26;
+
+	private final CSVMapper mapper;
+	private final CSVFile file;
+	private final int column;
+	private final Charset charset;
+	/** 索引を作成した時点のCSVファイルのサイズ */
+	private final long size;
+	/** 索引を作成した時点のCSVファイルの更新日時 */
+	private final long modified;
+	/** 最初のレコード(ヘッダー行)の位置 */
+	private final long firstOffset;
+	/** 最初のレコード(ヘッダー行)のバイト数 */
+	private final int firstLength;
+	private final int count;
+	private final int mask;
+	private final ByteBuffer table;
+	private final FileChannel channel;
+	/** 解析済みのヘッダー行 */
+	private volatile List<String> header;
+
+	private CSVKeyIndex(CSVMapper mapper, CSVFile file, int column, Charset charset, long size, long modified,
+			long firstOffset, int firstLength, int count, int capacity, ByteBuffer table, FileChannel channel) {
+		this.mapper = mapper;
+		this.file = file;
+		this.column = column;
+		this.charset = charset;
+		this.size = size;
+		this.modified = modified;
+		this.firstOffset = firstOffset;
+		this.firstLength = firstLength;
+		this.count = count;
+		this.mask = capacity - 1;
+		this.table = table;
+		this.channel = channel;
+	}
+
+	/**
+	 * 保存された索引を開く。索引のファイルが存在しない場合、CSVファイルや設定が作成時と異なる場合は作成し直す
+	 *
+	 * @param mapper 読み込みの設定
+	 * @param file CSVファイル
+	 * @param column 索引を作成する列の位置
+	 * @param charset 文字コード(バイト列のまま解析できること)
+	 * @param offset 最初のレコードの位置(BOMの長さ)
+	 * @return 開いた索引
+	 * @throws CSVException CSVファイル・索引のファイルが読み込めない場合、索引の作成に失敗した場合
+	 */
+	static CSVKeyIndex open(CSVMapper mapper, CSVFile file, int column, Charset charset, long offset)
+			throws CSVException {
+		Path path = path(file, column);
+		try {
+			CSVKeyIndex index = load(mapper, file, column, charset, path);
+			if (index == null) {
+				build(mapper, file, column, charset, offset, path);
+				index = load(mapper, file, column, charset, path);
+				if (index == null) {
+					throw new CSVException("CSV file has been modified while indexing: " + file.getAbsolutePath());
+				}
+			}
+			return index;
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * @return 索引のファイルのパス
+	 */
+	static Path path(CSVFile file, int column) {
+		return new File(file.getAbsolutePath() + "." + column + EXTENSION).toPath();
+	}
+
+	/**
+	 * 索引のファイルをメモリーマップして開く
+	 *
+	 * @return 開いた索引。索引のファイルが存在しない場合、CSVファイルや設定が作成時と異なる場合はnull
+	 */
+	private static CSVKeyIndex load(CSVMapper mapper, CSVFile file, int column, Charset charset, Path path)
+			throws IOException {
+		long size;
+		long modified;
+		long firstOffset;
+		int firstLength;
+		int count;
+		int capacity;
+		ByteBuffer table;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			long tableOffset = in.readLong();
+			size = in.readLong();
+			modified = in.readLong();
+			if (size != file.length() || modified != file.lastModified() || in.readInt() != column
+					|| in.readChar() != mapper.getDelimiter() || in.readChar() != mapper.getQuote()) {
+				LOGGER.debug("stale key index: {}", path);
+				return null;
+			}
+			firstOffset = in.readLong();
+			firstLength = in.readInt();
+			count = in.readInt();
+			capacity = in.readInt();
+			if (!file.getAbsolutePath().equals(in.readUTF()) || !charset.name().equals(in.readUTF())) {
+				LOGGER.debug("stale key index: {}", path);
+				return null;
+			}
+			if (Integer.bitCount(capacity) != 1 || tableOffset + (long) capacity * SLOT_SIZE != channel.size()) {
+				LOGGER.debug("incomplete key index: {}", path);
+				return null;
+			}
+			table = channel.map(MapMode.READ_ONLY, tableOffset, (long) capacity * SLOT_SIZE);
+		} catch (NoSuchFileException | EOFException e) {
+			return null;
+		}
+		FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return new CSVKeyIndex(mapper, file, column, charset, size, modified, firstOffset, firstLength, count,
+				capacity, table, source);
+	}
+
+	/**
+	 * CSVファイルを走査して索引のファイルを作成する<br>
+	 * 一時ファイルに書き込み、完了した時点で索引のファイルに置き換える
+	 */
+	private static void build(CSVMapper mapper, CSVFile file, int column, Charset charset, long offset, Path path)
+			throws IOException {
+		long start = System.nanoTime();
+		long modified = file.lastModified();
+		int count = 0;
+		int[] hashes = new int[1024];
+		long[] offsets = new long[1024];
+		int[] lengths = new int[1024];
+		long size;
+		long firstOffset = offset;
+		int firstLength = -1;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			size = channel.size();
+			ByteRecordReader reader = new MappedRecordReader(channel, charset, offset, size,
+					MappedRecordReader.WINDOW_SIZE, (byte) mapper.getDelimiter(), (byte) mapper.getQuote());
+			reader.reuse();
+			// レコードのバイト数は次のレコードの開始位置までとするため、1レコード遅れて確定する
+			long recordStart = -1;
+			boolean indexed = false;
+			while (true) {
+				List<String> record = reader.readRecord();
+				long next = record == null ? size : reader.recordOffset();
+				if (recordStart >= 0) {
+					int length = checkLength(next - recordStart, recordStart);
+					if (indexed) {
+						lengths[count - 1] = length;
+					}
+					if (firstLength < 0) {
+						firstOffset = recordStart;
+						firstLength = length;
+					}
+				}
+				if (record == null) {
+					break;
+				}
+				recordStart = next;
+				indexed = column < record.size();
+				if (indexed) {
+					if (count == hashes.length) {
+						hashes = Arrays.copyOf(hashes, count << 1);
+						offsets = Arrays.copyOf(offsets, count << 1);
+						lengths = Arrays.copyOf(lengths, count << 1);
+					}
+					hashes[count] = record.get(column).hashCode();
+					offsets[count] = recordStart;
+					count++;
+				}
+			}
+		}
+		if (firstLength < 0) {
+			firstLength = 0;
+		}
+		int capacity = capacity(count);
+		if (capacity > MAX_CAPACITY) {
+			throw new IOException("too many records to index: " + count);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeLong(size);
+		header.writeLong(modified);
+		header.writeInt(column);
+		header.writeChar(mapper.getDelimiter());
+		header.writeChar(mapper.getQuote());
+		header.writeLong(firstOffset);
+		header.writeInt(firstLength);
+		header.writeInt(count);
+		header.writeInt(capacity);
+		header.writeUTF(file.getAbsolutePath());
+		header.writeUTF(charset.name());
+		// ハッシュ表の位置を8バイト境界に揃える
+		long tableOffset = (16 + bytes.size() + 7) & ~7L;
+		ByteBuffer prefix = ByteBuffer.allocate((int) tableOffset);
+		prefix.putInt(MAGIC).putInt(VERSION).putLong(tableOffset).put(bytes.toByteArray());
+		prefix.clear();
+
+		Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel out = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				while (prefix.hasRemaining()) {
+					out.write(prefix);
+				}
+				MappedByteBuffer table = out.map(MapMode.READ_WRITE, tableOffset, (long) capacity * SLOT_SIZE);
+				int mask = capacity - 1;
+				for (int i = 0; i < count; i++) {
+					int slot = slot(hashes[i], mask);
+					while (table.getLong(slot * SLOT_SIZE) != 0) {
+						slot = (slot + 1) & mask;
+					}
+					table.putLong(slot * SLOT_SIZE, offsets[i] + 1);
+					table.putInt(slot * SLOT_SIZE + 8, hashes[i]);
+					table.putInt(slot * SLOT_SIZE + 12, lengths[i]);
+				}
+				table.force();
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		LOGGER.debug("key index created: {} ({} records, {} ms)", path, count,
+				(System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * @return レコードのバイト数
+	 * @throws IOException 2GBを超える場合
+	 */
+	private static int checkLength(long length, long offset) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("record is too large to index at offset " + offset);
+		}
+		return (int) length;
+	}
+
+	/**
+	 * @return 負荷率が0.5以下になる2のべき乗のハッシュ表の大きさ
+	 */
+	static int capacity(int count) {
+		long capacity = 16;
+		while (capacity < (long) count << 1) {
+			capacity <<= 1;
+		}
+		return (int) Math.min(capacity, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return ハッシュ値を探索を開始する位置にする(下位ビットに偏らないよう上位ビットを混ぜる)
+	 */
+	private static int slot(int hash, int mask) {
+		return (hash * 0x9E3779B9 ^ hash >>> 16) & mask;
+	}
+
+	/**
+	 * @return 索引を作成した列の値を持つレコード数(列が無いレコードを除く。ヘッダー行を含む)
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * @return 索引を作成した列の位置
+	 */
+	public int column() {
+		return column;
+	}
+
+	/**
+	 * 指定された値を持つ最初のレコードを読み込み、指定されたクラスに変換する<br>
+	 * 読み込む列・絞り込む条件などは索引を作成した{@link CSVMapper}の設定を使用する
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 * @param key 検索する値
+	 * @param clazz 変換するクラス
+	 * @return 変換したインスタンス。値が見つからない場合、絞り込む条件を満たさない場合、変換に失敗して読み飛ばした場合はnull
+	 * @throws CSVException 索引の作成後にCSVファイルが更新された場合、CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> E get(String key, Class<E> clazz) throws CSVException {
+		List<E> list = find(key, clazz, 1);
+		return list.isEmpty() ? null : list.get(0);
+	}
+
+	/**
+	 * 指定された値を持つ全てのレコードを読み込み、指定されたクラスに変換する
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 * @param key 検索する値
+	 * @param clazz 変換するクラス
+	 * @return 変換したインスタンスのリスト(ファイル上の順序)
+	 * @throws CSVException 索引の作成後にCSVファイルが更新された場合、CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> List<E> getAll(String key, Class<E> clazz) throws CSVException {
+		return find(key, clazz, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param key 検索する値
+	 * @return 指定された値を持つレコードがある場合はtrue
+	 * @throws CSVException 索引の作成後にCSVファイルが更新された場合、CSV読み込み時のエラー
+	 */
+	public boolean contains(String key) throws CSVException {
+		checkModified();
+		int hash = key.hashCode();
+		try {
+			return next(key, hash, slot(hash, mask)) >= 0;
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * ハッシュ表を探索し、値が一致するレコードを指定された件数まで変換する<br>
+	 * 同じ値のレコードは作成時にファイル上の順序で追加したため、探索の順序がファイル上の順序になる
+	 */
+	private <E extends CSVMappable> List<E> find(String key, Class<E> clazz, int limit) throws CSVException {
+		checkModified();
+		List<E> list = new ArrayList<>(1);
+		int hash = key.hashCode();
+		try {
+			boolean requiresHeader = CSVIterator.requiresHeader(clazz, mapper.getProjection());
+			List<String> header = requiresHeader ? header() : null;
+			int slot = next(key, hash, slot(hash, mask));
+			while (slot >= 0 && list.size() < limit) {
+				long offset = table.getLong(slot * SLOT_SIZE) - 1;
+				// ヘッダー行は変換しない
+				if (!requiresHeader || offset != firstOffset) {
+					RecordBytesReader reader = new RecordBytesReader(this, read(offset, length(slot)), offset);
+					try (CSVIterator<E> iterator = new CSVIterator<>(reader, clazz, mapper, header)) {
+						iterator.forEachRemaining(list::add);
+					}
+				}
+				slot = next(key, hash, (slot + 1) & mask);
+			}
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+		return list;
+	}
+
+	/**
+	 * 指定された位置からハッシュ表を探索し、値が一致するレコードの位置を返す
+	 *
+	 * @return 値が一致するレコードのハッシュ表上の位置。空の要素に達した場合は-1
+	 */
+	private int next(String key, int hash, int slot) throws IOException {
+		long position;
+		while ((position = table.getLong(slot * SLOT_SIZE)) != 0) {
+			if (table.getInt(slot * SLOT_SIZE + 8) == hash) {
+				List<String> record = parse(position - 1, length(slot));
+				if (record != null && key.equals(record.get(column))) {
+					return slot;
+				}
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int length(int slot) {
+		return table.getInt(slot * SLOT_SIZE + 12);
+	}
+
+	/**
+	 * @return 最初のレコードを全ての列を含むヘッダー行として解析した結果
+	 */
+	private List<String> header() throws IOException {
+		List<String> header = this.header;
+		if (header == null) {
+			List<String> record = parse(firstOffset, firstLength);
+			header = record == null ? new ArrayList<>() : new ArrayList<>(record);
+			this.header = header;
+		}
+		return header;
+	}
+
+	private List<String> parse(long offset, int length) throws IOException {
+		return new RecordBytesReader(this, read(offset, length), offset).readRecord();
+	}
+
+	private byte[] read(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new EOFException("CSV file has been truncated: " + file.getAbsolutePath());
+			}
+		}
+		return buffer.array();
+	}
+
+	private void checkModified() throws CSVException {
+		if (file.length() != size || file.lastModified() != modified) {
+			throw new CSVException("CSV file has been modified after indexing: " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * CSVファイルを閉じる
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * 読み込んだ1レコード分のバイト列を解析するリーダー
+	 */
+	private static final class RecordBytesReader extends ByteRecordReader {
+		private final byte[] bytes;
+		private boolean loaded;
+
+		RecordBytesReader(CSVKeyIndex index, byte[] bytes, long offset) {
+			super(index.charset, offset, (byte) index.mapper.getDelimiter(), (byte) index.mapper.getQuote());
+			this.bytes = bytes;
+		}
+
+		@Override
+		protected boolean refill(int keepFrom) {
+			if (loaded) {
+				return false;
+			}
+			loaded = true;
+			buffer = ByteBuffer.wrap(bytes);
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -5,7 +5,8 @@ import java.util.List;
 /**
  * <p>CSVファイルのマッピング用インターフェース</p>
  * ※このインターフェースの実装クラスは必ずデフォルトコンストラクターを使用できるようにしてください。<br>
- * (privateでも構いません)
+ * (privateでも構いません)<br>
+ * フィールドに{@link CSVColumn}を付けた場合は{@link #array4exportCSV()}と{@link #importFromCSV(List)}の実装を省略できます。
  *
  * @author 417.72KI
  *
@@ -21,17 +22,37 @@ public interface CSVMappable {
 	public boolean includeLines();
 
 	/**
-	 * CSVの1行に出力する要素を配列にする
+	 * CSVの1行に出力する要素を配列にする<br>
+	 * 実装しない場合は{@link CSVColumn}を付けたフィールドを出力する
 	 *
 	 * @return 出力する要素の配列
 	 */
-	public String[] array4exportCSV();
+	@SuppressWarnings("unchecked")
+	public default String[] array4exportCSV() {
+		CSVRowMapper<CSVMappable> mapper = (CSVRowMapper<CSVMappable>) RowMappers.find(getClass());
+		if (mapper != null) {
+			return mapper.export(this);
+		}
+		return ColumnBinding.of(getClass()).export(this);
+	}
 
 	/**
-	 * CSVから1行インポートする
+	 * CSVから1行インポートする<br>
+	 * 実装しない場合は{@link CSVColumn}を付けたフィールドに設定する
 	 *
 	 * @param row インポートされる行
 	 */
-	public void importFromCSV(List<String> row);
+	public default void importFromCSV(List<String> row) {
+		ColumnBinding.of(getClass()).importFrom(this, row);
+	}
+
+	/**
+	 * {@link CSVMapper#forEach(jp.natsukishina.csvmapper.file.CSVFile, Class, java.util.function.Consumer)}で
+	 * 同じインスタンスに次のレコードをインポートする前に呼び出される<br>
+	 * インポートで上書きされず、前のレコードの値が残ると困るフィールドを初期化する。
+	 * {@link CSVColumn}を付けたフィールドは全て上書きされるため、実装しなくてよい
+	 */
+	public default void resetForReuse() {
+	}
 
 }
\ No newline at end of file
@@ -1,56 +1,732 @@
 package jp.natsukishina.csvmapper;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.csvmapper.CSVMetricsListener.Counter;
+import jp.natsukishina.csvmapper.CSVMetricsListener.Phase;
 import jp.natsukishina.csvmapper.file.CSVFile;
 
 /**
  * CSVファイルのマッピングを行うクラス<br>
- * 使用する際は{@link CSVMappable}を実装したクラスが必要
+ * 使用する際は{@link CSVMappable}を実装したクラスが必要<br>
+ * 文字コード・区切り文字などの設定は{@link #builder()}で生成したインスタンスが保持する。
+ * インスタンスは不変のため、複数のスレッドから同時に使用できる<br>
+ * 静的メソッドは既定の設定のインスタンスに委譲する
+ *
+ * <pre>
+ * CSVMapper mapper = CSVMapper.builder().delimiter('\t').errorPolicy(ErrorPolicy.FAIL).build();
+ * List&lt;Item&gt; items = mapper.read(file, Item.class);
+ * </pre>
  *
  * @author 417.72KI
  */
-public abstract class CSVMapper {
+public final class CSVMapper {
+
+	/** 区切り文字の既定値 */
+	public static final char DEFAULT_DELIMITER = ',';
+	/** クォートの既定値 */
+	public static final char DEFAULT_QUOTE = '"';
 
 	private static final String DEFAULT_CHAR_CODE = "UTF-8";
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(CSVMapper.class);
+
+	/** 既定の設定 */
+	static final CSVMapper DEFAULT = builder().build();
+
+	/** 静的メソッドが使用する既定の設定。読み込んだCSVの文字コードを{@link #inputCharCode}に格納する */
+	private static final CSVMapper SHARED = new CSVMapper(builder(), true);
+
+	/**
+	 * 静的メソッドで最後に読み込んだCSVの文字コードを格納する
+	 */
+	private static volatile String inputCharCode;
+
+	/**
+	 * 変換に失敗したレコードの扱い
+	 */
+	public enum ErrorPolicy {
+		/** レコードを読み飛ばして次のレコードを読み込む */
+		SKIP,
+		/** {@link CSVException}を投げて読み込みを中断する */
+		FAIL
+	}
+
+	/** 入出力の文字コード。nullの場合は読み込み時に判定する */
+	private final Charset charset;
+	private final char delimiter;
+	private final char quote;
+	private final String lineSeparator;
+	private final ErrorPolicy errorPolicy;
+	private final CSVMetricsListener metricsListener;
+	/** 読み込む列。全ての列を読み込む場合はnull */
+	private final Projection projection;
+	/** 絞り込む条件。全てのレコードを読み込む場合はnull */
+	private final RecordFilter filter;
+	/** 同じ内容の文字列を共有する列。空の場合は全ての列、共有しない場合はnull */
+	private final int[] deduplicatedColumns;
+	/** 解析済みのレコードをスナップショットファイルに保持する場合はtrue */
+	private final boolean snapshot;
+	/** gzip形式で出力する際に並列に圧縮するスレッドプール。書き込んだスレッドで圧縮する場合はnull */
+	private final ForkJoinPool compressionPool;
+	/** 文字コードの判定に使用する最大のバイト数 */
+	private final int detectionSampleSize;
+	/** 読み込んだCSVの文字コードを{@link #inputCharCode}に格納する場合はtrue */
+	private final boolean sharesInputCharCode;
+
+	private CSVMapper(Builder builder, boolean sharesInputCharCode) {
+		this.charset = builder.charset;
+		this.delimiter = builder.delimiter;
+		this.quote = builder.quote;
+		this.lineSeparator = builder.lineSeparator;
+		this.errorPolicy = builder.errorPolicy;
+		this.metricsListener = builder.metricsListener;
+		this.projection = builder.projection;
+		this.filter = builder.filter;
+		this.deduplicatedColumns = builder.deduplicatedColumns;
+		this.snapshot = builder.snapshot;
+		this.compressionPool = builder.compressionPool;
+		this.detectionSampleSize = builder.detectionSampleSize;
+		this.sharesInputCharCode = sharesInputCharCode;
+	}
+
+	/**
+	 * 既定の設定から始まるビルダーを返す<br>
+	 * 既定の設定は、文字コードは読み込み時に判定(出力時はUTF-8)、区切り文字は','、クォートは'"'、
+	 * 改行は{@link System#lineSeparator()}、変換に失敗したレコードは読み飛ばす、計測値は通知しない、全ての列・レコードを読み込む
+	 *
+	 * @return ビルダー
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * このインスタンスの設定から始まるビルダーを返す
+	 *
+	 * @return ビルダー
+	 */
+	public Builder toBuilder() {
+		return new Builder(this);
+	}
+
+	/**
+	 * CSVファイルを解析し、指定されたクラスのリストに変換する<br>
+	 * 変換には {@link CSVMappable#importFromCSV(List)}を使用する
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @return 指定クラスのインスタンスリスト
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> List<E> read(CSVFile file, Class<E> clazz) throws CSVException {
+		try (Stream<E> stream = readStream(file, clazz)) {
+			return stream.collect(Collectors.toCollection(ArrayList::new));
+		}
+	}
+
+	/**
+	 * CSVファイルを解析し、指定されたクラスの{@link Stream}に変換する<br>
+	 * レコードは要素が要求された時点で1件ずつ読み込まれるため、ファイル全体をメモリに保持しない<br>
+	 * 変換には {@link CSVMappable#importFromCSV(List)}を使用する<br>
+	 * ※ファイルを開いたままにするため、使用後は必ず{@link Stream#close()}を呼ぶこと(try-with-resources推奨)
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @return 指定クラスのインスタンスのStream
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> Stream<E> readStream(CSVFile file, Class<E> clazz) throws CSVException {
+		RecordReader reader = open(file, projection != null || filter != null);
+		CSVIterator<E> iterator;
+		try {
+			iterator = new CSVIterator<>(reader, clazz, this, null);
+		} catch (CSVException e) {
+			try {
+				reader.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(iterator::close);
+	}
+
+	/**
+	 * CSVファイルを1レコードずつ指定されたクラスに変換し、指定された処理に渡す<br>
+	 * 変換先のインスタンスとフィールドのリストは全てのレコードで同じものを使い回し、
+	 * 2件目以降のレコードはインポートの前に{@link CSVMappable#resetForReuse()}を呼び出す。
+	 * 集計など、レコードを保持せずに処理する場合にレコードごとのインスタンスの生成を避ける<br>
+	 * バイト列のまま解析できる文字コードで、{@link CSVColumn}を付けたプリミティブ型のフィールドに読み込む場合は、
+	 * レコードごとにオブジェクトを生成しない(クォートを含む、またはASCII文字以外を含むフィールドは文字列を生成する)<br>
+	 * ※処理に渡したインスタンスは次のレコードで上書きされるため、処理の中で保持しないこと
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @param action 変換したインスタンスを受け取る処理
+	 * @return 処理に渡したレコードの数
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> long forEach(CSVFile file, Class<E> clazz, Consumer<? super E> action)
+			throws CSVException {
+		RecordReader reader = open(file, true);
+		CSVIterator<E> iterator;
+		try {
+			iterator = new CSVIterator<>(reader, clazz, this, null);
+		} catch (CSVException e) {
+			try {
+				reader.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		long count = 0;
+		try {
+			iterator.reuse();
+			while (iterator.hasNext()) {
+				action.accept(iterator.next());
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+
+	/**
+	 * CSVファイルを複数の範囲に分割し、指定された{@link ForkJoinPool}上で並列に解析して指定されたクラスのリストに変換する<br>
+	 * 分割位置はクォートを考慮してレコードの境界に揃えるため、要素内に改行を含むCSVも読み込める<br>
+	 * 変換には {@link CSVMappable#importFromCSV(List)}を使用するため、実装クラスはスレッドセーフであること<br>
+	 * ※文字コードがUTF-16など、バイト列のまま解析できないものの場合は1スレッドで読み込む
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @param keepOrder ファイル上のレコードの順序を保持する場合はtrue<br>
+	 * falseの場合は解析が完了した範囲から順に結果に追加する
+	 * @param pool 解析に使用するスレッドプール
+	 * @return 指定クラスのインスタンスリスト
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public <E extends CSVMappable> List<E> readInParallel(CSVFile file, Class<E> clazz, boolean keepOrder,
+			ForkJoinPool pool) throws CSVException {
+		if (Compression.of(file) != Compression.NONE) {
+			return read(file, clazz);
+		}
+		ByteLayout layout = byteLayout(file);
+		if (!layout.parsable) {
+			return read(file, clazz);
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new ParallelCSVReader<>(this, channel, layout.charset, clazz, pool,
+					ParallelCSVReader.MIN_CHUNK_SIZE, layout.offset).read(keepOrder);
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * 複数のCSVファイルを指定された数のスレッドで並行に読み込み、ファイルごとの結果を返す<br>
+	 * 同時に開くファイルは指定された並行数までになる。文字コードが設定されていない場合は、ファイルごとに独立して判定する
+	 * ({@link #getInputCharCode()}は更新しない)<br>
+	 * 読み込みに失敗したファイルがあっても残りのファイルの読み込みを続け、失敗は{@link CSVFileResult#getException()}で返す<br>
+	 * ※全てのファイルのレコードを保持するため、保持せずに処理する場合は{@link #readAllStream(Collection, Class, int)}を使用すること。
+	 * {@link CSVMetricsListener}には複数のスレッドから通知する
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param files CSVファイル({@link CSVFile#find(File, String)}でディレクトリから検索できる)
+	 * @param clazz 変換するクラス
+	 * @param parallelism 同時に読み込むファイルの最大数
+	 * @return ファイルごとの結果。順序は指定されたファイルの順序
+	 * @throws IllegalArgumentException 並行数が1未満の場合
+	 * @throws CSVException 読み込みを待つ間に割り込まれた場合
+	 */
+	public <E extends CSVMappable> List<CSVFileResult<E>> readAll(Collection<? extends CSVFile> files, Class<E> clazz,
+			int parallelism) throws CSVException {
+		return new MultiFileReader<>(this, validate(files, parallelism), clazz, parallelism).readAll();
+	}
+
+	/**
+	 * 複数のCSVファイルを指定された数のスレッドで並行に読み込み、全てのレコードを1つの{@link Stream}として返す<br>
+	 * 同時に開くファイルは指定された並行数までになる。文字コードが設定されていない場合は、ファイルごとに独立して判定する<br>
+	 * ファイルごとのレコードの順序は保持するが、ファイル間の順序は読み込みが進んだ順になる。
+	 * 受け渡し待ちのレコードは並行数に比例した件数までとし、消費が追いつかない場合は読み込みを待つため、
+	 * 使用するメモリーはファイルの数・大きさに関わらず一定になる<br>
+	 * 読み込みに失敗したファイルがある場合は、そのファイルのレコードを受け取る時点で{@link CSVException}を投げる<br>
+	 * ※読み込み中のファイルを開いたままにするため、使用後は必ず{@link Stream#close()}を呼ぶこと(try-with-resources推奨)
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param files CSVファイル({@link CSVFile#find(File, String)}でディレクトリから検索できる)
+	 * @param clazz 変換するクラス
+	 * @param parallelism 同時に読み込むファイルの最大数
+	 * @return 全てのファイルのレコードのStream
+	 * @throws IllegalArgumentException 並行数が1未満の場合
+	 */
+	public <E extends CSVMappable> Stream<E> readAllStream(Collection<? extends CSVFile> files, Class<E> clazz,
+			int parallelism) {
+		return new MultiFileReader<>(this, validate(files, parallelism), clazz, parallelism).stream();
+	}
+
+	private static List<CSVFile> validate(Collection<? extends CSVFile> files, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		}
+		return new ArrayList<>(files);
+	}
+
+	/**
+	 * CSVファイルを解析し、列ごとのプリミティブ型の配列で保持する{@link CSVTable}に変換する<br>
+	 * レコードごとのインスタンスや文字列のリストを生成せず、フィールドを直接配列に変換する<br>
+	 * 読み込む列は列の定義で指定するため、{@link Builder#columns(int...)}の設定は使用しない。
+	 * {@link Builder#where(int, Predicate)}の列の位置は列の定義の順序での位置になる
+	 *
+	 * @param file CSVファイル
+	 * @param schema 列の定義。列名で指定した場合は1行目をヘッダー行として読み込む
+	 * @return 読み込んだ表
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public CSVTable readTable(CSVFile file, CSVSchema schema) throws CSVException {
+		CSVTable.Loader loader = new CSVTable.Loader(schema, errorPolicy);
+		long start = System.nanoTime();
+		try (RecordReader reader = open(file, true)) {
+			Projection projection = schema.projection();
+			if (projection.requiresHeader()) {
+				List<String> header = reader.readRecord();
+				if (header == null) {
+					return loader.build();
+				}
+				projection = projection.resolve(header);
+			}
+			reader.project(projection);
+			reader.filter(filter);
+			List<String> record;
+			while ((record = reader.readRecord()) != null) {
+				loader.add(record);
+			}
+			if (metricsListener != CSVMetricsListener.NONE) {
+				metricsListener.onCount(Counter.RECORDS_READ, loader.size());
+				metricsListener.onCount(Counter.RECORDS_SKIPPED, loader.skipped());
+				metricsListener.onCount(Counter.RECORDS_FILTERED, reader.recordsFiltered());
+				long bytes = reader.bytesRead();
+				if (bytes >= 0) {
+					metricsListener.onCount(Counter.BYTES_READ, bytes);
+				}
+				metricsListener.onPhase(Phase.PARSE, System.nanoTime() - start);
+			}
+			return loader.build();
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * CSVファイルを走査し、レコードごとの開始位置を保持する{@link CSVIndex}を作成する<br>
+	 * 作成した索引では、先頭から解析し直すことなく任意のレコードや範囲を読み込める
+	 *
+	 * @param file CSVファイル
+	 * @return 作成した索引
+	 * @throws CSVException CSV読み込み時のエラー、文字コード・区切り文字・クォートがバイト列のまま解析できないものの場合、
+	 * 圧縮されたCSVファイルの場合
+	 */
+	public CSVIndex index(CSVFile file) throws CSVException {
+		if (Compression.of(file) != Compression.NONE) {
+			throw new CSVException("cannot index compressed CSV file: " + file.getAbsolutePath());
+		}
+		ByteLayout layout = byteLayout(file);
+		if (!layout.parsable) {
+			throw new CSVException("cannot index " + layout.charset.name() + " CSV file: " + file.getAbsolutePath());
+		}
+		return CSVIndex.build(this, file, layout.charset, layout.offset);
+	}
+
 	/**
-	 * 最後に読み込んだCSVの文字コードを格納する
+	 * 保存された{@link CSVIndex}を読み込む。索引のファイルが存在しない場合、またはCSVファイルが更新されている場合は
+	 * {@link #index(CSVFile)}で作成し直して保存する
+	 *
+	 * @param file CSVファイル
+	 * @param indexFile 索引を保存するファイル
+	 * @return 読み込んだ、または作成した索引
+	 * @throws CSVException CSV読み込み時のエラー、索引の読み込み・保存に失敗した場合
+	 */
+	public CSVIndex index(CSVFile file, File indexFile) throws CSVException {
+		CSVIndex index = CSVIndex.load(this, file, indexFile);
+		if (index == null) {
+			index = index(file);
+			index.save(indexFile);
+		}
+		return index;
+	}
+
+	/**
+	 * CSVファイルの指定された列の値からレコードを検索する{@link CSVKeyIndex}を開く<br>
+	 * 索引はCSVファイルと同じディレクトリのファイル(「CSVファイル名.列番号.keyindex」)に保存したものを使用し、
+	 * 存在しない場合、CSVファイルが更新されている場合、設定が異なる場合は作成し直して保存する。
+	 * 検索では一致したレコードだけを解析するため、マスターデータなどの大きなCSVファイルを読み込まずに参照できる<br>
+	 * ※索引はCSVファイルを開いたままにするため、使用後は必ず{@link CSVKeyIndex#close()}を呼ぶこと(try-with-resources推奨)
+	 *
+	 * @param file CSVファイル
+	 * @param column 検索に使用する列の位置(0始まり)
+	 * @return 開いた索引
+	 * @throws IllegalArgumentException 列の位置が負の値の場合
+	 * @throws CSVException CSV読み込み時のエラー、索引の読み込み・作成に失敗した場合、
+	 * 文字コード・区切り文字・クォートがバイト列のまま解析できないものの場合、圧縮されたCSVファイルの場合
+	 */
+	public CSVKeyIndex keyIndex(CSVFile file, int column) throws CSVException {
+		if (column < 0) {
+			throw new IllegalArgumentException("column must not be negative: " + column);
+		}
+		if (Compression.of(file) != Compression.NONE) {
+			throw new CSVException("cannot index compressed CSV file: " + file.getAbsolutePath());
+		}
+		ByteLayout layout = byteLayout(file);
+		if (!layout.parsable) {
+			throw new CSVException("cannot index " + layout.charset.name() + " CSV file: " + file.getAbsolutePath());
+		}
+		return CSVKeyIndex.open(this, file, column, layout.charset, layout.offset);
+	}
+
+	/**
+	 * 追記され続けるCSVファイルを、ファイルの先頭から追加されたレコードだけ読み込む{@link CSVFollower}を生成する
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @return 生成したインスタンス
+	 * @throws CSVException 対応していない型のフィールドに{@link CSVColumn}が付いている場合、圧縮されたCSVファイルの場合
+	 */
+	public <E extends CSVMappable> CSVFollower<E> follow(CSVFile file, Class<E> clazz) throws CSVException {
+		return follow(file, clazz, CSVCheckpoint.START);
+	}
+
+	/**
+	 * 追記され続けるCSVファイルを、指定された再開位置から追加されたレコードだけ読み込む{@link CSVFollower}を生成する<br>
+	 * 読み込みはバイト列のまま解析するため、文字コード・区切り文字・クォートは{@link #readInParallel(CSVFile, Class, boolean, ForkJoinPool)}
+	 * と同様にバイト列のまま解析できるものであること
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @param checkpoint 読み込みを再開する位置
+	 * @return 生成したインスタンス
+	 * @throws CSVException 対応していない型のフィールドに{@link CSVColumn}が付いている場合、圧縮されたCSVファイルの場合
+	 */
+	public <E extends CSVMappable> CSVFollower<E> follow(CSVFile file, Class<E> clazz, CSVCheckpoint checkpoint)
+			throws CSVException {
+		if (Compression.of(file) != Compression.NONE) {
+			throw new CSVException("cannot follow compressed CSV file: " + file.getAbsolutePath());
+		}
+		return new CSVFollower<>(this, file, clazz, checkpoint, CSVFollower.BATCH_SIZE);
+	}
+
+	/**
+	 * CSVファイルのレコードを並べ替えて別のCSVファイルに出力する<br>
+	 * 読み込んだレコードが指定されたメモリーの上限を超える場合は、並べ替えたレコードを一時ファイルに書き出し(ラン)、
+	 * 全てのランをマージしながら出力するため、ヒープに収まらない大きさのCSVファイルも並べ替えられる。
+	 * ランの並べ替えと書き出しは{@link ForkJoinPool#commonPool()}上で、次のランの読み込みと並行に行う<br>
+	 * 比較結果が等しいレコードは元の順序を保つ
+	 *
+	 * @param in 並べ替えるCSVファイル
+	 * @param out 出力先ファイル(並べ替えるCSVファイルと同じファイルも指定できる)。
+	 *        存在しない場合は出力が完了した時点で作成する
+	 * @param comparator レコードの比較方法({@link #comparing(int...)}で列を指定して生成できる)
+	 * @param memoryBudget 読み込んだレコードが使用するメモリーの上限(バイト数)
+	 * @return 出力したレコード数
+	 * @throws IllegalArgumentException メモリーの上限が正の値でない場合
+	 * @throws CSVException CSV読み込み時・出力時のエラー
+	 * @see #sort(CSVFile, CSVFile, Comparator, long, ForkJoinPool)
+	 */
+	public long sort(CSVFile in, CSVFile out, Comparator<? super List<String>> comparator, long memoryBudget)
+			throws CSVException {
+		return sort(in, out, comparator, memoryBudget, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * CSVファイルのレコードを並べ替えて別のCSVファイルに出力する<br>
+	 * 読み込んだレコードが指定されたメモリーの上限を超える場合は、並べ替えたレコードを一時ファイルに書き出し(ラン)、
+	 * 全てのランをマージしながら出力するため、ヒープに収まらない大きさのCSVファイルも並べ替えられる。
+	 * ランの並べ替えと書き出しは指定された{@link ForkJoinPool}上で、次のランの読み込みと並行に行う<br>
+	 * 一時ファイルは出力先と同じディレクトリに作成し、出力が終わった時点で削除する。
+	 * 一時ファイルのレコードはUTF-8のバイト列で保持するため、一時ファイルの大きさはCSVファイルとほぼ同じになる<br>
+	 * 出力も一時ファイルに書き込み、全てのレコードを書き込んだ時点で出力先のファイルに置き換えるため、
+	 * 途中で失敗した場合、出力先のファイルは作成されず、
+	 * 既に存在する場合(並べ替えるCSVファイルと同じ場合を含む)は内容も変わらない<br>
+	 * 比較結果が等しいレコードは元の順序を保つ。要素内に改行を含むレコードも1つのレコードとして並べ替える<br>
+	 * 出力時の文字コードは設定された文字コード(設定されていない場合は読み込んだCSVファイルの文字コード)<br>
+	 * ※列の指定・絞り込む条件は適用せず、全ての列・レコードを並べ替える。ヘッダー行も並べ替えの対象になる
+	 *
+	 * @param in 並べ替えるCSVファイル
+	 * @param out 出力先ファイル(並べ替えるCSVファイルと同じファイルも指定できる)。
+	 *        存在しない場合は出力が完了した時点で作成する
+	 * @param comparator レコードの比較方法({@link #comparing(int...)}で列を指定して生成できる)
+	 * @param memoryBudget 読み込んだレコードが使用するメモリーの上限(バイト数)。並べ替え中のランも含む
+	 * @param pool ランの並べ替えと書き出しに使用するスレッドプール
+	 * @return 出力したレコード数
+	 * @throws IllegalArgumentException メモリーの上限が正の値でない場合
+	 * @throws CSVException CSV読み込み時・出力時のエラー
+	 */
+	public long sort(CSVFile in, CSVFile out, Comparator<? super List<String>> comparator, long memoryBudget,
+			ForkJoinPool pool) throws CSVException {
+		if (memoryBudget <= 0) {
+			throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+		}
+		Charset charset = charsetOf(in);
+		// 出力先のファイルは全てのレコードを書き込んだ時点で作成するため、ここでは親フォルダだけを作成する
+		Path target = out.getAbsoluteFile().toPath();
+		File parent = target.getParent().toFile();
+		if (!parent.exists()) {
+			parent.mkdirs();
+		}
+		RecordReader reader = parse(in, false);
+		ExternalSorter sorter = new ExternalSorter(comparator, memoryBudget, pool, target.getParent().toFile(),
+				ExternalSorter.MAX_FAN_IN);
+		long count = 0;
+		long start;
+		Path temp = null;
+		try (ExternalSorter.Sorted sorted = sorter.sort(reader)) {
+			start = System.nanoTime();
+			// 並べ替えるCSVファイルと同じファイルに出力する場合もあるため、一時ファイルに書き込んでから置き換える
+			temp = createSibling(target);
+			try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(compress(out, temp), charset),
+					CSVWriter.DEFAULT_BUFFER_SIZE, 0, lineSeparator, delimiter, quote)) {
+				for (; sorted.hasNext(); count++) {
+					List<String> record = sorted.next();
+					writer.writeRecord(record.toArray(new String[record.size()]));
+				}
+			}
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | UncheckedIOException e) {
+			throw new CSVException(e);
+		} finally {
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException e) {
+					LOGGER.warn("cannot delete temporary file: {}", temp, e);
+				}
+			}
+		}
+		reportWrite(out, count, start);
+		return count;
+	}
+
+	/**
+	 * 出力先と同じディレクトリに、出力先を置き換えるための一時ファイルを作成する<br>
+	 * {@link Files#createTempFile(Path, String, String, java.nio.file.attribute.FileAttribute...)}は所有者だけが
+	 * 読み書きできる権限で作成するため、通常のファイルと同じ権限(umask)で作成し、
+	 * 出力先のファイルが既に存在する場合はその権限を引き継ぐ
+	 *
+	 * @param target 出力先のファイル
+	 * @return 作成した一時ファイル
+	 * @throws IOException ファイルを作成できない場合
+	 */
+	private static Path createSibling(Path target) throws IOException {
+		Path temp = null;
+		while (temp == null) {
+			Path candidate = target.resolveSibling(target.getFileName() + "."
+					+ Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				temp = Files.createFile(candidate);
+			} catch (FileAlreadyExistsException e) {
+				// 名前が衝突した場合は別の名前で作成し直す
+			}
+		}
+		try {
+			PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+			if (view != null && Files.exists(target)) {
+				view.setPermissions(Files.getPosixFilePermissions(target));
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		return temp;
+	}
+
+	/**
+	 * 指定された列の文字列を順に比較する{@link Comparator}を返す<br>
+	 * 列が無いレコードは、その列の値が最も小さいものとして扱う。
+	 * 数値として比較する場合などは{@link Comparator#comparing(java.util.function.Function)}などで生成すること
+	 *
+	 * <pre>
+	 * mapper.sort(in, out, CSVMapper.comparing(2, 0), 256L &lt;&lt; 20);
+	 * mapper.sort(in, out, Comparator.comparingLong(row -&gt; Long.parseLong(row.get(1))), 256L &lt;&lt; 20);
+	 * </pre>
+	 *
+	 * @param columns 比較する列の位置(0始まり)。先に指定した列を優先する
+	 * @return レコードの比較方法
+	 * @throws IllegalArgumentException 列の位置が指定されていない場合、負の値の場合
 	 */
-	private static String inputCharCode;
+	public static Comparator<List<String>> comparing(int... columns) {
+		if (columns.length == 0) {
+			throw new IllegalArgumentException("columns must not be empty");
+		}
+		Comparator<List<String>> comparator = null;
+		for (int column : columns) {
+			if (column < 0) {
+				throw new IllegalArgumentException("column must not be negative: " + column);
+			}
+			Comparator<List<String>> next = Comparator.comparing(row -> column < row.size() ? row.get(column) : null,
+					Comparator.nullsFirst(Comparator.naturalOrder()));
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		return comparator;
+	}
 
 	/**
 	 * リスト内の要素を1レコードとしてCSVファイルに出力する<br>
-	 * 出力時の文字コードはUTF-8
+	 * 出力時の文字コードは設定された文字コード(設定されていない場合はUTF-8)<br>
+	 * 区切り文字・クォート・改行を含む要素のみクォートで囲んで出力する<br>
+	 * 拡張子が「.csv.gz」・「.csv.zip」・「.csv.deflate」の場合は圧縮して出力する
 	 *
 	 * @param file 出力先ファイル
 	 * @param list 出力するリスト
-	 * @param charCode 出力文字コード
 	 * @throws CSVException CSV出力時のエラー
 	 */
-	public static void output(CSVFile file, List<? extends CSVMappable> list, String charCode) throws CSVException {
+	public void write(CSVFile file, List<? extends CSVMappable> list) throws CSVException {
+		write(file, list, charset == null ? StandardCharsets.UTF_8 : charset);
+	}
+
+	private void write(CSVFile file, List<? extends CSVMappable> list, Charset charset) throws CSVException {
 		if (list == null || list.isEmpty()) {
 			return;
 		}
+		createFile(file);
 
+		long start = System.nanoTime();
+		try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(compress(file), charset),
+				CSVWriter.DEFAULT_BUFFER_SIZE, 0, lineSeparator, delimiter, quote)) {
+			writer.writeAll(list);
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+		reportWrite(file, list.size(), start);
+	}
+
+	/**
+	 * リスト内の要素を1レコードとしてCSVファイルに出力する<br>
+	 * レコードを一定の件数ごとに分け、指定された{@link ForkJoinPool}上で並列に文字列化・文字コードへの変換を行い、
+	 * 元の順序でファイルに書き込む。出力する内容は{@link #write(CSVFile, List)}と同じ<br>
+	 * {@link CSVMappable#array4exportCSV()}は複数のスレッドから呼び出すため、実装クラスはスレッドセーフであること<br>
+	 * ※圧縮されたCSVファイルの場合は{@link #write(CSVFile, List)}で出力する
+	 *
+	 * @param file 出力先ファイル
+	 * @param list 出力するリスト
+	 * @param pool 変換に使用するスレッドプール
+	 * @throws CSVException CSV出力時のエラー
+	 */
+	public void writeInParallel(CSVFile file, List<? extends CSVMappable> list, ForkJoinPool pool)
+			throws CSVException {
+		writeInParallel(file, list, charset == null ? StandardCharsets.UTF_8 : charset, pool);
+	}
+
+	/**
+	 * Stream内の要素を1レコードとしてCSVファイルに出力する<br>
+	 * 要素は呼び出し元のスレッドで順に取り出し、変換中のレコードの件数に上限を設けるため、
+	 * 全ての要素をメモリーに保持せずに出力できる。要素が無い場合も空のファイルを作成する
+	 *
+	 * @param file 出力先ファイル
+	 * @param rows 出力するレコード
+	 * @param pool 変換に使用するスレッドプール
+	 * @throws CSVException CSV出力時のエラー
+	 * @see #writeInParallel(CSVFile, List, ForkJoinPool)
+	 */
+	public void writeInParallel(CSVFile file, Stream<? extends CSVMappable> rows, ForkJoinPool pool)
+			throws CSVException {
+		Charset charset = this.charset == null ? StandardCharsets.UTF_8 : this.charset;
+		if (Compression.of(file) != Compression.NONE) {
+			createFile(file);
+			long start = System.nanoTime();
+			long count = 0;
+			try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(compress(file), charset),
+					CSVWriter.DEFAULT_BUFFER_SIZE, 0, lineSeparator, delimiter, quote)) {
+				for (Iterator<? extends CSVMappable> it = rows.iterator(); it.hasNext(); count++) {
+					writer.write(it.next());
+				}
+			} catch (IOException e) {
+				throw new CSVException(e);
+			}
+			reportWrite(file, count, start);
+			return;
+		}
+		writeInParallel(file, rows.iterator(), charset, pool);
+	}
+
+	private void writeInParallel(CSVFile file, List<? extends CSVMappable> list, Charset charset, ForkJoinPool pool)
+			throws CSVException {
+		if (list == null || list.isEmpty()) {
+			return;
+		}
+		if (Compression.of(file) != Compression.NONE) {
+			write(file, list, charset);
+			return;
+		}
+		writeInParallel(file, list.iterator(), charset, pool);
+	}
+
+	private void writeInParallel(CSVFile file, Iterator<? extends CSVMappable> rows, Charset charset,
+			ForkJoinPool pool) throws CSVException {
+		createFile(file);
+		long start = System.nanoTime();
+		long count;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			count = new ParallelCSVWriter(this, charset, pool, ParallelCSVWriter.BATCH_SIZE).write(channel, rows);
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+		reportWrite(file, count, start);
+	}
+
+	/**
+	 * 出力先のファイルを作成する。親フォルダが無い場合はフォルダも作成する
+	 *
+	 * @param file 出力先ファイル
+	 * @throws CSVException ファイルを作成できない場合
+	 */
+	private static void createFile(CSVFile file) throws CSVException {
 		try {
 			//親フォルダが無い場合はフォルダを作成(再帰的に)
-			File parent = file.getParentFile();
+			File parent = file.getAbsoluteFile().getParentFile();
 			if (!parent.exists()) {
 				parent.mkdirs();
 			}
@@ -58,30 +734,139 @@ public abstract class CSVMapper {
 		} catch (IOException e) {
 			throw new CSVException(e);
 		}
+	}
 
-		try (PrintWriter pw = new PrintWriter(
-				new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), charCode)))) {
-			for (CSVMappable c : list) {
-				for (int i = 0; i < c.array4exportCSV().length; i++) {
-					String str = c.array4exportCSV()[i];
-					str = str.replace("\"", "\"\"");
-					if (c.includeLines()) {
-						pw.print("\"");
-					}
-					pw.print(str);
-					if (c.includeLines()) {
-						pw.print("\"");
-					}
-					if (i < c.array4exportCSV().length - 1) {
-						pw.print(",");
-					}
-				}
-				pw.println();
-			}
-			System.out.println("output to " + file.getAbsolutePath());
-		} catch (UnsupportedEncodingException | FileNotFoundException e) {
+	/**
+	 * 出力の計測値を通知する
+	 */
+	private void reportWrite(CSVFile file, long records, long start) {
+		if (metricsListener != CSVMetricsListener.NONE) {
+			metricsListener.onPhase(Phase.WRITE, System.nanoTime() - start);
+			metricsListener.onCount(Counter.RECORDS_WRITTEN, records);
+			metricsListener.onCount(Counter.BYTES_WRITTEN, file.length());
+		}
+		LOGGER.debug("output to {}", file.getAbsolutePath());
+	}
+
+	/**
+	 * 出力先のファイルを開き、拡張子に応じて圧縮する出力ストリームを返す
+	 *
+	 * @param file 出力先ファイル
+	 * @return 出力ストリーム
+	 * @throws IOException ファイルを開けない場合
+	 */
+	private OutputStream compress(CSVFile file) throws IOException {
+		return compress(file, file.toPath());
+	}
+
+	/**
+	 * 指定されたパスに書き込み、出力先のファイルの拡張子に応じて圧縮する出力ストリームを返す
+	 *
+	 * @param file 出力先ファイル(圧縮形式の判定に使用する)
+	 * @param path 書き込むファイルのパス
+	 * @return 出力ストリーム
+	 * @throws IOException ファイルを開けない場合
+	 */
+	private OutputStream compress(CSVFile file, Path path) throws IOException {
+		OutputStream out = new FileOutputStream(path.toFile());
+		try {
+			return Compression.of(file).compress(out, file, compressionPool);
+		} catch (IOException | RuntimeException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return 入出力の文字コード。読み込み時に判定する場合はnull
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @return 区切り文字
+	 */
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * @return クォート
+	 */
+	public char getQuote() {
+		return quote;
+	}
+
+	/**
+	 * @return 出力時のレコードの区切り
+	 */
+	public String getLineSeparator() {
+		return lineSeparator;
+	}
+
+	/**
+	 * @return 文字コードの判定に使用する最大のバイト数
+	 */
+	public int getDetectionSampleSize() {
+		return detectionSampleSize;
+	}
+
+	/**
+	 * @return 変換に失敗したレコードの扱い
+	 */
+	public ErrorPolicy getErrorPolicy() {
+		return errorPolicy;
+	}
+
+	/**
+	 * @return 計測値を通知するリスナー
+	 */
+	public CSVMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * @return 読み込む列。全ての列を読み込む場合はnull
+	 */
+	Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * @return 絞り込む条件。全てのレコードを読み込む場合はnull
+	 */
+	RecordFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * 1回の読み込みで使用する、同じ内容の文字列を共有するキャッシュを生成する
+	 *
+	 * @return 生成したキャッシュ。共有しない場合はnull
+	 */
+	StringDeduplicator newDeduplicator() {
+		return deduplicatedColumns == null ? null : new StringDeduplicator(deduplicatedColumns);
+	}
+
+	/**
+	 * リスト内の要素を1レコードとしてCSVファイルに出力する<br>
+	 * 出力時の文字コードはUTF-8<br>
+	 * 区切り文字・クォート・改行を含む要素のみクォートで囲んで出力する
+	 *
+	 * @param file 出力先ファイル
+	 * @param list 出力するリスト
+	 * @param charCode 出力文字コード
+	 * @throws CSVException CSV出力時のエラー
+	 */
+	public static void output(CSVFile file, List<? extends CSVMappable> list, String charCode) throws CSVException {
+		Charset charset;
+		try {
+			charset = Charset.forName(charCode);
+		} catch (IllegalArgumentException e) {
 			throw new CSVException(e);
 		}
+		SHARED.write(file, list, charset);
 	}
 
 	/**
@@ -97,6 +882,28 @@ public abstract class CSVMapper {
 		output(file, list, inputCharCode == null ? DEFAULT_CHAR_CODE : inputCharCode);
 	}
 
+	/**
+	 * リスト内の要素を1レコードとしてCSVファイルに出力する<br>
+	 * {@link ForkJoinPool#commonPool()}上で並列に文字列化・文字コードへの変換を行う。出力する内容は
+	 * {@link #output(CSVFile, List, String)}と同じ
+	 *
+	 * @param file 出力先ファイル
+	 * @param list 出力するリスト
+	 * @param charCode 出力文字コード
+	 * @throws CSVException CSV出力時のエラー
+	 * @see #writeInParallel(CSVFile, List, ForkJoinPool)
+	 */
+	public static void outputInParallel(CSVFile file, List<? extends CSVMappable> list, String charCode)
+			throws CSVException {
+		Charset charset;
+		try {
+			charset = Charset.forName(charCode);
+		} catch (IllegalArgumentException e) {
+			throw new CSVException(e);
+		}
+		SHARED.writeInParallel(file, list, charset, ForkJoinPool.commonPool());
+	}
+
 	/**
 	 * リスト内の要素を1レコードとしてCSVファイルに出力する<br>
 	 * 出力時の文字コードはUTF-8
@@ -151,145 +958,300 @@ public abstract class CSVMapper {
 	 * @throws CSVException CSV読み込み時のエラー
 	 */
 	public static <E extends CSVMappable> List<E> convertFromCSVFile(CSVFile file, Class<E> clazz) throws CSVException {
+		return SHARED.read(file, clazz);
+	}
+
+	/**
+	 * CSVファイルを複数の範囲に分割し、{@link ForkJoinPool#commonPool()}上で並列に解析して指定されたクラスのリストに変換する<br>
+	 * 変換には {@link CSVMappable#importFromCSV(List)}を使用する
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @param keepOrder ファイル上のレコードの順序を保持する場合はtrue
+	 * @return 指定クラスのインスタンスリスト
+	 * @throws CSVException CSV読み込み時のエラー
+	 * @see #convertFromCSVFileInParallel(CSVFile, Class, boolean, ForkJoinPool)
+	 */
+	public static <E extends CSVMappable> List<E> convertFromCSVFileInParallel(CSVFile file, Class<E> clazz,
+			boolean keepOrder) throws CSVException {
+		return convertFromCSVFileInParallel(file, clazz, keepOrder, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * CSVファイルを複数の範囲に分割し、指定された{@link ForkJoinPool}上で並列に解析して指定されたクラスのリストに変換する<br>
+	 * 分割位置はクォートを考慮してレコードの境界に揃えるため、要素内に改行を含むCSVも読み込める<br>
+	 * 変換には {@link CSVMappable#importFromCSV(List)}を使用するため、実装クラスはスレッドセーフであること<br>
+	 * ※文字コードがUTF-16など、バイト列のまま解析できないものの場合は1スレッドで読み込む
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @param keepOrder ファイル上のレコードの順序を保持する場合はtrue<br>
+	 * falseの場合は解析が完了した範囲から順に結果に追加する
+	 * @param pool 解析に使用するスレッドプール
+	 * @return 指定クラスのインスタンスリスト
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public static <E extends CSVMappable> List<E> convertFromCSVFileInParallel(CSVFile file, Class<E> clazz,
+			boolean keepOrder, ForkJoinPool pool) throws CSVException {
+		return SHARED.readInParallel(file, clazz, keepOrder, pool);
+	}
+
+	/**
+	 * CSVファイルを解析し、列ごとのプリミティブ型の配列で保持する{@link CSVTable}に変換する
+	 *
+	 * @param file CSVファイル
+	 * @param schema 列の定義。列名で指定した場合は1行目をヘッダー行として読み込む
+	 * @return 読み込んだ表
+	 * @throws CSVException CSV読み込み時のエラー
+	 * @see #readTable(CSVFile, CSVSchema)
+	 */
+	public static CSVTable loadTable(CSVFile file, CSVSchema schema) throws CSVException {
+		return SHARED.readTable(file, schema);
+	}
+
+	/**
+	 * CSVファイルを解析し、指定されたクラスの{@link Stream}に変換する<br>
+	 * レコードは要素が要求された時点で1件ずつ読み込まれるため、ファイル全体をメモリに保持しない<br>
+	 * 変換には {@link CSVMappable#importFromCSV(List)}を使用する<br>
+	 * ※ファイルを開いたままにするため、使用後は必ず{@link Stream#close()}を呼ぶこと(try-with-resources推奨)
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param filePath CSVファイルのパス
+	 * @param clazz 変換するクラス
+	 * @return 指定クラスのインスタンスのStream
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public static <E extends CSVMappable> Stream<E> stream(String filePath, Class<E> clazz) throws CSVException {
+		return stream(new CSVFile(filePath), clazz);
+	}
+
+	/**
+	 * CSVファイルを解析し、指定されたクラスの{@link Stream}に変換する<br>
+	 * レコードは要素が要求された時点で1件ずつ読み込まれるため、ファイル全体をメモリに保持しない<br>
+	 * 変換には {@link CSVMappable#importFromCSV(List)}を使用する<br>
+	 * ※ファイルを開いたままにするため、使用後は必ず{@link Stream#close()}を呼ぶこと(try-with-resources推奨)
+	 *
+	 * @param <E> CSVConvertableを実装したクラス
+	 * @param file CSVファイル
+	 * @param clazz 変換するクラス
+	 * @return 指定クラスのインスタンスのStream
+	 * @throws CSVException CSV読み込み時のエラー
+	 */
+	public static <E extends CSVMappable> Stream<E> stream(CSVFile file, Class<E> clazz) throws CSVException {
+		return SHARED.readStream(file, clazz);
+	}
+
+	/**
+	 * レコードを読み込むリーダーを開く<br>
+	 * スナップショットファイルを使用する場合は、有効なスナップショットファイルがあればそれを読み込み、
+	 * 無ければCSVファイルを解析しながらスナップショットファイルを作成する
+	 *
+	 * @param file CSVファイル
+	 * @param mapped バイト列のまま解析できる文字コードの場合にファイルをメモリーマップして読み込む場合はtrue
+	 * @return レコードを読み込むリーダー
+	 * @throws CSVException ファイルを開けない場合
+	 */
+	private RecordReader open(CSVFile file, boolean mapped) throws CSVException {
+		if (!snapshot) {
+			return parse(file, mapped);
+		}
+		Snapshot snapshot = Snapshot.of(file, charset, delimiter, quote);
+		RecordReader reader;
 		try {
-			List<LinkedList<String>> buildList = build(file);
-			List<E> convertedList = new ArrayList<>();
-			for (LinkedList<String> list : buildList) {
-				try {
-					Constructor<E> constructor = clazz.getDeclaredConstructor();
-					constructor.setAccessible(true);
-					E element = constructor.newInstance();
-					element.importFromCSV(list);
-					convertedList.add(element);
-				} catch (RuntimeException e) {
-					System.out.println("skip row: " + list);
-					continue;
-				}
-			}
-			return convertedList;
-		} catch (InstantiationException | InvocationTargetException | NoSuchMethodException e) {
-			throw new CSVException("Class<" + clazz.getName() + "> must have a default Constructor", e);
-		} catch (IllegalAccessException | IOException e) {
+			reader = snapshot.open();
+		} catch (IOException e) {
 			throw new CSVException(e);
 		}
+		if (reader != null) {
+			LOGGER.debug("read snapshot {}", snapshot.path());
+			return reader;
+		}
+		return snapshot.record(parse(file, mapped));
 	}
 
 	/**
-	 * CSVファイルを解析してフィールド配列のリストを生成する
+	 * CSVファイルの文字コードを判定し、レコードを解析するリーダーを開く<br>
+	 * メモリーマップする場合でバイト列のまま解析できる文字コードの場合はファイルをメモリーマップして読み込み、
+	 * それ以外の場合は{@link InputStreamReader}で文字に変換してから読み込む<br>
+	 * 全ての列を文字列に変換する場合は文字に変換してから読み込む方が速いため、メモリーマップは列の指定・絞り込み・
+	 * レコードごとにオブジェクトを生成しない読み込みなど、変換しないフィールドがある場合に使用する<br>
+	 * 文字コードが設定されている場合は判定を行わない
 	 *
 	 * @param file CSVファイル
-	 * @return 生成されたフィールド配列のリスト
-	 * @throws IOException ファイルの入出力に関するエラー
-	 */
-	private static List<LinkedList<String>> build(CSVFile file) throws IOException {
-		inputCharCode = FileCharDetecter.detect(file);
-		if (inputCharCode == null) {
-			inputCharCode = DEFAULT_CHAR_CODE;
-		}
-		try (BufferedReader reader = new BufferedReader(
-				new InputStreamReader(new FileInputStream(file), inputCharCode))) {
-			List<LinkedList<String>> csv = new ArrayList<>();
-			String recordStr;
-			while ((recordStr = buildRecord(reader)) != null) {
-				LinkedList<String> record = new LinkedList<>();
-				splitRecord(recordStr, record);
-				if (!record.isEmpty()) {
-					csv.add(record);
+	 * @param mapped バイト列のまま解析できる文字コードの場合にファイルをメモリーマップして読み込む場合はtrue
+	 * @return レコードを読み込むリーダー
+	 * @throws CSVException ファイルを開けない場合
+	 */
+	private RecordReader parse(CSVFile file, boolean mapped) throws CSVException {
+		Compression compression = Compression.of(file);
+		if (compression != Compression.NONE) {
+			return decompress(file, compression);
+		}
+		Charset charset = this.charset;
+		long offset = 0;
+		InputStream in = null;
+		try {
+			if (charset == null) {
+				long start = System.nanoTime();
+				FileCharDetecter.Result detected = FileCharDetecter.open(file, detectionSampleSize);
+				in = detected.getInput();
+				offset = detected.getBomLength();
+				charset = toCharset(detected);
+				metricsListener.onPhase(Phase.DETECT, System.nanoTime() - start);
+			}
+			if (mapped && ByteRecordReader.supports(charset, delimiter, quote)) {
+				if (in != null) {
+					in.close();
 				}
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				return new MappedRecordReader(channel, charset, offset, channel.size(), MappedRecordReader.WINDOW_SIZE,
+						(byte) delimiter, (byte) quote);
 			}
-			return csv;
+			if (in == null) {
+				in = new FileInputStream(file);
+			}
+			return new CharRecordReader(in, charset, delimiter, quote);
+		} catch (IOException | RuntimeException e) {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			throw e instanceof CSVException ? (CSVException) e : new CSVException(e);
 		}
 	}
 
 	/**
-	 * BufferedReaderから1レコード分のテキストを取り出す。
+	 * 圧縮されたCSVファイルを展開しながら、レコードを解析するリーダーを開く<br>
+	 * 文字コードは展開したバイト列の先頭から判定し、判定に使用したバイト列はそのまま解析に使用する(判定結果はキャッシュされる)。
+	 * メモリーマップできないため、文字コードに関わらず{@link InputStreamReader}で文字に変換してから読み込む
 	 *
-	 * @param reader 行データを取り出すBufferedReader。
-	 * @return 1レコード分のテキスト。
-	 * @throws IOException 入出力エラー
+	 * @param file 圧縮されたCSVファイル
+	 * @param compression 圧縮形式
+	 * @return レコードを読み込むリーダー
+	 * @throws CSVException ファイルを開けない場合、展開できない場合
 	 */
-	private static String buildRecord(BufferedReader reader) throws IOException {
-		String result = reader.readLine();
-		int pos;
-		if (result != null && 0 < result.length() && 0 <= (pos = result.indexOf("\""))) {
-			boolean inString = true;
-			String rawline = result;
-			String newline = null;
-			StringBuffer buff = new StringBuffer(1024);
-			while (true) {
-				while (0 <= (pos = rawline.indexOf("\"", ++pos))) {
-					inString = !inString;
-				}
-				if (inString && (newline = reader.readLine()) != null) {
-					buff.append(rawline);
-					buff.append("\n");
-					pos = -1;
-					rawline = newline;
-					continue;
-				} else {
-					if (inString || 0 < buff.length()) {
-						buff.append(rawline);
-						if (inString) {
-							buff.append("\"");
-						}
-						result = buff.toString();
-					}
-					break;
+	private RecordReader decompress(CSVFile file, Compression compression) throws CSVException {
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			in = compression.decompress(in);
+			Charset charset = this.charset;
+			if (charset == null) {
+				long start = System.nanoTime();
+				FileCharDetecter.Result detected = FileCharDetecter.open(file, in, detectionSampleSize);
+				in = detected.getInput();
+				charset = toCharset(detected);
+				metricsListener.onPhase(Phase.DETECT, System.nanoTime() - start);
+			}
+			return new CharRecordReader(in, charset, delimiter, quote);
+		} catch (IOException | RuntimeException e) {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
 				}
 			}
+			throw e instanceof CSVException ? (CSVException) e : new CSVException(e);
 		}
-		return result;
-	}
-
-	/**
-	 * 1レコード分のテキストを分割してフィールドの配列にする。
-	 *
-	 * @param src 1レコード分のテキストデータ。
-	 * @param dest フィールドの配列の出力先。
-	 */
-	private static void splitRecord(String src, LinkedList<String> dest) {
-		String[] columns = src.split(",", -1);
-		int maxlen = columns.length;
-		int startPos, endPos, columnlen;
-		StringBuffer buff = new StringBuffer(1024);
-		String column;
-		boolean isInString, isEscaped;
-		for (int index = 0; index < maxlen; index++) {
-			column = columns[index];
-			if ((endPos = column.indexOf("\"")) < 0) {
-				dest.addLast(column);
-			} else {
-				isInString = (endPos == 0);
-				isEscaped = false;
-				columnlen = column.length();
-				buff.setLength(0);
-				startPos = (isInString) ? 1 : 0;
-				while (startPos < columnlen) {
-					if (0 <= (endPos = column.indexOf("\"", startPos))) {
-						buff.append((startPos < endPos) ? column.substring(startPos, endPos) : isEscaped ? "\"" : "");
-						isEscaped = !isEscaped;
-						isInString = !isInString;
-						startPos = ++endPos;
-					} else {
-						buff.append(column.substring(startPos));
-						if (isInString && index < maxlen - 1) {
-							column = columns[++index];
-							columnlen = column.length();
-							buff.append(",");
-							startPos = 0;
-						} else {
-							break;
-						}
-					}
-				}
-				dest.addLast(buff.toString());
+	}
+
+	/**
+	 * 圧縮されていないCSVファイルをバイト列のまま解析するための文字コードと、最初のレコードの位置を返す<br>
+	 * 文字コードが設定されていない場合は判定してBOMを読み飛ばした位置を最初のレコードの位置にし、
+	 * 判定にかかった時間を{@link CSVMetricsListener}に通知する
+	 *
+	 * @param file 圧縮されていないCSVファイル
+	 * @return 文字コードと最初のレコードの位置
+	 * @throws CSVException ファイルが読み込めない場合、文字コードがサポートされていない場合
+	 */
+	ByteLayout byteLayout(CSVFile file) throws CSVException {
+		if (charset != null) {
+			return new ByteLayout(charset, 0, ByteRecordReader.supports(charset, delimiter, quote));
+		}
+		long start = System.nanoTime();
+		FileCharDetecter.Result detected = detect(file);
+		Charset charset = toCharset(detected);
+		metricsListener.onPhase(Phase.DETECT, System.nanoTime() - start);
+		return new ByteLayout(charset, detected.getBomLength(), ByteRecordReader.supports(charset, delimiter, quote));
+	}
+
+	/**
+	 * CSVファイルの文字コードを判定する(判定結果はキャッシュされる)
+	 *
+	 * @param file CSVファイル
+	 * @return 判定結果
+	 * @throws CSVException ファイルが読み込めない場合
+	 */
+	FileCharDetecter.Result detect(CSVFile file) throws CSVException {
+		try {
+			return FileCharDetecter.detect(file, detectionSampleSize);
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * CSVファイルを読み込む文字コードを返す<br>
+	 * 文字コードが設定されていない場合は判定する。圧縮されたCSVファイルは展開したバイト列から判定する
+	 *
+	 * @param file CSVファイル
+	 * @return 文字コード
+	 * @throws CSVException ファイルが読み込めない場合
+	 */
+	Charset charsetOf(CSVFile file) throws CSVException {
+		if (charset != null) {
+			return charset;
+		}
+		Compression compression = Compression.of(file);
+		if (compression == Compression.NONE) {
+			return toCharset(detect(file));
+		}
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				in = compression.decompress(in);
+				return toCharset(FileCharDetecter.open(file, in, detectionSampleSize));
+			} finally {
+				in.close();
 			}
+		} catch (IOException e) {
+			throw new CSVException(e);
 		}
 	}
 
 	/**
-	 * 最後に読み込んだCSVファイルの文字コードを返す。
-	 * CSVファイルが一度も読み込まれていない場合はnullを返す。
+	 * 判定結果の文字コードを返す<br>
+	 * 静的メソッドから呼ばれた場合は、最後に読み込んだCSVファイルの文字コードとして保持する
+	 *
+	 * @param detected 文字コードの判定結果
+	 * @return 文字コード。判定できない場合はUTF-8
+	 * @throws CSVException 文字コードがサポートされていない場合
+	 */
+	Charset toCharset(FileCharDetecter.Result detected) throws CSVException {
+		String charCode = detected.getCharCode();
+		if (charCode == null) {
+			charCode = DEFAULT_CHAR_CODE;
+		}
+		if (sharesInputCharCode) {
+			inputCharCode = charCode;
+		}
+		try {
+			return Charset.forName(charCode);
+		} catch (IllegalArgumentException e) {
+			throw new CSVException(e);
+		}
+	}
+
+	/**
+	 * 静的メソッドで最後に読み込んだCSVファイルの文字コードを返す。
+	 * CSVファイルが一度も読み込まれていない場合はnullを返す。<br>
+	 * ※全てのスレッドで共有されるため、複数のスレッドから読み込む場合は{@link #builder()}で文字コードを指定したインスタンスを使用すること
 	 * @return 最後に読み込んだCSVファイルの文字コード
 	 */
 	public static String getInputCharCode() {
@@ -298,7 +1260,7 @@ public abstract class CSVMapper {
 
 	/**
 	 * ファイルがCSVファイルかどうか判定する。<br>
-	 * 判定基準は拡張子が'.csv'となっていること
+	 * 判定基準は拡張子が'.csv'となっていること。圧縮されたCSVファイル('.csv.gz'・'.csv.zip'・'.csv.deflate')も含む
 	 * @param file ファイル
 	 * @return CSVファイルならtrue
 	 */
@@ -311,25 +1273,266 @@ public abstract class CSVMapper {
 			return false;
 		}
 
-		String suffix = getSuffix(file.getName());
-		if (suffix == null) {
-			return false;
+		return Compression.of(file) != null;
+	}
+
+	/**
+	 * {@link #byteLayout(CSVFile)}の結果
+	 */
+	static final class ByteLayout {
+		/** 文字コード */
+		final Charset charset;
+		/** 最初のレコードのファイル上の位置(BOMの長さ) */
+		final long offset;
+		/** 文字コード・区切り文字・クォートがバイト列のまま解析できるものの場合はtrue */
+		final boolean parsable;
+
+		ByteLayout(Charset charset, long offset, boolean parsable) {
+			this.charset = charset;
+			this.offset = offset;
+			this.parsable = parsable;
 		}
-		return suffix.toLowerCase().equals("csv");
 	}
 
 	/**
-	 * ファイル名から拡張子を返します。
-	 * @param fileName ファイル名
-	 * @return ファイルの拡張子
+	 * {@link CSVMapper}のビルダー<br>
+	 * ビルダー自体はスレッドセーフではない
 	 */
-	private static String getSuffix(String fileName) {
-		if (fileName == null)
-			return null;
-		int point = fileName.lastIndexOf(".");
-		if (point != -1) {
-			return fileName.substring(point + 1);
+	public static final class Builder {
+		private Charset charset;
+		private char delimiter = DEFAULT_DELIMITER;
+		private char quote = DEFAULT_QUOTE;
+		private String lineSeparator = System.lineSeparator();
+		private ErrorPolicy errorPolicy = ErrorPolicy.SKIP;
+		private CSVMetricsListener metricsListener = CSVMetricsListener.NONE;
+		private Projection projection;
+		private RecordFilter filter;
+		private int[] deduplicatedColumns;
+		private boolean snapshot;
+		private ForkJoinPool compressionPool;
+		private int detectionSampleSize = FileCharDetecter.DEFAULT_SAMPLE_SIZE;
+
+		private Builder() {
+		}
+
+		private Builder(CSVMapper mapper) {
+			this.charset = mapper.charset;
+			this.delimiter = mapper.delimiter;
+			this.quote = mapper.quote;
+			this.lineSeparator = mapper.lineSeparator;
+			this.errorPolicy = mapper.errorPolicy;
+			this.metricsListener = mapper.metricsListener;
+			this.projection = mapper.projection;
+			this.filter = mapper.filter;
+			this.deduplicatedColumns = mapper.deduplicatedColumns;
+			this.snapshot = mapper.snapshot;
+			this.compressionPool = mapper.compressionPool;
+			this.detectionSampleSize = mapper.detectionSampleSize;
+		}
+
+		/**
+		 * @param charset 入出力の文字コード。nullの場合は読み込み時に判定し、UTF-8で出力する
+		 * @return このビルダー
+		 */
+		public Builder charset(Charset charset) {
+			this.charset = charset;
+			return this;
+		}
+
+		/**
+		 * 文字コードを判定する際に、ファイルの先頭から読み込む最大のバイト数を指定する(既定値は64KB)<br>
+		 * 判定ライブラリが途中で判定を終えた場合はそれ以上読み込まない。
+		 * 判定に使用した範囲がASCII文字のみの場合は判定できず、UTF-8として読み込む
+		 *
+		 * @param detectionSampleSize 判定に使用する最大のバイト数
+		 * @return このビルダー
+		 */
+		public Builder detectionSampleSize(int detectionSampleSize) {
+			this.detectionSampleSize = detectionSampleSize;
+			return this;
+		}
+
+		/**
+		 * @param delimiter 区切り文字
+		 * @return このビルダー
+		 */
+		public Builder delimiter(char delimiter) {
+			this.delimiter = delimiter;
+			return this;
+		}
+
+		/**
+		 * @param quote クォート
+		 * @return このビルダー
+		 */
+		public Builder quote(char quote) {
+			this.quote = quote;
+			return this;
+		}
+
+		/**
+		 * @param lineSeparator 出力時のレコードの区切り
+		 * @return このビルダー
+		 */
+		public Builder lineSeparator(String lineSeparator) {
+			this.lineSeparator = lineSeparator;
+			return this;
+		}
+
+		/**
+		 * @param errorPolicy 変換に失敗したレコードの扱い
+		 * @return このビルダー
+		 */
+		public Builder errorPolicy(ErrorPolicy errorPolicy) {
+			this.errorPolicy = errorPolicy;
+			return this;
+		}
+
+		/**
+		 * @param metricsListener 計測値を通知するリスナー。nullの場合は通知しない
+		 * @return このビルダー
+		 */
+		public Builder metricsListener(CSVMetricsListener metricsListener) {
+			this.metricsListener = metricsListener == null ? CSVMetricsListener.NONE : metricsListener;
+			return this;
+		}
+
+		/**
+		 * 読み込む列を列番号で指定する<br>
+		 * 指定されていない列は内容を文字列に変換せずに読み飛ばし、{@link CSVMappable#importFromCSV(List)}には
+		 * 指定された列だけを指定された順序で渡す({@link CSVColumn#index()}も指定された順序での位置になる)。
+		 * レコードに存在しない列は空文字になる
+		 *
+		 * @param indexes 読み込む列の列番号(0始まり)。空の場合は全ての列を読み込む
+		 * @return このビルダー
+		 * @throws IllegalArgumentException 列番号が負の値または重複している場合
+		 */
+		public Builder columns(int... indexes) {
+			this.projection = indexes == null || indexes.length == 0 ? null : Projection.of(indexes);
+			return this;
+		}
+
+		/**
+		 * 読み込む列をヘッダー行の列名で指定する<br>
+		 * 1行目をヘッダー行として読み込み、それ以降のレコードの指定された列だけを
+		 * {@link #columns(int...)}と同様に指定された順序で{@link CSVMappable#importFromCSV(List)}に渡す
+		 *
+		 * @param names 読み込む列の列名。空の場合は全ての列を読み込む
+		 * @return このビルダー
+		 * @throws IllegalArgumentException 列名がnullを含むまたは重複している場合
+		 */
+		public Builder columns(String... names) {
+			this.projection = names == null || names.length == 0 ? null : Projection.of(names);
+			return this;
+		}
+
+		/**
+		 * 読み込むレコードを絞り込む条件を追加する<br>
+		 * 条件はフィールドを文字列に変換する前にバイト列・文字列上で評価し、条件を満たさないレコードは
+		 * インスタンスの生成や{@link CSVMappable#importFromCSV(List)}の呼び出しを行わずに読み飛ばす。
+		 * 複数回呼び出した場合は全ての条件を満たすレコードのみ読み込む。ヘッダー行は絞り込まない<br>
+		 * 条件に渡す{@link CharSequence}はレコード間で使い回すため、条件の外で保持しないこと
+		 *
+		 * <pre>
+		 * CSVMapper mapper = CSVMapper.builder().where(3, status -&gt; "ACTIVE".contentEquals(status)).build();
+		 * </pre>
+		 *
+		 * @param column 条件を評価する列の位置(0始まり)。{@link #columns(int...)}などで列を指定した場合は指定した順序での位置
+		 * @param predicate 列の内容に対する条件。レコードに存在しない列には空文字を渡す
+		 * @return このビルダー
+		 * @throws IllegalArgumentException 列の位置が負の値の場合、条件がnullの場合
+		 */
+		public Builder where(int column, Predicate<? super CharSequence> predicate) {
+			this.filter = filter == null ? RecordFilter.of(column, predicate) : filter.and(column, predicate);
+			return this;
+		}
+
+		/**
+		 * 指定された列で、同じ内容のフィールドに同じ{@link String}のインスタンスを使用する<br>
+		 * 都道府県や状態など値の種類が少ない列で、読み込んだリストが同じ内容の文字列を大量に保持することを防ぐ。
+		 * 列ごとに固定長のキャッシュを持ち、読み込み元の文字・バイト列のまま検索するため、キャッシュに存在する場合は文字列を生成しない。
+		 * 値の種類が多くキャッシュのヒット率が低い列は、読み込みの途中からキャッシュを使用しなくなる<br>
+		 * キャッシュは1回の読み込み(並列読み込みでは分割した範囲)ごとに生成し、
+		 * ヒット数は{@link CSVMetricsListener.Counter#STRINGS_DEDUPLICATED}で通知する
+		 *
+		 * @param columns 対象の列の位置(0始まり)。{@link #columns(int...)}などで列を指定した場合は指定した順序での位置。
+		 * 空の場合は全ての列、nullの場合は共有しない
+		 * @return このビルダー
+		 * @throws IllegalArgumentException 列の位置が負の値の場合
+		 */
+		public Builder deduplicate(int... columns) {
+			if (columns != null) {
+				for (int column : columns) {
+					if (column < 0) {
+						throw new IllegalArgumentException("column must not be negative: " + column);
+					}
+				}
+				columns = columns.clone();
+			}
+			this.deduplicatedColumns = columns;
+			return this;
+		}
+
+		/**
+		 * 解析済みのレコードをCSVファイルと同じディレクトリのスナップショットファイル(「CSVファイル名.snapshot」)に保持する<br>
+		 * 最初の読み込みでは解析しながら全ての列をスナップショットファイルに書き込み、以降の読み込みでは
+		 * 文字コードの判定と解析を行わずにスナップショットファイルをメモリーマップして読み込む。
+		 * CSVファイルのパス・サイズ・更新日時、文字コード・区切り文字・クォートの設定のいずれかが作成時と異なる場合は
+		 * スナップショットファイルを使用せず、次の読み込みで作り直す<br>
+		 * スナップショットファイルは最後のレコードまで読み込んだ時点で作成するため、
+		 * 途中で閉じた{@link #readStream(CSVFile, Class)}では作成しない。
+		 * 書き込めない場合はスナップショットファイルを使用せずに読み込む。
+		 * {@link #readInParallel(CSVFile, Class, boolean, ForkJoinPool)}では使用しない
+		 *
+		 * @param snapshot スナップショットファイルを使用する場合はtrue
+		 * @return このビルダー
+		 */
+		public Builder snapshot(boolean snapshot) {
+			this.snapshot = snapshot;
+			return this;
+		}
+
+		/**
+		 * gzip形式(拡張子が「.csv.gz」)で出力する際に、一定のサイズのブロックごとに指定されたスレッドプールで並列に圧縮する<br>
+		 * ブロックは独立したgzipのメンバーとして書き込んだ順序で連結するため、通常のgzipと同様に展開できる。
+		 * 大きなファイルの出力で、圧縮が1つのCPUコアの処理速度に律速されることを防ぐ
+		 *
+		 * @param pool 圧縮に使用するスレッドプール。nullの場合は書き込んだスレッドで圧縮する
+		 * @return このビルダー
+		 */
+		public Builder parallelCompression(ForkJoinPool pool) {
+			this.compressionPool = pool;
+			return this;
+		}
+
+		/**
+		 * 設定された内容で{@link CSVMapper}を生成する
+		 *
+		 * @return 生成したインスタンス
+		 * @throws IllegalArgumentException 区切り文字とクォートが同じ場合、改行を指定した場合、
+		 * レコードの区切りが空の場合、変換に失敗したレコードの扱いがnullの場合、文字コードの判定に使用するバイト数が正の値でない場合
+		 */
+		public CSVMapper build() {
+			if (delimiter == quote) {
+				throw new IllegalArgumentException("delimiter and quote must be different: " + delimiter);
+			}
+			if (isLineBreak(delimiter) || isLineBreak(quote)) {
+				throw new IllegalArgumentException("delimiter and quote must not be a line break");
+			}
+			if (lineSeparator == null || lineSeparator.isEmpty()) {
+				throw new IllegalArgumentException("lineSeparator must not be empty");
+			}
+			if (errorPolicy == null) {
+				throw new IllegalArgumentException("errorPolicy must not be null");
+			}
+			if (detectionSampleSize <= 0) {
+				throw new IllegalArgumentException("detectionSampleSize must be positive: " + detectionSampleSize);
+			}
+			return new CSVMapper(this, false);
+		}
+
+		private static boolean isLineBreak(char c) {
+			return c == '\r' || c == '\n';
 		}
-		return fileName;
 	}
 }
@@ -0,0 +1,75 @@
+package jp.natsukishina.csvmapper;
+
+/**
+ * CSVの入出力の計測値を受け取るリスナー<br>
+ * {@link CSVMapper.Builder#metricsListener(CSVMetricsListener)}で設定する。
+ * 計測値はレコードごとではなく、1回の読み込み・出力が終わった時点でまとめて通知する<br>
+ * 並列読み込みでは分割した範囲ごとに別のスレッドから通知するため、実装クラスはスレッドセーフであること<br>
+ * 全てのメソッドは何もしない既定の実装を持つため、必要なメソッドのみ実装すればよい
+ *
+ * @author 417.72KI
+ */
+public interface CSVMetricsListener {
+
+	/**
+	 * 何もしないリスナー。このリスナーが設定されている場合は時間の計測自体を行わない
+	 */
+	CSVMetricsListener NONE = new CSVMetricsListener() {
+	};
+
+	/**
+	 * 計測する処理
+	 */
+	enum Phase {
+		/** 文字コードの判定 */
+		DETECT,
+		/** レコードの区切りの解析(絞り込む条件の評価を含む) */
+		PARSE,
+		/** インスタンスの生成 */
+		INSTANTIATE,
+		/** 要素の文字列への変換と{@link CSVMappable#importFromCSV(java.util.List)}の呼び出し */
+		IMPORT,
+		/** CSVファイルへの出力 */
+		WRITE
+	}
+
+	/**
+	 * 計数する値
+	 */
+	enum Counter {
+		/** 変換したレコード数 */
+		RECORDS_READ,
+		/** 変換に失敗して読み飛ばしたレコード数 */
+		RECORDS_SKIPPED,
+		/** 絞り込む条件を満たさずに読み飛ばしたレコード数 */
+		RECORDS_FILTERED,
+		/** {@link CSVMapper.Builder#deduplicate(int...)}のキャッシュから返した文字列の数 */
+		STRINGS_DEDUPLICATED,
+		/** {@link CSVMapper.Builder#deduplicate(int...)}のキャッシュに存在せず生成した文字列の数(キャッシュを使用しなくなった列を除く) */
+		STRINGS_CREATED,
+		/** 読み込んだバイト数 */
+		BYTES_READ,
+		/** 出力したレコード数 */
+		RECORDS_WRITTEN,
+		/** 出力したバイト数 */
+		BYTES_WRITTEN
+	}
+
+	/**
+	 * 処理にかかった時間を通知する
+	 *
+	 * @param phase 処理
+	 * @param nanos 経過時間(ナノ秒)
+	 */
+	default void onPhase(Phase phase, long nanos) {
+	}
+
+	/**
+	 * 計数した値を通知する
+	 *
+	 * @param counter 計数する値
+	 * @param count 増分
+	 */
+	default void onCount(Counter counter, long count) {
+	}
+}
@@ -0,0 +1,46 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.List;
+
+/**
+ * {@link CSVMappable}を実装したクラスとCSVの1レコードを相互に変換するインターフェース<br>
+ * 注釈処理(csv-mapper-processor)が{@link CSVColumn}を付けたクラスごとに実装クラスを生成し、
+ * {@link java.util.ServiceLoader}で登録する。
+ * 実装クラスが登録されている場合、{@link CSVMapper}はリフレクションの代わりにこれを使用する
+ *
+ * @author 417.72KI
+ *
+ * @param <E> CSVMappableを実装したクラス
+ */
+public interface CSVRowMapper<E extends CSVMappable> {
+
+	/**
+	 * 変換対象のクラスを返す
+	 *
+	 * @return 変換対象のクラス
+	 */
+	Class<E> type();
+
+	/**
+	 * 変換対象のクラスのインスタンスを生成する
+	 *
+	 * @return 生成されたインスタンス
+	 */
+	E newInstance();
+
+	/**
+	 * CSVの1レコードをインスタンスに設定する
+	 *
+	 * @param target 設定先のインスタンス
+	 * @param row インポートされる行
+	 */
+	void importFrom(E target, List<String> row);
+
+	/**
+	 * インスタンスをCSVの1行に出力する要素の配列にする
+	 *
+	 * @param source 出力するインスタンス
+	 * @return 出力する要素の配列
+	 */
+	String[] export(E source);
+}
@@ -0,0 +1,170 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link CSVMapper#readTable(jp.natsukishina.csvmapper.file.CSVFile, CSVSchema)}で読み込む列と型の定義<br>
+ * 列はヘッダー行の列名または列番号で指定する(混在はできない)。インスタンスは不変
+ *
+ * <pre>
+ * CSVSchema schema = CSVSchema.builder()
+ * 		.column("id", CSVSchema.Type.INT)
+ * 		.column("status", CSVSchema.Type.DICTIONARY)
+ * 		.column("price", CSVSchema.Type.DOUBLE)
+ * 		.build();
+ * </pre>
+ *
+ * @author 417.72KI
+ */
+public final class CSVSchema {
+
+	/**
+	 * 列の型と{@link CSVTable}での保持形式
+	 */
+	public enum Type {
+		/** int型の配列で保持する */
+		INT,
+		/** long型の配列で保持する */
+		LONG,
+		/** double型の配列で保持する */
+		DOUBLE,
+		/** ビットセットで保持する("true"の場合のみtrue。大文字小文字は区別しない) */
+		BOOLEAN,
+		/** 全ての行の文字を1つの配列に連結し、行ごとの終了位置と共に保持する */
+		STRING,
+		/** 異なる値ごとに番号を振り、行ごとの番号で保持する(値の種類が少ない列向け) */
+		DICTIONARY
+	}
+
+	/** 列名。列番号で指定した場合はnull */
+	private final String[] names;
+	/** 列番号。列名で指定した場合はnull */
+	private final int[] indexes;
+	private final Type[] types;
+	private final Projection projection;
+
+	private CSVSchema(Builder builder) {
+		this.types = builder.types.toArray(new Type[builder.types.size()]);
+		if (builder.names.isEmpty()) {
+			this.names = null;
+			this.indexes = builder.indexes.stream().mapToInt(Integer::intValue).toArray();
+			this.projection = Projection.of(indexes);
+		} else {
+			this.names = builder.names.toArray(new String[builder.names.size()]);
+			this.indexes = null;
+			this.projection = Projection.of(names);
+		}
+	}
+
+	/**
+	 * @return 空のビルダー
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return 列の数
+	 */
+	public int size() {
+		return types.length;
+	}
+
+	/**
+	 * @param column 列の位置(定義した順序)
+	 * @return 列の型
+	 */
+	public Type getType(int column) {
+		return types[column];
+	}
+
+	/**
+	 * @param column 列の位置(定義した順序)
+	 * @return 列名。列番号で指定した場合はnull
+	 */
+	public String getName(int column) {
+		return names == null ? null : names[column];
+	}
+
+	/**
+	 * @param column 列の位置(定義した順序)
+	 * @return CSV上の列番号。列名で指定した場合は-1
+	 */
+	public int getIndex(int column) {
+		return indexes == null ? -1 : indexes[column];
+	}
+
+	/**
+	 * @return 列名で指定した場合はtrue
+	 */
+	public boolean hasNames() {
+		return names != null;
+	}
+
+	/**
+	 * @return 読み込む列の指定
+	 */
+	Projection projection() {
+		return projection;
+	}
+
+	/**
+	 * {@link CSVSchema}のビルダー<br>
+	 * ビルダー自体はスレッドセーフではない
+	 */
+	public static final class Builder {
+		private final List<String> names = new ArrayList<>();
+		private final List<Integer> indexes = new ArrayList<>();
+		private final List<Type> types = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * ヘッダー行の列名で列を追加する
+		 *
+		 * @param name 列名
+		 * @param type 型
+		 * @return このビルダー
+		 */
+		public Builder column(String name, Type type) {
+			names.add(name);
+			types.add(type);
+			return this;
+		}
+
+		/**
+		 * 列番号で列を追加する
+		 *
+		 * @param index 列番号(0始まり)
+		 * @param type 型
+		 * @return このビルダー
+		 */
+		public Builder column(int index, Type type) {
+			indexes.add(index);
+			types.add(type);
+			return this;
+		}
+
+		/**
+		 * 追加された列で{@link CSVSchema}を生成する
+		 *
+		 * @return 生成したインスタンス
+		 * @throws IllegalArgumentException 列が無い場合、列名と列番号が混在している場合、
+		 * 列が重複している場合、型がnullの場合
+		 */
+		public CSVSchema build() {
+			if (types.isEmpty()) {
+				throw new IllegalArgumentException("schema must have at least one column");
+			}
+			if (!names.isEmpty() && !indexes.isEmpty()) {
+				throw new IllegalArgumentException("columns must be specified either by name or by index");
+			}
+			if (types.contains(null)) {
+				throw new IllegalArgumentException("column type must not be null");
+			}
+			return new CSVSchema(this);
+		}
+	}
+}
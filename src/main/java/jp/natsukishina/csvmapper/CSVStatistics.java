@@ -0,0 +1,78 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 通知された計測値を集計する{@link CSVMetricsListener}<br>
+ * 複数の読み込み・出力や並列読み込みの計測値を合算する。スレッドセーフ
+ *
+ * <pre>
+ * CSVStatistics statistics = new CSVStatistics();
+ * CSVMapper mapper = CSVMapper.builder().deduplicate(2, 5).metricsListener(statistics).build();
+ * List&lt;Order&gt; orders = mapper.read(file, Order.class);
+ * double hitRate = statistics.getDeduplicationHitRate();
+ * </pre>
+ *
+ * @author 417.72KI
+ */
+public final class CSVStatistics implements CSVMetricsListener {
+
+	private final Map<Phase, LongAdder> nanos = new EnumMap<>(Phase.class);
+	private final Map<Counter, LongAdder> counts = new EnumMap<>(Counter.class);
+
+	public CSVStatistics() {
+		for (Phase phase : Phase.values()) {
+			nanos.put(phase, new LongAdder());
+		}
+		for (Counter counter : Counter.values()) {
+			counts.put(counter, new LongAdder());
+		}
+	}
+
+	@Override
+	public void onPhase(Phase phase, long nanos) {
+		this.nanos.get(phase).add(nanos);
+	}
+
+	@Override
+	public void onCount(Counter counter, long count) {
+		counts.get(counter).add(count);
+	}
+
+	/**
+	 * @param phase 処理
+	 * @return 処理にかかった時間の合計(ナノ秒)
+	 */
+	public long getNanos(Phase phase) {
+		return nanos.get(phase).sum();
+	}
+
+	/**
+	 * @param counter 計数する値
+	 * @return 計数した値の合計
+	 */
+	public long getCount(Counter counter) {
+		return counts.get(counter).sum();
+	}
+
+	/**
+	 * {@link CSVMapper.Builder#deduplicate(int...)}のキャッシュのヒット率を返す
+	 *
+	 * @return キャッシュを検索した回数に対するキャッシュから返した回数の割合。検索していない場合は0
+	 */
+	public double getDeduplicationHitRate() {
+		long hits = getCount(Counter.STRINGS_DEDUPLICATED);
+		long total = hits + getCount(Counter.STRINGS_CREATED);
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * 集計した値を全て0に戻す
+	 */
+	public void reset() {
+		nanos.values().forEach(LongAdder::reset);
+		counts.values().forEach(LongAdder::reset);
+	}
+}
@@ -0,0 +1,583 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.csvmapper.CSVSchema.Type;
+
+/**
+ * CSVファイルを列ごとのプリミティブ型の配列として保持する表<br>
+ * {@link CSVMapper#readTable(jp.natsukishina.csvmapper.file.CSVFile, CSVSchema)}で生成する。
+ * 行ごとにインスタンスや文字列のリストを生成しないため、{@link CSVMapper#read(jp.natsukishina.csvmapper.file.CSVFile, Class)}
+ * より少ないメモリーで保持し、列単位で高速に走査できる<br>
+ * 値は{@link #getInt(int, int)}などで行と列の位置を指定して参照し、
+ * 必要な行だけを{@link #getRow(int, Class)}で{@link CSVMappable}に変換できる。インスタンスは不変
+ *
+ * @author 417.72KI
+ */
+public final class CSVTable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CSVTable.class);
+
+	private final CSVSchema schema;
+	private final int size;
+	/** 列ごとの値(int[], long[], double[], BitSet, StringColumn, DictionaryColumn) */
+	private final Object[] columns;
+	/** 列ごとの空のフィールドを示すビットセット */
+	private final BitSet[] empties;
+
+	private CSVTable(CSVSchema schema, int size, Object[] columns, BitSet[] empties) {
+		this.schema = schema;
+		this.size = size;
+		this.columns = columns;
+		this.empties = empties;
+	}
+
+	/**
+	 * @return 行数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return 列の定義
+	 */
+	public CSVSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @param row 行の位置
+	 * @param column 列の位置
+	 * @return フィールドが空、またはレコードに存在しない列の場合はtrue(数値・真偽値の列の値は0・false)
+	 */
+	public boolean isEmpty(int row, int column) {
+		checkRow(row);
+		return empties[column].get(row);
+	}
+
+	/**
+	 * @param row 行の位置
+	 * @param column {@link Type#INT}の列の位置
+	 * @return 値
+	 * @throws IllegalArgumentException 列の型が異なる場合
+	 */
+	public int getInt(int row, int column) {
+		checkRow(row);
+		return ints(column)[row];
+	}
+
+	/**
+	 * @param row 行の位置
+	 * @param column {@link Type#LONG}または{@link Type#INT}の列の位置
+	 * @return 値
+	 * @throws IllegalArgumentException 列の型が異なる場合
+	 */
+	public long getLong(int row, int column) {
+		checkRow(row);
+		Object values = columns[column];
+		if (values instanceof int[]) {
+			return ((int[]) values)[row];
+		}
+		return longs(column)[row];
+	}
+
+	/**
+	 * @param row 行の位置
+	 * @param column {@link Type#DOUBLE}・{@link Type#LONG}・{@link Type#INT}の列の位置
+	 * @return 値
+	 * @throws IllegalArgumentException 列の型が異なる場合
+	 */
+	public double getDouble(int row, int column) {
+		checkRow(row);
+		Object values = columns[column];
+		if (values instanceof int[]) {
+			return ((int[]) values)[row];
+		}
+		if (values instanceof long[]) {
+			return ((long[]) values)[row];
+		}
+		return doubles(column)[row];
+	}
+
+	/**
+	 * @param row 行の位置
+	 * @param column {@link Type#BOOLEAN}の列の位置
+	 * @return 値
+	 * @throws IllegalArgumentException 列の型が異なる場合
+	 */
+	public boolean getBoolean(int row, int column) {
+		checkRow(row);
+		return column(column, Type.BOOLEAN, BitSet.class).get(row);
+	}
+
+	/**
+	 * 値を文字列で返す<br>
+	 * 数値・真偽値の列は変換後の値を文字列にしたもの(空のフィールドは空文字)
+	 *
+	 * @param row 行の位置
+	 * @param column 列の位置
+	 * @return 値
+	 */
+	public String getString(int row, int column) {
+		checkRow(row);
+		Object values = columns[column];
+		if (values instanceof StringColumn) {
+			return ((StringColumn) values).get(row);
+		}
+		if (values instanceof DictionaryColumn) {
+			return ((DictionaryColumn) values).get(row);
+		}
+		if (empties[column].get(row)) {
+			return "";
+		}
+		switch (schema.getType(column)) {
+		case INT:
+			return Integer.toString(((int[]) values)[row]);
+		case LONG:
+			return Long.toString(((long[]) values)[row]);
+		case DOUBLE:
+			return Double.toString(((double[]) values)[row]);
+		default:
+			return Boolean.toString(((BitSet) values).get(row));
+		}
+	}
+
+	/**
+	 * @param row 行の位置
+	 * @param column {@link Type#DICTIONARY}の列の位置
+	 * @return 値の番号({@link #getDictionary(int)}の位置)
+	 * @throws IllegalArgumentException 列の型が異なる場合
+	 */
+	public int getCode(int row, int column) {
+		checkRow(row);
+		return column(column, Type.DICTIONARY, DictionaryColumn.class).codes[row];
+	}
+
+	/**
+	 * @param column {@link Type#DICTIONARY}の列の位置
+	 * @return 列に現れた異なる値のリスト(出現順)
+	 * @throws IllegalArgumentException 列の型が異なる場合
+	 */
+	public List<String> getDictionary(int column) {
+		return Collections.unmodifiableList(Arrays.asList(column(column, Type.DICTIONARY, DictionaryColumn.class).values));
+	}
+
+	/**
+	 * 指定された行を{@link CSVMappable}に変換する<br>
+	 * {@link CSVMappable#importFromCSV(List)}には列の定義の順序で{@link #getString(int, int)}の値を渡す
+	 * ({@link CSVColumn#name()}は列の定義の列名で解決する)
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 * @param row 行の位置
+	 * @param clazz 変換するクラス
+	 * @return 変換されたインスタンス
+	 * @throws CSVException インスタンスを生成できない場合、列名が解決できない場合
+	 */
+	public <E extends CSVMappable> E getRow(int row, Class<E> clazz) throws CSVException {
+		return getRow(row, importer(clazz));
+	}
+
+	/**
+	 * 全ての行を{@link CSVMappable}に変換する
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 * @param clazz 変換するクラス
+	 * @return 変換されたインスタンスのリスト
+	 * @throws CSVException インスタンスを生成できない場合、列名が解決できない場合
+	 * @see #getRow(int, Class)
+	 */
+	public <E extends CSVMappable> List<E> toList(Class<E> clazz) throws CSVException {
+		RowImporter<E> importer = importer(clazz);
+		List<E> list = new ArrayList<>(size);
+		for (int row = 0; row < size; row++) {
+			list.add(getRow(row, importer));
+		}
+		return list;
+	}
+
+	private <E extends CSVMappable> RowImporter<E> importer(Class<E> clazz) throws CSVException {
+		RowImporter<E> importer = new RowImporter<>(clazz);
+		if (importer.requiresHeader()) {
+			if (!schema.hasNames()) {
+				throw new CSVException("columns of the schema have no name to resolve Class<" + clazz.getName() + ">");
+			}
+			List<String> header = new ArrayList<>(schema.size());
+			for (int i = 0; i < schema.size(); i++) {
+				header.add(schema.getName(i));
+			}
+			importer.resolve(header);
+		}
+		return importer;
+	}
+
+	private <E extends CSVMappable> E getRow(int row, RowImporter<E> importer) {
+		checkRow(row);
+		List<String> fields = new ArrayList<>(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			fields.add(getString(row, i));
+		}
+		E element = importer.newInstance();
+		importer.importFrom(element, fields);
+		return element;
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+		}
+	}
+
+	private int[] ints(int column) {
+		return column(column, Type.INT, int[].class);
+	}
+
+	private long[] longs(int column) {
+		return column(column, Type.LONG, long[].class);
+	}
+
+	private double[] doubles(int column) {
+		return column(column, Type.DOUBLE, double[].class);
+	}
+
+	private <T> T column(int column, Type type, Class<T> clazz) {
+		Object values = columns[column];
+		if (!clazz.isInstance(values)) {
+			throw new IllegalArgumentException("column " + column + " is " + schema.getType(column) + ", not " + type);
+		}
+		return clazz.cast(values);
+	}
+
+	/**
+	 * 全ての行の文字を1つの配列に連結して保持する列
+	 */
+	private static final class StringColumn {
+		private final char[] chars;
+		/** 行ごとの終了位置 */
+		private final int[] ends;
+
+		StringColumn(char[] chars, int[] ends) {
+			this.chars = chars;
+			this.ends = ends;
+		}
+
+		String get(int row) {
+			int start = row == 0 ? 0 : ends[row - 1];
+			return start == ends[row] ? "" : new String(chars, start, ends[row] - start);
+		}
+	}
+
+	/**
+	 * 異なる値ごとに番号を振り、行ごとの番号で保持する列
+	 */
+	private static final class DictionaryColumn {
+		private final int[] codes;
+		private final String[] values;
+
+		DictionaryColumn(int[] codes, String[] values) {
+			this.codes = codes;
+			this.values = values;
+		}
+
+		String get(int row) {
+			return values[codes[row]];
+		}
+	}
+
+	/**
+	 * レコードを1件ずつ列ごとの配列に追加し、{@link CSVTable}を生成するクラス<br>
+	 * 1レコード分の値を全て変換してから配列に追加するため、変換に失敗したレコードは表に残らない
+	 */
+	static final class Loader {
+		private final CSVSchema schema;
+		private final CSVMapper.ErrorPolicy errorPolicy;
+		private final Type[] types;
+		private int size;
+		private long skipped;
+
+		private final int[][] ints;
+		private final long[][] longs;
+		private final double[][] doubles;
+		private final BitSet[] booleans;
+		private final BitSet[] empties;
+		/** {@link Type#STRING}の列の連結した文字 */
+		private final char[][] chars;
+		/** {@link Type#STRING}の列の連結した文字数 */
+		private final int[] lengths;
+		/** {@link Type#STRING}の列の行ごとの終了位置、{@link Type#DICTIONARY}の列の行ごとの番号 */
+		private final int[][] offsets;
+		private final Dictionary[] dictionaries;
+
+		/** 変換中のレコードの数値・真偽値 */
+		private final long[] scratch;
+		/** 変換中のレコードの文字列 */
+		private final CharSequence[] texts;
+
+		/**
+		 * @param schema 列の定義
+		 * @param errorPolicy 変換に失敗したレコードの扱い
+		 */
+		Loader(CSVSchema schema, CSVMapper.ErrorPolicy errorPolicy) {
+			this.schema = schema;
+			this.errorPolicy = errorPolicy;
+			int count = schema.size();
+			this.types = new Type[count];
+			this.ints = new int[count][];
+			this.longs = new long[count][];
+			this.doubles = new double[count][];
+			this.booleans = new BitSet[count];
+			this.empties = new BitSet[count];
+			this.chars = new char[count][];
+			this.lengths = new int[count];
+			this.offsets = new int[count][];
+			this.dictionaries = new Dictionary[count];
+			this.scratch = new long[count];
+			this.texts = new CharSequence[count];
+			for (int i = 0; i < count; i++) {
+				Type type = types[i] = schema.getType(i);
+				empties[i] = new BitSet();
+				switch (type) {
+				case INT:
+					ints[i] = new int[64];
+					break;
+				case LONG:
+					longs[i] = new long[64];
+					break;
+				case DOUBLE:
+					doubles[i] = new double[64];
+					break;
+				case BOOLEAN:
+					booleans[i] = new BitSet();
+					break;
+				case STRING:
+					chars[i] = new char[1024];
+					offsets[i] = new int[64];
+					break;
+				default:
+					offsets[i] = new int[64];
+					dictionaries[i] = new Dictionary();
+					break;
+				}
+			}
+		}
+
+		/**
+		 * 1レコードを表に追加する
+		 *
+		 * @param record 列の定義の順序に並んだフィールド
+		 * @return 追加した場合はtrue、変換に失敗して読み飛ばした場合はfalse
+		 * @throws CSVException 変換に失敗し、変換に失敗したレコードの扱いが{@link CSVMapper.ErrorPolicy#FAIL}の場合
+		 */
+		boolean add(List<String> record) throws CSVException {
+			ByteFieldList bytes = record instanceof ByteFieldList ? (ByteFieldList) record : null;
+			try {
+				for (int i = 0; i < types.length; i++) {
+					CharSequence value = i >= record.size() ? "" : bytes != null ? bytes.field(i) : record.get(i);
+					texts[i] = value;
+					if (value.length() == 0) {
+						scratch[i] = 0;
+						continue;
+					}
+					switch (types[i]) {
+					case INT:
+						scratch[i] = ColumnBinding.parseInt(value);
+						break;
+					case LONG:
+						scratch[i] = ColumnBinding.parseLong(value);
+						break;
+					case DOUBLE:
+						scratch[i] = Double.doubleToRawLongBits(Double.parseDouble(value.toString()));
+						break;
+					case BOOLEAN:
+						scratch[i] = ColumnBinding.parseBoolean(value) ? 1 : 0;
+						break;
+					default:
+						break;
+					}
+				}
+			} catch (RuntimeException e) {
+				skipped++;
+				if (errorPolicy == CSVMapper.ErrorPolicy.FAIL) {
+					throw new CSVException("invalid row " + (size + skipped), e);
+				}
+				LOGGER.warn("skip row {}: {}", size + skipped, e.toString());
+				LOGGER.debug("skipped row {}: {}", size + skipped, record, e);
+				return false;
+			}
+			for (int i = 0; i < types.length; i++) {
+				commit(i);
+			}
+			size++;
+			return true;
+		}
+
+		private void commit(int i) {
+			if (texts[i].length() == 0) {
+				empties[i].set(size);
+			}
+			switch (types[i]) {
+			case INT:
+				ints[i] = grow(ints[i]);
+				ints[i][size] = (int) scratch[i];
+				break;
+			case LONG:
+				longs[i] = grow(longs[i]);
+				longs[i][size] = scratch[i];
+				break;
+			case DOUBLE:
+				doubles[i] = grow(doubles[i]);
+				doubles[i][size] = Double.longBitsToDouble(scratch[i]);
+				break;
+			case BOOLEAN:
+				booleans[i].set(size, scratch[i] != 0);
+				break;
+			case STRING:
+				CharSequence text = texts[i];
+				int length = text.length();
+				if (lengths[i] + length > chars[i].length) {
+					chars[i] = Arrays.copyOf(chars[i], Math.max(chars[i].length << 1, lengths[i] + length));
+				}
+				for (int c = 0; c < length; c++) {
+					chars[i][lengths[i]++] = text.charAt(c);
+				}
+				offsets[i] = grow(offsets[i]);
+				offsets[i][size] = lengths[i];
+				break;
+			default:
+				offsets[i] = grow(offsets[i]);
+				offsets[i][size] = dictionaries[i].code(texts[i]);
+				break;
+			}
+			texts[i] = null;
+		}
+
+		private int[] grow(int[] array) {
+			return size < array.length ? array : Arrays.copyOf(array, array.length << 1);
+		}
+
+		private long[] grow(long[] array) {
+			return size < array.length ? array : Arrays.copyOf(array, array.length << 1);
+		}
+
+		private double[] grow(double[] array) {
+			return size < array.length ? array : Arrays.copyOf(array, array.length << 1);
+		}
+
+		/**
+		 * @return 追加したレコード数
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * @return 変換に失敗して読み飛ばしたレコード数
+		 */
+		long skipped() {
+			return skipped;
+		}
+
+		/**
+		 * 追加したレコードで表を生成する(配列は行数に合わせて切り詰める)
+		 *
+		 * @return 生成した表
+		 */
+		CSVTable build() {
+			if (skipped > 0) {
+				LOGGER.info("{} of {} rows skipped", skipped, size + skipped);
+			}
+			Object[] columns = new Object[types.length];
+			for (int i = 0; i < types.length; i++) {
+				switch (types[i]) {
+				case INT:
+					columns[i] = Arrays.copyOf(ints[i], size);
+					break;
+				case LONG:
+					columns[i] = Arrays.copyOf(longs[i], size);
+					break;
+				case DOUBLE:
+					columns[i] = Arrays.copyOf(doubles[i], size);
+					break;
+				case BOOLEAN:
+					columns[i] = booleans[i];
+					break;
+				case STRING:
+					columns[i] = new StringColumn(Arrays.copyOf(chars[i], lengths[i]), Arrays.copyOf(offsets[i], size));
+					break;
+				default:
+					columns[i] = new DictionaryColumn(Arrays.copyOf(offsets[i], size), dictionaries[i].toArray());
+					break;
+				}
+			}
+			return new CSVTable(schema, size, columns, empties);
+		}
+	}
+
+	/**
+	 * 文字列を生成せずに値を検索できる辞書(オープンアドレス法)<br>
+	 * 新しい値が現れた場合のみ文字列を生成する
+	 */
+	private static final class Dictionary {
+		private String[] values = new String[16];
+		private int size;
+		/** 値の番号+1。0は空き */
+		private int[] table = new int[32];
+
+		int code(CharSequence value) {
+			int mask = table.length - 1;
+			for (int i = hash(value) & mask;; i = (i + 1) & mask) {
+				int code = table[i] - 1;
+				if (code < 0) {
+					return add(value, i);
+				}
+				if (values[code].contentEquals(value)) {
+					return code;
+				}
+			}
+		}
+
+		private int add(CharSequence value, int slot) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size << 1);
+			}
+			int code = size++;
+			values[code] = value.toString();
+			table[slot] = code + 1;
+			if (size << 1 > table.length) {
+				rehash();
+			}
+			return code;
+		}
+
+		private void rehash() {
+			table = new int[table.length << 1];
+			int mask = table.length - 1;
+			for (int code = 0; code < size; code++) {
+				int i = hash(values[code]) & mask;
+				while (table[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				table[i] = code + 1;
+			}
+		}
+
+		String[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		private static int hash(CharSequence value) {
+			int h = 0;
+			for (int i = 0, length = value.length(); i < length; i++) {
+				h = 31 * h + value.charAt(i);
+			}
+			return h ^ (h >>> 16);
+		}
+	}
+}
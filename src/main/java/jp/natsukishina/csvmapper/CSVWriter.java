@@ -0,0 +1,248 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * {@link CSVMappable}を1レコードずつCSVとして書き込むクラス<br>
+ * {@link CSVMappable#array4exportCSV()}は1レコードにつき1度だけ呼び出し、
+ * 区切り文字・クォート・改行を含む要素のみをクォートで囲む<br>
+ * 書き込みは再利用するバッファを経由し、指定されたレコード数ごとに出力先をフラッシュする
+ *
+ * @author 417.72KI
+ */
+public class CSVWriter implements Closeable, Flushable {
+
+	/** バッファの大きさの既定値(文字数) */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final Writer writer;
+	private final char delimiter;
+	private final char quote;
+	private final char[] buffer;
+	private final char[] lineSeparator;
+	private final int flushInterval;
+	private int position;
+	private int pendingRows;
+
+	/**
+	 * 指定された文字コードで出力ストリームに書き込む
+	 *
+	 * @param out 出力ストリーム
+	 * @param charset 出力文字コード
+	 */
+	public CSVWriter(OutputStream out, Charset charset) {
+		this(new OutputStreamWriter(out, charset), DEFAULT_BUFFER_SIZE, 0);
+	}
+
+	/**
+	 * 指定された文字コードで出力ストリームに書き込む
+	 *
+	 * @param out 出力ストリーム
+	 * @param charset 出力文字コード
+	 * @param bufferSize バッファの大きさ(文字数)
+	 * @param flushInterval 出力先をフラッシュするレコード数。0以下の場合はバッファが満杯になった時と閉じる時のみ
+	 */
+	public CSVWriter(OutputStream out, Charset charset, int bufferSize, int flushInterval) {
+		this(new OutputStreamWriter(out, charset), bufferSize, flushInterval);
+	}
+
+	/**
+	 * Writerに書き込む
+	 *
+	 * @param writer 出力先
+	 * @param bufferSize バッファの大きさ(文字数)
+	 * @param flushInterval 出力先をフラッシュするレコード数。0以下の場合はバッファが満杯になった時と閉じる時のみ
+	 */
+	public CSVWriter(Writer writer, int bufferSize, int flushInterval) {
+		this(writer, bufferSize, flushInterval, System.lineSeparator());
+	}
+
+	/**
+	 * Writerに書き込む
+	 *
+	 * @param writer 出力先
+	 * @param bufferSize バッファの大きさ(文字数)
+	 * @param flushInterval 出力先をフラッシュするレコード数。0以下の場合はバッファが満杯になった時と閉じる時のみ
+	 * @param lineSeparator レコードの区切り
+	 */
+	public CSVWriter(Writer writer, int bufferSize, int flushInterval, String lineSeparator) {
+		this(writer, bufferSize, flushInterval, lineSeparator, CSVMapper.DEFAULT_DELIMITER, CSVMapper.DEFAULT_QUOTE);
+	}
+
+	/**
+	 * 指定された区切り文字とクォートでWriterに書き込む
+	 *
+	 * @param writer 出力先
+	 * @param bufferSize バッファの大きさ(文字数)
+	 * @param flushInterval 出力先をフラッシュするレコード数。0以下の場合はバッファが満杯になった時と閉じる時のみ
+	 * @param lineSeparator レコードの区切り
+	 * @param delimiter 区切り文字
+	 * @param quote クォート
+	 */
+	public CSVWriter(Writer writer, int bufferSize, int flushInterval, String lineSeparator, char delimiter,
+			char quote) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+		}
+		this.writer = writer;
+		this.delimiter = delimiter;
+		this.quote = quote;
+		this.buffer = new char[bufferSize];
+		this.flushInterval = flushInterval;
+		this.lineSeparator = lineSeparator.toCharArray();
+	}
+
+	/**
+	 * 1レコード書き込む
+	 *
+	 * @param row 書き込むレコード
+	 * @throws IOException 入出力エラー
+	 */
+	public void write(CSVMappable row) throws IOException {
+		writeRecord(row.array4exportCSV());
+	}
+
+	/**
+	 * 要素の配列を1レコードとして書き込む
+	 *
+	 * @param fields 書き込む要素の配列。nullの要素は空文字として書き込む
+	 * @throws IOException 入出力エラー
+	 */
+	public void writeRecord(String[] fields) throws IOException {
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				append(delimiter);
+			}
+			String field = fields[i];
+			if (field != null) {
+				writeField(field);
+			}
+		}
+		for (char c : lineSeparator) {
+			append(c);
+		}
+		if (flushInterval > 0 && ++pendingRows >= flushInterval) {
+			flush();
+		}
+	}
+
+	/**
+	 * 全てのレコードを書き込む
+	 *
+	 * @param rows 書き込むレコード
+	 * @throws IOException 入出力エラー
+	 */
+	public void writeAll(Iterator<? extends CSVMappable> rows) throws IOException {
+		while (rows.hasNext()) {
+			write(rows.next());
+		}
+	}
+
+	/**
+	 * 全てのレコードを書き込む
+	 *
+	 * @param rows 書き込むレコード
+	 * @throws IOException 入出力エラー
+	 */
+	public void writeAll(Iterable<? extends CSVMappable> rows) throws IOException {
+		writeAll(rows.iterator());
+	}
+
+	/**
+	 * 全てのレコードを書き込む
+	 *
+	 * @param rows 書き込むレコード
+	 * @throws IOException 入出力エラー
+	 */
+	public void writeAll(Stream<? extends CSVMappable> rows) throws IOException {
+		writeAll(rows.iterator());
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		writer.flush();
+		pendingRows = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * 要素を書き込む。区切り文字・クォート・改行を含む場合のみクォートで囲み、クォートをエスケープする
+	 */
+	private void writeField(String field) throws IOException {
+		int length = field.length();
+		int special = -1;
+		boolean escape = false;
+		for (int i = 0; i < length; i++) {
+			char c = field.charAt(i);
+			if (c == delimiter || c == '\n' || c == '\r') {
+				special = special < 0 ? i : special;
+			} else if (c == quote) {
+				special = special < 0 ? i : special;
+				escape = true;
+				break;
+			}
+		}
+		if (special < 0) {
+			appendAll(field, 0, length);
+			return;
+		}
+		append(quote);
+		if (escape) {
+			int start = 0;
+			for (int i = special; i < length; i++) {
+				if (field.charAt(i) == quote) {
+					appendAll(field, start, i + 1);
+					append(quote);
+					start = i + 1;
+				}
+			}
+			appendAll(field, start, length);
+		} else {
+			appendAll(field, 0, length);
+		}
+		append(quote);
+	}
+
+	private void append(char c) throws IOException {
+		if (position == buffer.length) {
+			flushBuffer();
+		}
+		buffer[position++] = c;
+	}
+
+	private void appendAll(String s, int start, int end) throws IOException {
+		while (start < end) {
+			if (position == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(end - start, buffer.length - position);
+			s.getChars(start, start + n, buffer, position);
+			position += n;
+			start += n;
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (position > 0) {
+			writer.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
@@ -0,0 +1,402 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link Reader}で文字に変換されたCSVから1レコードずつフィールドのリストを取り出すクラス<br>
+ * 読み込んだ文字は状態遷移によって1文字につき1度だけ走査し、
+ * 読み込み用・フィールド用のバッファはレコード間で使い回す
+ *
+ * @author 417.72KI
+ */
+class CharRecordReader implements RecordReader {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/** クォート外 */
+	private static final int UNQUOTED = 0;
+	/** クォート内 */
+	private static final int QUOTED = 1;
+	/** クォート内でクォートが現れた直後(閉じクォートかエスケープかが未確定) */
+	private static final int QUOTE_IN_QUOTED = 2;
+
+	private final Reader reader;
+	/** 読み込んだバイト数を数える入力ストリーム。Readerから読み込む場合はnull */
+	private final CountingInputStream input;
+	private final char delimiter;
+	private final char quote;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+
+	/** 1レコード分のフィールドの文字を連続して格納するバッファ */
+	private char[] chars = new char[1024];
+	private int length;
+	/** 各フィールドの{@link #chars}上の開始位置と終了位置の組 */
+	private int[] bounds = new int[32];
+	/** 読み込み中のフィールドの開始位置 */
+	private int fieldStart;
+	/** 読み込み中のレコードのフィールド数(読み込み中のフィールドの元の列番号) */
+	private int count;
+	/** 条件の評価に使うビュー。{@link #chars}を拡張するたびに作り直す */
+	private CharBuffer view = CharBuffer.wrap(chars);
+
+	/** 直前に'\r'を読んだため、続く'\n'を読み飛ばす */
+	private boolean skipLF;
+
+	/** 読み込む列。全ての列を読み込む場合はnull */
+	private Projection projection;
+	/** 読み込み中の列の内容を保持する場合はtrue */
+	private boolean keep = true;
+	/** 絞り込む条件。全てのレコードを読み込む場合はnull */
+	private RecordFilter filter;
+	/** 条件を満たさずに読み飛ばしたレコード数 */
+	private long filtered;
+	/** 同じ内容の文字列を共有するキャッシュ。共有しない場合はnull */
+	private StringDeduplicator deduplicator;
+	/** 使い回すフィールドのリスト。使い回さない場合はnull */
+	private ArrayList<String> record;
+
+	/**
+	 * 区切り文字を','、クォートを'"'として読み込む
+	 *
+	 * @param reader CSVのテキストを読み込むReader
+	 */
+	CharRecordReader(Reader reader) {
+		this(reader, CSVMapper.DEFAULT_DELIMITER, CSVMapper.DEFAULT_QUOTE);
+	}
+
+	/**
+	 * @param reader CSVのテキストを読み込むReader
+	 * @param delimiter 区切り文字
+	 * @param quote クォート
+	 */
+	CharRecordReader(Reader reader, char delimiter, char quote) {
+		this(reader, null, delimiter, quote);
+	}
+
+	/**
+	 * 入力ストリームを指定された文字コードで文字に変換して読み込む
+	 *
+	 * @param in CSVを読み込む入力ストリーム
+	 * @param charset 文字コード
+	 * @param delimiter 区切り文字
+	 * @param quote クォート
+	 */
+	CharRecordReader(InputStream in, Charset charset, char delimiter, char quote) {
+		this(new CountingInputStream(in), charset, delimiter, quote);
+	}
+
+	private CharRecordReader(CountingInputStream in, Charset charset, char delimiter, char quote) {
+		this(new InputStreamReader(in, charset), in, delimiter, quote);
+	}
+
+	private CharRecordReader(Reader reader, CountingInputStream input, char delimiter, char quote) {
+		this.reader = reader;
+		this.input = input;
+		this.delimiter = delimiter;
+		this.quote = quote;
+	}
+
+	@Override
+	public List<String> readRecord() throws IOException {
+		while (nextRecord()) {
+			if (filter == null || accept()) {
+				return toList();
+			}
+			filtered++;
+		}
+		return null;
+	}
+
+	/**
+	 * 次の1レコードを読み込み、フィールドの範囲を{@link #bounds}に格納する(文字列には変換しない)
+	 *
+	 * @return 読み込めた場合はtrue、これ以上レコードが無い場合はfalse
+	 * @throws IOException 入出力エラー
+	 */
+	@SuppressWarnings("fallthrough")
+	private boolean nextRecord() throws IOException {
+		boolean started = false;
+		int state = UNQUOTED;
+		while (true) {
+			if (position >= limit && !fill()) {
+				if (!started) {
+					return false;
+				}
+				endField();
+				return true;
+			}
+			char c = buffer[position++];
+			if (skipLF) {
+				skipLF = false;
+				if (c == '\n') {
+					continue;
+				}
+			}
+			if (!started) {
+				started = true;
+				startRecord();
+			}
+			switch (state) {
+			case QUOTED:
+				if (c == quote) {
+					state = QUOTE_IN_QUOTED;
+				} else if (c == '\r') {
+					if (keep) {
+						append('\n');
+					}
+					skipLF = true;
+				} else if (keep) {
+					append(c);
+				}
+				break;
+			case QUOTE_IN_QUOTED:
+				if (c == quote) {
+					if (keep) {
+						append(quote);
+					}
+					state = QUOTED;
+					break;
+				}
+				state = UNQUOTED;
+				// fall through
+			default:
+				if (c == delimiter) {
+					endField();
+				} else if (c == quote) {
+					state = QUOTED;
+				} else if (c == '\n') {
+					endField();
+					return true;
+				} else if (c == '\r') {
+					skipLF = true;
+					endField();
+					return true;
+				} else if (keep) {
+					append(c);
+				}
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void project(Projection projection) {
+		this.projection = projection;
+		if (projection != null && bounds.length < projection.size() << 1) {
+			bounds = new int[projection.size() << 1];
+		}
+	}
+
+	@Override
+	public void filter(RecordFilter filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public long recordsFiltered() {
+		return filtered;
+	}
+
+	@Override
+	public void deduplicate(StringDeduplicator deduplicator) {
+		this.deduplicator = deduplicator;
+	}
+
+	@Override
+	public void reuse() {
+		if (record == null) {
+			record = new ArrayList<>();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * 文字への変換で先読みしたバイトも含む
+	 */
+	@Override
+	public long bytesRead() {
+		return input == null ? -1 : input.count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * 読み込み用バッファを補充する
+	 *
+	 * @return 補充できた場合はtrue、ストリームの終端に達した場合はfalse
+	 * @throws IOException 入出力エラー
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		do {
+			n = reader.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		position = 0;
+		limit = Math.max(n, 0);
+		return n > 0;
+	}
+
+	private void append(char c) {
+		if (length == chars.length) {
+			chars = Arrays.copyOf(chars, length << 1);
+			view = CharBuffer.wrap(chars);
+		}
+		chars[length++] = c;
+	}
+
+	/**
+	 * レコードの読み込みを開始する<br>
+	 * 列が指定されている場合は、全ての列を空のフィールドで初期化する(レコードに存在しない列は空文字になる)
+	 */
+	private void startRecord() {
+		length = 0;
+		fieldStart = 0;
+		count = 0;
+		if (projection == null) {
+			keep = true;
+			return;
+		}
+		keep = projection.target(0) >= 0;
+		Arrays.fill(bounds, 0, projection.size() << 1, 0);
+	}
+
+	/**
+	 * 読み込み中のフィールドの範囲を格納する。列が指定されている場合は、指定された列のみ読み込み後の位置に格納する
+	 */
+	private void endField() {
+		int i = -1;
+		if (projection == null) {
+			i = count << 1;
+			if (i == bounds.length) {
+				bounds = Arrays.copyOf(bounds, i << 1);
+			}
+		} else if (keep) {
+			i = projection.target(count) << 1;
+		}
+		if (i >= 0) {
+			bounds[i] = fieldStart;
+			bounds[i + 1] = length;
+		}
+		fieldStart = length;
+		count++;
+		keep = projection == null || projection.target(count) >= 0;
+	}
+
+	/**
+	 * @return 読み込んだレコードのフィールドの数
+	 */
+	private int size() {
+		return projection == null ? count : projection.size();
+	}
+
+	/**
+	 * 読み込んだレコードが全ての条件を満たすかを判定する
+	 */
+	private boolean accept() {
+		for (int i = 0, n = filter.size(); i < n; i++) {
+			int column = filter.column(i);
+			CharSequence value;
+			if (column < size()) {
+				view.clear();
+				view.limit(bounds[(column << 1) + 1]);
+				view.position(bounds[column << 1]);
+				value = view;
+			} else {
+				value = "";
+			}
+			if (!filter.test(i, value)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 読み込んだレコードのフィールドを文字列に変換する<br>
+	 * 列が指定されている場合は、指定された列の数の固定長のリストを返す
+	 */
+	private List<String> toList() {
+		int size = size();
+		if (record != null) {
+			record.clear();
+			for (int i = 0; i < size; i++) {
+				record.add(field(i));
+			}
+			return record;
+		}
+		if (projection != null) {
+			String[] values = new String[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = field(i);
+			}
+			return Arrays.asList(values);
+		}
+		List<String> record = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			record.add(field(i));
+		}
+		return record;
+	}
+
+	private String field(int index) {
+		int start = bounds[index << 1];
+		int end = bounds[(index << 1) + 1];
+		if (start == end) {
+			return "";
+		}
+		if (deduplicator != null) {
+			return deduplicator.get(index, chars, start, end);
+		}
+		return new String(chars, start, end - start);
+	}
+
+	/**
+	 * 読み込んだバイト数を数える入力ストリーム
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package jp.natsukishina.csvmapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * {@link CSVColumn}で指定されたフィールドと列の対応付けをクラスごとに保持するクラス<br>
+ * フィールドへのアクセスは{@link MethodHandle}としてクラスごとに1度だけ解決し、
+ * プリミティブ型のフィールドには文字列やラッパー型を経由せずに値を設定する
+ *
+ * @author 417.72KI
+ */
+final class ColumnBinding {
+
+	private static final ClassValue<ColumnBinding> CACHE = new ClassValue<ColumnBinding>() {
+		@Override
+		protected ColumnBinding computeValue(Class<?> type) {
+			return new ColumnBinding(type);
+		}
+	};
+
+	/**
+	 * 指定されたクラスの対応付けを返す
+	 *
+	 * @param clazz 対象のクラス
+	 * @return 対応付け。{@link CSVColumn}が付いたフィールドが無い場合は空の対応付け
+	 * @throws CSVException 対応していない型のフィールドに{@link CSVColumn}が付いている場合
+	 */
+	static ColumnBinding of(Class<?> clazz) throws CSVException {
+		return CACHE.get(clazz);
+	}
+
+	/**
+	 * 指定されたクラスが{@link CSVMappable#importFromCSV(List)}を実装せず、
+	 * {@link CSVColumn}による対応付けで読み込むかを判定する
+	 *
+	 * @param clazz 対象のクラス
+	 * @return 対応付けで読み込む場合はtrue
+	 */
+	static boolean usesDefaultImport(Class<?> clazz) {
+		try {
+			return clazz.getMethod("importFromCSV", List.class).isDefault();
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private final Class<?> clazz;
+	/** 列の対応付け。スーパークラスのフィールドから順に、同じクラスのフィールドは列名の順に並べる */
+	private final Column[] columns;
+	/**
+	 * 出力する際の各列の位置。まだ決めていない場合はnull<br>
+	 * 同じインスタンスを複数のスレッドで共有するため、全ての要素を設定した配列をvolatileで公開する
+	 */
+	private volatile int[] slots;
+
+	private ColumnBinding(Class<?> clazz) throws CSVException {
+		this.clazz = clazz;
+		List<Class<?>> hierarchy = new ArrayList<>();
+		for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+			hierarchy.add(0, c);
+		}
+		List<Column> columns = new ArrayList<>();
+		for (Class<?> c : hierarchy) {
+			List<Column> declared = new ArrayList<>();
+			for (Field field : c.getDeclaredFields()) {
+				CSVColumn annotation = field.getAnnotation(CSVColumn.class);
+				if (annotation == null || Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				declared.add(Column.of(field, annotation));
+			}
+			// getDeclaredFields()の順序は規定されていないため、列名の順に並べる
+			declared.sort(Comparator.comparing(column -> column.name));
+			columns.addAll(declared);
+		}
+		this.columns = columns.toArray(new Column[columns.size()]);
+	}
+
+	private ColumnBinding(Class<?> clazz, Column[] columns) {
+		this.clazz = clazz;
+		this.columns = columns;
+	}
+
+	/**
+	 * @return {@link CSVColumn}が付いたフィールドが無い場合はtrue
+	 */
+	boolean isEmpty() {
+		return columns.length == 0;
+	}
+
+	/**
+	 * @return 列番号が省略され、ヘッダー行から列番号を決める必要がある列がある場合はtrue
+	 */
+	boolean requiresHeader() {
+		for (Column column : columns) {
+			if (column.index < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * ヘッダー行の列名から列番号を決めた対応付けを返す
+	 *
+	 * @param header ヘッダー行
+	 * @return 列番号が全て決まった対応付け
+	 * @throws CSVException ヘッダー行に存在しない列名が指定されている場合
+	 */
+	ColumnBinding resolve(List<String> header) throws CSVException {
+		Column[] resolved = new Column[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			Column column = columns[i];
+			if (column.index < 0) {
+				int index = header.indexOf(column.name);
+				if (index < 0) {
+					throw new CSVException("column \"" + column.name + "\" of Class<" + clazz.getName()
+							+ "> is not found in header " + header);
+				}
+				column = column.withIndex(index);
+			}
+			resolved[i] = column;
+		}
+		return new ColumnBinding(clazz, resolved);
+	}
+
+	/**
+	 * 1レコード分のフィールドをインスタンスに設定する
+	 *
+	 * @param target 設定先のインスタンス
+	 * @param row 1レコード分のフィールド
+	 * @throws CSVException 対応付けが無い、または列番号が決まっていない場合
+	 * @throws RuntimeException 値の変換に失敗した場合
+	 */
+	void importFrom(Object target, List<String> row) throws CSVException {
+		if (isEmpty()) {
+			throw new CSVException("Class<" + clazz.getName() + "> has no @CSVColumn field");
+		}
+		ByteFieldList bytes = row instanceof ByteFieldList ? (ByteFieldList) row : null;
+		for (Column column : columns) {
+			if (column.index < 0) {
+				throw new CSVException("column index of \"" + column.name + "\" is not resolved");
+			}
+			CharSequence value = bytes != null ? bytes.field(column.index) : row.get(column.index);
+			try {
+				column.set(target, value);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new CSVException(e);
+			}
+		}
+	}
+
+	/**
+	 * インスタンスのフィールドを出力する要素の配列にする
+	 *
+	 * @param target 出力するインスタンス
+	 * @return 出力する要素の配列。nullのフィールドは空文字
+	 * @throws CSVException 対応付けが無い場合
+	 */
+	String[] export(Object target) throws CSVException {
+		if (isEmpty()) {
+			throw new CSVException("Class<" + clazz.getName() + "> has no @CSVColumn field");
+		}
+		int[] slots = slots();
+		String[] array = new String[size(slots)];
+		Arrays.fill(array, "");
+		for (int i = 0; i < columns.length; i++) {
+			Column column = columns[i];
+			try {
+				String value = column.get(target);
+				array[slots[i]] = value == null ? "" : value;
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new CSVException(e);
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * 出力する際の各列の位置を返す<br>
+	 * 列番号を指定した列はその位置に、列番号を省略した列は列番号を指定した列の後に{@link #columns}の順に並べる
+	 *
+	 * @return 各列の位置
+	 * @throws CSVException 同じ列番号が複数のフィールドに指定されている場合
+	 */
+	private int[] slots() throws CSVException {
+		int[] slots = this.slots;
+		if (slots != null) {
+			return slots;
+		}
+		slots = new int[columns.length];
+		Set<Integer> used = new HashSet<>();
+		int next = 0;
+		for (int i = 0; i < columns.length; i++) {
+			int index = columns[i].index;
+			if (index < 0) {
+				continue;
+			}
+			if (!used.add(index)) {
+				throw new CSVException("column index " + index + " of Class<" + clazz.getName()
+						+ "> is specified for more than one field");
+			}
+			slots[i] = index;
+			next = Math.max(next, index + 1);
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].index < 0) {
+				slots[i] = next++;
+			}
+		}
+		return this.slots = slots;
+	}
+
+	private static int size(int[] slots) {
+		int size = 0;
+		for (int slot : slots) {
+			size = Math.max(size, slot + 1);
+		}
+		return size;
+	}
+
+	/**
+	 * 文字列をlongに変換する<br>
+	 * {@link Long#parseLong(String)}と同じ規則で、文字列を生成せずに変換する
+	 *
+	 * @param s 変換する文字列
+	 * @return 変換された値
+	 * @throws NumberFormatException 変換できない場合
+	 */
+	static long parseLong(CharSequence s) throws NumberFormatException {
+		int length = s.length();
+		if (length == 0) {
+			throw new NumberFormatException("empty String");
+		}
+		int i = 0;
+		boolean negative = false;
+		char first = s.charAt(0);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			if (++i == length) {
+				throw new NumberFormatException("For input string: \"" + s + "\"");
+			}
+		}
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long multmin = limit / 10;
+		long result = 0;
+		for (; i < length; i++) {
+			int digit = Character.digit(s.charAt(i), 10);
+			if (digit < 0 || result < multmin) {
+				throw new NumberFormatException("For input string: \"" + s + "\"");
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw new NumberFormatException("For input string: \"" + s + "\"");
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * 文字列をintに変換する<br>
+	 * {@link Integer#parseInt(String)}と同じ規則で、文字列を生成せずに変換する
+	 *
+	 * @param s 変換する文字列
+	 * @return 変換された値
+	 * @throws NumberFormatException 変換できない場合
+	 */
+	static int parseInt(CharSequence s) throws NumberFormatException {
+		long value = parseLong(s);
+		if (value < Integer.MIN_VALUE || Integer.MAX_VALUE < value) {
+			throw new NumberFormatException("Value out of range. Value:\"" + s + "\"");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * 文字列をbooleanに変換する<br>
+	 * {@link Boolean#parseBoolean(String)}と同じ規則で、文字列を生成せずに変換する
+	 *
+	 * @param s 変換する文字列
+	 * @return "true"(大文字小文字は区別しない)の場合はtrue
+	 */
+	static boolean parseBoolean(CharSequence s) {
+		if (s.length() != 4) {
+			return false;
+		}
+		return Character.toLowerCase(s.charAt(0)) == 't' && Character.toLowerCase(s.charAt(1)) == 'r'
+				&& Character.toLowerCase(s.charAt(2)) == 'u' && Character.toLowerCase(s.charAt(3)) == 'e';
+	}
+
+	/**
+	 * 1つのフィールドと列の対応付け
+	 */
+	private abstract static class Column {
+		final int index;
+		final String name;
+		final MethodHandle setter;
+		final MethodHandle getter;
+
+		Column(int index, String name, MethodHandle setter, MethodHandle getter) {
+			this.index = index;
+			this.name = name;
+			this.setter = setter;
+			this.getter = getter;
+		}
+
+		static Column of(Field field, CSVColumn annotation) throws CSVException {
+			int index = annotation.index();
+			String name = annotation.name().isEmpty() ? field.getName() : annotation.name();
+			if (index < 0 && annotation.name().isEmpty()) {
+				throw new CSVException("@CSVColumn of " + field + " must specify index or name");
+			}
+			Class<?> type = field.getType();
+			MethodHandle setter;
+			MethodHandle getter;
+			try {
+				field.setAccessible(true);
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				setter = lookup.unreflectSetter(field);
+				getter = lookup.unreflectGetter(field);
+			} catch (IllegalAccessException e) {
+				throw new CSVException(e);
+			}
+			if (type.isPrimitive()) {
+				setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+				getter = getter.asType(MethodType.methodType(type, Object.class));
+				if (type == int.class) {
+					return new IntColumn(index, name, setter, getter);
+				}
+				if (type == long.class) {
+					return new LongColumn(index, name, setter, getter);
+				}
+				if (type == double.class) {
+					return new DoubleColumn(index, name, setter, getter);
+				}
+				if (type == boolean.class) {
+					return new BooleanColumn(index, name, setter, getter);
+				}
+			} else {
+				setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+				getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+				Function<CharSequence, Object> parser = null;
+				Function<Object, String> formatter = String::valueOf;
+				if (type == String.class) {
+					parser = CharSequence::toString;
+				} else if (type == Integer.class) {
+					parser = s -> parseInt(s);
+				} else if (type == Long.class) {
+					parser = s -> parseLong(s);
+				} else if (type == Double.class) {
+					parser = s -> Double.parseDouble(s.toString());
+				} else if (type == Boolean.class) {
+					parser = s -> parseBoolean(s);
+				} else if (type == BigDecimal.class) {
+					parser = s -> new BigDecimal(s.toString());
+					formatter = v -> ((BigDecimal) v).toPlainString();
+				} else if (type == LocalDate.class) {
+					DateTimeFormatter format = annotation.format().isEmpty() ? DateTimeFormatter.ISO_LOCAL_DATE
+							: DateTimeFormatter.ofPattern(annotation.format());
+					parser = s -> LocalDate.parse(s, format);
+					formatter = v -> format.format((LocalDate) v);
+				}
+				if (parser != null) {
+					return new ObjectColumn(index, name, setter, getter, type == String.class, parser, formatter);
+				}
+			}
+			throw new CSVException("type of " + field + " is not supported by @CSVColumn");
+		}
+
+		abstract Column withIndex(int index);
+
+		abstract void set(Object target, CharSequence value) throws Throwable;
+
+		abstract String get(Object target) throws Throwable;
+	}
+
+	private static final class IntColumn extends Column {
+		IntColumn(int index, String name, MethodHandle setter, MethodHandle getter) {
+			super(index, name, setter, getter);
+		}
+
+		@Override
+		Column withIndex(int index) {
+			return new IntColumn(index, name, setter, getter);
+		}
+
+		@Override
+		void set(Object target, CharSequence value) throws Throwable {
+			setter.invokeExact(target, value.length() == 0 ? 0 : parseInt(value));
+		}
+
+		@Override
+		String get(Object target) throws Throwable {
+			return Integer.toString((int) getter.invokeExact(target));
+		}
+	}
+
+	private static final class LongColumn extends Column {
+		LongColumn(int index, String name, MethodHandle setter, MethodHandle getter) {
+			super(index, name, setter, getter);
+		}
+
+		@Override
+		Column withIndex(int index) {
+			return new LongColumn(index, name, setter, getter);
+		}
+
+		@Override
+		void set(Object target, CharSequence value) throws Throwable {
+			setter.invokeExact(target, value.length() == 0 ? 0L : parseLong(value));
+		}
+
+		@Override
+		String get(Object target) throws Throwable {
+			return Long.toString((long) getter.invokeExact(target));
+		}
+	}
+
+	private static final class DoubleColumn extends Column {
+		DoubleColumn(int index, String name, MethodHandle setter, MethodHandle getter) {
+			super(index, name, setter, getter);
+		}
+
+		@Override
+		Column withIndex(int index) {
+			return new DoubleColumn(index, name, setter, getter);
+		}
+
+		@Override
+		void set(Object target, CharSequence value) throws Throwable {
+			setter.invokeExact(target, value.length() == 0 ? 0d : Double.parseDouble(value.toString()));
+		}
+
+		@Override
+		String get(Object target) throws Throwable {
+			return Double.toString((double) getter.invokeExact(target));
+		}
+	}
+
+	private static final class BooleanColumn extends Column {
+		BooleanColumn(int index, String name, MethodHandle setter, MethodHandle getter) {
+			super(index, name, setter, getter);
+		}
+
+		@Override
+		Column withIndex(int index) {
+			return new BooleanColumn(index, name, setter, getter);
+		}
+
+		@Override
+		void set(Object target, CharSequence value) throws Throwable {
+			setter.invokeExact(target, parseBoolean(value));
+		}
+
+		@Override
+		String get(Object target) throws Throwable {
+			return Boolean.toString((boolean) getter.invokeExact(target));
+		}
+	}
+
+	private static final class ObjectColumn extends Column {
+		private final boolean string;
+		private final Function<CharSequence, Object> parser;
+		private final Function<Object, String> formatter;
+
+		ObjectColumn(int index, String name, MethodHandle setter, MethodHandle getter, boolean string,
+				Function<CharSequence, Object> parser, Function<Object, String> formatter) {
+			super(index, name, setter, getter);
+			this.string = string;
+			this.parser = parser;
+			this.formatter = formatter;
+		}
+
+		@Override
+		Column withIndex(int index) {
+			return new ObjectColumn(index, name, setter, getter, string, parser, formatter);
+		}
+
+		@Override
+		void set(Object target, CharSequence value) throws Throwable {
+			setter.invokeExact(target, !string && value.length() == 0 ? null : parser.apply(value));
+		}
+
+		@Override
+		String get(Object target) throws Throwable {
+			Object value = getter.invokeExact(target);
+			return value == null ? null : formatter.apply(value);
+		}
+	}
+}
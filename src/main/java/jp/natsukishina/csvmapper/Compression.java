@@ -0,0 +1,119 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * CSVファイルの圧縮形式<br>
+ * ファイル名の末尾の拡張子(「.csv.gz」・「.csv.zip」・「.csv.deflate」)で判定し、
+ * 読み込み・書き込みの入出力ストリームを展開・圧縮するストリームで包む
+ *
+ * @author 417.72KI
+ */
+enum Compression {
+	/** 圧縮しない(「.csv」) */
+	NONE(""),
+	/** gzip形式(「.csv.gz」)。連結された複数のメンバーも続けて読み込む */
+	GZIP(".gz"),
+	/** zip形式(「.csv.zip」)。読み込み時は拡張子が「.csv」の最初のエントリーを読み込む */
+	ZIP(".zip"),
+	/** zlib形式(「.csv.deflate」) */
+	DEFLATE(".deflate");
+
+	/** 展開・圧縮するストリームのバッファーのサイズ */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String CSV_SUFFIX = ".csv";
+
+	private final String suffix;
+
+	private Compression(String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * ファイル名の拡張子から圧縮形式を判定する
+	 *
+	 * @param file ファイル
+	 * @return 圧縮形式。CSVファイルでない場合はnull
+	 */
+	static Compression of(File file) {
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		for (Compression compression : values()) {
+			if (compression != NONE && name.endsWith(CSV_SUFFIX + compression.suffix)) {
+				return compression;
+			}
+		}
+		return name.endsWith(CSV_SUFFIX) ? NONE : null;
+	}
+
+	/**
+	 * 圧縮されたデータを展開する入力ストリームを返す
+	 *
+	 * @param in 圧縮されたデータの入力ストリーム
+	 * @return 展開したデータを読み込む入力ストリーム。閉じると{@code in}も閉じる
+	 * @throws IOException 圧縮形式が不正な場合、zipにCSVファイルのエントリーが無い場合
+	 */
+	InputStream decompress(InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		case DEFLATE:
+			return new InflaterInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		case ZIP:
+			ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				if (!entry.isDirectory() && entry.getName().toLowerCase(Locale.ROOT).endsWith(CSV_SUFFIX)) {
+					return zip;
+				}
+			}
+			zip.close();
+			throw new IOException("zip file has no CSV entry");
+		default:
+			return in;
+		}
+	}
+
+	/**
+	 * 書き込んだデータを圧縮する出力ストリームを返す<br>
+	 * gzip形式でスレッドプールが指定された場合は、{@link ParallelGZIPOutputStream}で並列に圧縮する
+	 *
+	 * @param out 圧縮したデータの出力先
+	 * @param file 出力先のファイル(zipのエントリー名に使用する)
+	 * @param pool 並列に圧縮するスレッドプール。nullの場合は書き込んだスレッドで圧縮する
+	 * @return 圧縮する出力ストリーム。閉じると{@code out}も閉じる
+	 * @throws IOException 書き込みに失敗した場合
+	 */
+	OutputStream compress(OutputStream out, File file, ForkJoinPool pool) throws IOException {
+		switch (this) {
+		case GZIP:
+			if (pool != null) {
+				return new ParallelGZIPOutputStream(out, pool, ParallelGZIPOutputStream.BLOCK_SIZE);
+			}
+			return new GZIPOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+		case DEFLATE:
+			return new DeflaterOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		case ZIP:
+			ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+			String name = file.getName();
+			zip.putNextEntry(new ZipEntry(name.substring(0, name.length() - suffix.length())));
+			return zip;
+		default:
+			return out;
+		}
+	}
+}
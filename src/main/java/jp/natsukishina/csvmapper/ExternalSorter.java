@@ -0,0 +1,432 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * メモリーに収まらない大きさのCSVファイルを並べ替えるクラス(外部マージソート)<br>
+ * レコードをメモリーの上限に達するまで読み込んで1つのランとし、{@link ForkJoinPool}上で並べ替えて
+ * 一時ファイルに書き込む。その間に呼び出し元のスレッドは次のランを読み込む。
+ * 全てのランを書き込んだ後、ランの先頭のレコードをヒープに入れて順に取り出す(k-wayマージ)<br>
+ * 一時ファイルにはレコードをフィールド数とフィールドごとのUTF-8のバイト数(可変長整数)に続けて、フィールドのバイト列で書き込む<br>
+ * 比較結果が等しいレコードは元の順序を保つ(安定ソート)。入力全体が1つのランに収まる場合は一時ファイルを作成しない<br>
+ * ※スレッドセーフではない
+ *
+ * @author 417.72KI
+ */
+final class ExternalSorter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExternalSorter.class);
+
+	/** 同時にマージするランの最大数。超える場合は段階的にマージする */
+	static final int MAX_FAN_IN = 64;
+	/** ランの一時ファイルを読み書きするバッファのサイズ */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** 1レコードあたりのメモリー使用量の見積もりに加えるオブジェクトのヘッダーなどの大きさ */
+	private static final int RECORD_OVERHEAD = 48;
+	/** 1フィールドあたりのメモリー使用量の見積もりに加える文字列オブジェクトの大きさ */
+	private static final int FIELD_OVERHEAD = 48;
+
+	private final Comparator<? super List<String>> comparator;
+	private final ForkJoinPool pool;
+	private final File tempDirectory;
+	private final int fanIn;
+	/** 1つのランに読み込むレコードのメモリー使用量の上限 */
+	private final long runBudget;
+	/** 同時に並べ替え・書き込みを行うランの最大数 */
+	private final int maxPending;
+	/** 作成した一時ファイル */
+	private final List<Path> temps = new ArrayList<>();
+
+	/**
+	 * @param comparator レコードの比較方法
+	 * @param memoryBudget 読み込んだレコードが使用するメモリーの上限(バイト数)。並べ替え中のランも含む
+	 * @param pool ランの並べ替えと書き込みに使用するスレッドプール
+	 * @param tempDirectory 一時ファイルを作成するディレクトリ
+	 * @param fanIn 同時にマージするランの最大数
+	 */
+	ExternalSorter(Comparator<? super List<String>> comparator, long memoryBudget, ForkJoinPool pool,
+			File tempDirectory, int fanIn) {
+		this.comparator = comparator;
+		this.pool = pool;
+		this.tempDirectory = tempDirectory;
+		this.fanIn = fanIn;
+		this.maxPending = Math.max(1, pool.getParallelism());
+		// 読み込み中のランと並べ替え中のランで上限を分け合う
+		this.runBudget = Math.max(1, memoryBudget / (maxPending + 1));
+	}
+
+	/**
+	 * 全てのレコードを読み込んで並べ替える<br>
+	 * リーダーは全てのレコードを読み込んだ時点で閉じるため、並べ替えたレコードは読み込んだファイルに書き込める
+	 *
+	 * @param reader レコードを読み込むリーダー。例外が発生した場合も閉じる
+	 * @return 並べ替えたレコード。使用後は閉じること(一時ファイルを削除する)
+	 * @throws IOException 入出力エラー
+	 */
+	Sorted sort(RecordReader reader) throws IOException {
+		ArrayDeque<ForkJoinTask<Path>> pending = new ArrayDeque<>();
+		List<Path> runs = new ArrayList<>();
+		try {
+			List<List<String>> run = new ArrayList<>();
+			long size = 0;
+			try (RecordReader source = reader) {
+				List<String> record;
+				while ((record = source.readRecord()) != null) {
+					// 読み込み後に無効になるリーダーもあるため、フィールドを文字列に変換して保持する
+					List<String> copy = Arrays.asList(record.toArray(new String[record.size()]));
+					run.add(copy);
+					size += estimate(copy);
+					if (size >= runBudget) {
+						List<List<String>> full = run;
+						pending.add(pool.submit(() -> spill(full)));
+						while (pending.size() > maxPending) {
+							runs.add(join(pending.poll()));
+						}
+						run = new ArrayList<>();
+						size = 0;
+					}
+				}
+			}
+			if (runs.isEmpty() && pending.isEmpty()) {
+				run.sort(comparator);
+				return new Sorted(run.iterator(), true);
+			}
+			if (!run.isEmpty()) {
+				List<List<String>> last = run;
+				pending.add(pool.submit(() -> spill(last)));
+			}
+			while (!pending.isEmpty()) {
+				runs.add(join(pending.poll()));
+			}
+			while (runs.size() > fanIn) {
+				runs = mergeRuns(runs);
+			}
+			return new Sorted(new Merger(runs), false);
+		} catch (IOException | RuntimeException e) {
+			for (ForkJoinTask<Path> task : pending) {
+				// 書き込み中のランの一時ファイルも削除するため、書き込みが終わるまで待つ
+				try {
+					task.join();
+				} catch (RuntimeException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			deleteTemps();
+			throw e;
+		}
+	}
+
+	/**
+	 * ランを{@link #fanIn}個ずつマージし、マージしたランのリストを返す<br>
+	 * 連続するランをマージするため、元の順序(安定ソート)を保つ
+	 */
+	private List<Path> mergeRuns(List<Path> runs) throws IOException {
+		List<Path> merged = new ArrayList<>();
+		for (int from = 0; from < runs.size(); from += fanIn) {
+			List<Path> group = runs.subList(from, Math.min(from + fanIn, runs.size()));
+			if (group.size() == 1) {
+				merged.add(group.get(0));
+				continue;
+			}
+			Path temp = createTempFile();
+			try (Merger merger = new Merger(group);
+					OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+				while (merger.hasNext()) {
+					write(out, merger.next());
+				}
+			}
+			for (Path run : group) {
+				delete(run);
+			}
+			merged.add(temp);
+		}
+		LOGGER.debug("merged {} runs into {}", runs.size(), merged.size());
+		return merged;
+	}
+
+	/**
+	 * 1つのランを並べ替えて一時ファイルに書き込む
+	 *
+	 * @return 書き込んだ一時ファイル
+	 */
+	private Path spill(List<List<String>> run) {
+		try {
+			run.sort(comparator);
+			Path temp = createTempFile();
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+				for (List<String> record : run) {
+					write(out, record);
+				}
+			}
+			return temp;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Path createTempFile() throws IOException {
+		Path temp = Files.createTempFile(tempDirectory.toPath(), "csv-sort-", ".run");
+		synchronized (temps) {
+			temps.add(temp);
+		}
+		return temp;
+	}
+
+	private void delete(Path temp) {
+		try {
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			LOGGER.warn("cannot delete temporary file: {}", temp, e);
+		}
+	}
+
+	private void deleteTemps() {
+		synchronized (temps) {
+			for (Path temp : temps) {
+				delete(temp);
+			}
+			temps.clear();
+		}
+	}
+
+	private static Path join(ForkJoinTask<Path> task) throws IOException {
+		try {
+			return task.join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * レコードが使用するメモリーの大きさを見積もる
+	 */
+	private static long estimate(List<String> record) {
+		long size = RECORD_OVERHEAD + 4L * record.size();
+		for (String field : record) {
+			size += FIELD_OVERHEAD + 2L * field.length();
+		}
+		return size;
+	}
+
+	/**
+	 * 1レコードを一時ファイルの形式で書き込む
+	 */
+	static void write(OutputStream out, List<String> record) throws IOException {
+		writeVarint(out, record.size());
+		for (String field : record) {
+			byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+			writeVarint(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * 一時ファイルの形式の1レコードを読み込む
+	 *
+	 * @return レコード。ファイルの終端の場合はnull
+	 */
+	static List<String> read(InputStream in) throws IOException {
+		int size = readVarint(in, true);
+		if (size < 0) {
+			return null;
+		}
+		String[] fields = new String[size];
+		for (int i = 0; i < size; i++) {
+			byte[] bytes = new byte[readVarint(in, false)];
+			int n = 0;
+			while (n < bytes.length) {
+				int read = in.read(bytes, n, bytes.length - n);
+				if (read < 0) {
+					throw new EOFException();
+				}
+				n += read;
+			}
+			fields[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return Arrays.asList(fields);
+	}
+
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * @param eofAllowed 最初のバイトでファイルの終端に達した場合に-1を返す場合はtrue
+	 */
+	private static int readVarint(InputStream in, boolean eofAllowed) throws IOException {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				if (eofAllowed && shift == 0) {
+					return -1;
+				}
+				throw new EOFException();
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * ランの一時ファイルを開き、ヒープで比較して並べ替えた順にレコードを返すイテレーター
+	 */
+	private final class Merger implements Iterator<List<String>>, Closeable {
+		private final PriorityQueue<Cursor> heap;
+		private final List<Cursor> cursors = new ArrayList<>();
+
+		Merger(List<Path> runs) throws IOException {
+			// 比較結果が等しい場合は先のランのレコードを先に返す
+			heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+				int result = comparator.compare(a.current, b.current);
+				return result != 0 ? result : Integer.compare(a.index, b.index);
+			});
+			try {
+				for (int i = 0; i < runs.size(); i++) {
+					Cursor cursor = new Cursor(
+							new BufferedInputStream(Files.newInputStream(runs.get(i)), BUFFER_SIZE), i);
+					cursors.add(cursor);
+					if (cursor.advance()) {
+						heap.add(cursor);
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heap.isEmpty();
+		}
+
+		@Override
+		public List<String> next() {
+			Cursor cursor = heap.poll();
+			if (cursor == null) {
+				throw new NoSuchElementException();
+			}
+			List<String> record = cursor.current;
+			try {
+				if (cursor.advance()) {
+					heap.add(cursor);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return record;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOException failure = null;
+			for (Cursor cursor : cursors) {
+				try {
+					cursor.in.close();
+				} catch (IOException e) {
+					if (failure == null) {
+						failure = e;
+					} else {
+						failure.addSuppressed(e);
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * 1つのランの読み込み位置
+	 */
+	private static final class Cursor {
+		final InputStream in;
+		/** ランの順序 */
+		final int index;
+		List<String> current;
+
+		Cursor(InputStream in, int index) {
+			this.in = in;
+			this.index = index;
+		}
+
+		boolean advance() throws IOException {
+			current = read(in);
+			return current != null;
+		}
+	}
+
+	/**
+	 * 並べ替えたレコード。閉じた時点で一時ファイルを削除する
+	 */
+	final class Sorted implements Iterator<List<String>>, Closeable {
+		private final Iterator<List<String>> records;
+		/** 一時ファイルを作成せずにメモリー上で並べ替えた場合はtrue */
+		private final boolean inMemory;
+
+		Sorted(Iterator<List<String>> records, boolean inMemory) {
+			this.records = records;
+			this.inMemory = inMemory;
+		}
+
+		/**
+		 * @return 一時ファイルを作成せずにメモリー上で並べ替えた場合はtrue
+		 */
+		boolean isInMemory() {
+			return inMemory;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return records.hasNext();
+		}
+
+		@Override
+		public List<String> next() {
+			return records.next();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (records instanceof Closeable) {
+					((Closeable) records).close();
+				}
+			} finally {
+				deleteTemps();
+			}
+		}
+	}
+}
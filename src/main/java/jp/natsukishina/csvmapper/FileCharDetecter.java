@@ -1,23 +1,50 @@
 package jp.natsukishina.csvmapper;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.mozilla.universalchardet.UniversalDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * 文字コードを判定するクラス.
+ * 文字コードを判定するクラス.<br>
+ * BOMがある場合はBOMから判定し、無い場合は先頭から指定されたバイト数までを判定ライブラリに渡す<br>
+ * ファイルの判定結果はパス・サイズ・更新日時・判定に使用する最大のバイト数をキーとしてキャッシュする
  */
 class FileCharDetecter {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileCharDetecter.class);
+
+	/** 判定に使用するバイト数の既定値 */
+	static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+
+	/** キャッシュするファイルの数 */
+	private static final int CACHE_SIZE = 256;
+
+	private static final Map<String, Result> CACHE = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
 	/**
 	 * 指定されたファイルの文字コードを判定する
 	 * @param filePath 判定するファイルのパス
 	 * @return 文字コード
 	 */
 	public static String detect(String filePath) {
-		return new FileCharDetecter(filePath).detector();
+		return detect(new File(filePath));
 	}
 
 	/**
@@ -26,53 +53,205 @@ class FileCharDetecter {
 	 * @return 文字コード
 	 */
 	public static String detect(File file) {
-		return new FileCharDetecter(file).detector();
+		try {
+			return detect(file, DEFAULT_SAMPLE_SIZE).getCharCode();
+		} catch (IOException e) {
+			LOGGER.warn("failed to detect charset: {}", file, e);
+			return null;
+		}
 	}
 
-	private File file;
-	private FileCharDetecter(String filePath) {
-		this(new File(filePath));
+	/**
+	 * 指定されたファイルの文字コードを判定する<br>
+	 * 同じファイルが変更されていない場合はキャッシュした結果を返す
+	 *
+	 * @param file 判定するファイル
+	 * @param sampleSize 判定に使用する最大のバイト数
+	 * @return 判定結果
+	 * @throws IOException 入出力エラー
+	 */
+	static Result detect(File file, int sampleSize) throws IOException {
+		Result cached = cached(file, sampleSize);
+		if (cached != null) {
+			return cached;
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			return cache(file, detect(in, sampleSize), sampleSize);
+		}
 	}
 
-	private FileCharDetecter(File file) {
-		this.file = file;
+	/**
+	 * 指定されたファイルの文字コードを判定し、BOMの直後から読み込む入力ストリームを開く<br>
+	 * 判定のために読み込んだバイト列はファイルから読み直さず、入力ストリームの先頭として再利用する
+	 *
+	 * @param file 判定するファイル
+	 * @param sampleSize 判定に使用する最大のバイト数
+	 * @return 判定結果。{@link Result#getInput()}は使用後に閉じること
+	 * @throws IOException 入出力エラー
+	 */
+	static Result open(File file, int sampleSize) throws IOException {
+		return open(file, new FileInputStream(file), sampleSize);
 	}
 
 	/**
-	 * 文字コードを判定するメソッド
+	 * 指定されたファイルから読み込む入力ストリームの先頭から文字コードを判定する<br>
+	 * 圧縮されたファイルなど、ファイルのバイト列と判定するバイト列が異なる場合に使用する。
+	 * 判定結果はファイルの判定結果としてキャッシュし、同じファイルが変更されていない場合は判定せずにBOMを読み飛ばす
 	 *
-	 * @return 文字コード
+	 * @param file 入力ストリームの読み込み元のファイル
+	 * @param in 判定する入力ストリーム。例外が発生した場合は閉じる
+	 * @param sampleSize 判定に使用する最大のバイト数
+	 * @return 判定結果。{@link Result#getInput()}は使用後に閉じること
+	 * @throws IOException 入出力エラー
 	 */
-	private String detector() {
-		byte[] buf = new byte[4096];
-		try (FileInputStream fis = new FileInputStream(file);) {
+	static Result open(File file, InputStream in, int sampleSize) throws IOException {
+		try {
+			Result cached = cached(file, sampleSize);
+			if (cached != null) {
+				// skipは終端に達しても0を返すため、BOMの長さまで1バイトずつ読み込む(短いストリームは終端で止める)
+				int skipped = 0;
+				while (skipped < cached.bomLength && in.read() >= 0) {
+					skipped++;
+				}
+				return new Result(cached.charCode, cached.bomLength, in);
+			}
+			Result result = detect(in, sampleSize);
+			cache(file, result, sampleSize);
+			return result;
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
 
-			// 文字コード判定ライブラリの実装
-			UniversalDetector detector = new UniversalDetector(null);
+	/**
+	 * 入力ストリームの先頭から文字コードを判定する
+	 *
+	 * @param in 判定する入力ストリーム
+	 * @param sampleSize 判定に使用する最大のバイト数
+	 * @return 判定結果。{@link Result#getInput()}は判定に使用したバイト列のうちBOMの直後から続きを読み込む
+	 * @throws IOException 入出力エラー
+	 */
+	static Result detect(InputStream in, int sampleSize) throws IOException {
+		byte[] sample = new byte[Math.max(sampleSize, 4)];
+		int length = 0;
+		int n;
+		// BOMの判定に必要な先頭のバイトを読み込む
+		while (length < 3 && (n = in.read(sample, length, 3 - length)) > 0) {
+			length += n;
+		}
+		String bomCharCode = null;
+		int bomLength = 0;
+		if (length >= 3 && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF) {
+			bomCharCode = "UTF-8";
+			bomLength = 3;
+		} else if (length >= 2 && (sample[0] & 0xFF) == 0xFE && (sample[1] & 0xFF) == 0xFF) {
+			bomCharCode = "UTF-16BE";
+			bomLength = 2;
+		} else if (length >= 2 && (sample[0] & 0xFF) == 0xFF && (sample[1] & 0xFF) == 0xFE) {
+			bomCharCode = "UTF-16LE";
+			bomLength = 2;
+		}
+		if (bomCharCode != null) {
+			return new Result(bomCharCode, bomLength, replay(sample, bomLength, length, in));
+		}
 
-			// 判定開始
-			int nread;
-			while ((nread = fis.read(buf)) > 0 && !detector.isDone()) {
-				detector.handleData(buf, 0, nread);
+		// 文字コード判定ライブラリの実装
+		UniversalDetector detector = new UniversalDetector(null);
+		detector.handleData(sample, 0, length);
+		// 判定開始
+		while (!detector.isDone() && length < sampleSize
+				&& (n = in.read(sample, length, Math.min(4096, sampleSize - length))) > 0) {
+			detector.handleData(sample, length, n);
+			length += n;
+		}
+		// 判定終了
+		detector.dataEnd();
+		return new Result(detector.getDetectedCharset(), 0, replay(sample, 0, length, in));
+	}
+
+	private static InputStream replay(byte[] sample, int from, int to, InputStream rest) {
+		return new SequenceInputStream(new ByteArrayInputStream(Arrays.copyOfRange(sample, from, to)), rest);
+	}
+
+	/**
+	 * キャッシュした判定結果を返す<br>
+	 * BOMから判定した結果は、判定に使用する最大のバイト数に関わらず返す
+	 *
+	 * @return キャッシュした判定結果。無い場合、ファイルが変更された場合、判定に使用する最大のバイト数が異なる場合はnull
+	 */
+	private static Result cached(File file, int sampleSize) {
+		synchronized (CACHE) {
+			Result result = CACHE.get(file.getAbsolutePath());
+			if (result != null && result.size == file.length() && result.lastModified == file.lastModified()
+					&& (result.bomLength > 0 || result.sampleSize == sampleSize)) {
+				return result;
 			}
-			// 判定終了
-			detector.dataEnd();
+			return null;
+		}
+	}
 
-			// 文字コード判定
-			String encType = detector.getDetectedCharset();
-//			if (encType != null) {
-//				System.out.println("文字コード = " + encType);
-//			} else {
-//				System.out.println("文字コードを判定できませんでした");
-//			}
+	/**
+	 * 判定結果をキャッシュする
+	 *
+	 * @return キャッシュした判定結果(入力ストリームを持たない)
+	 */
+	private static Result cache(File file, Result result, int sampleSize) {
+		Result entry = new Result(result.charCode, result.bomLength, null, file.length(), file.lastModified(),
+				sampleSize);
+		synchronized (CACHE) {
+			CACHE.put(file.getAbsolutePath(), entry);
+		}
+		return entry;
+	}
 
-			// 判定の初期化
-			detector.reset();
+	private FileCharDetecter() {
+	}
 
-			return encType;
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
+	/**
+	 * 文字コードの判定結果
+	 */
+	static final class Result {
+		private final String charCode;
+		private final int bomLength;
+		private final InputStream input;
+		private final long size;
+		private final long lastModified;
+		private final int sampleSize;
+
+		private Result(String charCode, int bomLength, InputStream input) {
+			this(charCode, bomLength, input, -1, -1, -1);
+		}
+
+		private Result(String charCode, int bomLength, InputStream input, long size, long lastModified,
+				int sampleSize) {
+			this.charCode = charCode;
+			this.bomLength = bomLength;
+			this.input = input;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sampleSize = sampleSize;
+		}
+
+		/**
+		 * @return 文字コード。判定できなかった場合はnull
+		 */
+		String getCharCode() {
+			return charCode;
+		}
+
+		/**
+		 * @return 先頭のBOMのバイト数。BOMが無い場合は0
+		 */
+		int getBomLength() {
+			return bomLength;
+		}
+
+		/**
+		 * @return BOMの直後から読み込む入力ストリーム。入力ストリームを開いていない場合はnull
+		 */
+		InputStream getInput() {
+			return input;
 		}
 	}
-}
\ No newline at end of file
+}
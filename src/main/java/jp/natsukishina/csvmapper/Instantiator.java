@@ -0,0 +1,71 @@
+package jp.natsukishina.csvmapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.function.Supplier;
+
+/**
+ * クラスのデフォルトコンストラクターを呼び出してインスタンスを生成するクラス<br>
+ * コンストラクターの検索とアクセスチェックはクラスごとに1度だけ行い、
+ * 解決した{@link MethodHandle}を全ての呼び出し・スレッドで共有する
+ *
+ * @author 417.72KI
+ *
+ * @param <E> 生成するクラス
+ */
+final class Instantiator<E> implements Supplier<E> {
+
+	private static final ClassValue<Instantiator<?>> CACHE = new ClassValue<Instantiator<?>>() {
+		@Override
+		protected Instantiator<?> computeValue(Class<?> type) {
+			return new Instantiator<>(type);
+		}
+	};
+
+	/**
+	 * 指定されたクラスのインスタンスを生成するInstantiatorを返す
+	 *
+	 * @param <E> 生成するクラス
+	 * @param clazz 生成するクラス
+	 * @return 指定されたクラスのInstantiator
+	 * @throws CSVException デフォルトコンストラクターが存在しない場合
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> Instantiator<E> of(Class<E> clazz) throws CSVException {
+		return (Instantiator<E>) CACHE.get(clazz);
+	}
+
+	private final Class<E> clazz;
+	private final MethodHandle constructor;
+
+	private Instantiator(Class<E> clazz) throws CSVException {
+		this.clazz = clazz;
+		try {
+			Constructor<E> constructor = clazz.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			this.constructor = MethodHandles.lookup().unreflectConstructor(constructor)
+					.asType(MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new CSVException("Class<" + clazz.getName() + "> must have a default Constructor", e);
+		}
+	}
+
+	/**
+	 * 新しいインスタンスを生成する
+	 *
+	 * @return 生成されたインスタンス
+	 * @throws CSVException コンストラクターで検査例外が発生した場合(非検査例外とエラーはそのまま投げる)
+	 */
+	@Override
+	public E get() throws CSVException {
+		try {
+			return clazz.cast(constructor.invokeExact());
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new CSVException("Class<" + clazz.getName() + "> could not be instantiated", e);
+		}
+	}
+}
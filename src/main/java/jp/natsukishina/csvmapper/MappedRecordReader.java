@@ -0,0 +1,99 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+
+/**
+ * ファイルをメモリーマップし、マップされたバイト列を直接解析する{@link ByteRecordReader}<br>
+ * ファイルは一定サイズの範囲ごとにマップし、範囲をまたぐレコードはそのレコードの先頭から改めてマップし直す
+ *
+ * @author 417.72KI
+ */
+class MappedRecordReader extends ByteRecordReader {
+
+	/** 一度にマップする範囲の大きさ */
+	static final int WINDOW_SIZE = 64 << 20;
+
+	private final FileChannel channel;
+	private final long end;
+	private final int windowSize;
+
+	/**
+	 * ファイル全体を読み込む
+	 *
+	 * @param channel 読み込むファイルのチャネル
+	 * @param charset 文字コード
+	 * @throws IOException 入出力エラー
+	 */
+	MappedRecordReader(FileChannel channel, Charset charset) throws IOException {
+		this(channel, charset, 0, channel.size());
+	}
+
+	/**
+	 * ファイルの指定された範囲を読み込む
+	 *
+	 * @param channel 読み込むファイルのチャネル
+	 * @param charset 文字コード
+	 * @param start 読み込みを開始する位置
+	 * @param end 読み込みを終了する位置
+	 */
+	MappedRecordReader(FileChannel channel, Charset charset, long start, long end) {
+		this(channel, charset, start, end, WINDOW_SIZE);
+	}
+
+	/**
+	 * ファイルの指定された範囲を、指定された大きさの範囲ごとにマップして読み込む
+	 *
+	 * @param channel 読み込むファイルのチャネル
+	 * @param charset 文字コード
+	 * @param start 読み込みを開始する位置
+	 * @param end 読み込みを終了する位置
+	 * @param windowSize 一度にマップする範囲の大きさ
+	 */
+	MappedRecordReader(FileChannel channel, Charset charset, long start, long end, int windowSize) {
+		this(channel, charset, start, end, windowSize, DELIMITER, QUOTE);
+	}
+
+	/**
+	 * ファイルの指定された範囲を、指定された大きさの範囲ごとにマップし、指定された区切り文字とクォートで読み込む
+	 *
+	 * @param channel 読み込むファイルのチャネル
+	 * @param charset 文字コード
+	 * @param start 読み込みを開始する位置
+	 * @param end 読み込みを終了する位置
+	 * @param windowSize 一度にマップする範囲の大きさ
+	 * @param delimiter 区切り文字
+	 * @param quote クォート
+	 */
+	MappedRecordReader(FileChannel channel, Charset charset, long start, long end, int windowSize, byte delimiter,
+			byte quote) {
+		super(charset, start, delimiter, quote);
+		this.channel = channel;
+		this.end = end;
+		this.windowSize = windowSize;
+	}
+
+	@Override
+	protected boolean refill(int keepFrom) throws IOException {
+		long mappedEnd = bufferOffset + buffer.limit();
+		if (mappedEnd >= end) {
+			return false;
+		}
+		long offset = bufferOffset + keepFrom;
+		long kept = mappedEnd - offset;
+		long size = Math.min(end - offset, Math.max(windowSize, Math.min(kept << 1, Integer.MAX_VALUE)));
+		if (size <= kept) {
+			throw new IOException("record is too large at offset " + offset);
+		}
+		buffer = channel.map(MapMode.READ_ONLY, offset, size);
+		bufferOffset = offset;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,226 @@
+package jp.natsukishina.csvmapper;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * 複数のCSVファイルを固定数のスレッドで並行に読み込むクラス<br>
+ * 1つのスレッドは1つのファイルを最後まで読み込んでから次のファイルを開くため、同時に開くファイルはスレッド数までになる。
+ * 文字コードは{@link CSVMapper}に設定されていない場合、ファイルごとに独立して判定する<br>
+ * 読み込みごとにスレッドを生成し、読み込みが終わった時点で破棄する
+ *
+ * @param <E> CSVConvertableを実装したクラス
+ * @author 417.72KI
+ */
+final class MultiFileReader<E extends CSVMappable> {
+
+	/** 1つのファイルから読み込んだレコードを{@link #stream()}の呼び出し元に渡す単位 */
+	static final int BATCH_SIZE = 1024;
+
+	/** {@link #stream()}で全てのファイルを読み込み終わったことを表す要素 */
+	private static final Object END = new Object();
+
+	private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+	private final CSVMapper mapper;
+	private final List<CSVFile> files;
+	private final Class<E> clazz;
+	private final int parallelism;
+
+	/**
+	 * @param mapper 読み込みの設定
+	 * @param files 読み込むCSVファイル
+	 * @param clazz 変換するクラス
+	 * @param parallelism 同時に読み込むファイルの最大数
+	 */
+	MultiFileReader(CSVMapper mapper, List<CSVFile> files, Class<E> clazz, int parallelism) {
+		this.mapper = mapper;
+		this.files = files;
+		this.clazz = clazz;
+		this.parallelism = Math.max(1, Math.min(parallelism, files.size()));
+	}
+
+	/**
+	 * 全てのファイルを読み込み、ファイルごとの結果を返す<br>
+	 * 読み込みに失敗したファイルがあっても、残りのファイルの読み込みを続ける
+	 *
+	 * @return ファイルごとの結果。順序は指定されたファイルの順序
+	 * @throws CSVException 読み込みを待つ間に割り込まれた場合
+	 */
+	List<CSVFileResult<E>> readAll() throws CSVException {
+		if (files.isEmpty()) {
+			return Collections.emptyList();
+		}
+		ExecutorService executor = newExecutor();
+		try {
+			List<Future<CSVFileResult<E>>> futures = new ArrayList<>(files.size());
+			for (CSVFile file : files) {
+				futures.add(executor.submit(() -> read(file)));
+			}
+			List<CSVFileResult<E>> results = new ArrayList<>(files.size());
+			for (Future<CSVFileResult<E>> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CSVException(e);
+		} catch (ExecutionException e) {
+			throw new CSVException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private CSVFileResult<E> read(CSVFile file) {
+		long start = System.nanoTime();
+		try {
+			List<E> records = mapper.read(file, clazz);
+			Charset charset = mapper.charsetOf(file);
+			return new CSVFileResult<>(file, records, charset, System.nanoTime() - start, null);
+		} catch (RuntimeException e) {
+			return new CSVFileResult<>(file, null, null, System.nanoTime() - start, failure(file, e));
+		}
+	}
+
+	/**
+	 * 全てのファイルのレコードを1つの{@link Stream}として返す<br>
+	 * ファイルごとのレコードの順序は保持するが、ファイル間の順序は読み込みが進んだ順になる。
+	 * 受け渡し待ちのレコードはスレッド数の3倍の{@link #BATCH_SIZE}件までとし、
+	 * 呼び出し元の消費が追いつかない場合は読み込みを待つため、使用するメモリーはファイルの数・大きさに関わらず一定になる<br>
+	 * 読み込みに失敗したファイルがある場合は、そのファイルのレコードを受け取る時点で{@link CSVException}を投げる
+	 *
+	 * @return 全てのファイルのレコードのStream。閉じた場合は読み込み中のファイルも閉じる
+	 */
+	Stream<E> stream() {
+		if (files.isEmpty()) {
+			return Stream.empty();
+		}
+		BlockingQueue<Object> queue = new ArrayBlockingQueue<>(parallelism * 2);
+		AtomicInteger remaining = new AtomicInteger(files.size());
+		ExecutorService executor = newExecutor();
+		for (CSVFile file : files) {
+			executor.execute(() -> produce(file, queue, remaining));
+		}
+		Iterator<E> iterator = new Iterator<E>() {
+			private Iterator<E> batch = Collections.emptyIterator();
+			private boolean done;
+
+			@Override
+			public boolean hasNext() {
+				while (!batch.hasNext()) {
+					if (done) {
+						return false;
+					}
+					Object item;
+					try {
+						item = queue.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new CSVException(e);
+					}
+					if (item == END) {
+						done = true;
+						executor.shutdown();
+					} else if (item instanceof CSVException) {
+						throw (CSVException) item;
+					} else {
+						@SuppressWarnings("unchecked")
+						List<E> records = (List<E>) item;
+						batch = records.iterator();
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return batch.next();
+			}
+		};
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+				.onClose(executor::shutdownNow);
+	}
+
+	/**
+	 * 1つのファイルを読み込み、{@link #BATCH_SIZE}件ごとにキューに追加する<br>
+	 * 全てのファイルを読み込み終わった場合は{@link #END}を追加する。
+	 * Streamが閉じられて割り込まれた場合は読み込みを中断する
+	 */
+	private void produce(CSVFile file, BlockingQueue<Object> queue, AtomicInteger remaining) {
+		try (Stream<E> records = mapper.readStream(file, clazz)) {
+			List<E> batch = new ArrayList<>(BATCH_SIZE);
+			Iterator<E> iterator = records.iterator();
+			while (iterator.hasNext()) {
+				batch.add(iterator.next());
+				if (batch.size() == BATCH_SIZE) {
+					queue.put(batch);
+					batch = new ArrayList<>(BATCH_SIZE);
+				}
+			}
+			if (!batch.isEmpty()) {
+				queue.put(batch);
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (RuntimeException e) {
+			if (!put(queue, failure(file, e))) {
+				return;
+			}
+		}
+		if (remaining.decrementAndGet() == 0) {
+			put(queue, END);
+		}
+	}
+
+	/**
+	 * @return 追加できた場合はtrue。割り込まれた場合はfalse
+	 */
+	private static boolean put(BlockingQueue<Object> queue, Object item) {
+		try {
+			queue.put(item);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+	private static CSVException failure(CSVFile file, RuntimeException e) {
+		return new CSVException("failed to read " + file + ": " + e.getMessage(), e);
+	}
+
+	/**
+	 * 読み込みに使用するスレッドプールを生成する<br>
+	 * 読み込み中にJVMの終了を妨げないよう、デーモンスレッドを使用する
+	 */
+	private ExecutorService newExecutor() {
+		ThreadFactory factory = task -> {
+			Thread thread = new Thread(task, "csv-mapper-reader-" + THREAD_NUMBER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(parallelism, factory);
+	}
+}
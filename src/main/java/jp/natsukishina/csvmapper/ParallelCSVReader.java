@@ -0,0 +1,274 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 1つのCSVファイルを複数の範囲に分割し、{@link ForkJoinPool}上で並列に解析・変換するクラス<br>
+ * 分割位置はクォートの外にある改行(LF・CR・CRLF)の直後に合わせるため、要素内に改行を含むCSVも正しく分割できる<br>
+ * (クォート内外の状態は、それより前に現れたクォートの数の偶奇と一致するため、
+ * 各範囲のクォート数を並列に数えてから分割位置を決める)
+ *
+ * @author 417.72KI
+ *
+ * @param <E> CSVMappableを実装したクラス
+ */
+class ParallelCSVReader<E extends CSVMappable> {
+
+	/** 分割する範囲の最小の大きさ */
+	static final long MIN_CHUNK_SIZE = 4 << 20;
+	/** 分割する範囲の最大の大きさ(一度にマップできる大きさに収める) */
+	private static final long MAX_CHUNK_SIZE = 1 << 30;
+	/** 1スレッドあたりの分割数 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final CSVMapper mapper;
+	private final byte quote;
+	private final FileChannel channel;
+	private final Charset charset;
+	private final Class<E> clazz;
+	private final ForkJoinPool pool;
+	private final long offset;
+	private final long chunkSize;
+
+	/**
+	 * @param channel 読み込むファイルのチャネル
+	 * @param charset 文字コード(既定の区切り文字・クォートで{@link ByteRecordReader#supports(Charset, char, char)}を満たすこと)
+	 * @param clazz 変換するクラス
+	 * @param pool 解析に使用するスレッドプール
+	 * @param minChunkSize 分割する範囲の最小の大きさ
+	 * @throws IOException 入出力エラー
+	 */
+	ParallelCSVReader(FileChannel channel, Charset charset, Class<E> clazz, ForkJoinPool pool, long minChunkSize)
+			throws IOException {
+		this(CSVMapper.DEFAULT, channel, charset, clazz, pool, minChunkSize, 0);
+	}
+
+	/**
+	 * @param mapper 区切り文字・クォート・変換に失敗したレコードの扱い・計測値を通知するリスナー・読み込む列・絞り込む条件の設定
+	 * @param channel 読み込むファイルのチャネル
+	 * @param charset 文字コード({@link ByteRecordReader#supports(Charset, char, char)}を満たすこと)
+	 * @param clazz 変換するクラス
+	 * @param pool 解析に使用するスレッドプール
+	 * @param minChunkSize 分割する範囲の最小の大きさ
+	 * @param offset 読み込みを開始する位置(BOMの大きさ)
+	 * @throws IOException 入出力エラー
+	 */
+	ParallelCSVReader(CSVMapper mapper, FileChannel channel, Charset charset, Class<E> clazz, ForkJoinPool pool,
+			long minChunkSize, long offset) throws IOException {
+		this.mapper = mapper;
+		this.quote = (byte) mapper.getQuote();
+		this.channel = channel;
+		this.charset = charset;
+		this.clazz = clazz;
+		this.pool = pool;
+		this.offset = offset;
+		long size = channel.size() - offset;
+		long chunkSize = size / ((long) pool.getParallelism() * CHUNKS_PER_THREAD) + 1;
+		this.chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(minChunkSize, chunkSize));
+	}
+
+	/**
+	 * ファイル全体を並列に解析し、指定されたクラスのリストに変換する
+	 *
+	 * @param keepOrder ファイル上のレコードの順序を保持する場合はtrue<br>
+	 * falseの場合は解析が完了した範囲から順に結果に追加する
+	 * @return 指定クラスのインスタンスリスト
+	 * @throws IOException 入出力エラー
+	 */
+	List<E> read(boolean keepOrder) throws IOException {
+		long size = channel.size();
+		long offset = this.offset;
+		// 列名の解決に使うヘッダー行は先に読み込み、全ての範囲で共有する
+		List<String> header = null;
+		if (CSVIterator.requiresHeader(clazz, mapper.getProjection())) {
+			header = readHeader(size);
+			if (header == null) {
+				return new ArrayList<>();
+			}
+			offset = align(offset, false, size);
+		}
+		int count = (int) ((size - offset + chunkSize - 1) / chunkSize);
+		if (count <= 1) {
+			return new Chunk(offset, size, header).compute();
+		}
+
+		List<ForkJoinTask<Integer>> quoteTasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			long start = offset + i * chunkSize;
+			long end = Math.min(size, start + chunkSize);
+			quoteTasks.add(pool.submit(() -> countQuotes(start, end)));
+		}
+		List<ForkJoinTask<Long>> boundaryTasks = new ArrayList<>(count);
+		boolean inQuote = false;
+		for (int i = 0; i < count; i++) {
+			long start = offset + i * chunkSize;
+			boolean quoted = inQuote;
+			boundaryTasks.add(i == 0 ? null : pool.submit(() -> align(start, quoted, size)));
+			inQuote ^= (join(quoteTasks.get(i)) & 1) != 0;
+		}
+
+		List<ForkJoinTask<List<E>>> chunkTasks = new ArrayList<>(count);
+		List<E> result = new ArrayList<>();
+		long start = offset;
+		for (int i = 1; i <= count; i++) {
+			long end = i == count ? size : join(boundaryTasks.get(i));
+			if (start < end) {
+				chunkTasks.add(pool.submit(new Chunk(start, end, header)));
+			}
+			start = Math.max(start, end);
+		}
+		if (keepOrder) {
+			for (ForkJoinTask<List<E>> task : chunkTasks) {
+				result.addAll(join(task));
+			}
+		} else {
+			List<ForkJoinTask<List<E>>> pending = new ArrayList<>(chunkTasks);
+			while (!pending.isEmpty()) {
+				boolean progressed = false;
+				for (int i = pending.size() - 1; i >= 0; i--) {
+					if (pending.get(i).isDone()) {
+						result.addAll(join(pending.remove(i)));
+						progressed = true;
+					}
+				}
+				if (!progressed) {
+					result.addAll(join(pending.remove(0)));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * ファイルの先頭のレコードをヘッダー行として読み込む
+	 *
+	 * @param size ファイルの大きさ
+	 * @return ヘッダー行。レコードが無い場合はnull
+	 */
+	private List<String> readHeader(long size) throws IOException {
+		// チャネルは全ての範囲で共有するため閉じない
+		MappedRecordReader reader = new MappedRecordReader(channel, charset, offset, size,
+				MappedRecordReader.WINDOW_SIZE, (byte) mapper.getDelimiter(), quote);
+		List<String> header = reader.readRecord();
+		return header == null ? null : new ArrayList<>(header);
+	}
+
+	/**
+	 * 指定された範囲に含まれるクォートの数を数える
+	 */
+	private int countQuotes(long start, long end) throws IOException {
+		MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+		int quotes = 0;
+		for (int i = 0, limit = buffer.limit(); i < limit; i++) {
+			if (buffer.get(i) == quote) {
+				quotes++;
+			}
+		}
+		return quotes;
+	}
+
+	/**
+	 * 指定された位置以降で最初に現れる、クォートの外にある改行の直後の位置を返す<br>
+	 * CRLFの場合は、CRとLFの間で分割しないようLFの直後の位置を返す
+	 *
+	 * @param from 探索を開始する位置
+	 * @param inQuote 探索を開始する位置がクォート内である場合はtrue
+	 * @param size ファイルの大きさ
+	 * @return レコードの境界の位置。見つからない場合はファイルの大きさ
+	 */
+	private long align(long from, boolean inQuote, long size) throws IOException {
+		long offset = from;
+		while (offset < size) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, offset, Math.min(chunkSize, size - offset));
+			for (int i = 0, limit = buffer.limit(); i < limit; i++) {
+				byte b = buffer.get(i);
+				if (b == quote) {
+					inQuote = !inQuote;
+				} else if (!inQuote && (b == ByteRecordReader.LF || b == ByteRecordReader.CR)) {
+					long end = offset + i + 1;
+					return b == ByteRecordReader.CR ? skipLF(end, size) : end;
+				}
+			}
+			offset += buffer.limit();
+		}
+		return size;
+	}
+
+	/**
+	 * CRの直後の位置にLFがある場合は読み飛ばす
+	 *
+	 * @param offset CRの直後の位置
+	 * @param size ファイルの大きさ
+	 * @return 読み飛ばした後の位置
+	 */
+	private long skipLF(long offset, long size) throws IOException {
+		if (offset >= size) {
+			return offset;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(1);
+		channel.read(bytes, offset);
+		return bytes.get(0) == ByteRecordReader.LF ? offset + 1 : offset;
+	}
+
+	private static <T> T join(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CSVException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new CSVException(cause);
+		}
+	}
+
+	/**
+	 * レコードの境界に揃えられた1つの範囲を解析・変換するタスク
+	 */
+	private class Chunk implements Callable<List<E>> {
+		private final long start;
+		private final long end;
+		/** 読み込み済みのヘッダー行。ヘッダー行が不要な場合はnull */
+		private final List<String> header;
+
+		Chunk(long start, long end, List<String> header) {
+			this.start = start;
+			this.end = end;
+			this.header = header;
+		}
+
+		@Override
+		public List<E> call() {
+			return compute();
+		}
+
+		List<E> compute() {
+			// チャネルは全ての範囲で共有するため、範囲ごとのリーダーは閉じない
+			MappedRecordReader reader = new MappedRecordReader(channel, charset, start, end,
+					MappedRecordReader.WINDOW_SIZE, (byte) mapper.getDelimiter(), quote);
+			CSVIterator<E> iterator = new CSVIterator<>(reader, clazz, mapper, header);
+			List<E> list = new ArrayList<>();
+			while (iterator.hasNext()) {
+				list.add(iterator.next());
+			}
+			return list;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * レコードを一定の件数ごとのバッチに分け、{@link ForkJoinPool}上で並列に文字列化・文字コードへの変換を行い、
+ * 変換したバイト列を元の順序でファイルに書き込むクラス<br>
+ * バッチごとに再利用するバッファに変換し、1つのスレッド(呼び出し元)が{@link FileChannel}に書き込む。
+ * 変換中のバッチは並列度の2倍までとし、それを超える場合は最も古いバッチを書き込むまで次のバッチを生成しないため、
+ * 使用するメモリーはレコード数に関わらず一定になる<br>
+ * 出力は{@link CSVWriter}で順に書き込んだ場合とバイト単位で一致する<br>
+ * ※スレッドセーフではない
+ *
+ * @author 417.72KI
+ */
+final class ParallelCSVWriter {
+
+	/** 1つのバッチのレコード数 */
+	static final int BATCH_SIZE = 4096;
+	/** 変換先のバッファの初期サイズ */
+	static final int BUFFER_SIZE = 1 << 20;
+
+	private final CSVMapper mapper;
+	private final Charset charset;
+	private final ForkJoinPool pool;
+	private final int batchSize;
+	/** 同時に変換するバッチの最大数 */
+	private final int maxPending;
+
+	/**
+	 * @param mapper 区切り文字・クォート・改行の設定
+	 * @param charset 出力文字コード
+	 * @param pool 変換に使用するスレッドプール
+	 * @param batchSize 1つのバッチのレコード数
+	 */
+	ParallelCSVWriter(CSVMapper mapper, Charset charset, ForkJoinPool pool, int batchSize) {
+		this.mapper = mapper;
+		this.charset = charset;
+		this.pool = pool;
+		this.batchSize = batchSize;
+		this.maxPending = Math.max(1, pool.getParallelism() * 2);
+	}
+
+	/**
+	 * 全てのレコードを変換してチャネルの現在位置から書き込む
+	 *
+	 * @param channel 出力先
+	 * @param rows 書き込むレコード
+	 * @return 書き込んだレコード数
+	 * @throws IOException 書き込みに失敗した場合
+	 */
+	long write(FileChannel channel, Iterator<? extends CSVMappable> rows) throws IOException {
+		ArrayDeque<ForkJoinTask<ByteBuffer>> pending = new ArrayDeque<>();
+		ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+		long count = 0;
+		try {
+			while (rows.hasNext()) {
+				List<CSVMappable> batch = new ArrayList<>(batchSize);
+				while (batch.size() < batchSize && rows.hasNext()) {
+					batch.add(rows.next());
+				}
+				ByteBuffer buffer = free.isEmpty() ? ByteBuffer.allocate(BUFFER_SIZE) : free.poll();
+				boolean first = count == 0;
+				pending.add(pool.submit(() -> format(batch, buffer, first)));
+				count += batch.size();
+				while (pending.size() > maxPending) {
+					writeNext(channel, pending, free);
+				}
+			}
+			while (!pending.isEmpty()) {
+				writeNext(channel, pending, free);
+			}
+		} finally {
+			for (ForkJoinTask<ByteBuffer> task : pending) {
+				task.cancel(false);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 最も古いバッチの変換が終わるまで待ち、チャネルに書き込む
+	 */
+	private static void writeNext(FileChannel channel, ArrayDeque<ForkJoinTask<ByteBuffer>> pending,
+			ArrayDeque<ByteBuffer> free) throws IOException {
+		ByteBuffer buffer;
+		try {
+			buffer = pending.poll().join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+		free.add(buffer);
+	}
+
+	/**
+	 * 1つのバッチを文字列化し、文字コードに変換してバッファに書き込む
+	 *
+	 * @param batch 変換するレコード
+	 * @param buffer 変換先のバッファ
+	 * @param first ファイルの先頭のバッチの場合はtrue
+	 * @return 変換したバイト列を保持するバッファ。収まらない場合は拡張したバッファ
+	 */
+	private ByteBuffer format(List<CSVMappable> batch, ByteBuffer buffer, boolean first) {
+		EncodingWriter out = new EncodingWriter(charset, buffer, first);
+		try (CSVWriter writer = new CSVWriter(out, CSVWriter.DEFAULT_BUFFER_SIZE, 0, mapper.getLineSeparator(),
+				mapper.getDelimiter(), mapper.getQuote())) {
+			writer.writeAll(batch);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.buffer;
+	}
+
+	/**
+	 * 書き込んだ文字を{@link java.io.OutputStreamWriter}と同じ規則で文字コードに変換し、バッファに書き込むWriter<br>
+	 * 変換できない文字は置換文字に置き換え、バッファが不足した場合は2倍に拡張する
+	 */
+	private static final class EncodingWriter extends Writer {
+		private final CharsetEncoder encoder;
+		private ByteBuffer buffer;
+		/** 前回の書き込みの末尾で、続く文字と合わせて変換する文字(サロゲートペアの上位) */
+		private CharBuffer leftover;
+
+		EncodingWriter(Charset charset, ByteBuffer buffer, boolean first) {
+			this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			this.buffer = buffer;
+			if (!first) {
+				// ファイルの先頭以外では、BOMなど最初の1文字の前にだけ出力されるバイト列を出力しない
+				encoder.encode(CharBuffer.wrap(" "), ByteBuffer.allocate(16), false);
+			}
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			if (len == 0) {
+				return;
+			}
+			if (leftover != null) {
+				CharBuffer pair = CharBuffer.allocate(2).put(leftover).put(cbuf[off]);
+				pair.flip();
+				leftover = null;
+				encode(pair, false);
+				write(cbuf, off + 1, len - 1);
+				return;
+			}
+			encode(CharBuffer.wrap(cbuf, off, len), false);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			encode(leftover == null ? CharBuffer.allocate(0) : leftover, true);
+			leftover = null;
+			while (encoder.flush(buffer).isOverflow()) {
+				grow();
+			}
+		}
+
+		private void encode(CharBuffer in, boolean endOfInput) {
+			while (true) {
+				CoderResult result = encoder.encode(in, buffer, endOfInput);
+				if (result.isOverflow()) {
+					grow();
+				} else {
+					break;
+				}
+			}
+			if (in.hasRemaining()) {
+				leftover = CharBuffer.allocate(in.remaining()).put(in);
+				leftover.flip();
+			}
+		}
+
+		private void grow() {
+			ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 書き込んだデータを一定のサイズのブロックに分け、ブロックごとに独立したgzipのメンバーとして並列に圧縮する出力ストリーム<br>
+ * 圧縮したメンバーは書き込んだ順序で出力先に連結する。連結したメンバーは{@link java.util.zip.GZIPInputStream}や
+ * gzipコマンドで1つのファイルとして展開できる。
+ * 圧縮中のブロックが並列度の2倍を超えた場合は、最も古いブロックの圧縮が終わるまで書き込みを待つ<br>
+ * ブロックの境界で辞書がリセットされるため、圧縮率は{@link GZIPOutputStream}よりわずかに低い<br>
+ * ※スレッドセーフではない
+ *
+ * @author 417.72KI
+ */
+final class ParallelGZIPOutputStream extends OutputStream {
+
+	/** 1つのメンバーとして圧縮するブロックのサイズ */
+	static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * 圧縮中のブロック
+	 */
+	private static final class Block {
+		final byte[] data;
+		int length;
+		ForkJoinTask<byte[]> task;
+
+		Block(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+	private final OutputStream out;
+	private final ForkJoinPool pool;
+	private final int blockSize;
+	/** 同時に圧縮するブロックの最大数 */
+	private final int maxPending;
+	/** 書き込んだ順序の圧縮中のブロック */
+	private final ArrayDeque<Block> pending = new ArrayDeque<>();
+	/** 圧縮が終わり再利用できるブロック */
+	private final ArrayDeque<Block> free = new ArrayDeque<>();
+	private Block current;
+	/** 1つ以上のメンバーを出力した場合はtrue */
+	private boolean written;
+	private boolean closed;
+
+	/**
+	 * @param out 圧縮したデータの出力先
+	 * @param pool 圧縮に使用するスレッドプール
+	 * @param blockSize 1つのメンバーとして圧縮するブロックのサイズ
+	 */
+	ParallelGZIPOutputStream(OutputStream out, ForkJoinPool pool, int blockSize) {
+		this.out = out;
+		this.pool = pool;
+		this.blockSize = blockSize;
+		this.maxPending = Math.max(1, pool.getParallelism() * 2);
+		this.current = new Block(blockSize);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (current.length == blockSize) {
+			submit();
+		}
+		current.data[current.length++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (current.length == blockSize) {
+				submit();
+			}
+			int n = Math.min(len, blockSize - current.length);
+			System.arraycopy(b, off, current.data, current.length, n);
+			current.length += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * 書き込んだデータを圧縮して出力先に書き込み、出力先をフラッシュする<br>
+	 * 書き込み途中のブロックもメンバーとして圧縮するため、頻繁に呼び出すと圧縮率が下がる
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (current.length > 0) {
+			submit();
+		}
+		while (!pending.isEmpty()) {
+			writeNext();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			// 空のファイルも有効なgzipにするため、1つも出力していない場合は空のメンバーを出力する
+			if (current.length > 0 || (!written && pending.isEmpty())) {
+				submit();
+			}
+			while (!pending.isEmpty()) {
+				writeNext();
+			}
+		} finally {
+			closed = true;
+			for (Block block : pending) {
+				block.task.cancel(false);
+			}
+			pending.clear();
+			free.clear();
+			out.close();
+		}
+	}
+
+	/**
+	 * 書き込み途中のブロックの圧縮を開始し、次のブロックに切り替える<br>
+	 * 圧縮中のブロックが多すぎる場合は、最も古いブロックを出力するまで待つ
+	 */
+	private void submit() throws IOException {
+		Block block = current;
+		block.task = pool.submit(() -> compress(block.data, block.length));
+		pending.add(block);
+		while (pending.size() > maxPending) {
+			writeNext();
+		}
+		current = free.isEmpty() ? new Block(blockSize) : free.poll();
+		current.length = 0;
+	}
+
+	/**
+	 * 最も古いブロックの圧縮が終わるまで待ち、出力先に書き込む
+	 */
+	private void writeNext() throws IOException {
+		Block block = pending.poll();
+		byte[] compressed;
+		try {
+			compressed = block.task.join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		block.task = null;
+		free.add(block);
+		out.write(compressed);
+		written = true;
+	}
+
+	private static byte[] compress(byte[] data, int length) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, Compression.BUFFER_SIZE)) {
+			gzip.write(data, 0, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 読み込む列の指定<br>
+ * {@link RecordReader}は指定されていない列の内容を文字列に変換せず、指定された列だけを指定された順序で並べたリストを返す<br>
+ * 列名で指定した場合は、ヘッダー行から列番号を決めるまで使用できない({@link #resolve(List)})
+ *
+ * @author 417.72KI
+ */
+final class Projection {
+
+	/** 読み込む列の列番号(読み込み後の順序)。列名で指定され、まだ列番号が決まっていない場合はnull */
+	private final int[] indexes;
+	/** 読み込む列の列名。列番号で指定された場合はnull */
+	private final String[] names;
+	/** 元の列番号から読み込み後の位置への対応。読み込まない列は-1 */
+	private final int[] targets;
+
+	private Projection(int[] indexes, String[] names) {
+		this.indexes = indexes;
+		this.names = names;
+		if (indexes == null) {
+			this.targets = null;
+			return;
+		}
+		int max = -1;
+		for (int index : indexes) {
+			max = Math.max(max, index);
+		}
+		this.targets = new int[max + 1];
+		Arrays.fill(targets, -1);
+		for (int i = 0; i < indexes.length; i++) {
+			targets[indexes[i]] = i;
+		}
+	}
+
+	/**
+	 * 列番号で指定する
+	 *
+	 * @param indexes 読み込む列の列番号(0始まり)
+	 * @return 列の指定
+	 * @throws IllegalArgumentException 列番号が空・負の値・重複している場合
+	 */
+	static Projection of(int... indexes) {
+		if (indexes == null || indexes.length == 0) {
+			throw new IllegalArgumentException("columns must not be empty");
+		}
+		Set<Integer> set = new HashSet<>();
+		for (int index : indexes) {
+			if (index < 0) {
+				throw new IllegalArgumentException("column index must not be negative: " + index);
+			}
+			if (!set.add(index)) {
+				throw new IllegalArgumentException("duplicate column: " + index);
+			}
+		}
+		return new Projection(indexes.clone(), null);
+	}
+
+	/**
+	 * ヘッダー行の列名で指定する
+	 *
+	 * @param names 読み込む列の列名
+	 * @return 列の指定
+	 * @throws IllegalArgumentException 列名が空・nullを含む・重複している場合
+	 */
+	static Projection of(String... names) {
+		if (names == null || names.length == 0) {
+			throw new IllegalArgumentException("columns must not be empty");
+		}
+		Set<String> set = new HashSet<>();
+		for (String name : names) {
+			if (name == null) {
+				throw new IllegalArgumentException("column name must not be null");
+			}
+			if (!set.add(name)) {
+				throw new IllegalArgumentException("duplicate column: " + name);
+			}
+		}
+		return new Projection(null, names.clone());
+	}
+
+	/**
+	 * @return 列名で指定され、ヘッダー行から列番号を決める必要がある場合はtrue
+	 */
+	boolean requiresHeader() {
+		return indexes == null;
+	}
+
+	/**
+	 * ヘッダー行の列名から列番号を決めた指定を返す
+	 *
+	 * @param header ヘッダー行
+	 * @return 列番号が決まった指定。既に決まっている場合はこのインスタンス
+	 * @throws CSVException ヘッダー行に存在しない列名が指定されている場合
+	 */
+	Projection resolve(List<String> header) throws CSVException {
+		if (indexes != null) {
+			return this;
+		}
+		int[] resolved = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			int index = header.indexOf(names[i]);
+			if (index < 0) {
+				throw new CSVException("column \"" + names[i] + "\" is not found in header " + header);
+			}
+			resolved[i] = index;
+		}
+		return new Projection(resolved, null);
+	}
+
+	/**
+	 * @return 読み込む列の数
+	 */
+	int size() {
+		return indexes != null ? indexes.length : names.length;
+	}
+
+	/**
+	 * 元の列番号に対応する読み込み後の位置を返す
+	 *
+	 * @param column 元の列番号
+	 * @return 読み込み後の位置。読み込まない列の場合は-1
+	 */
+	int target(int column) {
+		return column < targets.length ? targets[column] : -1;
+	}
+
+	/**
+	 * 読み込み済みのレコードから指定された列を取り出す
+	 *
+	 * @param record 全ての列を含むレコード
+	 * @return 指定された列のリスト。レコードに存在しない列は空文字
+	 */
+	List<String> select(List<String> record) {
+		List<String> selected = new ArrayList<>(indexes.length);
+		for (int index : indexes) {
+			selected.add(index < record.size() ? record.get(index) : "");
+		}
+		return selected;
+	}
+}
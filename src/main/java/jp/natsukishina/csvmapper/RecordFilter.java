@@ -0,0 +1,88 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * インスタンスに変換する前にレコードを絞り込む条件<br>
+ * {@link RecordReader}はフィールドを文字列に変換する前に条件を評価し、全ての条件を満たすレコードのみを返す。
+ * 条件に渡す{@link CharSequence}はリーダーが使い回すビューのため、評価中のみ有効
+ *
+ * @author 417.72KI
+ */
+final class RecordFilter {
+
+	/** 条件を評価する列の位置({@link Projection}で列を指定した場合は読み込み後の位置) */
+	private final int[] columns;
+	private final Predicate<? super CharSequence>[] predicates;
+
+	private RecordFilter(int[] columns, Predicate<? super CharSequence>[] predicates) {
+		this.columns = columns;
+		this.predicates = predicates;
+	}
+
+	/**
+	 * 1つの条件を生成する
+	 *
+	 * @param column 条件を評価する列の位置
+	 * @param predicate 条件
+	 * @return 絞り込む条件
+	 * @throws IllegalArgumentException 列の位置が負の値の場合、条件がnullの場合
+	 */
+	static RecordFilter of(int column, Predicate<? super CharSequence> predicate) {
+		return new RecordFilter(new int[0], newArray(0)).and(column, predicate);
+	}
+
+	/**
+	 * この条件に指定された条件を追加した条件を返す
+	 *
+	 * @param column 条件を評価する列の位置
+	 * @param predicate 条件
+	 * @return 全ての条件を満たすレコードのみを返す条件
+	 * @throws IllegalArgumentException 列の位置が負の値の場合、条件がnullの場合
+	 */
+	RecordFilter and(int column, Predicate<? super CharSequence> predicate) {
+		if (column < 0) {
+			throw new IllegalArgumentException("column index must not be negative: " + column);
+		}
+		if (predicate == null) {
+			throw new IllegalArgumentException("predicate must not be null");
+		}
+		int[] columns = Arrays.copyOf(this.columns, this.columns.length + 1);
+		Predicate<? super CharSequence>[] predicates = Arrays.copyOf(this.predicates, columns.length);
+		columns[columns.length - 1] = column;
+		predicates[predicates.length - 1] = predicate;
+		return new RecordFilter(columns, predicates);
+	}
+
+	/**
+	 * @return 条件の数
+	 */
+	int size() {
+		return columns.length;
+	}
+
+	/**
+	 * @param i 条件の番号
+	 * @return 条件を評価する列の位置
+	 */
+	int column(int i) {
+		return columns[i];
+	}
+
+	/**
+	 * 条件を評価する
+	 *
+	 * @param i 条件の番号
+	 * @param value 列の内容。レコードに存在しない列は空文字
+	 * @return 条件を満たす場合はtrue
+	 */
+	boolean test(int i, CharSequence value) {
+		return predicates[i].test(value);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Predicate<? super CharSequence>[] newArray(int length) {
+		return new Predicate[length];
+	}
+}
@@ -0,0 +1,65 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * CSVから1レコードずつフィールドのリストを取り出すインターフェース
+ *
+ * @author 417.72KI
+ */
+interface RecordReader extends Closeable {
+
+	/**
+	 * 次の1レコードを読み込み、フィールドのリストにする
+	 *
+	 * @return フィールドのリスト。これ以上レコードが無い場合はnull
+	 * @throws IOException 入出力エラー
+	 */
+	List<String> readRecord() throws IOException;
+
+	/**
+	 * 以降に読み込むレコードの列を指定する<br>
+	 * 指定されていない列はクォートの対応のみを追跡し、内容は文字列に変換しない
+	 *
+	 * @param projection 読み込む列(列番号が決まっていること)。nullの場合は全ての列を読み込む
+	 */
+	void project(Projection projection);
+
+	/**
+	 * 以降に読み込むレコードを絞り込む条件を指定する<br>
+	 * 条件はフィールドを文字列に変換する前に評価し、条件を満たさないレコードはリストを生成せずに読み飛ばす
+	 *
+	 * @param filter 絞り込む条件。列が指定されている場合、条件の列の位置は読み込み後の位置。nullの場合は全てのレコードを読み込む
+	 */
+	void filter(RecordFilter filter);
+
+	/**
+	 * @return 条件を満たさずに読み飛ばしたレコード数
+	 */
+	long recordsFiltered();
+
+	/**
+	 * 以降に読み込むレコードのフィールドを文字列に変換する際、同じ内容の文字列を共有するキャッシュを指定する
+	 *
+	 * @param deduplicator キャッシュ。列が指定されている場合、キャッシュの列の位置は読み込み後の位置。nullの場合は共有しない
+	 */
+	void deduplicate(StringDeduplicator deduplicator);
+
+	/**
+	 * 以降に読み込むレコードで、フィールドのリストを生成せずに同じリストを使い回す<br>
+	 * 返したリストは次に{@link #readRecord()}を呼び出すまでのみ有効になる。使い回せないリーダーは何もしない
+	 */
+	default void reuse() {
+	}
+
+	/**
+	 * これまでに読み込んだバイト数を返す
+	 *
+	 * @return 読み込んだバイト数。計測できない場合は-1
+	 */
+	default long bytesRead() {
+		return -1;
+	}
+}
@@ -0,0 +1,86 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 1レコード分のフィールドを指定されたクラスのインスタンスに変換するクラス<br>
+ * 注釈処理で生成された{@link CSVRowMapper}、{@link CSVColumn}の対応付け、{@link CSVMappable#importFromCSV(List)}の順に使用する
+ *
+ * @author 417.72KI
+ *
+ * @param <E> CSVMappableを実装したクラス
+ */
+final class RowImporter<E extends CSVMappable> {
+
+	/** 注釈処理で生成された変換クラス。登録されていない場合はnull */
+	private final CSVRowMapper<E> rowMapper;
+	private final Supplier<E> factory;
+	/** {@link CSVColumn}で読み込む場合の対応付け。{@link CSVMappable#importFromCSV(List)}で読み込む場合はnull */
+	private ColumnBinding binding;
+
+	/**
+	 * @param clazz 変換するクラス
+	 * @throws CSVException デフォルトコンストラクターが存在しない場合、
+	 * importFromCSVを実装せず{@link CSVColumn}が付いたフィールドも無い場合
+	 */
+	RowImporter(Class<E> clazz) throws CSVException {
+		this.rowMapper = RowMappers.find(clazz);
+		if (rowMapper != null) {
+			this.factory = rowMapper::newInstance;
+			return;
+		}
+		this.factory = Instantiator.of(clazz);
+		if (ColumnBinding.usesDefaultImport(clazz)) {
+			binding = ColumnBinding.of(clazz);
+			if (binding.isEmpty()) {
+				throw new CSVException(
+						"Class<" + clazz.getName() + "> must implement importFromCSV or have @CSVColumn field");
+			}
+		}
+	}
+
+	/**
+	 * @return {@link CSVColumn}の列名から列番号を決めるためにヘッダー行が必要な場合はtrue
+	 */
+	boolean requiresHeader() {
+		return binding != null && binding.requiresHeader();
+	}
+
+	/**
+	 * ヘッダー行の列名から{@link CSVColumn}の列番号を決める
+	 *
+	 * @param header ヘッダー行
+	 * @throws CSVException ヘッダー行に存在しない列名が指定されている場合
+	 */
+	void resolve(List<String> header) throws CSVException {
+		if (requiresHeader()) {
+			binding = binding.resolve(header);
+		}
+	}
+
+	/**
+	 * @return 新しいインスタンス
+	 * @throws CSVException インスタンスを生成できない場合
+	 */
+	E newInstance() throws CSVException {
+		return factory.get();
+	}
+
+	/**
+	 * 1レコード分のフィールドをインスタンスに設定する
+	 *
+	 * @param element 設定先のインスタンス
+	 * @param row 1レコード分のフィールド
+	 * @throws RuntimeException 値の変換に失敗した場合
+	 */
+	void importFrom(E element, List<String> row) {
+		if (rowMapper != null) {
+			rowMapper.importFrom(element, row);
+		} else if (binding != null) {
+			binding.importFrom(element, row);
+		} else {
+			element.importFromCSV(row);
+		}
+	}
+}
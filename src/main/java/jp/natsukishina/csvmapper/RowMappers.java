@@ -0,0 +1,53 @@
+package jp.natsukishina.csvmapper;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * {@link java.util.ServiceLoader}で登録された{@link CSVRowMapper}をクラスごとに検索するクラス
+ *
+ * @author 417.72KI
+ */
+final class RowMappers {
+
+	private static final ClassValue<CSVRowMapper<?>> CACHE = new ClassValue<CSVRowMapper<?>>() {
+		@Override
+		protected CSVRowMapper<?> computeValue(Class<?> type) {
+			ClassLoader loader = type.getClassLoader();
+			Iterator<?> providers = ServiceLoader.load(CSVRowMapper.class, loader).iterator();
+			while (true) {
+				try {
+					if (!providers.hasNext()) {
+						return null;
+					}
+				} catch (ServiceConfigurationError e) {
+					return null;
+				}
+				try {
+					CSVRowMapper<?> mapper = (CSVRowMapper<?>) providers.next();
+					if (mapper.type() == type) {
+						return mapper;
+					}
+				} catch (ServiceConfigurationError e) {
+					// 読み込めない実装クラスは無視してリフレクションで変換する
+				}
+			}
+		}
+	};
+
+	private RowMappers() {
+	}
+
+	/**
+	 * 指定されたクラスの{@link CSVRowMapper}を返す
+	 *
+	 * @param <E> CSVMappableを実装したクラス
+	 * @param clazz 変換対象のクラス
+	 * @return 登録されたCSVRowMapper。登録されていない場合はnull
+	 */
+	@SuppressWarnings("unchecked")
+	static <E extends CSVMappable> CSVRowMapper<E> find(Class<E> clazz) {
+		return (CSVRowMapper<E>) CACHE.get(clazz);
+	}
+}
@@ -0,0 +1,195 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * 解析済みのレコードを保持するスナップショットファイル<br>
+ * CSVファイルと同じディレクトリに「CSVファイル名.snapshot」として作成し、
+ * 作成時のCSVファイルのパス・サイズ・更新日時と読み込みの設定(文字コード・区切り文字・クォート)が一致する場合のみ使用する<br>
+ * ファイルの形式は以下の通り(数値はビッグエンディアン)
+ *
+ * <pre>
+ * ヘッダー: int MAGIC, int VERSION, UTF パス, long サイズ, long 更新日時, UTF 文字コード(判定する場合は空), char 区切り文字, char クォート
+ * レコード: int 以降のバイト数, 可変長整数 フィールド数, 可変長整数 フィールドごとのバイト数, UTF-8のフィールドを連結したバイト列
+ * トレーラー: long[] レコードごとの開始位置, long レコード数, long 開始位置の表の位置, int MAGIC
+ * </pre>
+ *
+ * @author 417.72KI
+ */
+final class Snapshot {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Snapshot.class);
+
+	/** スナップショットファイルの拡張子 */
+	static final String EXTENSION = ".snapshot";
+	static final int MAGIC = 0x43535653;
+	static final int VERSION = 1;
+	/** トレーラーのうちレコードの開始位置の表を除いた部分のバイト数 */
+	static final int TRAILER_SIZE = 8 + 8 + 4;
+
+	private final CSVFile source;
+	private final Path path;
+	private final long size;
+	private final long modified;
+	private final String charset;
+	private final char delimiter;
+	private final char quote;
+
+	private Snapshot(CSVFile source, Charset charset, char delimiter, char quote) {
+		this.source = source;
+		this.path = new File(source.getAbsolutePath() + EXTENSION).toPath();
+		this.size = source.length();
+		this.modified = source.lastModified();
+		this.charset = charset == null ? "" : charset.name();
+		this.delimiter = delimiter;
+		this.quote = quote;
+	}
+
+	/**
+	 * CSVファイルの現在のサイズ・更新日時と読み込みの設定からスナップショットを特定する
+	 *
+	 * @param source CSVファイル
+	 * @param charset 文字コード。判定する場合はnull
+	 * @param delimiter 区切り文字
+	 * @param quote クォート
+	 * @return スナップショット
+	 */
+	static Snapshot of(CSVFile source, Charset charset, char delimiter, char quote) {
+		return new Snapshot(source, charset, delimiter, quote);
+	}
+
+	/**
+	 * @return スナップショットファイルのパス
+	 */
+	Path path() {
+		return path;
+	}
+
+	/**
+	 * スナップショットファイルが有効な場合に、レコードを読み込むリーダーを返す
+	 *
+	 * @return リーダー。スナップショットファイルが存在しない場合、CSVファイルや設定が作成時と異なる場合、
+	 * 作成が完了していない場合はnull
+	 * @throws IOException 入出力エラー
+	 */
+	SnapshotRecordReader open() throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		try {
+			long fileSize = channel.size();
+			long dataStart = readHeader(channel);
+			if (dataStart < 0 || fileSize < dataStart + TRAILER_SIZE) {
+				LOGGER.debug("stale snapshot: {}", path);
+				channel.close();
+				return null;
+			}
+			ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+			channel.read(trailer, fileSize - TRAILER_SIZE);
+			long count = trailer.getLong(0);
+			long table = trailer.getLong(8);
+			if (trailer.getInt(16) != MAGIC || table < dataStart || table + (count << 3) != fileSize - TRAILER_SIZE) {
+				LOGGER.debug("incomplete snapshot: {}", path);
+				channel.close();
+				return null;
+			}
+			return new SnapshotRecordReader(channel, dataStart, table);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * CSVファイルを読み込むリーダーを、読み込んだレコードをスナップショットファイルに書き込むリーダーで包む
+	 *
+	 * @param reader CSVファイルを読み込むリーダー
+	 * @return スナップショットファイルに書き込むリーダー。スナップショットファイルを作成できない場合は指定されたリーダー
+	 */
+	RecordReader record(RecordReader reader) {
+		try {
+			return new SnapshotWriter(reader, this);
+		} catch (IOException e) {
+			LOGGER.warn("cannot create snapshot: {}", path, e);
+			return reader;
+		}
+	}
+
+	/**
+	 * @return 読み込みの開始時点からCSVファイルが更新されていない場合はtrue
+	 */
+	boolean isSourceUnchanged() {
+		return source.length() == size && source.lastModified() == modified;
+	}
+
+	/**
+	 * スナップショットファイルのヘッダーを書き込む
+	 *
+	 * @param out 出力先
+	 * @throws IOException 入出力エラー
+	 */
+	void writeHeader(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(source.getAbsolutePath());
+		out.writeLong(size);
+		out.writeLong(modified);
+		out.writeUTF(charset);
+		out.writeChar(delimiter);
+		out.writeChar(quote);
+	}
+
+	/**
+	 * ヘッダーを読み込み、このスナップショットと一致するかを判定する
+	 *
+	 * @return 一致する場合はレコードの開始位置、一致しない場合は-1
+	 */
+	private long readHeader(FileChannel channel) throws IOException {
+		// チャネルを閉じないよう、位置を指定して読み込む
+		InputStream in = Channels.newInputStream(channel.position(0));
+		DataInputStream data = new DataInputStream(in);
+		try {
+			if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+				return -1;
+			}
+			if (!source.getAbsolutePath().equals(data.readUTF()) || data.readLong() != size
+					|| data.readLong() != modified) {
+				return -1;
+			}
+			if (!charset.equals(data.readUTF()) || data.readChar() != delimiter || data.readChar() != quote) {
+				return -1;
+			}
+		} catch (IOException e) {
+			return -1;
+		}
+		return channel.position();
+	}
+
+	/**
+	 * @return 作成するスナップショットファイルと同じディレクトリの一時ファイル
+	 * @throws IOException 一時ファイルを作成できない場合
+	 */
+	Path createTempFile() throws IOException {
+		return Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+	}
+}
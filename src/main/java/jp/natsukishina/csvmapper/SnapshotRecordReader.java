@@ -0,0 +1,190 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link Snapshot}のスナップショットファイルをメモリーマップし、区切り文字やクォートを解析せずにレコードを取り出すクラス<br>
+ * フィールドは{@link ByteRecordReader}と同様にバイト列上の範囲として保持し、要求された時点で文字列に変換する<br>
+ * ファイルは一定サイズの範囲ごとにマップし、範囲をまたぐレコードはそのレコードの先頭から改めてマップし直す
+ *
+ * @author 417.72KI
+ */
+class SnapshotRecordReader implements RecordReader {
+
+	private final FileChannel channel;
+	/** 最初のレコードの位置 */
+	private final long start;
+	/** レコードの終了位置(レコードの開始位置の表の位置) */
+	private final long end;
+	private ByteBuffer buffer;
+	/** {@link #buffer}の先頭のファイル上の位置 */
+	private long bufferOffset;
+	/** 次のレコードの{@link #buffer}上の位置 */
+	private int position;
+	/** フィールドごとのバイト数 */
+	private int[] lengths = new int[32];
+	/** フィールドの開始位置と終了位置の組 */
+	private int[] bounds = new int[64];
+	/** 読み込む列。全ての列を読み込む場合はnull */
+	private Projection projection;
+	/** 絞り込む条件。全てのレコードを読み込む場合はnull */
+	private RecordFilter filter;
+	/** 条件を満たさずに読み飛ばしたレコード数 */
+	private long filtered;
+	/** 同じ内容の文字列を共有するキャッシュ。共有しない場合はnull */
+	private StringDeduplicator deduplicator;
+	/** 使い回すフィールドのリスト。使い回さない場合はnull */
+	private ByteFieldList record;
+
+	/**
+	 * @param channel スナップショットファイルのチャネル
+	 * @param start 最初のレコードの位置
+	 * @param end レコードの終了位置
+	 */
+	SnapshotRecordReader(FileChannel channel, long start, long end) {
+		this.channel = channel;
+		this.start = start;
+		this.end = end;
+		this.buffer = ByteBuffer.allocate(0);
+		this.bufferOffset = start;
+	}
+
+	@Override
+	public List<String> readRecord() throws IOException {
+		while (bufferOffset + position < end) {
+			ensure(4);
+			int length = buffer.getInt(position);
+			ensure(4 + length);
+			int p = position + 4;
+			position = p + length;
+			int count = 0;
+			int varint = 0;
+			int shift = 0;
+			int fields = -1;
+			// フィールド数とフィールドごとのバイト数(可変長整数)
+			while (fields < 0 || count < fields) {
+				byte b = buffer.get(p++);
+				varint |= (b & 0x7F) << shift;
+				if (b < 0) {
+					shift += 7;
+					continue;
+				}
+				if (fields < 0) {
+					fields = varint;
+					if (lengths.length < fields) {
+						lengths = new int[fields];
+					}
+				} else {
+					lengths[count++] = varint;
+				}
+				varint = 0;
+				shift = 0;
+			}
+			List<String> record = toList(p, fields);
+			if (filter == null || accept((ByteFieldList) record)) {
+				return record;
+			}
+			filtered++;
+		}
+		return null;
+	}
+
+	@Override
+	public void project(Projection projection) {
+		this.projection = projection;
+	}
+
+	@Override
+	public void filter(RecordFilter filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public long recordsFiltered() {
+		return filtered;
+	}
+
+	@Override
+	public void deduplicate(StringDeduplicator deduplicator) {
+		this.deduplicator = deduplicator;
+	}
+
+	@Override
+	public void reuse() {
+		if (record == null) {
+			record = new ByteFieldList(buffer, StandardCharsets.UTF_8, ByteRecordReader.QUOTE, new int[0], deduplicator);
+		}
+	}
+
+	@Override
+	public long bytesRead() {
+		return bufferOffset + position - start;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * {@link #buffer}の次のレコードの位置から指定されたバイト数を参照できるようにする
+	 */
+	private void ensure(int size) throws IOException {
+		if (position + size <= buffer.limit()) {
+			return;
+		}
+		long offset = bufferOffset + position;
+		if (offset + size > end) {
+			throw new IOException("broken snapshot at offset " + offset);
+		}
+		buffer = channel.map(MapMode.READ_ONLY, offset,
+				Math.min(end - offset, Math.max(MappedRecordReader.WINDOW_SIZE, size)));
+		bufferOffset = offset;
+		position = 0;
+	}
+
+	/**
+	 * フィールドの範囲をリストにする。列が指定されている場合は指定された列のみを指定された順序で並べる
+	 *
+	 * @param start 最初のフィールドの位置
+	 * @param fields フィールド数
+	 */
+	private List<String> toList(int start, int fields) {
+		int slots = projection == null ? fields : projection.size();
+		if (bounds.length < slots << 1) {
+			bounds = new int[slots << 1];
+		} else if (projection != null) {
+			Arrays.fill(bounds, 0, slots << 1, 0);
+		}
+		int p = start;
+		for (int i = 0; i < fields; i++) {
+			int slot = projection == null ? i : projection.target(i);
+			if (slot >= 0) {
+				bounds[slot << 1] = p;
+				bounds[(slot << 1) + 1] = p + lengths[i];
+			}
+			p += lengths[i];
+		}
+		if (record != null) {
+			return record.reset(buffer, bounds, slots, deduplicator);
+		}
+		return new ByteFieldList(buffer, StandardCharsets.UTF_8, ByteRecordReader.QUOTE,
+				Arrays.copyOf(bounds, slots << 1), deduplicator);
+	}
+
+	private boolean accept(ByteFieldList record) {
+		for (int i = 0, n = filter.size(); i < n; i++) {
+			int column = filter.column(i);
+			if (!filter.test(i, column < record.size() ? record.field(column) : "")) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
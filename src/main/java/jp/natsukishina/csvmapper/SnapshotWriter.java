@@ -0,0 +1,232 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CSVファイルから読み込んだレコードを{@link Snapshot}のスナップショットファイルに書き込みながら返すリーダー<br>
+ * CSVファイルの全ての列を書き込むため、読み込む列の指定と絞り込む条件は書き込んだ後でこのクラスが適用する<br>
+ * 一時ファイルに書き込み、最後のレコードまで読み込んだ時点でスナップショットファイルに置き換える。
+ * 途中で閉じた場合、書き込みに失敗した場合、読み込み中にCSVファイルが更新された場合はスナップショットファイルを作成しない
+ *
+ * @author 417.72KI
+ */
+class SnapshotWriter implements RecordReader {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotWriter.class);
+
+	private final RecordReader source;
+	private final Snapshot snapshot;
+	private final Path temp;
+	private DataOutputStream out;
+	/** 次のレコードのファイル上の位置 */
+	private long position;
+	/** レコードごとの開始位置 */
+	private long[] offsets = new long[1024];
+	private int count;
+	private byte[][] fields = new byte[32][];
+	/** 読み込む列。全ての列を読み込む場合はnull */
+	private Projection projection;
+	/** 絞り込む条件。全てのレコードを読み込む場合はnull */
+	private RecordFilter filter;
+	/** 条件を満たさずに読み飛ばしたレコード数 */
+	private long filtered;
+
+	/**
+	 * @param source CSVファイルを読み込むリーダー(読み込む列・絞り込む条件を指定していないこと)
+	 * @param snapshot 作成するスナップショット
+	 * @throws IOException 一時ファイルを作成できない場合
+	 */
+	SnapshotWriter(RecordReader source, Snapshot snapshot) throws IOException {
+		this.source = source;
+		this.snapshot = snapshot;
+		this.temp = snapshot.createTempFile();
+		try {
+			this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+			snapshot.writeHeader(out);
+			this.position = out.size();
+		} catch (IOException e) {
+			abort(e);
+			throw e;
+		}
+	}
+
+	@Override
+	public List<String> readRecord() throws IOException {
+		List<String> record;
+		while ((record = source.readRecord()) != null) {
+			if (out != null) {
+				write(record);
+			}
+			if (projection != null) {
+				record = projection.select(record);
+			}
+			if (filter == null || accept(record)) {
+				return record;
+			}
+			filtered++;
+		}
+		if (out != null) {
+			finish();
+		}
+		return null;
+	}
+
+	@Override
+	public void project(Projection projection) {
+		this.projection = projection;
+	}
+
+	@Override
+	public void filter(RecordFilter filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public long recordsFiltered() {
+		return filtered;
+	}
+
+	/**
+	 * スナップショットファイルを作成する読み込みでは、CSVファイルを読み込むリーダーが全ての列の文字列を生成するため共有しない
+	 */
+	@Override
+	public void deduplicate(StringDeduplicator deduplicator) {
+	}
+
+	@Override
+	public long bytesRead() {
+		return source.bytesRead();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (out != null) {
+				abort(null);
+			}
+		} finally {
+			source.close();
+		}
+	}
+
+	private void write(List<String> record) {
+		try {
+			int size = record.size();
+			if (fields.length < size) {
+				fields = new byte[size][];
+			}
+			int length = varintSize(size);
+			for (int i = 0; i < size; i++) {
+				fields[i] = record.get(i).getBytes(StandardCharsets.UTF_8);
+				length += varintSize(fields[i].length) + fields[i].length;
+			}
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count << 1);
+			}
+			offsets[count++] = position;
+			out.writeInt(length);
+			writeVarint(size);
+			for (int i = 0; i < size; i++) {
+				writeVarint(fields[i].length);
+			}
+			for (int i = 0; i < size; i++) {
+				out.write(fields[i]);
+				fields[i] = null;
+			}
+			position += 4 + length;
+		} catch (IOException e) {
+			// スナップショットファイルの作成に失敗してもCSVファイルの読み込みは続ける
+			LOGGER.warn("cannot write snapshot: {}", snapshot.path(), e);
+			abort(null);
+		}
+	}
+
+	/**
+	 * トレーラーを書き込み、一時ファイルをスナップショットファイルに置き換える
+	 */
+	private void finish() {
+		try {
+			for (int i = 0; i < count; i++) {
+				out.writeLong(offsets[i]);
+			}
+			out.writeLong(count);
+			out.writeLong(position);
+			out.writeInt(Snapshot.MAGIC);
+			out.close();
+			out = null;
+			if (!snapshot.isSourceUnchanged()) {
+				LOGGER.debug("source changed while reading: {}", snapshot.path());
+				abort(null);
+				return;
+			}
+			Files.move(temp, snapshot.path(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOGGER.debug("snapshot created: {}", snapshot.path());
+		} catch (IOException e) {
+			LOGGER.warn("cannot write snapshot: {}", snapshot.path(), e);
+			abort(null);
+		}
+	}
+
+	/**
+	 * 書き込みを中止して一時ファイルを削除する
+	 *
+	 * @param cause 中止の原因となった例外。削除に失敗した場合の例外を抑制された例外として追加する
+	 */
+	private void abort(IOException cause) {
+		try {
+			if (out != null) {
+				out.close();
+			}
+		} catch (IOException e) {
+			LOGGER.debug("cannot close snapshot: {}", temp, e);
+		}
+		out = null;
+		try {
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			if (cause != null) {
+				cause.addSuppressed(e);
+			} else {
+				LOGGER.warn("cannot delete temporary snapshot: {}", temp, e);
+			}
+		}
+	}
+
+	private boolean accept(List<String> record) {
+		for (int i = 0, n = filter.size(); i < n; i++) {
+			int column = filter.column(i);
+			if (!filter.test(i, column < record.size() ? record.get(column) : "")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void writeVarint(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
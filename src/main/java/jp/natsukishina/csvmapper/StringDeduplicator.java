@@ -0,0 +1,216 @@
+package jp.natsukishina.csvmapper;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 列ごとに同じ内容のフィールドに同じ{@link String}を返すキャッシュ<br>
+ * 読み込み元の文字・バイト列の範囲をそのままキーとして検索するため、キャッシュに存在する場合は文字列を生成しない<br>
+ * 列ごとの表は固定長(同じ位置に格納される値は上書きする)で、一定回数検索した時点でヒット率が低い列は
+ * 値の種類が多い列とみなしてキャッシュを使用しなくなる<br>
+ * ※1つのリーダーからのみ使用する。スレッドセーフではない
+ *
+ * @author 417.72KI
+ */
+final class StringDeduplicator {
+
+	/** 列ごとの表の大きさ(2の累乗) */
+	static final int TABLE_SIZE = 1024;
+	/** キャッシュする文字列の最大の長さ */
+	static final int MAX_LENGTH = 64;
+	/** ヒット率を判定するまでの検索回数 */
+	static final int SAMPLE_SIZE = 4096;
+	/** キャッシュを使い続ける最低のヒット率 */
+	static final double MIN_HIT_RATE = 0.5;
+
+	/** 対象の列。全ての列を対象にする場合はnull */
+	private final boolean[] targets;
+	private Table[] tables = new Table[0];
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param columns 対象の列の位置。空の場合は全ての列を対象にする
+	 */
+	StringDeduplicator(int[] columns) {
+		if (columns.length == 0) {
+			this.targets = null;
+			return;
+		}
+		int max = 0;
+		for (int column : columns) {
+			max = Math.max(max, column);
+		}
+		this.targets = new boolean[max + 1];
+		for (int column : columns) {
+			targets[column] = true;
+		}
+	}
+
+	/**
+	 * 文字の配列の指定された範囲の文字列を返す
+	 *
+	 * @param column 列の位置
+	 * @param chars 文字の配列
+	 * @param start 開始位置
+	 * @param end 終了位置
+	 * @return 範囲の文字列。キャッシュに存在する場合はキャッシュした文字列
+	 */
+	String get(int column, char[] chars, int start, int end) {
+		Table table = table(column, end - start);
+		if (table == null) {
+			return new String(chars, start, end - start);
+		}
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		int slot = slot(hash);
+		String value = table.values[slot];
+		if (value != null && table.hashes[slot] == hash && equals(value, chars, start, end)) {
+			return hit(table, value);
+		}
+		value = new String(chars, start, end - start);
+		table.put(slot, hash, null, value);
+		return miss(table, value);
+	}
+
+	/**
+	 * バイト列の指定された範囲を文字列に変換して返す
+	 *
+	 * @param column 列の位置
+	 * @param bytes バイト列
+	 * @param start 開始位置
+	 * @param end 終了位置
+	 * @param charset 文字コード
+	 * @return 変換した文字列。キャッシュに存在する場合はキャッシュした文字列
+	 */
+	String get(int column, byte[] bytes, int start, int end, Charset charset) {
+		Table table = table(column, end - start);
+		if (table == null) {
+			return new String(bytes, start, end - start, charset);
+		}
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + bytes[i];
+		}
+		int slot = slot(hash);
+		String value = table.values[slot];
+		if (value != null && table.hashes[slot] == hash && equals(table.keys[slot], bytes, start, end)) {
+			return hit(table, value);
+		}
+		byte[] key = Arrays.copyOfRange(bytes, start, end);
+		value = new String(key, charset);
+		table.put(slot, hash, key, value);
+		return miss(table, value);
+	}
+
+	/**
+	 * @return キャッシュから返した回数
+	 */
+	long hits() {
+		return hits;
+	}
+
+	/**
+	 * @return キャッシュに存在せず文字列を生成した回数(キャッシュを使用しなくなった列を除く)
+	 */
+	long misses() {
+		return misses;
+	}
+
+	/**
+	 * 指定された列の表を返す
+	 *
+	 * @return 表。対象外の列、キャッシュを使用しなくなった列、長すぎる値の場合はnull
+	 */
+	private Table table(int column, int length) {
+		if (length > MAX_LENGTH) {
+			return null;
+		}
+		if (targets != null && (column >= targets.length || !targets[column])) {
+			return null;
+		}
+		if (column >= tables.length) {
+			tables = Arrays.copyOf(tables, column + 1);
+		}
+		Table table = tables[column];
+		if (table == null) {
+			table = tables[column] = new Table();
+		}
+		return table.disabled ? null : table;
+	}
+
+	private String hit(Table table, String value) {
+		hits++;
+		table.hits++;
+		return value;
+	}
+
+	private String miss(Table table, String value) {
+		misses++;
+		if (++table.misses + table.hits == SAMPLE_SIZE && table.hits < SAMPLE_SIZE * MIN_HIT_RATE) {
+			table.disable();
+		}
+		return value;
+	}
+
+	private static int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+	}
+
+	private static boolean equals(String value, char[] chars, int start, int end) {
+		if (value.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (value.charAt(i - start) != chars[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equals(byte[] key, byte[] bytes, int start, int end) {
+		if (key.length != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (key[i - start] != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 1つの列の表
+	 */
+	private static final class Table {
+		private String[] values = new String[TABLE_SIZE];
+		private int[] hashes = new int[TABLE_SIZE];
+		/** バイト列から検索する場合のキー */
+		private byte[][] keys;
+		private long hits;
+		private long misses;
+		private boolean disabled;
+
+		void put(int slot, int hash, byte[] key, String value) {
+			if (key != null) {
+				if (keys == null) {
+					keys = new byte[TABLE_SIZE][];
+				}
+				keys[slot] = key;
+			}
+			values[slot] = value;
+			hashes[slot] = hash;
+		}
+
+		void disable() {
+			disabled = true;
+			values = null;
+			hashes = null;
+			keys = null;
+		}
+	}
+}
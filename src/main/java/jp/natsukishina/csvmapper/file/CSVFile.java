@@ -1,7 +1,15 @@
 package jp.natsukishina.csvmapper.file;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 import jp.natsukishina.csvmapper.CSVMapper;
 import jp.natsukishina.csvmapper.CSVException;
@@ -24,6 +32,37 @@ public class CSVFile extends File {
 		return new CSVFile(file);
 	}
 
+	/**
+	 * ディレクトリ直下のCSVファイルを検索する<br>
+	 * サブディレクトリは検索しない。圧縮されたCSVファイルも含む
+	 *
+	 * <pre>
+	 * List&lt;CSVFile&gt; files = CSVFile.find(new File("drop/20160610"), "part-*.csv.gz");
+	 * </pre>
+	 *
+	 * @param directory 検索するディレクトリ
+	 * @param glob ファイル名のglobパターン({@link java.nio.file.FileSystem#getPathMatcher(String)}の形式)。nullの場合は全てのCSVファイル
+	 * @return CSVファイルのリスト。ファイル名の順に並べる
+	 * @throws CSVException ディレクトリが読み込めない場合
+	 */
+	public static List<CSVFile> find(File directory, String glob) {
+		Path dir = directory.toPath();
+		PathMatcher matcher = glob == null ? null : dir.getFileSystem().getPathMatcher("glob:" + glob);
+		List<CSVFile> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path path : stream) {
+				if ((matcher == null || matcher.matches(path.getFileName())) && Files.isRegularFile(path)
+						&& CSVMapper.isCSVFile(path.toFile())) {
+					files.add(fromFile(path.toFile()));
+				}
+			}
+		} catch (IOException e) {
+			throw new CSVException(e);
+		}
+		files.sort(Comparator.comparing(File::getName));
+		return files;
+	}
+
 	private CSVFile(File file) {
 		super(file.getParentFile(), file.getName());
 		validate();
@@ -0,0 +1,188 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CSVColumnTest {
+
+	private static final String RESOURCE_DIR = "src/test/resources";
+	private static final String RESOURCE_CSV_FILE = "columns.csv";
+
+	@Test
+	public void 正常系_列番号を指定して読み込み() {
+		List<IndexedData> list = CSVMapper.convertFromCSVFile(new CSVFile(RESOURCE_DIR, RESOURCE_CSV_FILE),
+				IndexedData.class);
+		// ヘッダー行と数値に変換できない行は読み飛ばす
+		assertThat(list.size(), is(2));
+		assertThat(list.get(0).id, is(1));
+		assertThat(list.get(0).name, is("りんご"));
+		assertThat(list.get(0).price, is(new BigDecimal("120.50")));
+		assertThat(list.get(0).released, is(LocalDate.of(2016, 6, 10)));
+		assertThat(list.get(0).active, is(true));
+		assertThat(list.get(0).count, is(10000000000L));
+		assertThat(list.get(1).id, is(2));
+		assertThat(list.get(1).name, is("みかん,箱"));
+		assertThat(list.get(1).price, nullValue());
+		assertThat(list.get(1).active, is(false));
+		assertThat(list.get(1).count, is(0L));
+	}
+
+	@Test
+	public void 正常系_列名を指定して読み込み() {
+		List<NamedData> list = CSVMapper.convertFromCSVFile(new CSVFile(RESOURCE_DIR, RESOURCE_CSV_FILE),
+				NamedData.class);
+		assertThat(list.size(), is(3));
+		assertThat(list.get(0).name, is("りんご"));
+		assertThat(list.get(0).released, is(LocalDate.of(2016, 6, 10)));
+		assertThat(list.get(2).name, is("skip"));
+	}
+
+	@Test
+	public void 正常系_列番号を指定して出力() {
+		IndexedData data = new IndexedData();
+		data.id = 3;
+		data.name = "ぶどう";
+		data.released = LocalDate.of(2016, 12, 1);
+		data.count = -5;
+		assertThat(Arrays.asList(data.array4exportCSV()),
+				is(Arrays.asList("3", "ぶどう", "", "2016-12-01", "false", "-5")));
+	}
+
+	@Test
+	public void 正常系_列番号を省略した列は列番号を指定した列の後に出力() {
+		MixedData data = new MixedData();
+		data.id = 7;
+		data.code = "A-1";
+		data.name = "りんご";
+		data.note = "赤";
+		data.price = 120;
+		assertThat(Arrays.asList(data.array4exportCSV()), is(Arrays.asList("7", "", "120", "赤", "りんご", "A-1")));
+	}
+
+	@Test
+	public void 異常系_同じ列番号を複数のフィールドに指定して出力() {
+		try {
+			new DuplicatedData().array4exportCSV();
+			fail();
+		} catch (CSVException e) {
+			assertThat(e.getMessage(), containsString("column index 0"));
+		}
+	}
+
+	@Test
+	public void 正常系_文字列を生成せずに数値に変換() {
+		assertThat(ColumnBinding.parseLong("-9223372036854775808"), is(Long.MIN_VALUE));
+		assertThat(ColumnBinding.parseLong("+42"), is(42L));
+		assertThat(ColumnBinding.parseInt("2147483647"), is(Integer.MAX_VALUE));
+		assertThat(ColumnBinding.parseBoolean("TRUE"), is(true));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void 異常系_範囲外の数値を変換() {
+		ColumnBinding.parseInt("2147483648");
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_対応していない型に列を指定() {
+		ColumnBinding.of(UnsupportedData.class);
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_ヘッダー行に存在しない列名を指定() {
+		CSVMapper.convertFromCSVFile(new CSVFile(RESOURCE_DIR, RESOURCE_CSV_FILE), UnknownNameData.class);
+	}
+
+	public static class IndexedData implements CSVMappable {
+		@CSVColumn(index = 0)
+		private int id;
+		@CSVColumn(index = 1)
+		private String name;
+		@CSVColumn(index = 2)
+		private BigDecimal price;
+		@CSVColumn(index = 3)
+		private LocalDate released;
+		@CSVColumn(index = 4)
+		private boolean active;
+		@CSVColumn(index = 5)
+		private long count;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	public static class NamedData implements CSVMappable {
+		@CSVColumn(name = "name")
+		private String name;
+		@CSVColumn(name = "released", format = "yyyy-MM-dd")
+		private LocalDate released;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	public static class BaseData implements CSVMappable {
+		@CSVColumn(index = 0)
+		int id;
+		@CSVColumn(name = "name")
+		String name;
+		@CSVColumn(name = "memo")
+		String note;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	public static class MixedData extends BaseData {
+		@CSVColumn(name = "code")
+		private String code;
+		@CSVColumn(index = 2)
+		private int price;
+	}
+
+	public static class DuplicatedData implements CSVMappable {
+		@CSVColumn(index = 0)
+		private String first;
+		@CSVColumn(index = 0, name = "second")
+		private String second;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	public static class UnsupportedData implements CSVMappable {
+		@CSVColumn(index = 0)
+		private Object value;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	public static class UnknownNameData implements CSVMappable {
+		@CSVColumn(name = "unknown")
+		private String value;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+}
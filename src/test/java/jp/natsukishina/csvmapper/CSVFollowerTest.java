@@ -0,0 +1,158 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Named;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CSVFollowerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_改行で終わっているレコードだけを読み込む() throws Exception {
+		CSVFile file = write(folder, "log.csv", "1,a\n2,\"b\nc\"\n3,par");
+		CSVFollower<Row> follower = CSVMapper.builder().build().follow(file, Row.class);
+		List<List<String>> rows = new ArrayList<>();
+		assertThat(follower.poll((records, checkpoint) -> records.forEach(r -> rows.add(fields(r)))), is(2));
+		assertThat(rows, is(Arrays.asList(Arrays.asList("1", "a"), Arrays.asList("2", "b\nc"))));
+		assertThat(follower.getCheckpoint().getOffset(), is((long) "1,a\n2,\"b\nc\"\n".length()));
+		assertThat(follower.getCheckpoint().getCharset(), is(StandardCharsets.UTF_8));
+
+		rows.clear();
+		append(file, "tial\n4,\"改行\nあり\"\r");
+		assertThat(follower.poll((records, checkpoint) -> records.forEach(r -> rows.add(fields(r)))), is(2));
+		assertThat(rows, is(Arrays.asList(Arrays.asList("3", "partial"), Arrays.asList("4", "改行\nあり"))));
+		// '\r'の直後の'\n'は空のレコードとして読み込まない
+		rows.clear();
+		append(file, "\n5,e\n");
+		assertThat(follower.poll((records, checkpoint) -> records.forEach(r -> rows.add(fields(r)))), is(1));
+		assertThat(rows, is(Arrays.asList(Arrays.asList("5", "e"))));
+		assertThat(follower.poll((records, checkpoint) -> fail()), is(0));
+	}
+
+	@Test
+	public void 正常系_保存した再開位置から再開する() throws Exception {
+		CSVFile file = write(folder, "log.csv", "\uFEFFid,name\n1,りんご\n");
+		CSVMapper mapper = CSVMapper.builder().build();
+		List<String> names = new ArrayList<>();
+		List<CSVCheckpoint> checkpoints = new ArrayList<>();
+		CSVFollower<Named> first = mapper.follow(file, Named.class);
+		first.poll((records, checkpoint) -> {
+			records.forEach(r -> names.add(r.name));
+			checkpoints.add(checkpoint);
+		});
+		assertThat(names, is(Arrays.asList("りんご")));
+		CSVCheckpoint saved = CSVCheckpoint.of(checkpoints.get(0).getOffset(), checkpoints.get(0).getCharset());
+		assertThat(saved, is(first.getCheckpoint()));
+
+		append(file, "2,みかん\n");
+		CSVFollower<Named> resumed = mapper.follow(file, Named.class, saved);
+		resumed.poll((records, checkpoint) -> records.forEach(r -> names.add(r.name)));
+		assertThat(names, is(Arrays.asList("りんご", "みかん")));
+	}
+
+	@Test
+	public void 正常系_コールバックが例外を投げた場合は読み込み直す() throws Exception {
+		CSVFile file = write(folder, "log.csv", "1,a\n");
+		CSVFollower<Row> follower = CSVMapper.builder().build().follow(file, Row.class);
+		try {
+			follower.poll((records, checkpoint) -> {
+				throw new IllegalStateException();
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(follower.getCheckpoint().getOffset(), is(0L));
+		}
+		assertThat(follower.poll((records, checkpoint) -> {
+		}), is(1));
+	}
+
+	@Test
+	public void 正常系_一定のバイト数ごとにコールバックに渡す() throws Exception {
+		CSVFile file = write(folder, "log.csv", "1,a\n2,b\n3,c\n4,d\n5,e\n");
+		CSVFollower<Row> follower = new CSVFollower<>(CSVMapper.builder().build(), file, Row.class,
+				CSVCheckpoint.START, 8);
+		List<Long> offsets = new ArrayList<>();
+		List<Integer> sizes = new ArrayList<>();
+		assertThat(follower.poll((records, checkpoint) -> {
+			sizes.add(records.size());
+			offsets.add(checkpoint.getOffset());
+		}), is(5));
+		assertThat(sizes, is(Arrays.asList(2, 2, 1)));
+		assertThat(offsets, is(Arrays.asList(8L, 16L, 20L)));
+	}
+
+	@Test
+	public void 正常系_切り詰められた場合は先頭から読み込み直す() throws Exception {
+		CSVFile file = write(folder, "log.csv", "1,a\n2,b\n");
+		CSVFollower<Row> follower = CSVMapper.builder().build().follow(file, Row.class);
+		follower.poll((records, checkpoint) -> {
+		});
+		Files.write(file.toPath(), "3,c\n".getBytes(StandardCharsets.UTF_8));
+		List<List<String>> rows = new ArrayList<>();
+		follower.poll((records, checkpoint) -> records.forEach(r -> rows.add(fields(r))));
+		assertThat(rows, is(Arrays.asList(Arrays.asList("3", "c"))));
+	}
+
+	@Test
+	public void 正常系_ファイルの変更を監視する() throws Exception {
+		CSVFile file = write(folder, "log.csv", "1,a\n");
+		CSVFollower<Row> follower = CSVMapper.builder().build().follow(file, Row.class);
+		List<String> ids = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch latch = new CountDownLatch(2);
+		Thread thread = new Thread(() -> {
+			try {
+				follower.watch((records, checkpoint) -> records.forEach(r -> {
+					ids.add(r.array4exportCSV()[0]);
+					latch.countDown();
+				}));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		thread.start();
+		while (ids.isEmpty() && thread.isAlive()) {
+			Thread.sleep(10);
+		}
+		append(file, "2,b\n");
+		assertThat(latch.await(30, TimeUnit.SECONDS), is(true));
+		follower.close();
+		thread.join(10000);
+		assertThat(thread.isAlive(), is(false));
+		assertThat(ids, is(Arrays.asList("1", "2")));
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_バイト列のまま解析できない文字コード() throws Exception {
+		Charset utf16 = StandardCharsets.UTF_16LE;
+		CSVFile file = CSVFile.fromFile(folder.newFile("log.csv"));
+		Files.write(file.toPath(), "1,a\n".getBytes(utf16));
+		CSVMapper.builder().charset(utf16).build().follow(file, Row.class).poll((records, checkpoint) -> {
+		});
+	}
+
+	private static void append(CSVFile file, String content) throws Exception {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+}
@@ -0,0 +1,170 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Named;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CSVIndexTest {
+
+	private static final String RESOURCE_DIR = "src/test/resources";
+
+	private static final String ORDERS_CSV = "id,name,status\n"
+			+ "1,\"りんご,箱\",DONE\n"
+			+ "2,\"改行\nあり\",保留\r\n"
+			+ "3,\"\"\"引用\"\"\",\n"
+			+ "4\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_クォート内の改行を考慮してレコードの位置を求める() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVIndex index = CSVMapper.builder().charset(StandardCharsets.UTF_8).build().index(file);
+		assertThat(index.count(), is(5));
+		assertThat(index.offset(0), is(0L));
+		assertThat(index.offset(2), is(byteOffset("2,")));
+		assertThat(index.offset(3), is(byteOffset("3,")));
+		assertThat(index.offset(4), is(byteOffset("4\n")));
+	}
+
+	@Test
+	public void 正常系_指定したレコードと範囲だけを読み込む() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVIndex index = CSVMapper.builder().build().index(file);
+		assertThat(fields(index.get(2, Row.class)), is(Arrays.asList("2", "改行\nあり", "保留")));
+		assertThat(fields(index.get(4, Row.class)), is(Arrays.asList("4")));
+		List<List<String>> rows = fields(index.range(1, 3, Row.class));
+		assertThat(rows, is(Arrays.asList(Arrays.asList("1", "りんご,箱", "DONE"),
+				Arrays.asList("2", "改行\nあり", "保留"))));
+		assertThat(index.range(3, 3, Row.class).isEmpty(), is(true));
+	}
+
+	@Test
+	public void 正常系_ブロックをまたぐレコードの位置() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(i).append(",\"値\n").append(i).append("\"\n");
+		}
+		CSVFile file = write(folder, "many.csv", sb.toString(), StandardCharsets.UTF_8);
+		CSVIndex index = CSVMapper.builder().build().index(file);
+		assertThat(index.count(), is(1000));
+		for (int n : new int[] { 255, 256, 257, 511, 512, 999 }) {
+			assertThat(fields(index.get(n, Row.class)), is(Arrays.asList(Integer.toString(n), "値\n" + n)));
+		}
+	}
+
+	@Test
+	public void 正常系_列名で対応付ける場合はヘッダー行を読み込む() throws Exception {
+		CSVFile file = CSVFile.fromFile(folder.newFile("columns.csv"));
+		Files.copy(new File(RESOURCE_DIR, "columns.csv").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		CSVIndex index = CSVMapper.builder().build().index(file);
+		assertThat(index.count(), is(4));
+		assertThat(index.get(2, Named.class).name, is("みかん,箱"));
+		assertThat(index.get(0, Named.class), nullValue());
+		assertThat(index.range(0, 2, Named.class).size(), is(1));
+	}
+
+	@Test
+	public void 正常系_BOMを除いた位置から数える() throws Exception {
+		CSVFile file = write(folder, "bom.csv", "\uFEFFa,b\nc,d\n", StandardCharsets.UTF_8);
+		CSVIndex index = CSVMapper.builder().build().index(file);
+		assertThat(index.offset(0), is(3L));
+		assertThat(fields(index.get(0, Row.class)), is(Arrays.asList("a", "b")));
+	}
+
+	@Test
+	public void 正常系_保存した索引を読み込み更新された場合は作り直す() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		File indexFile = new File(folder.getRoot(), "orders.idx");
+		CSVMapper mapper = CSVMapper.builder().build();
+		CSVIndex created = mapper.index(file, indexFile);
+		assertThat(indexFile.exists(), is(true));
+		CSVIndex loaded = mapper.index(file, indexFile);
+		assertThat(loaded.count(), is(created.count()));
+		assertThat(loaded.offset(4), is(created.offset(4)));
+		assertThat(fields(loaded.get(3, Row.class)), is(Arrays.asList("3", "\"引用\"", "")));
+
+		Files.write(file.toPath(), ("0\n" + ORDERS_CSV).getBytes(StandardCharsets.UTF_8));
+		file.setLastModified(file.lastModified() + 2000);
+		try {
+			loaded.get(1, Row.class);
+			fail();
+		} catch (CSVException e) {
+			assertThat(e.getMessage(), containsString("modified"));
+		}
+		CSVIndex rebuilt = mapper.index(file, indexFile);
+		assertThat(rebuilt.count(), is(6));
+		assertThat(fields(rebuilt.get(0, Row.class)), is(Arrays.asList("0")));
+	}
+
+	@Test
+	public void 正常系_途中までしか書き込まれていない索引は作り直す() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		File indexFile = new File(folder.getRoot(), "orders.idx");
+		CSVMapper mapper = CSVMapper.builder().build();
+		mapper.index(file, indexFile);
+		byte[] saved = Files.readAllBytes(indexFile.toPath());
+		for (int length = 0; length < saved.length; length++) {
+			Files.write(indexFile.toPath(), Arrays.copyOf(saved, length));
+			CSVIndex index = mapper.index(file, indexFile);
+			assertThat(index.count(), is(5));
+			assertThat(fields(index.get(3, Row.class)), is(Arrays.asList("3", "\"引用\"", "")));
+			assertThat(Files.readAllBytes(indexFile.toPath()), is(saved));
+		}
+		assertThat(folder.getRoot().list().length, is(2));
+	}
+
+	@Test
+	public void 正常系_レコード数が不正な索引は作り直す() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		File indexFile = new File(folder.getRoot(), "orders.idx");
+		CSVMapper mapper = CSVMapper.builder().build();
+		mapper.index(file, indexFile);
+		byte[] saved = Files.readAllBytes(indexFile.toPath());
+		// レコード数は1ブロックの開始位置(8バイト)と5レコードの差分(4バイトずつ)の直前に保存されている
+		int countOffset = saved.length - 5 * 4 - 8 - 4 - 4;
+		for (int count : new int[] { Integer.MAX_VALUE, -1, 6, 4 }) {
+			byte[] broken = saved.clone();
+			ByteBuffer.wrap(broken).putInt(countOffset, count);
+			Files.write(indexFile.toPath(), broken);
+			assertThat(mapper.index(file, indexFile).count(), is(5));
+			assertThat(Files.readAllBytes(indexFile.toPath()), is(saved));
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void 異常系_範囲外のレコード() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper.builder().build().index(file).get(5, Row.class);
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_バイト列のまま解析できない文字コード() throws Exception {
+		Charset utf16 = StandardCharsets.UTF_16LE;
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, utf16);
+		CSVMapper.builder().charset(utf16).build().index(file);
+	}
+
+	private static long byteOffset(String prefix) {
+		return ORDERS_CSV.substring(0, ORDERS_CSV.indexOf(prefix)).getBytes(StandardCharsets.UTF_8).length;
+	}
+}
@@ -0,0 +1,134 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Named;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CSVKeyIndexTest {
+
+	private static final String RESOURCE_DIR = "src/test/resources";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_列の値から一致するレコードだけを読み込む() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append("A-").append(i).append(",\"商品\n").append(i).append("\",").append(i * 10).append('\n');
+		}
+		sb.append("\"B,\"\"1\"\"\",引用,0\r\n");
+		sb.append("short\n");
+		CSVFile file = write(folder, "products.csv", sb.toString(), StandardCharsets.UTF_8);
+		try (CSVKeyIndex index = CSVMapper.builder().build().keyIndex(file, 0)) {
+			assertThat(index.count(), is(10002));
+			for (int i : new int[] { 0, 1, 4999, 9999 }) {
+				assertThat(fields(index.get("A-" + i, Row.class)),
+						is(Arrays.asList("A-" + i, "商品\n" + i, Integer.toString(i * 10))));
+			}
+			assertThat(fields(index.get("B,\"1\"", Row.class)), is(Arrays.asList("B,\"1\"", "引用", "0")));
+			assertThat(fields(index.get("short", Row.class)), is(Arrays.asList("short")));
+			assertThat(index.get("A-10000", Row.class), nullValue());
+			assertThat(index.contains("A-123"), is(true));
+			assertThat(index.contains("A-"), is(false));
+		}
+		assertThat(Files.exists(CSVKeyIndex.path(file, 0)), is(true));
+
+		try (CSVKeyIndex index = CSVMapper.builder().build().keyIndex(file, 2)) {
+			// 3列目が無いレコードは索引に含めない
+			assertThat(index.count(), is(10001));
+			assertThat(fields(index.get("50", Row.class)), is(Arrays.asList("A-5", "商品\n5", "50")));
+		}
+	}
+
+	@Test
+	public void 正常系_同じ値のレコードとハッシュ値が衝突する値() throws Exception {
+		assertThat("Aa".hashCode(), is("BB".hashCode()));
+		CSVFile file = write(folder, "codes.csv", "Aa,1\nBB,2\nAa,3\nC,4\nAa,5\n", Charset.forName("Windows-31J"));
+		try (CSVKeyIndex index = CSVMapper.builder().build().keyIndex(file, 0)) {
+			assertThat(fields(index.getAll("Aa", Row.class)),
+					is(Arrays.asList(Arrays.asList("Aa", "1"), Arrays.asList("Aa", "3"), Arrays.asList("Aa", "5"))));
+			assertThat(fields(index.get("BB", Row.class)), is(Arrays.asList("BB", "2")));
+			assertThat(index.getAll("Ab", Row.class).isEmpty(), is(true));
+		}
+	}
+
+	@Test
+	public void 正常系_列名で対応付ける場合はヘッダー行を読み込む() throws Exception {
+		CSVFile file = CSVFile.fromFile(folder.newFile("columns.csv"));
+		Files.copy(new File(RESOURCE_DIR, "columns.csv").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		try (CSVKeyIndex index = CSVMapper.builder().build().keyIndex(file, 1)) {
+			assertThat(index.get("みかん,箱", Named.class).name, is("みかん,箱"));
+			// ヘッダー行は変換しない
+			assertThat(index.get("name", Named.class), nullValue());
+			assertThat(fields(index.get("name", Row.class)).get(0), is("id"));
+		}
+	}
+
+	@Test
+	public void 正常系_CSVファイルが更新された場合は作り直す() throws Exception {
+		CSVFile file = write(folder, "master.csv", "1,a\n2,b\n", StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().build();
+		Path path = CSVKeyIndex.path(file, 0);
+		try (CSVKeyIndex index = mapper.keyIndex(file, 0)) {
+			assertThat(fields(index.get("2", Row.class)), is(Arrays.asList("2", "b")));
+		}
+		FileTime created = Files.getLastModifiedTime(path);
+		Files.setLastModifiedTime(path, FileTime.fromMillis(created.toMillis() - 60000));
+		FileTime saved = Files.getLastModifiedTime(path);
+		try (CSVKeyIndex index = mapper.keyIndex(file, 0)) {
+			// 保存した索引を使用する
+			assertThat(Files.getLastModifiedTime(path), is(saved));
+			assertThat(index.get("3", Row.class), nullValue());
+
+			Files.write(file.toPath(), "3,c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+			try {
+				index.get("3", Row.class);
+				fail();
+			} catch (CSVException e) {
+				assertThat(e.getMessage(), containsString("modified"));
+			}
+		}
+		try (CSVKeyIndex index = mapper.keyIndex(file, 0)) {
+			assertThat(fields(index.get("3", Row.class)), is(Arrays.asList("3", "c")));
+			assertThat(index.count(), is(3));
+		}
+	}
+
+	@Test
+	public void 異常系_圧縮されたCSVファイルと負の列の位置() throws Exception {
+		CSVFile file = write(folder, "data.csv.gz", "", StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().build();
+		try {
+			mapper.keyIndex(file, 0);
+			fail();
+		} catch (CSVException e) {
+			assertThat(e.getMessage(), containsString("compressed"));
+		}
+		try {
+			mapper.keyIndex(write(folder, "data.csv", "1\n", StandardCharsets.UTF_8), -1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), containsString("column"));
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.row;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVMapper.ErrorPolicy;
+import jp.natsukishina.csvmapper.CSVTestSupport.Numbered;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CSVMapperBuilderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_区切り文字とクォートを指定して入出力() throws Exception {
+		CSVMapper mapper = CSVMapper.builder().charset(StandardCharsets.UTF_8).delimiter('\t').quote('\'')
+				.lineSeparator("\r\n").build();
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "tab.csv"));
+		List<Row> rows = Arrays.asList(row("1", "a,b", "it's", "x\ty"), row("2", "\"", "", "改行\nあり"));
+		mapper.write(file, rows);
+
+		String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		assertThat(text, is("1\ta,b\t'it''s'\t'x\ty'\r\n2\t\"\t\t'改行\nあり'\r\n"));
+		assertThat(fields(mapper.read(file, Row.class)), is(fields(rows)));
+		assertThat(fields(mapper.readInParallel(file, Row.class, true, ForkJoinPool.commonPool())),
+				is(fields(rows)));
+	}
+
+	@Test
+	public void 正常系_バイト列のまま解析できない区切り文字() throws Exception {
+		// "ポ"の2バイト目は'|'と同じ0x7C
+		Charset sjis = Charset.forName("Shift_JIS");
+		CSVMapper mapper = CSVMapper.builder().charset(sjis).delimiter('|').build();
+		File file = folder.newFile("pipe.csv");
+		Files.write(file.toPath(), "ポ|表\n1|2\n".getBytes(sjis));
+		List<Row> rows = mapper.read(CSVFile.fromFile(file), Row.class);
+		assertThat(fields(rows), is(Arrays.asList(Arrays.asList("ポ", "表"), Arrays.asList("1", "2"))));
+	}
+
+	@Test
+	public void 正常系_変換に失敗したレコードを読み飛ばす() throws Exception {
+		File file = folder.newFile("numbers.csv");
+		Files.write(file.toPath(), "1\nx\n3\n".getBytes(StandardCharsets.US_ASCII));
+		List<Numbered> rows = CSVMapper.builder().build().read(CSVFile.fromFile(file), Numbered.class);
+		assertThat(rows.stream().map(n -> n.value).collect(Collectors.toList()), is(Arrays.asList(1, 3)));
+	}
+
+	@Test
+	public void 異常系_変換に失敗したレコードで中断() throws Exception {
+		File file = folder.newFile("numbers.csv");
+		Files.write(file.toPath(), "1\nx\n3\n".getBytes(StandardCharsets.US_ASCII));
+		try {
+			CSVMapper.builder().errorPolicy(ErrorPolicy.FAIL).build().read(CSVFile.fromFile(file), Numbered.class);
+			fail();
+		} catch (CSVException e) {
+			// レコードの内容は含めず、何番目のレコードかだけを示す
+			assertThat(e.getMessage(), is("invalid row 2"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_区切り文字とクォートが同じ() {
+		CSVMapper.builder().delimiter('"').build();
+	}
+
+	@Test
+	public void 正常系_文字コードの判定に使用するバイト数を指定() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(i).append(",ascii\n");
+		}
+		for (int i = 0; i < 100; i++) {
+			sb.append(i).append(",日本語のテキスト\n");
+		}
+		File file = folder.newFile("ascii-prefix.csv");
+		Files.write(file.toPath(), sb.toString().getBytes("Shift_JIS"));
+		CSVFile csvFile = CSVFile.fromFile(file);
+
+		assertThat(CSVMapper.builder().build().charsetOf(csvFile), is(Charset.forName("Shift_JIS")));
+		// 判定に使用した範囲がASCII文字のみの場合はUTF-8として読み込む
+		CSVMapper small = CSVMapper.builder().detectionSampleSize(1024).build();
+		assertThat(small.getDetectionSampleSize(), is(1024));
+		assertThat(small.charsetOf(csvFile), is(StandardCharsets.UTF_8));
+		assertThat(small.toBuilder().build().getDetectionSampleSize(), is(1024));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_文字コードの判定に使用するバイト数が0() {
+		CSVMapper.builder().detectionSampleSize(0).build();
+	}
+
+	@Test
+	public void 正常系_設定を引き継いで生成() {
+		CSVMapper base = CSVMapper.builder().delimiter(';').errorPolicy(ErrorPolicy.FAIL).build();
+		CSVMapper derived = base.toBuilder().charset(StandardCharsets.UTF_8).build();
+		assertThat(derived.getDelimiter(), is(';'));
+		assertThat(derived.getErrorPolicy(), is(ErrorPolicy.FAIL));
+		assertThat(derived.getCharset(), is(StandardCharsets.UTF_8));
+		assertThat(base.getCharset(), nullValue());
+	}
+
+	@Test
+	public void 正常系_複数のスレッドから異なる文字コードで同時に入出力() throws Exception {
+		Charset sjis = Charset.forName("Shift_JIS");
+		List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			rows.add(row(Integer.toString(i), "日本語テキスト" + i, "\"引用\"\n改行"));
+		}
+		CSVMapper utf8 = CSVMapper.builder().charset(StandardCharsets.UTF_8).build();
+		CSVMapper shiftJis = CSVMapper.builder().charset(sjis).build();
+		CSVMapper detecting = CSVMapper.builder().build();
+		CSVFile utf8File = CSVFile.fromFile(new File(folder.getRoot(), "utf8.csv"));
+		CSVFile sjisFile = CSVFile.fromFile(new File(folder.getRoot(), "sjis.csv"));
+		utf8.write(utf8File, rows);
+		shiftJis.write(sjisFile, rows);
+		List<List<String>> expected = fields(rows);
+
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads * 8; t++) {
+				int task = t;
+				futures.add(executor.submit(() -> {
+					start.await();
+					boolean useSjis = task % 2 == 0;
+					CSVMapper mapper = useSjis ? shiftJis : utf8;
+					List<Row> read = detecting.read(useSjis ? sjisFile : utf8File, Row.class);
+					assertThat(fields(read), is(expected));
+					CSVFile copy = CSVFile.fromFile(new File(folder.getRoot(), "copy" + task + ".csv"));
+					mapper.write(copy, read);
+					assertThat(fields(mapper.read(copy, Row.class)), is(expected));
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -5,7 +5,9 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -19,6 +21,7 @@ public class CSVMapperTest {
 
 	private static final String RESOURCE_DIR = "src/test/resources";
 	private static final String RESOURCE_CSV_FILE = "test.csv";
+	private static final String RESOURCE_QUOTED_CSV_FILE = "quoted.csv";
 	private static final String RESOURCE_CSV_FILE_NOT_EXISTS = "testnotexists.csv";
 	private static final String RESOURCE_TXT_FILE = "test.txt";
 	private static final String OUTPUT_CSV_FILE = "output.csv";
@@ -96,6 +99,35 @@ public class CSVMapperTest {
 		CSVMapper.output(new CSVFile(RESOURCE_DIR, OUTPUT_CSV_FILE), list);
 	}
 
+	@Test
+	public void 正常系_CSVファイルからStreamで読み込み() {
+		CSVFile csvFile = new CSVFile(RESOURCE_DIR, RESOURCE_CSV_FILE);
+		try (Stream<TestData> stream = CSVMapper.stream(csvFile, TestData.class)) {
+			checkList(stream.collect(Collectors.toList()));
+		}
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_存在しないファイルをStreamで読み込み時() {
+		CSVMapper.stream(new CSVFile(RESOURCE_DIR, RESOURCE_CSV_FILE_NOT_EXISTS), TestData.class);
+	}
+
+	@Test
+	public void 正常系_クォートや改行を含むCSVファイルから読み込み() {
+		List<QuotedData> list = CSVMapper.convertFromCSVFile(new CSVFile(RESOURCE_DIR, RESOURCE_QUOTED_CSV_FILE),
+				QuotedData.class);
+		assertThat(list.size(), is(3));
+		assertThat(list.get(0).id, is("1"));
+		assertThat(list.get(0).text, is("カンマ,を含む"));
+		assertThat(list.get(0).note, is("通常"));
+		assertThat(list.get(1).id, is("2"));
+		assertThat(list.get(1).text, is("改行を\n含む"));
+		assertThat(list.get(1).note, is("\"引用\""));
+		assertThat(list.get(2).id, is("3"));
+		assertThat(list.get(2).text, is(""));
+		assertThat(list.get(2).note, is(""));
+	}
+
 	private void checkList(List<TestData> list) {
 		assertThat(list, notNullValue());
 		assertThat(list.size(), is(4));
@@ -232,4 +264,28 @@ public class CSVMapperTest {
 		}
 
 	}
+
+	public static class QuotedData implements CSVMappable {
+		private String id;
+		private String text;
+		private String note;
+
+		@Override
+		public boolean includeLines() {
+			return true;
+		}
+
+		@Override
+		public String[] array4exportCSV() {
+			return new String[] { id, text, note };
+		}
+
+		@Override
+		public void importFromCSV(List<String> list) {
+			id = list.get(0);
+			text = list.get(1);
+			note = list.get(2);
+		}
+
+	}
 }
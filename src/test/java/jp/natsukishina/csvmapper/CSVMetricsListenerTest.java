@@ -0,0 +1,128 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVMetricsListener.Counter;
+import jp.natsukishina.csvmapper.CSVMetricsListener.Phase;
+import jp.natsukishina.csvmapper.CSVTestSupport.Numbered;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CSVMetricsListenerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_読み込みの計測値を通知() throws Exception {
+		CSVFile file = write(folder, "numbers.csv", "1\nx\n3\n4\n");
+		Recorder recorder = new Recorder();
+		CSVMapper mapper = CSVMapper.builder().metricsListener(recorder).build();
+
+		List<Numbered> rows = mapper.read(file, Numbered.class);
+		assertThat(rows.size(), is(3));
+		assertThat(recorder.count(Counter.RECORDS_READ), is(3L));
+		assertThat(recorder.count(Counter.RECORDS_SKIPPED), is(1L));
+		assertThat(recorder.count(Counter.BYTES_READ), is(file.length()));
+		for (Phase phase : new Phase[] { Phase.DETECT, Phase.PARSE, Phase.INSTANTIATE, Phase.IMPORT }) {
+			assertThat(phase.name(), recorder.calls(phase), is(1L));
+			assertThat(phase.name(), recorder.nanos(phase) >= 0, is(true));
+		}
+		assertThat(recorder.calls(Phase.WRITE), is(0L));
+	}
+
+	@Test
+	public void 正常系_文字に変換して読み込む場合の計測値を通知() throws Exception {
+		CSVFile file = write(folder, "pipe.csv", "1|a\n2|b\n");
+		Recorder recorder = new Recorder();
+		CSVMapper mapper = CSVMapper.builder().charset(StandardCharsets.UTF_8).delimiter('|')
+				.metricsListener(recorder).build();
+
+		assertThat(mapper.read(file, Numbered.class).size(), is(2));
+		assertThat(recorder.count(Counter.RECORDS_READ), is(2L));
+		assertThat(recorder.count(Counter.BYTES_READ), is(file.length()));
+		// 文字コードを指定した場合は判定しない
+		assertThat(recorder.calls(Phase.DETECT), is(0L));
+	}
+
+	@Test
+	public void 正常系_並列読み込みの計測値を通知() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(i).append('\n');
+		}
+		CSVFile file = write(folder, "parallel.csv", sb.toString());
+		Recorder recorder = new Recorder();
+		CSVMapper mapper = CSVMapper.builder().metricsListener(recorder).build();
+
+		assertThat(mapper.readInParallel(file, Numbered.class, true, ForkJoinPool.commonPool()).size(), is(1000));
+		assertThat(recorder.count(Counter.RECORDS_READ), is(1000L));
+		assertThat(recorder.count(Counter.BYTES_READ), is(file.length()));
+	}
+
+	@Test
+	public void 正常系_出力の計測値を通知() throws Exception {
+		CSVFile input = write(folder, "numbers.csv", "1\n2\n3\n");
+		Recorder recorder = new Recorder();
+		CSVMapper mapper = CSVMapper.builder().lineSeparator("\n").metricsListener(recorder).build();
+		List<Numbered> rows = mapper.read(input, Numbered.class);
+
+		CSVFile output = CSVFile.fromFile(new File(folder.getRoot(), "output.csv"));
+		mapper.write(output, rows);
+		assertThat(recorder.count(Counter.RECORDS_WRITTEN), is(3L));
+		assertThat(recorder.count(Counter.BYTES_WRITTEN), is(6L));
+		assertThat(recorder.calls(Phase.WRITE), is(1L));
+	}
+
+	private static class Recorder implements CSVMetricsListener {
+		private final Map<Counter, AtomicLong> counts = new EnumMap<>(Counter.class);
+		private final Map<Phase, AtomicLong> nanos = new EnumMap<>(Phase.class);
+		private final Map<Phase, AtomicLong> calls = new EnumMap<>(Phase.class);
+
+		Recorder() {
+			for (Counter counter : Counter.values()) {
+				counts.put(counter, new AtomicLong());
+			}
+			for (Phase phase : Phase.values()) {
+				nanos.put(phase, new AtomicLong());
+				calls.put(phase, new AtomicLong());
+			}
+		}
+
+		@Override
+		public void onPhase(Phase phase, long nanos) {
+			this.nanos.get(phase).addAndGet(nanos);
+			calls.get(phase).incrementAndGet();
+		}
+
+		@Override
+		public void onCount(Counter counter, long count) {
+			counts.get(counter).addAndGet(count);
+		}
+
+		long count(Counter counter) {
+			return counts.get(counter).get();
+		}
+
+		long nanos(Phase phase) {
+			return nanos.get(phase).get();
+		}
+
+		long calls(Phase phase) {
+			return calls.get(phase).get();
+		}
+	}
+}
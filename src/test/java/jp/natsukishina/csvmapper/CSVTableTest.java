@@ -0,0 +1,133 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVMapper.ErrorPolicy;
+import jp.natsukishina.csvmapper.CSVSchema.Type;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CSVTableTest {
+
+	private static final String RESOURCE_DIR = "src/test/resources";
+
+	private static final CSVSchema COLUMNS_SCHEMA = CSVSchema.builder().column("id", Type.INT)
+			.column("name", Type.STRING).column("price", Type.DOUBLE).column("active", Type.BOOLEAN)
+			.column("count", Type.LONG).build();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_列名で指定した列を型ごとの配列に読み込む() {
+		CSVTable table = CSVMapper.loadTable(new CSVFile(RESOURCE_DIR, "columns.csv"), COLUMNS_SCHEMA);
+		// idが数値に変換できない行は読み飛ばす
+		assertThat(table.size(), is(2));
+		assertThat(table.getInt(0, 0), is(1));
+		assertThat(table.getString(0, 1), is("りんご"));
+		assertThat(table.getDouble(0, 2), is(120.5));
+		assertThat(table.getBoolean(0, 3), is(true));
+		assertThat(table.getLong(0, 4), is(10000000000L));
+		assertThat(table.getInt(1, 0), is(2));
+		assertThat(table.getString(1, 1), is("みかん,箱"));
+		assertThat(table.isEmpty(1, 2), is(true));
+		assertThat(table.getDouble(1, 2), is(0d));
+		assertThat(table.getString(1, 2), is(""));
+		assertThat(table.getBoolean(1, 3), is(false));
+		assertThat(table.isEmpty(1, 3), is(false));
+		assertThat(table.getLong(1, 0), is(2L));
+	}
+
+	@Test
+	public void 正常系_辞書で保持する列() throws Exception {
+		CSVFile file = write(folder, "status.csv", "1,DONE\n2,\"保留\"\n3,DONE\n4,\n5,保留\n", StandardCharsets.UTF_8);
+		CSVSchema schema = CSVSchema.builder().column(1, Type.DICTIONARY).column(0, Type.INT).build();
+		CSVTable table = CSVMapper.builder().build().readTable(file, schema);
+		assertThat(table.size(), is(5));
+		assertThat(table.getDictionary(0), is(Arrays.asList("DONE", "保留", "")));
+		int[] codes = new int[table.size()];
+		for (int row = 0; row < table.size(); row++) {
+			codes[row] = table.getCode(row, 0);
+		}
+		assertThat(codes, is(new int[] { 0, 1, 0, 2, 1 }));
+		assertThat(table.getString(4, 0), is("保留"));
+		assertThat(table.isEmpty(3, 0), is(true));
+	}
+
+	@Test
+	public void 正常系_文字に変換して読み込む() throws Exception {
+		Charset sjis = Charset.forName("Shift_JIS");
+		CSVFile file = write(folder, "pipe.csv", "id|name\n1|ポ\n2|\"a|b\"\n", sjis);
+		CSVSchema schema = CSVSchema.builder().column("name", Type.STRING).column("id", Type.LONG).build();
+		CSVTable table = CSVMapper.builder().charset(sjis).delimiter('|').build().readTable(file, schema);
+		assertThat(table.size(), is(2));
+		assertThat(table.getString(0, 0), is("ポ"));
+		assertThat(table.getString(1, 0), is("a|b"));
+		assertThat(table.getLong(1, 1), is(2L));
+	}
+
+	@Test
+	public void 正常系_条件を満たすレコードのみ読み込む() throws Exception {
+		CSVFile file = write(folder, "status.csv", "1,DONE,10\n2,保留,20\n3,DONE,30\n", StandardCharsets.UTF_8);
+		CSVSchema schema = CSVSchema.builder().column(2, Type.INT).column(1, Type.DICTIONARY).build();
+		// 条件の列の位置は列の定義の順序での位置
+		CSVTable table = CSVMapper.builder().where(1, "DONE"::contentEquals).build().readTable(file, schema);
+		assertThat(table.size(), is(2));
+		assertThat(table.getInt(0, 0) + table.getInt(1, 0), is(40));
+	}
+
+	@Test
+	public void 正常系_行をインスタンスに変換() {
+		CSVTable table = CSVMapper.loadTable(new CSVFile(RESOURCE_DIR, "columns.csv"), COLUMNS_SCHEMA);
+		List<Row> rows = table.toList(Row.class);
+		assertThat(Arrays.asList(rows.get(0).array4exportCSV()),
+				is(Arrays.asList("1", "りんご", "120.5", "true", "10000000000")));
+		Named named = table.getRow(1, Named.class);
+		assertThat(named.name, is("みかん,箱"));
+		assertThat(named.price, nullValue());
+		assertThat(named.count, is(0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_型が異なる列を参照() {
+		CSVTable table = CSVMapper.loadTable(new CSVFile(RESOURCE_DIR, "columns.csv"), COLUMNS_SCHEMA);
+		table.getInt(0, 1);
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_変換に失敗したレコードで中断() {
+		CSVMapper.builder().errorPolicy(ErrorPolicy.FAIL).build().readTable(new CSVFile(RESOURCE_DIR, "columns.csv"),
+				COLUMNS_SCHEMA);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_列名と列番号が混在() {
+		CSVSchema.builder().column("id", Type.INT).column(1, Type.STRING).build();
+	}
+
+	public static class Named implements CSVMappable {
+		@CSVColumn(name = "name")
+		private String name;
+		@CSVColumn(name = "price")
+		private BigDecimal price;
+		@CSVColumn(name = "count")
+		private long count;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+}
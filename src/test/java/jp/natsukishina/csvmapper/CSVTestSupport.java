@@ -0,0 +1,135 @@
+package jp.natsukishina.csvmapper;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+/**
+ * テストで共通して使用するファイルの作成処理とレコードのクラス
+ *
+ * @author 417.72KI
+ */
+final class CSVTestSupport {
+
+	private CSVTestSupport() {
+	}
+
+	/**
+	 * 一時フォルダーにUTF-8のファイルを作成する
+	 *
+	 * @param folder 一時フォルダー
+	 * @param name ファイル名
+	 * @param content ファイルの内容
+	 * @return 作成したファイル
+	 */
+	static CSVFile write(TemporaryFolder folder, String name, String content) throws Exception {
+		return write(folder, name, content, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 一時フォルダーに指定された文字コードのファイルを作成する。同名のファイルがある場合は上書きする
+	 *
+	 * @param folder 一時フォルダー
+	 * @param name ファイル名
+	 * @param content ファイルの内容
+	 * @param charset 文字コード
+	 * @return 作成したファイル
+	 */
+	static CSVFile write(TemporaryFolder folder, String name, String content, Charset charset) throws Exception {
+		File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), content.getBytes(charset));
+		return CSVFile.fromFile(file);
+	}
+
+	/**
+	 * @param fields フィールド
+	 * @return 指定されたフィールドを持つレコード
+	 */
+	static Row row(String... fields) {
+		Row row = new Row();
+		row.importFromCSV(Arrays.asList(fields));
+		return row;
+	}
+
+	/**
+	 * @param row レコード
+	 * @return レコードを出力する際のフィールドのリスト
+	 */
+	static List<String> fields(CSVMappable row) {
+		return Arrays.asList(row.array4exportCSV());
+	}
+
+	/**
+	 * @param rows レコードのリスト
+	 * @return レコードごとのフィールドのリスト
+	 */
+	static List<List<String>> fields(List<? extends CSVMappable> rows) {
+		return rows.stream().map(row -> Arrays.asList(row.array4exportCSV())).collect(Collectors.toList());
+	}
+
+	/**
+	 * 全てのフィールドを文字列のまま保持するレコード
+	 */
+	public static class Row implements CSVMappable {
+		List<String> fields;
+
+		@Override
+		public boolean includeLines() {
+			return true;
+		}
+
+		@Override
+		public String[] array4exportCSV() {
+			return fields.toArray(new String[fields.size()]);
+		}
+
+		@Override
+		public void importFromCSV(List<String> row) {
+			fields = new ArrayList<>(row);
+		}
+	}
+
+	/**
+	 * ヘッダー行のnameの列だけを保持するレコード
+	 */
+	public static class Named implements CSVMappable {
+		@CSVColumn(name = "name")
+		String name;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	/**
+	 * 1列目を数値として保持するレコード
+	 */
+	public static class Numbered implements CSVMappable {
+		int value;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+
+		@Override
+		public String[] array4exportCSV() {
+			return new String[] { Integer.toString(value) };
+		}
+
+		@Override
+		public void importFromCSV(List<String> row) {
+			value = Integer.parseInt(row.get(0));
+		}
+	}
+}
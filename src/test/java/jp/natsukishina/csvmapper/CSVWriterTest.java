@@ -0,0 +1,76 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class CSVWriterTest {
+
+	@Test
+	public void 正常系_必要な要素のみクォートで囲んで出力() throws IOException {
+		StringWriter out = new StringWriter();
+		try (CSVWriter writer = new CSVWriter(out, 8, 0, "\n")) {
+			writer.writeRecord(new String[] { "plain", "a,b", "say \"hi\"", "multi\nline", null, "" });
+		}
+		assertThat(out.toString(), is("plain,\"a,b\",\"say \"\"hi\"\"\",\"multi\nline\",,\n"));
+	}
+
+	@Test
+	public void 正常系_出力したCSVを読み込むと元の要素に戻る() throws IOException {
+		List<String> fields = Arrays.asList("1", "\"", "\"\",\"", "x\r\ny", "日本語,テキスト");
+		StringWriter out = new StringWriter();
+		try (CSVWriter writer = new CSVWriter(out, 3, 1, "\r\n")) {
+			writer.writeAll(Stream.of(new Row(fields), new Row(fields)));
+		}
+		try (CharRecordReader reader = new CharRecordReader(new StringReader(out.toString()))) {
+			List<String> expected = new ArrayList<>(fields);
+			// 要素内の改行は読み込み時に'\n'に揃う
+			expected.set(3, "x\ny");
+			assertThat(reader.readRecord(), is(expected));
+			assertThat(reader.readRecord(), is(expected));
+			assertThat(reader.readRecord(), nullValue());
+		}
+	}
+
+	@Test
+	public void 正常系_array4exportCSVは1レコードにつき1度だけ呼ばれる() throws IOException {
+		Row row = new Row(Arrays.asList("a", "b", "c"));
+		try (CSVWriter writer = new CSVWriter(new StringWriter(), 16, 0)) {
+			writer.write(row);
+		}
+		assertThat(row.exportCount, is(1));
+	}
+
+	private static class Row implements CSVMappable {
+		private final List<String> fields;
+		private int exportCount;
+
+		Row(List<String> fields) {
+			this.fields = fields;
+		}
+
+		@Override
+		public boolean includeLines() {
+			return true;
+		}
+
+		@Override
+		public String[] array4exportCSV() {
+			exportCount++;
+			return fields.toArray(new String[fields.size()]);
+		}
+
+		@Override
+		public void importFromCSV(List<String> row) {
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CharRecordReaderTest {
+
+	@Test
+	public void 正常系_クォート内の区切り文字() throws IOException {
+		assertThat(read("a,\"b,c\",d\n\"x,\",\"y,,z\"\n"),
+				is(Arrays.asList(Arrays.asList("a", "b,c", "d"), Arrays.asList("x,", "y,,z"))));
+	}
+
+	@Test
+	public void 正常系_エスケープされたクォート() throws IOException {
+		assertThat(read("\"x\"\"y\",\"\"\"\",\"\"\n"), is(Arrays.asList(Arrays.asList("x\"y", "\"", ""))));
+		// クォート外のクォートは要素に含めない
+		assertThat(read("a,\"b\"c,d\n"), is(Arrays.asList(Arrays.asList("a", "bc", "d"))));
+	}
+
+	@Test
+	public void 正常系_CRとCRLFとLFの改行() throws IOException {
+		assertThat(read("a,b\r\nc,d\re,f\ng,h"), is(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "d"),
+				Arrays.asList("e", "f"), Arrays.asList("g", "h"))));
+		assertThat(read("\n\na\r\n"), is(Arrays.asList(Arrays.asList(""), Arrays.asList(""), Arrays.asList("a"))));
+	}
+
+	@Test
+	public void 正常系_要素内の改行() throws IOException {
+		// 要素内の改行は'\n'に揃う
+		assertThat(read("a,\"1\n2\r\n3\r4\",b\r\nc\n"),
+				is(Arrays.asList(Arrays.asList("a", "1\n2\n3\n4", "b"), Arrays.asList("c"))));
+	}
+
+	@Test
+	public void 正常系_閉じられていないクォートはファイルの終端までを要素にする() throws IOException {
+		assertThat(read("a,b\nc,\"open\nnext,x\n"),
+				is(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "open\nnext,x\n"))));
+	}
+
+	@Test
+	public void 正常系_末尾の空の要素() throws IOException {
+		assertThat(read("a,b,\n,\n"), is(Arrays.asList(Arrays.asList("a", "b", ""), Arrays.asList("", ""))));
+		assertThat(read("a,b,"), is(Arrays.asList(Arrays.asList("a", "b", ""))));
+	}
+
+	@Test
+	public void 正常系_区切り文字とクォートを指定する() throws IOException {
+		try (CharRecordReader reader = new CharRecordReader(new StringReader("'a;b';c;'d''e'\n"), ';', '\'')) {
+			assertThat(reader.readRecord(), is(Arrays.asList("a;b", "c", "d'e")));
+			assertThat(reader.readRecord(), nullValue());
+		}
+	}
+
+	private static List<List<String>> read(String csv) throws IOException {
+		List<List<String>> records = new ArrayList<>();
+		try (CharRecordReader reader = new CharRecordReader(new StringReader(csv))) {
+			List<String> record;
+			while ((record = reader.readRecord()) != null) {
+				records.add(record);
+			}
+		}
+		return records;
+	}
+}
@@ -0,0 +1,148 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class CompressionTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_圧縮されたCSVファイルの拡張子() throws Exception {
+		assertThat(CSVMapper.isCSVFile(new File("data.csv.gz")), is(true));
+		assertThat(CSVMapper.isCSVFile(new File("DATA.CSV.ZIP")), is(true));
+		assertThat(CSVMapper.isCSVFile(new File("data.csv.deflate")), is(true));
+		assertThat(CSVMapper.isCSVFile(new File("data.gz")), is(false));
+		assertThat(CSVMapper.isCSVFile(new File("data.txt.zip")), is(false));
+		assertThat(Compression.of(new File("data.csv")), is(Compression.NONE));
+	}
+
+	@Test
+	public void 正常系_圧縮して出力し展開しながら読み込む() throws Exception {
+		List<Row> rows = rows(100);
+		for (String name : new String[] { "data.csv.gz", "data.csv.zip", "data.csv.deflate" }) {
+			CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), name));
+			CSVMapper mapper = CSVMapper.builder().lineSeparator("\n").build();
+			mapper.write(file, rows);
+			assertThat(name, fields(mapper.read(file, Row.class)), is(fields(rows)));
+			assertThat(name, fields(mapper.readInParallel(file, Row.class, true, ForkJoinPool.commonPool())),
+					is(fields(rows)));
+		}
+	}
+
+	@Test
+	public void 正常系_展開したバイト列から文字コードを判定する() throws Exception {
+		Charset sjis = Charset.forName("Windows-31J");
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "sjis.csv.gz"));
+		CSVMapper.builder().charset(sjis).build().write(file, rows(100));
+		List<Row> read = CSVMapper.builder().build().read(file, Row.class);
+		assertThat(fields(read), is(fields(rows(100))));
+	}
+
+	@Test
+	public void 正常系_zipの拡張子がcsvのエントリーを読み込む() throws Exception {
+		File file = folder.newFile("archive.csv.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+			zip.putNextEntry(new ZipEntry("readme.txt"));
+			zip.write("読み込まない".getBytes(StandardCharsets.UTF_8));
+			zip.putNextEntry(new ZipEntry("dir/data.csv"));
+			zip.write("\uFEFF1,りんご\n2,\"改行\nあり\"\n".getBytes(StandardCharsets.UTF_8));
+		}
+		List<Row> rows = CSVMapper.builder().build().read(CSVFile.fromFile(file), Row.class);
+		assertThat(fields(rows), is(Arrays.asList(Arrays.asList("1", "りんご"), Arrays.asList("2", "改行\nあり"))));
+	}
+
+	@Test
+	public void 正常系_ブロックごとに並列に圧縮したgzipを展開する() throws Exception {
+		byte[] data = new byte[100000];
+		Random random = new Random(0);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + random.nextInt(4));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new ParallelGZIPOutputStream(bytes, ForkJoinPool.commonPool(), 1000)) {
+			out.write(data, 0, 10);
+			out.write(data[10]);
+			out.write(data, 11, data.length - 11);
+		}
+		assertThat(gunzip(bytes.toByteArray()), is(data));
+
+		ByteArrayOutputStream empty = new ByteArrayOutputStream();
+		new ParallelGZIPOutputStream(empty, ForkJoinPool.commonPool(), 1000).close();
+		assertThat(gunzip(empty.toByteArray()).length, is(0));
+	}
+
+	@Test
+	public void 正常系_並列に圧縮して出力する() throws Exception {
+		List<Row> rows = rows(50000);
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "parallel.csv.gz"));
+		CSVMapper mapper = CSVMapper.builder().parallelCompression(ForkJoinPool.commonPool()).build();
+		mapper.write(file, rows);
+		assertThat(fields(mapper.read(file, Row.class)), is(fields(rows)));
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_圧縮されたCSVファイルの索引() throws Exception {
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "data.csv.gz"));
+		CSVMapper mapper = CSVMapper.builder().build();
+		mapper.write(file, rows(1));
+		mapper.index(file);
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_CSVファイルを含まないzip() throws Exception {
+		File file = folder.newFile("empty.csv.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+			zip.putNextEntry(new ZipEntry("readme.txt"));
+		}
+		CSVMapper.builder().build().read(CSVFile.fromFile(file), Row.class);
+	}
+
+	private static List<Row> rows(int count) {
+		List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Row row = new Row();
+			row.importFromCSV(Arrays.asList(Integer.toString(i), "名前" + i, i % 3 == 0 ? "改行\nあり" : "東京都"));
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static byte[] gunzip(byte[] compressed) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, n);
+			}
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,121 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class FileCharDetecterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+	@Test
+	public void 正常系_BOMから判定() throws IOException {
+		byte[] data = concat(UTF8_BOM, "id,名前\n".getBytes(StandardCharsets.UTF_8));
+		FileCharDetecter.Result result = FileCharDetecter.detect(new ByteArrayInputStream(data), 1024);
+		assertThat(result.getCharCode(), is("UTF-8"));
+		assertThat(result.getBomLength(), is(3));
+		assertThat(readAll(result.getInput()), is("id,名前\n".getBytes(StandardCharsets.UTF_8)));
+
+		data = concat(new byte[] { (byte) 0xFF, (byte) 0xFE }, "a".getBytes(StandardCharsets.UTF_16LE));
+		result = FileCharDetecter.detect(new ByteArrayInputStream(data), 1024);
+		assertThat(result.getCharCode(), is("UTF-16LE"));
+		assertThat(result.getBomLength(), is(2));
+	}
+
+	@Test
+	public void 正常系_判定に使用したバイト列を再利用() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			sb.append(i).append(",あいうえお,かきくけこ\n");
+		}
+		byte[] data = sb.toString().getBytes("Shift_JIS");
+		FileCharDetecter.Result result = FileCharDetecter.detect(new ByteArrayInputStream(data), 100);
+		assertThat(result.getBomLength(), is(0));
+		assertThat(readAll(result.getInput()), is(data));
+	}
+
+	@Test
+	public void 正常系_判定結果をキャッシュ() throws IOException {
+		File file = folder.newFile("cached.csv");
+		Files.write(file.toPath(), "a,b\n".getBytes(StandardCharsets.US_ASCII));
+		FileCharDetecter.Result first = FileCharDetecter.detect(file, FileCharDetecter.DEFAULT_SAMPLE_SIZE);
+		assertThat(FileCharDetecter.detect(file, FileCharDetecter.DEFAULT_SAMPLE_SIZE), is(sameInstance(first)));
+
+		Files.write(file.toPath(), concat(UTF8_BOM, "a,b,c\n".getBytes(StandardCharsets.UTF_8)));
+		FileCharDetecter.Result changed = FileCharDetecter.detect(file, FileCharDetecter.DEFAULT_SAMPLE_SIZE);
+		assertThat(changed, is(not(sameInstance(first))));
+		assertThat(changed.getCharCode(), is("UTF-8"));
+		assertThat(changed.getBomLength(), is(3));
+	}
+
+	@Test(timeout = 10000)
+	public void 正常系_キャッシュしたBOMより短いストリーム() throws IOException {
+		File file = folder.newFile("short.csv");
+		Files.write(file.toPath(), concat(UTF8_BOM, "a\n".getBytes(StandardCharsets.UTF_8)));
+		FileCharDetecter.detect(file, FileCharDetecter.DEFAULT_SAMPLE_SIZE);
+
+		FileCharDetecter.Result result = FileCharDetecter.open(file, new ByteArrayInputStream(new byte[1]),
+				FileCharDetecter.DEFAULT_SAMPLE_SIZE);
+		assertThat(result.getBomLength(), is(3));
+		assertThat(readAll(result.getInput()).length, is(0));
+	}
+
+	@Test
+	public void 正常系_BOMを読み飛ばして変換() throws IOException {
+		File file = folder.newFile("bom.csv");
+		Files.write(file.toPath(), concat(UTF8_BOM, "id,名前\n1,りんご\n".getBytes(StandardCharsets.UTF_8)));
+		CSVFile csvFile = CSVFile.fromFile(file);
+
+		List<Row> rows = CSVMapper.convertFromCSVFile(csvFile, Row.class);
+		assertThat(CSVMapper.getInputCharCode(), is("UTF-8"));
+		assertThat(rows.get(0).array4exportCSV(), is(new String[] { "id", "名前" }));
+		assertThat(rows.get(1).array4exportCSV(), is(new String[] { "1", "りんご" }));
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			rows = CSVMapper.convertFromCSVFileInParallel(csvFile, Row.class, true, pool);
+			assertThat(rows.get(0).array4exportCSV(), is(new String[] { "id", "名前" }));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+			byte[] buffer = new byte[1024];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
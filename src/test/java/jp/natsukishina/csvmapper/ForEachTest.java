@@ -0,0 +1,145 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Named;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class ForEachTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_同じインスタンスを使い回して全てのレコードを渡す() throws Exception {
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE }) {
+			CSVFile file = write(folder, "data.csv", "1,a\n2,\"b,\"\"c\"\"\"\n3\n", charset);
+			CSVMapper mapper = CSVMapper.builder().charset(charset).build();
+			List<List<String>> rows = new ArrayList<>();
+			List<Row> instances = new ArrayList<>();
+			long count = mapper.forEach(file, Row.class, row -> {
+				rows.add(Arrays.asList(row.array4exportCSV()));
+				instances.add(row);
+			});
+			assertThat(count, is(3L));
+			assertThat(rows, is(Arrays.asList(Arrays.asList("1", "a"), Arrays.asList("2", "b,\"c\""),
+					Arrays.asList("3"))));
+			assertThat(instances.stream().distinct().count(), is(1L));
+		}
+	}
+
+	@Test
+	public void 正常系_2件目以降はインポートの前に初期化する() throws Exception {
+		CSVFile file = write(folder, "data.csv", "1,a\n2,b\n3,c\n", StandardCharsets.UTF_8);
+		List<String> seen = new ArrayList<>();
+		CSVMapper.builder().build().forEach(file, Resettable.class, row -> seen.add(row.values));
+		assertThat(seen, is(Arrays.asList("[1, a]", "[2, b]", "[3, c]")));
+		assertThat(Resettable.resets, is(2));
+	}
+
+	@Test
+	public void 正常系_ヘッダー行で列名を解決する() throws Exception {
+		CSVFile file = CSVFile.fromFile(folder.newFile("columns.csv"));
+		Files.copy(new File("src/test/resources", "columns.csv").toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		CSVMapper mapper = CSVMapper.builder().build();
+		List<String> names = new ArrayList<>();
+		mapper.forEach(file, Named.class, row -> names.add(row.name));
+		assertThat(names, is(mapper.read(file, Named.class).stream().map(row -> row.name)
+				.collect(Collectors.toList())));
+	}
+
+	@Test
+	public void 正常系_定常状態ではレコードごとにオブジェクトを生成しない() throws Exception {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		CSVFile small = numbers("small.csv", 10000);
+		CSVFile large = numbers("large.csv", 110000);
+		CSVMapper mapper = CSVMapper.builder().charset(StandardCharsets.UTF_8).build();
+		long[] sum = new long[1];
+		for (int i = 0; i < 5; i++) {
+			mapper.forEach(small, Numbers.class, row -> sum[0] += row.id + row.amount + (row.flag ? 1 : 0));
+			mapper.forEach(large, Numbers.class, row -> sum[0] += row.id + row.amount + (row.flag ? 1 : 0));
+		}
+		long smallBytes = allocated(() -> mapper.forEach(small, Numbers.class, row -> sum[0] += row.id));
+		long largeBytes = allocated(() -> mapper.forEach(large, Numbers.class, row -> sum[0] += row.id));
+		// 固定のコスト(ファイルのオープン・イテレーターなど)を除いた、増えた100000レコード分の割り当て量
+		assertThat("allocated " + (largeBytes - smallBytes) + " bytes for 100000 rows",
+				largeBytes - smallBytes < 100000, is(true));
+	}
+
+	private static long allocated(Runnable task) {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(id);
+		task.run();
+		return bean.getThreadAllocatedBytes(id) - before;
+	}
+
+	private CSVFile numbers(String name, int count) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(i).append(',').append(i * 1000L).append(',').append(i % 2 == 0).append('\n');
+		}
+		return write(folder, name, sb.toString(), StandardCharsets.UTF_8);
+	}
+
+	public static class Numbers implements CSVMappable {
+		@CSVColumn(index = 0)
+		int id;
+		@CSVColumn(index = 1)
+		long amount;
+		@CSVColumn(index = 2)
+		boolean flag;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	public static class Resettable implements CSVMappable {
+		static int resets;
+		String values;
+
+		public Resettable() {
+			resets = 0;
+		}
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+
+		@Override
+		public void importFromCSV(List<String> row) {
+			assertThat(values, nullValue());
+			values = row.toString();
+		}
+
+		@Override
+		public void resetForReuse() {
+			values = null;
+			resets++;
+		}
+	}
+}
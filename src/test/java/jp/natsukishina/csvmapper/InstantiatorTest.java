@@ -0,0 +1,97 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class InstantiatorTest {
+
+	@Test
+	public void 正常系_privateのデフォルトコンストラクター() {
+		Instantiator<PrivateConstructor> instantiator = Instantiator.of(PrivateConstructor.class);
+		assertThat(instantiator.get().value, is("created"));
+		assertThat(instantiator.get(), not(sameInstance(instantiator.get())));
+		// クラスごとに1度だけ解決する
+		assertThat(Instantiator.of(PrivateConstructor.class), sameInstance(instantiator));
+	}
+
+	@Test
+	public void 異常系_デフォルトコンストラクターが存在しない() {
+		try {
+			Instantiator.of(NoDefaultConstructor.class);
+			fail();
+		} catch (CSVException e) {
+			assertThat(e.getMessage(), containsString("must have a default Constructor"));
+			assertThat(e.getCause(), instanceOf(NoSuchMethodException.class));
+		}
+	}
+
+	@Test
+	public void 異常系_コンストラクターが非検査例外を投げる() {
+		Instantiator<ThrowsRuntimeException> instantiator = Instantiator.of(ThrowsRuntimeException.class);
+		try {
+			instantiator.get();
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("runtime"));
+		}
+	}
+
+	@Test
+	public void 異常系_コンストラクターがエラーを投げる() {
+		Instantiator<ThrowsError> instantiator = Instantiator.of(ThrowsError.class);
+		try {
+			instantiator.get();
+			fail();
+		} catch (AssertionError e) {
+			assertThat(e.getMessage(), is("error"));
+		}
+	}
+
+	@Test
+	public void 異常系_コンストラクターが検査例外を投げる() {
+		Instantiator<ThrowsChecked> instantiator = Instantiator.of(ThrowsChecked.class);
+		try {
+			instantiator.get();
+			fail();
+		} catch (CSVException e) {
+			assertThat(e.getMessage(), containsString("could not be instantiated"));
+			assertThat(e.getCause(), instanceOf(IOException.class));
+		}
+	}
+
+	private static class PrivateConstructor {
+		private final String value;
+
+		private PrivateConstructor() {
+			value = "created";
+		}
+	}
+
+	private static class NoDefaultConstructor {
+		@SuppressWarnings("unused")
+		NoDefaultConstructor(String value) {
+		}
+	}
+
+	private static class ThrowsRuntimeException {
+		ThrowsRuntimeException() {
+			throw new IllegalStateException("runtime");
+		}
+	}
+
+	private static class ThrowsError {
+		ThrowsError() {
+			throw new AssertionError("error");
+		}
+	}
+
+	private static class ThrowsChecked {
+		ThrowsChecked() throws IOException {
+			throw new IOException("checked");
+		}
+	}
+}
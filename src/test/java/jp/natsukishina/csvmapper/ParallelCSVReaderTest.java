@@ -0,0 +1,119 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Named;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class ParallelCSVReaderTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static ForkJoinPool pool;
+	private static CSVFile csvFile;
+	private static List<Row> expected;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		pool = new ForkJoinPool(4);
+		File file = folder.newFile("parallel.csv");
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			switch (i % 4) {
+			case 0:
+				sb.append(i).append(",plain,値").append(i).append("\n");
+				break;
+			case 1:
+				sb.append(i).append(",\"multi\nline\n\",\"a,b\"\r\n");
+				break;
+			case 2:
+				sb.append(i).append(",\"\"\"quoted\"\"\nrow\",x\n");
+				break;
+			default:
+				sb.append(i).append(",,\n");
+				break;
+			}
+		}
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		csvFile = CSVFile.fromFile(file);
+		expected = CSVMapper.convertFromCSVFile(csvFile, Row.class);
+		assertThat(expected.size(), is(500));
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		pool.shutdown();
+	}
+
+	@Test
+	public void 正常系_順序を保持して並列に読み込み() throws IOException {
+		List<Row> actual = read(true);
+		assertThat(actual.size(), is(expected.size()));
+		for (int i = 0; i < expected.size(); i++) {
+			assertThat(actual.get(i).fields, is(expected.get(i).fields));
+		}
+	}
+
+	@Test
+	public void 正常系_順序を保持せずに並列に読み込み() throws IOException {
+		List<Row> actual = read(false);
+		actual.sort(Comparator.comparingInt(r -> Integer.parseInt(r.fields.get(0))));
+		assertThat(actual.stream().map(r -> r.fields).collect(Collectors.toList()),
+				is(expected.stream().map(r -> r.fields).collect(Collectors.toList())));
+	}
+
+	@Test
+	public void 正常系_公開APIから並列に読み込み() {
+		List<Row> actual = CSVMapper.convertFromCSVFileInParallel(csvFile, Row.class, true, pool);
+		assertThat(actual.size(), is(expected.size()));
+	}
+
+	@Test
+	public void 正常系_CRだけで改行したファイルを分割して読み込み() throws IOException {
+		File file = folder.newFile("cr.csv");
+		StringBuilder sb = new StringBuilder("id,name\r");
+		for (int i = 0; i < 300; i++) {
+			sb.append(i).append(i % 3 == 0 ? ",\"複数\r行\"\r" : ",名前" + i + "\r");
+		}
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		List<Row> expected = CSVMapper.convertFromCSVFile(CSVFile.fromFile(file), Row.class);
+		assertThat(expected.size(), is(301));
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			List<Row> actual = new ParallelCSVReader<>(channel, StandardCharsets.UTF_8, Row.class, pool, 97).read(true);
+			assertThat(actual.stream().map(r -> r.fields).collect(Collectors.toList()),
+					is(expected.stream().map(r -> r.fields).collect(Collectors.toList())));
+			// ヘッダー行の直後の改行がCRだけでも、2行目から読み込む
+			List<Named> named = new ParallelCSVReader<>(channel, StandardCharsets.UTF_8, Named.class, pool, 97)
+					.read(true);
+			assertThat(named.size(), is(300));
+			assertThat(named.get(0).name, is(expected.get(1).fields.get(1)));
+			assertThat(named.get(299).name, is("名前299"));
+		}
+	}
+
+	private List<Row> read(boolean keepOrder) throws IOException {
+		try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+			return new ParallelCSVReader<>(channel, StandardCharsets.UTF_8, Row.class, pool, 97).read(keepOrder);
+		}
+	}
+}
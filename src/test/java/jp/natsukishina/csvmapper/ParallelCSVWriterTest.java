@@ -0,0 +1,129 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.row;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class ParallelCSVWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void 正常系_順に出力した場合とバイト単位で一致する() throws Exception {
+		List<Row> rows = rows(20000);
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, Charset.forName("Windows-31J"),
+				StandardCharsets.UTF_16 }) {
+			CSVMapper mapper = CSVMapper.builder().charset(charset).delimiter(';').lineSeparator("\r\n").build();
+			assertThat(charset.name(), parallel(mapper, rows), is(sequential(mapper, rows)));
+		}
+	}
+
+	@Test
+	public void 正常系_小さなバッチに分割しても順序を保つ() throws Exception {
+		List<Row> rows = rows(1000);
+		CSVMapper mapper = CSVMapper.builder().charset(StandardCharsets.UTF_16).build();
+		File file = folder.newFile("batch.csv");
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			long count = new ParallelCSVWriter(mapper, StandardCharsets.UTF_16, pool, 3).write(channel,
+					rows.iterator());
+			assertThat(count, is(1000L));
+		}
+		assertThat(Files.readAllBytes(file.toPath()), is(sequential(mapper, rows)));
+	}
+
+	@Test
+	public void 正常系_バッファの境界をまたぐサロゲートペア() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append('a');
+		while (sb.length() < CSVWriter.DEFAULT_BUFFER_SIZE * 2) {
+			sb.append("𠮷");
+		}
+		List<Row> rows = new ArrayList<>();
+		rows.add(row("1", sb.toString()));
+		rows.add(row("2", "\uD842"));
+		CSVMapper mapper = CSVMapper.builder().build();
+		assertThat(parallel(mapper, rows), is(sequential(mapper, rows)));
+	}
+
+	@Test
+	public void 正常系_Streamから出力する() throws Exception {
+		List<Row> rows = rows(10000);
+		CSVMapper mapper = CSVMapper.builder().build();
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "stream.csv"));
+		mapper.writeInParallel(file, rows.stream(), pool);
+		assertThat(Files.readAllBytes(file.toPath()), is(sequential(mapper, rows)));
+
+		CSVFile empty = CSVFile.fromFile(new File(folder.getRoot(), "empty.csv"));
+		mapper.writeInParallel(empty, new ArrayList<Row>().stream(), pool);
+		assertThat(empty.length(), is(0L));
+	}
+
+	@Test
+	public void 異常系_変換時の例外を呼び出し元に投げる() throws Exception {
+		List<CSVMappable> rows = new ArrayList<>(rows(10000));
+		rows.add(5000, new CSVMappable() {
+			@Override
+			public boolean includeLines() {
+				return true;
+			}
+
+			@Override
+			public String[] array4exportCSV() {
+				throw new IllegalStateException("broken");
+			}
+		});
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "broken.csv"));
+		try {
+			CSVMapper.builder().build().writeInParallel(file, rows, pool);
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("broken"));
+		}
+	}
+
+	private byte[] parallel(CSVMapper mapper, List<? extends CSVMappable> rows) throws Exception {
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "parallel.csv"));
+		mapper.writeInParallel(file, rows, pool);
+		return Files.readAllBytes(file.toPath());
+	}
+
+	private byte[] sequential(CSVMapper mapper, List<? extends CSVMappable> rows) throws Exception {
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "sequential.csv"));
+		mapper.write(file, rows);
+		return Files.readAllBytes(file.toPath());
+	}
+
+	private static List<Row> rows(int count) {
+		List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			rows.add(row(Integer.toString(i), i % 7 == 0 ? "\"引用\";区切り\n改行" : "東京都" + i, null));
+		}
+		return rows;
+	}
+}
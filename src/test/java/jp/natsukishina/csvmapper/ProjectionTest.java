@@ -0,0 +1,145 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class ProjectionTest {
+
+	private static final String RESOURCE_DIR = "src/test/resources";
+
+	/** 読み飛ばす列にクォート・区切り文字・改行を含むCSV */
+	private static final String WIDE_CSV = "id,memo,name,code\n"
+			+ "1,\"a,\"\"b\"\"\nc\",りんご,A1\r\n"
+			+ "2,,\"みかん,箱\",B2\n"
+			+ "3,\"x\"\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_列番号で指定した列だけを読み込む() throws Exception {
+		CSVFile file = write(folder, "wide.csv", WIDE_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().charset(StandardCharsets.UTF_8).columns(3, 0).build();
+		// レコードに存在しない列は空文字
+		assertThat(fields(mapper.read(file, Row.class)), is(Arrays.asList(Arrays.asList("code", "id"),
+				Arrays.asList("A1", "1"), Arrays.asList("B2", "2"), Arrays.asList("", "3"))));
+	}
+
+	@Test
+	public void 正常系_文字に変換して読み込む場合も指定した列だけを読み込む() throws Exception {
+		// "ポ"の2バイト目は'|'と同じ0x7Cのため、バイト列のままでは解析できない
+		Charset sjis = Charset.forName("Shift_JIS");
+		CSVFile file = write(folder, "pipe.csv", WIDE_CSV.replace(',', '|').replace("りんご", "ポ"), sjis);
+		CSVMapper mapper = CSVMapper.builder().charset(sjis).delimiter('|').columns(2, 1).build();
+		assertThat(fields(mapper.read(file, Row.class)), is(Arrays.asList(Arrays.asList("name", "memo"),
+				Arrays.asList("ポ", "a|\"b\"\nc"), Arrays.asList("みかん|箱", ""), Arrays.asList("", "x"))));
+	}
+
+	@Test
+	public void 正常系_列名で指定した列だけを読み込む() throws Exception {
+		CSVFile file = write(folder, "wide.csv", WIDE_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().columns("name", "id").build();
+		// ヘッダー行は渡さない
+		assertThat(fields(mapper.read(file, Row.class)), is(Arrays.asList(Arrays.asList("りんご", "1"),
+				Arrays.asList("みかん,箱", "2"), Arrays.asList("", "3"))));
+	}
+
+	@Test
+	public void 正常系_列名で指定した列を列名で対応付け() {
+		CSVMapper mapper = CSVMapper.builder().columns("released", "name").build();
+		List<NamedData> list = mapper.read(new CSVFile(RESOURCE_DIR, "columns.csv"), NamedData.class);
+		assertThat(list.size(), is(3));
+		assertThat(list.get(1).name, is("みかん,箱"));
+		assertThat(list.get(1).released, is(LocalDate.of(2016, 1, 31)));
+	}
+
+	@Test
+	public void 正常系_列番号で指定した列を列番号で対応付け() {
+		CSVMapper mapper = CSVMapper.builder().columns(3, 1).build();
+		List<ProjectedData> list = mapper.read(new CSVFile(RESOURCE_DIR, "columns.csv"), ProjectedData.class);
+		// ヘッダー行は日付に変換できないため読み飛ばす
+		assertThat(list.size(), is(3));
+		assertThat(list.get(0).name, is("りんご"));
+		assertThat(list.get(0).released, is(LocalDate.of(2016, 6, 10)));
+	}
+
+	@Test
+	public void 正常系_列名で指定して並列に読み込む() throws Exception {
+		StringBuilder sb = new StringBuilder("id,memo,value\n");
+		for (int i = 0; i < 300; i++) {
+			sb.append(i).append(i % 3 == 0 ? ",\"改行\nを含む\"," : ",,").append("v").append(i).append('\n');
+		}
+		CSVFile file = write(folder, "parallel.csv", sb.toString(), StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().columns("value", "id").build();
+		List<List<String>> expected = fields(mapper.read(file, Row.class));
+		assertThat(expected.size(), is(300));
+		assertThat(expected.get(299), is(Arrays.asList("v299", "299")));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			List<Row> actual = new ParallelCSVReader<>(mapper, channel, StandardCharsets.UTF_8, Row.class, pool, 97, 0)
+					.read(true);
+			assertThat(fields(actual), is(expected));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_列番号が重複() {
+		CSVMapper.builder().columns(1, 2, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_列番号が負の値() {
+		CSVMapper.builder().columns(-1);
+	}
+
+	@Test(expected = CSVException.class)
+	public void 異常系_ヘッダー行に存在しない列名を指定() throws Exception {
+		CSVFile file = write(folder, "wide.csv", WIDE_CSV, StandardCharsets.UTF_8);
+		CSVMapper.builder().columns("unknown").build().read(file, Row.class);
+	}
+
+	public static class NamedData implements CSVMappable {
+		@CSVColumn(name = "name")
+		private String name;
+		@CSVColumn(name = "released")
+		private LocalDate released;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+
+	public static class ProjectedData implements CSVMappable {
+		@CSVColumn(index = 0)
+		private LocalDate released;
+		@CSVColumn(index = 1)
+		private String name;
+
+		@Override
+		public boolean includeLines() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class ReadAllTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_ディレクトリ直下のCSVファイルをglobで検索する() throws Exception {
+		write(folder, "part-2.csv", "1\n", StandardCharsets.UTF_8);
+		write(folder, "part-1.csv.gz", "", StandardCharsets.UTF_8);
+		write(folder, "other.csv", "1\n", StandardCharsets.UTF_8);
+		folder.newFile("part-3.txt");
+		new File(folder.getRoot(), "part-4.csv").mkdir();
+
+		assertThat(names(CSVFile.find(folder.getRoot(), "part-*")), is(Arrays.asList("part-1.csv.gz", "part-2.csv")));
+		assertThat(names(CSVFile.find(folder.getRoot(), null)),
+				is(Arrays.asList("other.csv", "part-1.csv.gz", "part-2.csv")));
+	}
+
+	@Test
+	public void 正常系_ファイルごとに文字コードを判定して並行に読み込む() throws Exception {
+		List<Charset> charsets = Arrays.asList(StandardCharsets.UTF_8, Charset.forName("Windows-31J"),
+				StandardCharsets.UTF_16, Charset.forName("EUC-JP"));
+		List<CSVFile> files = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			Charset charset = charsets.get(i % charsets.size());
+			CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "file" + i + (i % 3 == 0 ? ".csv.gz" : ".csv")));
+			CSVMapper.builder().charset(charset).build().write(file, rows(i, 500));
+			files.add(file);
+		}
+		CSVStatistics statistics = new CSVStatistics();
+		List<CSVFileResult<Row>> results = CSVMapper.builder().metricsListener(statistics).build().readAll(files,
+				Row.class, 4);
+
+		assertThat(results.size(), is(12));
+		for (int i = 0; i < results.size(); i++) {
+			CSVFileResult<Row> result = results.get(i);
+			assertThat(result.getFile(), is(files.get(i)));
+			assertThat(result.isSuccess(), is(true));
+			assertThat(fields(result.getRecords()), is(fields(rows(i, 500))));
+			assertThat(result.getCharset().name(), result.getCharset().newEncoder().canEncode("東京都"), is(true));
+			assertThat(result.getElapsedNanos() > 0, is(true));
+		}
+		assertThat(results.get(1).getCharset(), is(Charset.forName("Shift_JIS")));
+		assertThat(statistics.getCount(CSVMetricsListener.Counter.RECORDS_READ), is(6000L));
+	}
+
+	@Test
+	public void 異常系_読み込みに失敗したファイルがあっても残りのファイルを読み込む() throws Exception {
+		List<CSVFile> files = new ArrayList<>();
+		files.add(write(folder, "good1.csv", "1,a\n", StandardCharsets.UTF_8));
+		files.add(write(folder, "broken.csv.gz", "not gzip", StandardCharsets.UTF_8));
+		files.add(write(folder, "good2.csv", "2,b\n", StandardCharsets.UTF_8));
+		List<CSVFileResult<Row>> results = CSVMapper.builder().build().readAll(files, Row.class, 2);
+
+		assertThat(results.get(0).isSuccess(), is(true));
+		assertThat(results.get(1).isSuccess(), is(false));
+		assertThat(results.get(1).getRecords().isEmpty(), is(true));
+		assertThat(results.get(1).getCharset(), nullValue());
+		assertThat(results.get(1).getException().getMessage(), containsString("broken.csv.gz"));
+		assertThat(fields(results.get(2).getRecords()), is(Arrays.asList(Arrays.asList("2", "b"))));
+	}
+
+	@Test
+	public void 正常系_全てのファイルのレコードを1つのStreamで受け取る() throws Exception {
+		List<CSVFile> files = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "file" + i + ".csv"));
+			CSVMapper.builder().build().write(file, rows(i, MultiFileReader.BATCH_SIZE * 3 + 7));
+			files.add(file);
+		}
+		Map<String, List<List<String>>> byFile = new HashMap<>();
+		try (Stream<Row> stream = CSVMapper.builder().build().readAllStream(files, Row.class, 3)) {
+			stream.forEach(row -> byFile.computeIfAbsent(row.array4exportCSV()[0], key -> new ArrayList<>())
+					.add(Arrays.asList(row.array4exportCSV())));
+		}
+		assertThat(byFile.size(), is(20));
+		for (int i = 0; i < 20; i++) {
+			// ファイル内の順序は保持する
+			assertThat(byFile.get(Integer.toString(i)), is(fields(rows(i, MultiFileReader.BATCH_SIZE * 3 + 7))));
+		}
+		try (Stream<Row> stream = CSVMapper.builder().build().readAllStream(Collections.emptyList(), Row.class, 3)) {
+			assertThat(stream.count(), is(0L));
+		}
+	}
+
+	@Test
+	public void 正常系_Streamを閉じると読み込みを中断する() throws Exception {
+		List<CSVFile> files = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "file" + i + ".csv"));
+			CSVMapper.builder().build().write(file, rows(i, MultiFileReader.BATCH_SIZE * 10));
+			files.add(file);
+		}
+		try (Stream<Row> stream = CSVMapper.builder().build().readAllStream(files, Row.class, 2)) {
+			assertThat(stream.limit(10).count(), is(10L));
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (readerThreads() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(readerThreads(), is(0L));
+	}
+
+	@Test
+	public void 異常系_読み込みに失敗したファイルのレコードを受け取る時点で例外を投げる() throws Exception {
+		List<CSVFile> files = Arrays.asList(write(folder, "good.csv", "1,a\n", StandardCharsets.UTF_8),
+				write(folder, "broken.csv.gz", "not gzip", StandardCharsets.UTF_8));
+		try (Stream<Row> stream = CSVMapper.builder().build().readAllStream(files, Row.class, 2)) {
+			stream.count();
+			fail();
+		} catch (CSVException e) {
+			assertThat(e.getMessage(), containsString("broken.csv.gz"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_並行数が1未満() throws Exception {
+		CSVMapper.builder().build().readAll(Collections.emptyList(), Row.class, 0);
+	}
+
+	private static long readerThreads() {
+		return Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> thread.getName().startsWith("csv-mapper-reader-")).count();
+	}
+
+	private static List<String> names(List<CSVFile> files) {
+		return files.stream().map(File::getName).collect(Collectors.toList());
+	}
+
+	private static List<Row> rows(int file, int count) {
+		List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Row row = new Row();
+			row.importFromCSV(Arrays.asList(Integer.toString(file), Integer.toString(i), "東京都" + i));
+			rows.add(row);
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,137 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVMetricsListener.Counter;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class RecordFilterTest {
+
+	private static final String ORDERS_CSV = "id,status,memo\n"
+			+ "1,DONE,\"a,b\"\n"
+			+ "2,\"保留\",\"改行\nあり\"\r\n"
+			+ "3,\"DO\"\"NE\",c\n"
+			+ "4,DONE\n"
+			+ "5\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_条件を満たすレコードのみインスタンスを生成() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		AtomicLong filtered = new AtomicLong();
+		CSVMapper mapper = CSVMapper.builder().where(1, "DONE"::contentEquals).metricsListener(
+				new CSVMetricsListener() {
+					@Override
+					public void onCount(Counter counter, long count) {
+						if (counter == Counter.RECORDS_FILTERED) {
+							filtered.addAndGet(count);
+						}
+					}
+				}).build();
+		Counted.instances.set(0);
+		assertThat(ids(mapper.read(file, Counted.class)), is(Arrays.asList("1", "4")));
+		assertThat(Counted.instances.get(), is(2));
+		assertThat(filtered.get(), is(4L));
+	}
+
+	@Test
+	public void 正常系_クォートと複数バイト文字を含むフィールドを評価() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper quoted = CSVMapper.builder().where(1, "DO\"NE"::contentEquals).build();
+		assertThat(ids(quoted.read(file, Row.class)), is(Arrays.asList("3")));
+		CSVMapper multibyte = CSVMapper.builder().where(1, "保留"::contentEquals).build();
+		assertThat(ids(multibyte.read(file, Row.class)), is(Arrays.asList("2")));
+	}
+
+	@Test
+	public void 正常系_文字に変換して読み込む場合も条件を評価() throws Exception {
+		Charset sjis = Charset.forName("Shift_JIS");
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV.replace(',', '|').replace("保留", "ポ"), sjis);
+		CSVMapper mapper = CSVMapper.builder().charset(sjis).delimiter('|')
+				.where(1, v -> "ポ".contentEquals(v) || "DONE".contentEquals(v)).build();
+		assertThat(ids(mapper.read(file, Row.class)), is(Arrays.asList("1", "2", "4")));
+	}
+
+	@Test
+	public void 正常系_複数の条件を全て満たすレコードのみ読み込む() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().where(1, "DONE"::contentEquals).where(2, v -> v.length() == 0)
+				.build();
+		// レコードに存在しない列は空文字として評価する
+		assertThat(ids(mapper.read(file, Row.class)), is(Arrays.asList("4")));
+	}
+
+	@Test
+	public void 正常系_列名で指定した列の位置で評価() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().columns("status", "id").where(0, "DONE"::contentEquals).build();
+		assertThat(mapper.read(file, Row.class).stream().map(r -> r.array4exportCSV()[1]).collect(Collectors.toList()),
+				is(Arrays.asList("1", "4")));
+	}
+
+	@Test
+	public void 正常系_条件を満たさないレコードではオブジェクトを生成しない() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append(i).append(",\"値,").append(i).append("\",保留,plain\n");
+		}
+		CSVFile file = write(folder, "large.csv", sb.toString(), StandardCharsets.UTF_8);
+		RecordFilter filter = RecordFilter.of(2, "DONE"::contentEquals);
+		long thread = Thread.currentThread().getId();
+		for (int warmUp = 0; warmUp < 3; warmUp++) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					RecordReader reader = new MappedRecordReader(channel, StandardCharsets.UTF_8)) {
+				reader.filter(filter);
+				long before = threads.getThreadAllocatedBytes(thread);
+				assertThat(reader.readRecord(), nullValue());
+				long allocated = threads.getThreadAllocatedBytes(thread) - before;
+				assertThat(reader.recordsFiltered(), is(100000L));
+				// 1レコードあたり1バイト未満(リストやフィールドの文字列を生成すると数十MBになる)
+				assertThat("allocated " + allocated, allocated < 100000, is(true));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_条件がnull() {
+		CSVMapper.builder().where(0, null);
+	}
+
+	private static List<String> ids(List<? extends CSVMappable> rows) {
+		return rows.stream().map(r -> r.array4exportCSV()[0]).collect(Collectors.toList());
+	}
+
+	public static class Counted extends Row {
+		static final AtomicInteger instances = new AtomicInteger();
+
+		public Counted() {
+			instances.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVSchema.Type;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class SnapshotTest {
+
+	private static final String ORDERS_CSV = "id,name,status\n"
+			+ "1,\"りんご,箱\",DONE\n"
+			+ "2,\"改行\nあり\",保留\r\n"
+			+ "3,\"\"\"引用\"\"\",\n"
+			+ "4\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_2回目以降はスナップショットから読み込む() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().snapshot(true).build();
+		List<List<String>> expected = fields(CSVMapper.builder().build().read(file, Row.class));
+		assertThat(fields(mapper.read(file, Row.class)), is(expected));
+		assertThat(snapshotOf(file).exists(), is(true));
+		// サイズと更新日時を変えずに内容を書き換えても、スナップショットの内容を読み込む
+		overwrite(file, ORDERS_CSV.replace("DONE", "done"));
+		assertThat(fields(mapper.read(file, Row.class)), is(expected));
+		assertThat(fields(CSVMapper.builder().build().read(file, Row.class)).get(1).get(2), is("done"));
+	}
+
+	@Test
+	public void 正常系_CSVファイルが更新された場合は作り直す() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().snapshot(true).build();
+		mapper.read(file, Row.class);
+		long created = snapshotOf(file).lastModified();
+		Files.write(file.toPath(), (ORDERS_CSV + "5,追加,DONE\n").getBytes(StandardCharsets.UTF_8));
+		file.setLastModified(file.lastModified() + 2000);
+		List<List<String>> rows = fields(mapper.read(file, Row.class));
+		assertThat(rows.size(), is(6));
+		assertThat(rows.get(5), is(Arrays.asList("5", "追加", "DONE")));
+		// 作り直したスナップショットから読み込む
+		overwrite(file, ORDERS_CSV.replace("DONE", "done") + "5,追加,DONE\n");
+		assertThat(fields(mapper.read(file, Row.class)), is(rows));
+		assertThat(snapshotOf(file).lastModified() >= created, is(true));
+	}
+
+	@Test
+	public void 正常系_読み込みの設定が異なる場合は使用しない() throws Exception {
+		Charset sjis = Charset.forName("Shift_JIS");
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV.replace(',', '|'), sjis);
+		CSVMapper pipe = CSVMapper.builder().charset(sjis).delimiter('|').snapshot(true).build();
+		List<List<String>> expected = fields(pipe.read(file, Row.class));
+		assertThat(expected.get(1), is(Arrays.asList("1", "りんご|箱", "DONE")));
+		List<List<String>> comma = fields(pipe.toBuilder().delimiter(',').build().read(file, Row.class));
+		assertThat(comma.get(1).size(), is(1));
+		// 区切り文字の異なる読み込みでスナップショットが作り直されている
+		overwrite(file, ORDERS_CSV.replace(',', '|').replace("DONE", "done"), sjis);
+		assertThat(fields(pipe.read(file, Row.class)).get(1).get(2), is("done"));
+	}
+
+	@Test
+	public void 正常系_列の指定と絞り込む条件をスナップショットにも適用() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().columns("status", "id").where(0, "DONE"::contentEquals)
+				.deduplicate().snapshot(true).build();
+		List<List<String>> expected = Arrays.asList(Arrays.asList("DONE", "1"));
+		assertThat(fields(mapper.read(file, Row.class)), is(expected));
+		assertThat(snapshotOf(file).exists(), is(true));
+		assertThat(fields(mapper.read(file, Row.class)), is(expected));
+		CSVTable table = mapper.readTable(file,
+				CSVSchema.builder().column("status", Type.DICTIONARY).column("name", Type.STRING).build());
+		assertThat(table.size(), is(1));
+		assertThat(table.getString(0, 1), is("りんご,箱"));
+		// 列の指定や条件が異なる読み込みでも同じスナップショットを使用する
+		overwrite(file, ORDERS_CSV.replace("りんご", "みかん"));
+		List<List<String>> all = fields(CSVMapper.builder().snapshot(true).build().read(file, Row.class));
+		assertThat(all.size(), is(5));
+		assertThat(all.get(1), is(Arrays.asList("1", "りんご,箱", "DONE")));
+		assertThat(all.get(4), is(Arrays.asList("4")));
+	}
+
+	@Test
+	public void 正常系_途中で閉じた場合は作成しない() throws Exception {
+		CSVFile file = write(folder, "orders.csv", ORDERS_CSV, StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().snapshot(true).build();
+		try (Stream<Row> stream = mapper.readStream(file, Row.class)) {
+			assertThat(stream.limit(1).count(), is(1L));
+		}
+		assertThat(folder.getRoot().list(), is(new String[] { "orders.csv" }));
+	}
+
+	private static File snapshotOf(CSVFile file) {
+		return new File(file.getAbsolutePath() + Snapshot.EXTENSION);
+	}
+
+	/**
+	 * サイズと更新日時を変えずにCSVファイルの内容を書き換える
+	 */
+	private static void overwrite(CSVFile file, String content) throws Exception {
+		overwrite(file, content, StandardCharsets.UTF_8);
+	}
+
+	private static void overwrite(CSVFile file, String content, Charset charset) throws Exception {
+		long modified = file.lastModified();
+		byte[] bytes = content.getBytes(charset);
+		assertThat(bytes.length, is((int) file.length()));
+		Files.write(file.toPath(), bytes);
+		file.setLastModified(modified);
+	}
+}
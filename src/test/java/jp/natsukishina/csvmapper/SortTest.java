@@ -0,0 +1,205 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.fields;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class SortTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void 正常系_メモリー上で列を指定して並べ替える() throws Exception {
+		CSVFile in = write(folder, "in.csv", "3,c\n1,\"改行\nあり\"\n2,b\n1,a\n", StandardCharsets.UTF_8);
+		CSVFile out = CSVFile.fromFile(new File(folder.getRoot(), "out.csv"));
+		CSVMapper mapper = CSVMapper.builder().lineSeparator("\n").build();
+		assertThat(mapper.sort(in, out, CSVMapper.comparing(0), 1L << 20, pool), is(4L));
+		// 比較結果が等しいレコードは元の順序を保つ
+		assertThat(new String(Files.readAllBytes(out.toPath()), StandardCharsets.UTF_8),
+				is("1,\"改行\nあり\"\n1,a\n2,b\n3,c\n"));
+		assertThat(folder.getRoot().list().length, is(2));
+	}
+
+	@Test
+	public void 正常系_メモリーの上限を超える場合は一時ファイルに書き出してマージする() throws Exception {
+		List<Row> rows = rows(30000);
+		Charset sjis = Charset.forName("Windows-31J");
+		CSVFile in = CSVFile.fromFile(new File(folder.getRoot(), "in.csv"));
+		CSVMapper.builder().charset(sjis).build().write(in, rows);
+		CSVFile out = CSVFile.fromFile(new File(folder.getRoot(), "out.csv"));
+		Comparator<List<String>> comparator = CSVMapper.comparing(1)
+				.thenComparing(Comparator.comparingInt(row -> Integer.parseInt(row.get(0))));
+
+		// ラン数がMAX_FAN_INを超えるため段階的にマージする
+		long count = CSVMapper.builder().build().sort(in, out, comparator, 256 * 1024, pool);
+		assertThat(count, is(30000L));
+		assertThat(fields(CSVMapper.builder().charset(sjis).build().read(out, Row.class)),
+				is(sorted(rows, comparator)));
+		assertThat(folder.getRoot().list().length, is(2));
+	}
+
+	@Test
+	public void 正常系_段階的にマージしても元の順序を保つ() throws Exception {
+		List<Row> rows = rows(5000);
+		CSVFile in = CSVFile.fromFile(new File(folder.getRoot(), "in.csv"));
+		CSVMapper mapper = CSVMapper.builder().build();
+		mapper.write(in, rows);
+		Comparator<List<String>> comparator = CSVMapper.comparing(1);
+		try (RecordReader reader = open(mapper, in);
+				ExternalSorter.Sorted sorted = new ExternalSorter(comparator, 4096, pool, folder.getRoot(), 3)
+						.sort(reader)) {
+			assertThat(sorted.isInMemory(), is(false));
+			List<List<String>> result = new ArrayList<>();
+			sorted.forEachRemaining(result::add);
+			assertThat(result, is(sorted(rows, comparator)));
+		}
+		assertThat(folder.getRoot().list().length, is(1));
+	}
+
+	@Test
+	public void 正常系_同じファイルに出力する() throws Exception {
+		CSVFile file = write(folder, "data.csv.gz", "", StandardCharsets.UTF_8);
+		List<Row> rows = rows(2000);
+		CSVMapper mapper = CSVMapper.builder().build();
+		mapper.write(file, rows);
+		mapper.sort(file, file, CSVMapper.comparing(2, 0), 16 * 1024);
+		assertThat(fields(mapper.read(file, Row.class)), is(sorted(rows, CSVMapper.comparing(2, 0))));
+	}
+
+	@Test
+	public void 異常系_比較に失敗した場合は一時ファイルを削除する() throws Exception {
+		CSVFile in = CSVFile.fromFile(new File(folder.getRoot(), "in.csv"));
+		CSVMapper mapper = CSVMapper.builder().build();
+		mapper.write(in, rows(5000));
+		CSVFile out = CSVFile.fromFile(new File(folder.getRoot(), "out.csv"));
+		try {
+			mapper.sort(in, out, Comparator.comparingInt(row -> Integer.parseInt(row.get(1))), 16 * 1024, pool);
+			fail();
+		} catch (NumberFormatException e) {
+			// 出力先のファイルは作成しない
+			assertThat(folder.getRoot().list(), is(new String[] { "in.csv" }));
+		}
+	}
+
+	@Test
+	public void 異常系_同じファイルへの出力中に失敗した場合は元の内容を残す() throws Exception {
+		CSVFile file = CSVFile.fromFile(new File(folder.getRoot(), "data.csv"));
+		CSVMapper mapper = CSVMapper.builder().build();
+		mapper.write(file, rows(5000));
+		byte[] original = Files.readAllBytes(file.toPath());
+		Comparator<List<String>> comparator = CSVMapper.comparing(1);
+		// 同じ内容のファイルで比較の回数を数え、出力中(マージの最後)の比較で失敗させる
+		CSVFile copy = CSVFile.fromFile(new File(folder.getRoot(), "copy.csv"));
+		Files.copy(file.toPath(), copy.toPath());
+		AtomicLong calls = new AtomicLong();
+		mapper.sort(copy, copy, (a, b) -> {
+			calls.incrementAndGet();
+			return comparator.compare(a, b);
+		}, 16 * 1024, pool);
+		Files.delete(copy.toPath());
+		AtomicLong remaining = new AtomicLong(calls.get());
+		try {
+			mapper.sort(file, file, (a, b) -> {
+				if (remaining.decrementAndGet() == 0) {
+					throw new IllegalStateException("compare failed");
+				}
+				return comparator.compare(a, b);
+			}, 16 * 1024, pool);
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(Files.readAllBytes(file.toPath()), is(original));
+			assertThat(folder.getRoot().list(), is(new String[] { "data.csv" }));
+		}
+	}
+
+	@Test
+	public void 正常系_出力先のファイルの権限を保つ() throws Exception {
+		CSVFile file = write(folder, "data.csv", "2,b\n1,a\n", StandardCharsets.UTF_8);
+		Assume.assumeNotNull(Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class));
+		// 一時ファイルの既定の権限(rw-------)とも、umaskによる権限とも異なる権限にしておく
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+		Files.setPosixFilePermissions(file.toPath(), permissions);
+		CSVMapper mapper = CSVMapper.builder().lineSeparator("\n").build();
+		mapper.sort(file, file, CSVMapper.comparing(0), 1L << 20, pool);
+		assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), is("1,a\n2,b\n"));
+		assertThat(Files.getPosixFilePermissions(file.toPath()), is(permissions));
+
+		CSVFile out = write(folder, "out.csv", "", StandardCharsets.UTF_8);
+		Files.setPosixFilePermissions(out.toPath(), permissions);
+		mapper.sort(file, out, CSVMapper.comparing(0), 1L << 20, pool);
+		assertThat(Files.getPosixFilePermissions(out.toPath()), is(permissions));
+	}
+
+	@Test
+	public void 異常系_不正な引数() throws Exception {
+		CSVFile in = write(folder, "in.csv", "1\n", StandardCharsets.UTF_8);
+		try {
+			CSVMapper.builder().build().sort(in, in, CSVMapper.comparing(0), 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), containsString("memoryBudget"));
+		}
+		try {
+			CSVMapper.comparing();
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), containsString("columns"));
+		}
+	}
+
+	private static RecordReader open(CSVMapper mapper, CSVFile file) throws Exception {
+		return new CharRecordReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8,
+				mapper.getDelimiter(), mapper.getQuote());
+	}
+
+	private static List<Row> rows(int count) {
+		Random random = new Random(0);
+		List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Row row = new Row();
+			int key = random.nextInt(100);
+			row.importFromCSV(Arrays.asList(Integer.toString(i), "キー" + key, key % 7 == 0 ? "改行\n\"あり\"" : "東京都"));
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static List<List<String>> sorted(List<Row> rows, Comparator<List<String>> comparator) {
+		return fields(rows).stream().sorted(comparator).collect(Collectors.toList());
+	}
+}
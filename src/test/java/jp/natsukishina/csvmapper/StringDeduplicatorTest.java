@@ -0,0 +1,110 @@
+package jp.natsukishina.csvmapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static jp.natsukishina.csvmapper.CSVTestSupport.write;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.natsukishina.csvmapper.CSVMetricsListener.Counter;
+import jp.natsukishina.csvmapper.CSVTestSupport.Row;
+import jp.natsukishina.csvmapper.file.CSVFile;
+
+public class StringDeduplicatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void 正常系_指定した列は同じ内容のフィールドで同じ文字列を返す() throws Exception {
+		CSVFile file = write(folder, "status.csv", statuses(100, ','), StandardCharsets.UTF_8);
+		CSVStatistics statistics = new CSVStatistics();
+		CSVMapper mapper = CSVMapper.builder().deduplicate(1, 2).metricsListener(statistics).build();
+		List<Row> rows = mapper.read(file, Row.class);
+		assertThat(rows.size(), is(100));
+		assertSame(field(rows, 0, 1), field(rows, 2, 1));
+		assertSame(field(rows, 1, 1), field(rows, 3, 1));
+		assertThat(field(rows, 1, 1), is("保留"));
+		// クォートを含むフィールド
+		assertSame(field(rows, 0, 2), field(rows, 99, 2));
+		assertThat(field(rows, 0, 2), is("東京,本社"));
+		// 指定していない列
+		assertNotSame(field(rows, 0, 3), field(rows, 1, 3));
+		assertThat(statistics.getCount(Counter.STRINGS_CREATED), is(3L));
+		assertThat(statistics.getCount(Counter.STRINGS_DEDUPLICATED), is(197L));
+		assertThat(statistics.getDeduplicationHitRate(), is(197 / 200d));
+	}
+
+	@Test
+	public void 正常系_文字に変換して読み込む場合も同じ文字列を返す() throws Exception {
+		Charset sjis = Charset.forName("Shift_JIS");
+		CSVFile file = write(folder, "status.csv", statuses(10, '|'), sjis);
+		CSVMapper mapper = CSVMapper.builder().charset(sjis).delimiter('|').deduplicate().build();
+		List<Row> rows = mapper.read(file, Row.class);
+		assertSame(field(rows, 1, 1), field(rows, 9, 1));
+		assertThat(field(rows, 1, 1), is("保留"));
+		assertSame(field(rows, 0, 2), field(rows, 5, 2));
+		assertThat(field(rows, 0, 2), is("東京|本社"));
+	}
+
+	@Test
+	public void 正常系_列を指定した場合は指定した順序での位置() throws Exception {
+		CSVFile file = write(folder, "status.csv", statuses(10, ','), StandardCharsets.UTF_8);
+		CSVMapper mapper = CSVMapper.builder().columns(1, 0).deduplicate(0).build();
+		List<Row> rows = mapper.read(file, Row.class);
+		assertSame(field(rows, 0, 0), field(rows, 2, 0));
+		assertThat(field(rows, 0, 0), is("DONE"));
+	}
+
+	@Test
+	public void 正常系_指定しない場合は共有しない() throws Exception {
+		CSVFile file = write(folder, "status.csv", statuses(10, ','), StandardCharsets.UTF_8);
+		List<Row> rows = CSVMapper.builder().build().read(file, Row.class);
+		assertNotSame(field(rows, 0, 1), field(rows, 2, 1));
+		assertThat(field(rows, 0, 1), is(field(rows, 2, 1)));
+	}
+
+	@Test
+	public void 正常系_ヒット率が低い列はキャッシュを使用しなくなる() {
+		StringDeduplicator deduplicator = new StringDeduplicator(new int[0]);
+		for (int i = 0; i < StringDeduplicator.SAMPLE_SIZE; i++) {
+			char[] chars = ("v" + i).toCharArray();
+			deduplicator.get(0, chars, 0, chars.length);
+		}
+		assertThat(deduplicator.misses(), is((long) StringDeduplicator.SAMPLE_SIZE));
+		char[] chars = "v1".toCharArray();
+		String first = deduplicator.get(0, chars, 0, chars.length);
+		assertNotSame(first, deduplicator.get(0, chars, 0, chars.length));
+		assertThat(deduplicator.hits(), is(0L));
+		assertThat(deduplicator.misses(), is((long) StringDeduplicator.SAMPLE_SIZE));
+		// 他の列には影響しない
+		assertSame(deduplicator.get(1, chars, 0, chars.length), deduplicator.get(1, chars, 0, chars.length));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void 異常系_負の列の位置() {
+		CSVMapper.builder().deduplicate(0, -1);
+	}
+
+	/**
+	 * 2列目が"DONE"と"保留"の繰り返し、3列目が全て同じクォートを含むフィールド、4列目が行ごとに異なる値のCSV
+	 */
+	private static String statuses(int rows, char delimiter) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < rows; i++) {
+			sb.append(i).append(delimiter).append(i % 2 == 0 ? "DONE" : "保留").append(delimiter)
+					.append("\"東京").append(delimiter).append("本社\"").append(delimiter).append("memo" + i).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String field(List<Row> rows, int row, int column) {
+		return rows.get(row).array4exportCSV()[column];
+	}
+}